@@ -0,0 +1,66 @@
+package org.opencds.cqf.tooling.acceleratorkit;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.opencds.cqf.tooling.utilities.ThreadPools;
+
+/**
+ * Runs the tasks that serialize and write the artifacts of the accelerator kit on a bounded pool of threads.
+ *
+ * Each task writes its own files, so the contents of the files do not depend on the order the tasks run in.
+ * awaitAll waits for every task submitted so far and rethrows the first failure (in submission order).
+ */
+public class ArtifactWriter implements Closeable {
+
+    private final ExecutorService executor;
+    private final List<Future<?>> futures = new ArrayList<>();
+
+    public ArtifactWriter(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be at least 1");
+        }
+
+        this.executor = ThreadPools.newDaemonPool("acceleratorkit-writer", maxThreads);
+    }
+
+    public void submit(Runnable task) {
+        futures.add(executor.submit(task));
+    }
+
+    public void awaitAll() {
+        Throwable failure = null;
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Writing the accelerator kit artifacts was interrupted");
+        } finally {
+            futures.clear();
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(String.valueOf(failure), failure);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,80 @@
+package org.opencds.cqf.tooling.acceleratorkit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.MetadataResource;
+
+/**
+ * The resources of one type accumulated while processing a data dictionary, in the order they were added, indexed by
+ * id and by canonical url.
+ *
+ * Resources are expected to have their id and url set before they are added. Where several resources share an id or
+ * url, lookups return the one added last. Where several resources share a url and version, the lookup by url and
+ * version returns the one added first.
+ */
+public class CanonicalResourceRegistry<T extends MetadataResource> implements Iterable<T> {
+
+    private final List<T> resources = new ArrayList<>();
+    private final Set<T> members = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, T> resourcesById = new HashMap<>();
+    private final Map<String, T> resourcesByUrl = new HashMap<>();
+    private final Map<String, T> resourcesByUrlAndVersion = new HashMap<>();
+
+    /**
+     * @return false if the resource had already been added
+     */
+    public boolean add(T resource) {
+        if (!members.add(resource)) {
+            return false;
+        }
+
+        resources.add(resource);
+        if (resource.getId() != null) {
+            resourcesById.put(resource.getId(), resource);
+        }
+        if (resource.getUrl() != null) {
+            resourcesByUrl.put(resource.getUrl(), resource);
+            resourcesByUrlAndVersion.putIfAbsent(getKey(resource.getUrl(), resource.hasVersion() ? resource.getVersion() : null), resource);
+        }
+        return true;
+    }
+
+    public boolean contains(T resource) {
+        return members.contains(resource);
+    }
+
+    public T getById(String id) {
+        return resourcesById.get(id);
+    }
+
+    public T getByUrl(String url) {
+        return resourcesByUrl.get(url);
+    }
+
+    /**
+     * @return the resource with the url and version, or with the url and no version if the version is null or empty
+     */
+    public T getByUrlAndVersion(String url, String version) {
+        return resourcesByUrlAndVersion.get(getKey(url, version));
+    }
+
+    private static String getKey(String url, String version) {
+        return version == null || version.isEmpty() ? url + "|" : url + "|" + version;
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return Collections.unmodifiableList(resources).iterator();
+    }
+}
@@ -0,0 +1,112 @@
+package org.opencds.cqf.tooling.acceleratorkit;
+
+import java.util.Comparator;
+
+/**
+ * Orders canonical resource versions, following semantic versioning where the versions allow it:
+ *
+ * - Dot-separated segments are compared in turn, numerically when both are numbers ("1.10.0" &gt; "1.9.0"), and
+ *   missing segments are treated as 0 ("1.0" = "1.0.0")
+ * - A pre-release is lower than the release it precedes ("1.0.0-ballot" &lt; "1.0.0")
+ * - Build metadata (after "+") is ignored
+ * - No version is lower than any version
+ *
+ * Versions that are not semantic versions (e.g. dates like "20210220") are compared by the same segment rules.
+ */
+public class CanonicalVersionComparator implements Comparator<String> {
+
+    public static final CanonicalVersionComparator INSTANCE = new CanonicalVersionComparator();
+
+    @Override
+    public int compare(String version1, String version2) {
+        if (version1 == null || version2 == null) {
+            return version1 == null ? (version2 == null ? 0 : -1) : 1;
+        }
+
+        String[] parts1 = split(version1);
+        String[] parts2 = split(version2);
+
+        int result = compareSegments(parts1[0].split("\\."), parts2[0].split("\\."), true);
+        if (result != 0) {
+            return result;
+        }
+
+        // A release is higher than any of its pre-releases
+        if (parts1[1] == null || parts2[1] == null) {
+            return parts1[1] == null ? (parts2[1] == null ? 0 : 1) : -1;
+        }
+        return compareSegments(parts1[1].split("\\."), parts2[1].split("\\."), false);
+    }
+
+    /*
+    Splits the version into the release and the pre-release (null if there is none), dropping any build metadata
+     */
+    private static String[] split(String version) {
+        int buildIndex = version.indexOf('+');
+        String withoutBuild = buildIndex < 0 ? version : version.substring(0, buildIndex);
+        int preReleaseIndex = withoutBuild.indexOf('-');
+        return preReleaseIndex < 0
+                ? new String[] { withoutBuild, null }
+                : new String[] { withoutBuild.substring(0, preReleaseIndex), withoutBuild.substring(preReleaseIndex + 1) };
+    }
+
+    private static int compareSegments(String[] segments1, String[] segments2, boolean padWithZero) {
+        int length = Math.max(segments1.length, segments2.length);
+        for (int i = 0; i < length; i++) {
+            String segment1 = i < segments1.length ? segments1[i] : null;
+            String segment2 = i < segments2.length ? segments2[i] : null;
+            if (segment1 == null || segment2 == null) {
+                if (!padWithZero) {
+                    // A pre-release with more identifiers is higher ("alpha.1" > "alpha")
+                    return segment1 == null ? -1 : 1;
+                }
+                segment1 = segment1 == null ? "0" : segment1;
+                segment2 = segment2 == null ? "0" : segment2;
+            }
+
+            int result = compareSegment(segment1, segment2);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareSegment(String segment1, String segment2) {
+        boolean numeric1 = isNumeric(segment1);
+        boolean numeric2 = isNumeric(segment2);
+        if (numeric1 && numeric2) {
+            String number1 = stripLeadingZeros(segment1);
+            String number2 = stripLeadingZeros(segment2);
+            // Compared as digit strings, so segments of any length compare numerically
+            return number1.length() != number2.length()
+                    ? Integer.compare(number1.length(), number2.length())
+                    : number1.compareTo(number2);
+        }
+        if (numeric1 != numeric2) {
+            // Numeric identifiers are lower than alphanumeric ones
+            return numeric1 ? -1 : 1;
+        }
+        return segment1.compareTo(segment2);
+    }
+
+    private static boolean isNumeric(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stripLeadingZeros(String number) {
+        int index = 0;
+        while (index < number.length() - 1 && number.charAt(index) == '0') {
+            index++;
+        }
+        return number.substring(index);
+    }
+}
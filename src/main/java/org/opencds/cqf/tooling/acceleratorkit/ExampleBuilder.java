@@ -450,8 +450,8 @@ public class ExampleBuilder {
         if (concept == null && vs.hasCompose()) {
             for (ValueSet.ConceptSetComponent c : vs.getCompose().getInclude()) {
                 if (c.hasSystem() && atlas.getCodeSystems() != null) {
-                    // TODO: Handle code system version
-                    CodeSystem cs = atlas.getCodeSystems().getByCanonicalUrlWithVersion(c.getSystem());
+                    // Resolves the latest version of the code system if the include does not specify one (or a known one)
+                    CodeSystem cs = atlas.getCodeSystems().getByCanonicalUrlAndVersion(c.getSystem(), c.getVersion());
                     if (cs != null && cs.hasConcept()) {
                         for (CodeSystem.ConceptDefinitionComponent cd : cs.getConcept()) {
                             if (givenValue == null || givenValue.equalsIgnoreCase(cd.getCode()) || givenValue.equalsIgnoreCase(cd.getDisplay())) {
@@ -1,54 +1,137 @@
 package org.opencds.cqf.tooling.acceleratorkit;
 
 import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.Property;
 import org.hl7.fhir.r4.model.Resource;
 
 import java.util.*;
 
+/**
+ * Resolves canonical resources by url, and by url and version, from an in-memory index.
+ *
+ * Every version of a resource is kept. Where no version is requested, or the requested version is not known, the
+ * latest version (as ordered by the CanonicalVersionComparator) is returned. Where resources have the same url and version, the first one added is used,
+ * so resolution does not depend on the order of any map the resources came from.
+ */
 public class InMemoryCanonicalResourceProvider<T extends Resource> implements CanonicalResourceProvider<T> {
 
-    private Map<String, T> resources;
+    private final List<T> resources = new ArrayList<>();
+    private final Map<String, T> resourcesByUrlAndVersion = new HashMap<>();
+    // The versions of each url, latest first
+    private final Map<String, List<T>> resourcesByUrl = new HashMap<>();
+    private final Map<T, String> versions = new IdentityHashMap<>();
 
     public InMemoryCanonicalResourceProvider(Map<String, T> resources) {
-        this.resources = resources;
+        for (Map.Entry<String, T> entry : resources.entrySet()) {
+            String url = getUrl(entry.getValue());
+            String key = entry.getKey();
+            // Resources without a url are resolvable by the key they are mapped to
+            add(url != null ? url : stripVersion(key), url != null ? getVersion(entry.getValue()) : getVersion(key), entry.getValue());
+        }
     }
 
     public InMemoryCanonicalResourceProvider(Collection<T> resources) {
-        this.resources = new HashMap<String, T>();
         for (T r : resources) {
-            List<Base> b = r.getNamedProperty("url").getValues();
-            if (b == null || b.isEmpty()) {
+            String url = getUrl(r);
+            if (url == null) {
                 throw new IllegalArgumentException("Resources used in a canonical resource provider must have a url");
             }
-            // TODO: Append version string
-            String url = b.get(0).primitiveValue();
-            this.resources.put(url, r);
+            add(url, getVersion(r), r);
+        }
+    }
+
+    private static String getPrimitive(Resource resource, String name) {
+        Property property = resource.getNamedProperty(name);
+        if (property == null) {
+            return null;
         }
+        List<Base> b = property.getValues();
+        return b == null || b.isEmpty() ? null : b.get(0).primitiveValue();
+    }
+
+    private static String getUrl(Resource resource) {
+        return getPrimitive(resource, "url");
+    }
+
+    private static String getVersion(Resource resource) {
+        return getPrimitive(resource, "version");
+    }
+
+    private static String stripVersion(String canonical) {
+        int index = canonical.indexOf('|');
+        return index < 0 ? canonical : canonical.substring(0, index);
+    }
+
+    private static String getVersion(String canonical) {
+        int index = canonical.indexOf('|');
+        return index < 0 || index == canonical.length() - 1 ? null : canonical.substring(index + 1);
+    }
+
+    private void add(String url, String version, T resource) {
+        if (resourcesByUrlAndVersion.putIfAbsent(url + "|" + version, resource) != null) {
+            // Duplicate url and version, the first one added is used
+            return;
+        }
+
+        resources.add(resource);
+        versions.put(resource, version);
+        List<T> urlVersions = resourcesByUrl.computeIfAbsent(url, k -> new ArrayList<>());
+        int index = 0;
+        // Insert after every version at least as high, so the first of equally ordered versions stays first
+        while (index < urlVersions.size() && CanonicalVersionComparator.INSTANCE.compare(versions.get(urlVersions.get(index)), version) >= 0) {
+            index++;
+        }
+        urlVersions.add(index, resource);
     }
 
     @Override
     public Iterable<T> get() {
-        return this.resources.values();
+        return Collections.unmodifiableList(this.resources);
     }
 
+    /**
+     * @return every version of the resource with the url (latest first), or only the given version if the url is
+     * versioned (url|version)
+     */
     @Override
     public Iterable<T> getByCanonicalUrl(String url) {
-        // TODO: Support versioned urls in the map
-        T result = resources.get(url);
-        if (result != null) {
-            return Collections.singletonList(result);
+        if (url == null) {
+            return Collections.emptyList();
+        }
+        if (url.indexOf('|') >= 0) {
+            T result = resourcesByUrlAndVersion.get(stripVersion(url) + "|" + getVersion(url));
+            return result != null ? Collections.singletonList(result) : Collections.<T>emptyList();
         }
-        return Collections.emptyList();
+        List<T> result = resourcesByUrl.get(url);
+        return result != null ? Collections.unmodifiableList(result) : Collections.<T>emptyList();
     }
 
+    /**
+     * @param urlWithVersion the url, optionally followed by |version
+     * @return the resource with the url and version, or the latest version if no version is given or there is none
+     * with that version
+     */
     @Override
-    public T getByCanonicalUrlWithVersion(String url) {
-        return resources.get(url);
+    public T getByCanonicalUrlWithVersion(String urlWithVersion) {
+        if (urlWithVersion == null) {
+            return null;
+        }
+        return getByCanonicalUrlAndVersion(stripVersion(urlWithVersion), getVersion(urlWithVersion));
     }
 
+    /**
+     * @return the resource with the url and version, or the latest version if no version is given or there is none
+     * with that version (as ValueSetIndex does)
+     */
     @Override
     public T getByCanonicalUrlAndVersion(String url, String version) {
-        // TODO: Support versioned urls in the map
-        return resources.get(url);
+        if (version != null && !version.isEmpty()) {
+            T resource = resourcesByUrlAndVersion.get(url + "|" + version);
+            if (resource != null) {
+                return resource;
+            }
+        }
+        List<T> urlVersions = resourcesByUrl.get(url);
+        return urlVersions == null || urlVersions.isEmpty() ? null : urlVersions.get(0);
     }
 }
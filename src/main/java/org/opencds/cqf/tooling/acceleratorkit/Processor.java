@@ -10,11 +10,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -47,6 +49,7 @@ import org.hl7.fhir.r4.model.UsageContext;
 import org.hl7.fhir.r4.model.ValueSet;
 import org.opencds.cqf.tooling.Operation;
 import org.opencds.cqf.tooling.terminology.SpreadsheetHelper;
+import org.opencds.cqf.tooling.utilities.ThreadPools;
 
 import ca.uhn.fhir.context.FhirContext;
 
@@ -63,6 +66,9 @@ public class Processor extends Operation {
     // Data Elements
     private String dataElementPages; // -dataelementpages (-dep) comma-separated list of the names of pages in the
                                      // workbook to be processed
+    private int maxThreads = ThreadPools.DEFAULT_MAX_THREADS; // -maxthreads (-mt) the number of artifacts written at a time
+    // Set while a scope's artifacts are being written, null when writeResource is called directly
+    private ArtifactWriter artifactWriter;
 
     // TODO: These need to be per scope
     private String dataElementIdentifierSystem;
@@ -91,15 +97,15 @@ public class Processor extends Operation {
     private Map<String, Integer> elementIds = new LinkedHashMap<String, Integer>();
     private Map<String, Coding> activityMap = new LinkedHashMap<String, Coding>();
     private List<DictionaryProfileElementExtension> profileExtensions = new ArrayList<>();
-    private List<StructureDefinition> extensions = new ArrayList<StructureDefinition>();
-    private List<StructureDefinition> profiles = new ArrayList<StructureDefinition>();
+    private CanonicalResourceRegistry<StructureDefinition> extensions = new CanonicalResourceRegistry<>();
+    private CanonicalResourceRegistry<StructureDefinition> profiles = new CanonicalResourceRegistry<>();
     private Map<String, StructureDefinition> profilesByElementId = new HashMap<String, StructureDefinition>();
     private Map<String, List<DictionaryElement>> elementsByProfileId = new LinkedHashMap<String, List<DictionaryElement>>();
     private Map<String, List<StructureDefinition>> profilesByActivityId = new LinkedHashMap<String, List<StructureDefinition>>();
     private Map<String, List<StructureDefinition>> profilesByParentProfile = new LinkedHashMap<String, List<StructureDefinition>>();
-    private List<CodeSystem> codeSystems = new ArrayList<CodeSystem>();
+    private CanonicalResourceRegistry<CodeSystem> codeSystems = new CanonicalResourceRegistry<>();
     private List<Questionnaire> questionnaires = new ArrayList<Questionnaire>();
-    private List<ValueSet> valueSets = new ArrayList<ValueSet>();
+    private CanonicalResourceRegistry<ValueSet> valueSets = new CanonicalResourceRegistry<>();
     private Map<String, String> valueSetNameMap = new HashMap<String, String>();
     private Map<String, ConceptMap> conceptMaps = new LinkedHashMap<String, ConceptMap>();
     private Map<String, Coding> concepts = new LinkedHashMap<String, Coding>();
@@ -192,6 +198,10 @@ public class Processor extends Operation {
                 case "dep":
                     dataElementPages = value;
                     break; // -dataelementpages (-dep)
+                case "maxthreads":
+                case "mt":
+                    maxThreads = Integer.valueOf(value);
+                    break; // -maxthreads (-mt)
                 default:
                     throw new IllegalArgumentException("Unknown flag: " + flag);
             }
@@ -260,11 +270,11 @@ public class Processor extends Operation {
         // reset variables
         elementMap = new LinkedHashMap<>();
         profileExtensions = new ArrayList<>();
-        extensions = new ArrayList<>();
-        profiles = new ArrayList<>();
-        codeSystems = new ArrayList<>();
+        extensions = new CanonicalResourceRegistry<>();
+        profiles = new CanonicalResourceRegistry<>();
+        codeSystems = new CanonicalResourceRegistry<>();
         questionnaires = new ArrayList<>();
-        valueSets = new ArrayList<>();
+        valueSets = new CanonicalResourceRegistry<>();
         igJsonFragments = new ArrayList<>();
         igResourceFragments = new ArrayList<>();
 
@@ -294,19 +304,34 @@ public class Processor extends Operation {
         // process questionnaires
         processQuestionnaires();
 
-        // write all resources
-        writeExtensions(outputPath);
-        writeProfiles(outputPath);
-        writeCodeSystems(outputPath);
-        writeValueSets(outputPath);
-        writeConceptMaps(outputPath);
-        writeQuestionnaires(outputPath);
+        try (ArtifactWriter writer = new ArtifactWriter(maxThreads)) {
+            artifactWriter = writer;
 
-        // write concepts CQL
-        writeConcepts(scope, outputPath);
+            // write all resources
+            writeExtensions(outputPath);
+            writeProfiles(outputPath);
+            writeCodeSystems(outputPath);
+            writeValueSets(outputPath);
+            writeConceptMaps(outputPath);
+            writeQuestionnaires(outputPath);
 
-        // write DataElements CQL
-        writeDataElements(scope, outputPath);
+            // The CQL is generated from the resources, and reading a resource (HAPI getters create missing elements)
+            // while it is being encoded is not safe, so the resources are written first
+            writer.awaitAll();
+
+            ensureCqlPath(outputPath);
+
+            // write concepts CQL
+            writer.submit(() -> writeConcepts(scope, outputPath));
+
+            // write DataElements CQL
+            writer.submit(() -> writeDataElements(scope, outputPath));
+
+            writer.awaitAll();
+        }
+        finally {
+            artifactWriter = null;
+        }
 
         //ig.json is deprecated and resources a located by convention. If our output isn't satisfying convention, we should
         //modify the tooling to match the convention.
@@ -328,41 +353,40 @@ public class Processor extends Operation {
     private void attachExtensions() {
         // Add extensions to the appropriate profiles
         for (DictionaryProfileElementExtension profileElementExtension : profileExtensions) {
-            for (StructureDefinition profile : profiles) {
-                if (profile.getId().equals(profileElementExtension.getProfileId())) {
-                    StructureDefinition extensionDefinition = profileElementExtension.getExtension();
+            StructureDefinition profile = profiles.getById(profileElementExtension.getProfileId());
+            if (profile != null) {
+                StructureDefinition extensionDefinition = profileElementExtension.getExtension();
 
-                    String extensionName = getExtensionName(profileElementExtension.getResourcePath(),
-                            profile.getName());
+                String extensionName = getExtensionName(profileElementExtension.getResourcePath(),
+                        profile.getName());
 
-                    ElementDefinition extensionBaseElement = getDifferentialElement(extensionDefinition, "Extension.extension");
+                ElementDefinition extensionBaseElement = getDifferentialElement(extensionDefinition, "Extension.extension");
 
-                    String resourcePath = profileElementExtension.getResourcePath();
-                    String pathToElementBeingExtended = resourcePath.substring(0,
-                            resourcePath.indexOf(extensionName) - 1);
-                    String extensionId = pathToElementBeingExtended + ".extension:" + extensionName;
+                String resourcePath = profileElementExtension.getResourcePath();
+                String pathToElementBeingExtended = resourcePath.substring(0,
+                        resourcePath.indexOf(extensionName) - 1);
+                String extensionId = pathToElementBeingExtended + ".extension:" + extensionName;
 
-                    ElementDefinition extensionElement = new ElementDefinition();
-                    extensionElement.setId(extensionId);
-                    extensionElement.setPath(pathToElementBeingExtended + ".extension");
-                    extensionElement.setSliceName(extensionName);
-                    extensionElement.setMin(extensionBaseElement.getMin());
-                    extensionElement.setMax(extensionBaseElement.getMax());
+                ElementDefinition extensionElement = new ElementDefinition();
+                extensionElement.setId(extensionId);
+                extensionElement.setPath(pathToElementBeingExtended + ".extension");
+                extensionElement.setSliceName(extensionName);
+                extensionElement.setMin(extensionBaseElement.getMin());
+                extensionElement.setMax(extensionBaseElement.getMax());
 
-                    ElementDefinition.TypeRefComponent typeRefComponent = new ElementDefinition.TypeRefComponent();
-                    List<CanonicalType> typeProfileList = new ArrayList<>();
-                    typeProfileList.add(new CanonicalType(extensionDefinition.getUrl()));
-                    typeRefComponent.setProfile(typeProfileList);
-                    typeRefComponent.setCode("Extension");
+                ElementDefinition.TypeRefComponent typeRefComponent = new ElementDefinition.TypeRefComponent();
+                List<CanonicalType> typeProfileList = new ArrayList<>();
+                typeProfileList.add(new CanonicalType(extensionDefinition.getUrl()));
+                typeRefComponent.setProfile(typeProfileList);
+                typeRefComponent.setCode("Extension");
 
-                    List<ElementDefinition.TypeRefComponent> typeRefList = new ArrayList<>();
-                    typeRefList.add(typeRefComponent);
+                List<ElementDefinition.TypeRefComponent> typeRefList = new ArrayList<>();
+                typeRefList.add(typeRefComponent);
 
-                    extensionElement.setType(typeRefList);
+                extensionElement.setType(typeRefList);
 
-                    profile.getDifferential().addElement(extensionElement);
-                    applyDataElementToElementDefinition(profileElementExtension.getElement(), profile, extensionElement);
-                }
+                profile.getDifferential().addElement(extensionElement);
+                applyDataElementToElementDefinition(profileElementExtension.getElement(), profile, extensionElement);
             }
         }
     }
@@ -705,12 +729,7 @@ public class Processor extends Operation {
             }
 
             if (system.startsWith(projectCodeSystemBase)) {
-                CodeSystem codeSystem = null;
-                for (CodeSystem cs : codeSystems) {
-                    if (cs.getUrl().equals(system + "-codes")) {
-                        codeSystem = cs;
-                    }
-                }
+                CodeSystem codeSystem = codeSystems.getByUrl(system + "-codes");
 
                 if (codeSystem == null) {
                     String codeSystemName = system.substring(system.indexOf("CodeSystem/") + "CodeSystem/".length());
@@ -1622,9 +1641,7 @@ public class Processor extends Operation {
 
         ensureChoicesDataElement(element, sd);
 
-        if (!extensions.contains(sd)) {
-            extensions.add(sd);
-        }
+        extensions.add(sd);
 
         return sd;
     }
@@ -1753,11 +1770,7 @@ public class Processor extends Operation {
         // If custom profile is specified, search for if it exists already.
         String customProfileIdRaw = element.getCustomProfileId();
         String profileId = toId(customProfileIdRaw != null && !customProfileIdRaw.isEmpty() ? customProfileIdRaw : element.getId());
-        for (StructureDefinition profile : profiles) {
-            if (profile.getId().equals(profileId)) {
-                sd = profile;
-            }
-        }
+        sd = profiles.getById(profileId);
         System.out.println(sd);
         // If the profile doesn't exist, create it with the root element.
         if (sd == null) {
@@ -1778,9 +1791,7 @@ public class Processor extends Operation {
             ensureElement(element, sd);
         }
 
-        if (!profiles.contains(sd)) {
-            profiles.add(sd);
-        }
+        profiles.add(sd);
     }
 
     private void ensureElement(DictionaryElement element, StructureDefinition sd) {
@@ -2233,12 +2244,8 @@ public class Processor extends Operation {
                 }
 
                 if (isPrimaryDataElement) {
-                    valueSetLabel = valueSetId;
-                    for (ValueSet vs : valueSets) {
-                        if (vs.getId().equals(valueSetId)) {
-                            valueSetLabel = vs.getTitle();
-                        }
-                    }
+                    ValueSet vs = valueSets.getById(valueSetId);
+                    valueSetLabel = vs != null ? vs.getTitle() : valueSetId;
 
                     dictionaryElement.setTerminologyIdentifier(valueSetLabel);
 
@@ -2266,14 +2273,8 @@ public class Processor extends Operation {
     @Nonnull
     private ValueSet ensureValueSetWithCodes(String valueSetId, String valueSetLabel, CodeCollection codes) {
         // Ensure the ValueSet
-        ValueSet valueSet = null;
-        Boolean valueSetExisted = false;
-        for (ValueSet vs : valueSets) {
-            if (vs.getId().equals(valueSetId)) {
-                valueSet = vs;
-                valueSetExisted = true;
-            }
-        }
+        ValueSet valueSet = valueSets.getById(valueSetId);
+        Boolean valueSetExisted = valueSet != null;
 
         if (valueSet == null) {
             valueSet = new ValueSet();
@@ -2313,15 +2314,18 @@ public class Processor extends Operation {
                     conceptSet.setSystem(codeSystemUrl);
                 }
 
+                Set<String> conceptKeys = new HashSet<>();
+                for (ValueSet.ConceptReferenceComponent o : conceptSet.getConcept()) {
+                    conceptKeys.add(o.getCode() + "|" + o.getDisplay());
+                }
+
                 for (DictionaryCode code : systemCodes) {
-                    List<ValueSet.ConceptReferenceComponent> conceptReferences = conceptSet.getConcept();
                     ValueSet.ConceptReferenceComponent conceptReference = new ValueSet.ConceptReferenceComponent();
                     conceptReference.setCode(code.getCode());
                     conceptReference.setDisplay(code.getDisplay());
 
                     // Only add the concept if it does not already exist in the ValueSet (based on both Code and Display)
-                    if (conceptReferences.stream().noneMatch(o -> o.getCode().equals(conceptReference.getCode())
-                            && o.getDisplay().equals(conceptReference.getDisplay()))) {
+                    if (conceptKeys.add(conceptReference.getCode() + "|" + conceptReference.getDisplay())) {
                         conceptSet.addConcept(conceptReference);
                     }
 
@@ -2403,14 +2407,8 @@ public class Processor extends Operation {
     @Nonnull
     private ValueSet createGrouperValueSet(String valueSetId, String valueSetLabel, List<ValueSet> valueSetsToGroup) {
         // Ensure the ValueSet
-        ValueSet valueSet = null;
-        Boolean valueSetExisted = false;
-        for (ValueSet vs : valueSets) {
-            if (vs.getId().equals(valueSetId)) {
-                valueSet = vs;
-                valueSetExisted = true;
-            }
-        }
+        ValueSet valueSet = valueSets.getById(valueSetId);
+        Boolean valueSetExisted = valueSet != null;
 
         if (valueSet == null) {
             valueSet = new ValueSet();
@@ -2445,6 +2443,10 @@ public class Processor extends Operation {
         List<ValueSet.ConceptSetComponent> includes = valueSet.getCompose().getInclude();
 //        ValueSet.ValueSetExpansionComponent targetExpansion = valueSet.getExpansion();
         List<ValueSet.ValueSetExpansionContainsComponent> targetContains = targetExpansion.getContains();
+        Set<String> containsKeys = new HashSet<>();
+        for (ValueSet.ValueSetExpansionContainsComponent c : targetContains) {
+            containsKeys.add(c.getSystem() + "|" + c.getCode());
+        }
 
         for (ValueSet vs: valueSetsToGroup) {
             // Add source ValueSet URLs to grouper Compose
@@ -2461,7 +2463,7 @@ public class Processor extends Operation {
                 for (ValueSet.ConceptSetComponent sourceInclude : vs.getCompose().getInclude()) {
                     String system = sourceInclude.getSystem();
                     for (ValueSet.ConceptReferenceComponent concept : sourceInclude.getConcept()) {
-                        if (targetContains.stream().noneMatch(c -> c.getSystem().equals(system) && c.getCode().equals(concept.getCode()))) {
+                        if (containsKeys.add(system + "|" + concept.getCode())) {
                             ValueSet.ValueSetExpansionContainsComponent newContains = new ValueSet.ValueSetExpansionContainsComponent();
                             newContains.setSystem(system);
                             newContains.setCode(concept.getCode());
@@ -2506,6 +2508,16 @@ public class Processor extends Operation {
     /* Write Methods */
     public void writeResource(String path, Resource resource) {
         String outputFilePath = path + "/" + resource.getResourceType().toString().toLowerCase() + "-" + resource.getIdElement().getIdPart() + "." + encoding;
+        if (artifactWriter != null) {
+            // Encoding dominates the write, so it is done on the writer's threads too
+            artifactWriter.submit(() -> writeResource(outputFilePath, resource, encoding));
+        }
+        else {
+            writeResource(outputFilePath, resource, encoding);
+        }
+    }
+
+    private static void writeResource(String outputFilePath, Resource resource, String encoding) {
         try (FileOutputStream writer = new FileOutputStream(outputFilePath)) {
             writer.write(
                 encoding.equals("json")
@@ -2807,23 +2819,15 @@ public class Processor extends Operation {
     }
 
     public String getCodeSystemIdentifier(Coding coding) {
-        CodeSystem result = null;
-        for (CodeSystem cs : codeSystems) {
-            if (coding.getSystem().equals(cs.getUrl())) {
-                if (coding.hasVersion() && cs.hasVersion() && coding.getVersion().equals(cs.getVersion())) {
-                    result = cs;
-                    break;
-                }
-
-                if (!coding.hasVersion() && !cs.hasVersion()) {
-                    result = cs;
-                    break;
-                }
-
-                // TODO: Use a terminology service to resolve this?
-            }
+        // The code system with the url and version of the coding, or, if the coding has no version and there is no
+        // unversioned code system, the code system with the url
+        CodeSystem result = codeSystems.getByUrlAndVersion(coding.getSystem(), coding.hasVersion() ? coding.getVersion() : null);
+        if (result == null && !coding.hasVersion()) {
+            result = codeSystems.getByUrl(coding.getSystem());
         }
 
+        // TODO: Use a terminology service to resolve this?
+
         if (result != null) {
             return getCodeSystemIdentifier(result);
         }
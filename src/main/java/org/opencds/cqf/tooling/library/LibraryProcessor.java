@@ -3,8 +3,10 @@ package org.opencds.cqf.tooling.library;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.base.Strings;
 
@@ -94,6 +96,67 @@ public class LibraryProcessor extends BaseProcessor {
 
     protected boolean versioned;
 
+    private static String getManifestKey(String libraryPath) {
+        return "Library/" + libraryPath;
+    }
+
+    /*
+    Returns true if this is an incremental refresh and neither the library resource at the given path nor the CQL
+    it is generated from (including that of its dependencies) has changed since it was last refreshed.
+     */
+    protected boolean isUpToDate(String libraryPath, FhirContext fhirContext, Encoding encoding) {
+        if (refreshManifest == null) {
+            return false;
+        }
+        return refreshManifest.isUpToDate(getManifestKey(libraryPath),
+                RefreshManifest.getLibraryInputPaths(libraryPath, fhirContext, encoding, versioned, getBinaryPaths()));
+    }
+
+    protected void recordRefresh(String libraryPath, FhirContext fhirContext, Encoding encoding) {
+        if (refreshManifest != null) {
+            refreshManifest.record(getManifestKey(libraryPath),
+                    RefreshManifest.getLibraryInputPaths(libraryPath, fhirContext, encoding, versioned, getBinaryPaths()));
+        }
+    }
+
+    protected String getRefreshedLibraryName(Library library) {
+        if (this.versioned && library.getVersion() != null) {
+            return library.getName() + "-" + library.getVersion();
+        }
+        return library.getName();
+    }
+
+    private String getCqlFileName(Library library) {
+        String libraryName = library.getName();
+        if (versioned) {
+            libraryName += "-" + library.getVersion();
+        }
+        return libraryName + ".cql";
+    }
+
+    /*
+    Returns true if every CQL file in the binary paths is the source of one of the given libraries, i.e. no
+    library shell would be generated for it.
+     */
+    private boolean hasLibraryForEveryCqlFile(List<Library> libraries) {
+        Set<String> cqlFileNames = new HashSet<>();
+        for (Library library : libraries) {
+            cqlFileNames.add(getCqlFileName(library));
+        }
+        for (String dir : getBinaryPaths()) {
+            File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".cql"));
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!cqlFileNames.contains(file.getName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /*
     Refreshes generated content in the given library.
     The name element of the library resource is used to find the cql file (filename = <name>.cql)
@@ -114,7 +177,7 @@ public class LibraryProcessor extends BaseProcessor {
         if (versioned) {
             libraryName += "-" + sourceLibrary.getVersion();
         }
-        String fileName = libraryName + ".cql";
+        String fileName = getCqlFileName(sourceLibrary);
         Attachment attachment = null;
         try {
             attachment = loadFile(fileName);
@@ -152,7 +215,15 @@ public class LibraryProcessor extends BaseProcessor {
     }
 
     protected List<Library> refreshGeneratedContent(List<Library> sourceLibraries) {
-        return internalRefreshGeneratedContent(sourceLibraries);
+        return internalRefreshGeneratedContent(sourceLibraries, new ArrayList<Library>());
+    }
+
+    /*
+    Refreshes the given libraries, leaving the up to date libraries of an incremental refresh as they are. If there
+    is nothing to refresh, the CQL is not translated at all.
+     */
+    protected List<Library> refreshGeneratedContent(List<Library> sourceLibraries, List<Library> upToDateLibraries) {
+        return internalRefreshGeneratedContent(sourceLibraries, upToDateLibraries);
     }
 
     public List<Library> refreshGeneratedContent(String cqlDirectoryPath, String fhirVersion) {
@@ -164,17 +235,24 @@ public class LibraryProcessor extends BaseProcessor {
         setBinaryPaths(result);
 
         List<Library> libraries = new ArrayList<Library>();
-        return internalRefreshGeneratedContent(libraries);
+        return internalRefreshGeneratedContent(libraries, new ArrayList<Library>());
     }
 
-    private List<Library> internalRefreshGeneratedContent(List<Library> sourceLibraries) {
+    private List<Library> internalRefreshGeneratedContent(List<Library> sourceLibraries, List<Library> upToDateLibraries) {
+        if (sourceLibraries.isEmpty() && !upToDateLibraries.isEmpty() && hasLibraryForEveryCqlFile(upToDateLibraries)) {
+            logMessage("All libraries are up to date.");
+            return new ArrayList<Library>();
+        }
+
         getCqlProcessor().execute();
 
         // For each CQL file, ensure that there is a Library resource with a matching name and version
         for (CqlProcessor.CqlSourceFileInformation fileInfo : getCqlProcessor().getAllFileInformation()) {
             if (fileInfo.getIdentifier() != null && fileInfo.getIdentifier().getId() != null && !fileInfo.getIdentifier().getId().equals("")) {
                 Library existingLibrary = null;
-                for (Library sourceLibrary : sourceLibraries) {
+                List<Library> knownLibraries = new ArrayList<>(sourceLibraries);
+                knownLibraries.addAll(upToDateLibraries);
+                for (Library sourceLibrary : knownLibraries) {
                     if (fileInfo.getIdentifier().getId().equals(sourceLibrary.getName())
                             && (fileInfo.getIdentifier().getVersion() == null || fileInfo.getIdentifier().getVersion().equals(sourceLibrary.getVersion()))
                     ) {
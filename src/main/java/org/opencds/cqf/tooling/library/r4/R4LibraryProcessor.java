@@ -72,7 +72,21 @@ public class R4LibraryProcessor extends LibraryProcessor {
         }
 
         List<String> refreshedLibraryNames = new ArrayList<String>();
-        List<org.hl7.fhir.r5.model.Library> refreshedLibraries = super.refreshGeneratedContent(libraries);
+
+        // Libraries refreshed in place whose inputs have not changed since the last incremental refresh are left as they are
+        List<org.hl7.fhir.r5.model.Library> librariesToRefresh = new ArrayList<>();
+        List<org.hl7.fhir.r5.model.Library> upToDateLibraries = new ArrayList<>();
+        for (org.hl7.fhir.r5.model.Library library : libraries) {
+            String filePath = fileMap.get(library.getId());
+            if (libraryOutputDirectory == null && filePath != null && isUpToDate(filePath, fhirContext, encoding)) {
+                upToDateLibraries.add(library);
+                refreshedLibraryNames.add(getRefreshedLibraryName(library));
+            } else {
+                librariesToRefresh.add(library);
+            }
+        }
+
+        List<org.hl7.fhir.r5.model.Library> refreshedLibraries = super.refreshGeneratedContent(librariesToRefresh, upToDateLibraries);
         VersionConvertor_40_50 versionConvertor_40_50 = new VersionConvertor_40_50(new BaseAdvisor_40_50());
         for (org.hl7.fhir.r5.model.Library refreshedLibrary : refreshedLibraries) {
             Library library = (Library) versionConvertor_40_50.convertResource(refreshedLibrary);
@@ -105,14 +119,11 @@ public class R4LibraryProcessor extends LibraryProcessor {
                 }
                 IOUtils.writeResource(library, outputPath, fileEncoding, fhirContext, this.versioned);
                 IOUtils.updateCachedResource(library, outputPath);
-
-                String refreshedLibraryName;
-                if (this.versioned && refreshedLibrary.getVersion() != null) {
-                    refreshedLibraryName = refreshedLibrary.getName() + "-" + refreshedLibrary.getVersion();
-                } else {
-                    refreshedLibraryName = refreshedLibrary.getName();
+                // Incremental refresh only applies when the library is refreshed in place
+                if (outputPath.equals(filePath)) {
+                    recordRefresh(filePath, fhirContext, encoding);
                 }
-                refreshedLibraryNames.add(refreshedLibraryName);
+                refreshedLibraryNames.add(getRefreshedLibraryName(refreshedLibrary));
             }
         }
 
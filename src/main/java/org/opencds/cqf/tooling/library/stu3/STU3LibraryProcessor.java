@@ -52,7 +52,21 @@ public class STU3LibraryProcessor extends LibraryProcessor {
         }
 
         List<String> refreshedLibraryNames = new ArrayList<String>();
-        List<org.hl7.fhir.r5.model.Library> refreshedLibraries = super.refreshGeneratedContent(libraries);
+
+        // Libraries refreshed in place whose inputs have not changed since the last incremental refresh are left as they are
+        List<org.hl7.fhir.r5.model.Library> librariesToRefresh = new ArrayList<>();
+        List<org.hl7.fhir.r5.model.Library> upToDateLibraries = new ArrayList<>();
+        for (org.hl7.fhir.r5.model.Library library : libraries) {
+            String filePath = fileMap.get(library.getId());
+            if (libraryOutputDirectory == null && filePath != null && isUpToDate(filePath, fhirContext, IOUtils.getEncoding(filePath))) {
+                upToDateLibraries.add(library);
+                refreshedLibraryNames.add(getRefreshedLibraryName(library));
+            } else {
+                librariesToRefresh.add(library);
+            }
+        }
+
+        List<org.hl7.fhir.r5.model.Library> refreshedLibraries = super.refreshGeneratedContent(librariesToRefresh, upToDateLibraries);
         VersionConvertor_30_50 versionConvertor_30_50 = new VersionConvertor_30_50(new BaseAdvisor_30_50());
         for (org.hl7.fhir.r5.model.Library refreshedLibrary : refreshedLibraries) {
             String filePath = fileMap.get(refreshedLibrary.getId());
@@ -73,14 +87,11 @@ public class STU3LibraryProcessor extends LibraryProcessor {
                 }
                 IOUtils.writeResource(library, outputPath, IOUtils.getEncoding(outputPath), fhirContext);
                 IOUtils.updateCachedResource(library, outputPath);
-
-                String refreshedLibraryName;
-                if (this.versioned && refreshedLibrary.getVersion() != null) {
-                    refreshedLibraryName = refreshedLibrary.getName() + "-" + refreshedLibrary.getVersion();
-                } else {
-                    refreshedLibraryName = refreshedLibrary.getName();
+                // Incremental refresh only applies when the library is refreshed in place
+                if (outputPath.equals(filePath)) {
+                    recordRefresh(filePath, fhirContext, IOUtils.getEncoding(filePath));
                 }
-                refreshedLibraryNames.add(refreshedLibraryName);
+                refreshedLibraryNames.add(getRefreshedLibraryName(refreshedLibrary));
             }
         }
 
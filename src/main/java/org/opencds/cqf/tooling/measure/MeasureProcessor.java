@@ -10,7 +10,6 @@ import org.hl7.elm.r1.VersionedIdentifier;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.Measure;
-import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.measure.r4.R4MeasureProcessor;
 import org.opencds.cqf.tooling.measure.stu3.STU3MeasureProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshMeasureParameters;
@@ -62,114 +61,144 @@ public class MeasureProcessor extends BaseProcessor {
         return measureProcessor.refreshMeasureContent(params);
     }
 
+    public static final String MeasureArtifactType = "Measure";
+
     public void bundleMeasures(ArrayList<String> refreshedLibraryNames, String igPath, List<String> binaryPaths, Boolean includeDependencies,
             Boolean includeTerminology, Boolean includePatientScenarios, Boolean includeVersion, FhirContext fhirContext, String fhirUri,
             Encoding encoding) {
+        BundlingPipeline pipeline = new BundlingPipeline(ThreadPools.DEFAULT_MAX_THREADS);
+        submitMeasureBundles(pipeline, igPath, binaryPaths, includeDependencies, includeTerminology, includePatientScenarios, includeVersion,
+                fhirContext, fhirUri, encoding);
+        LogUtils.info(BundlingPipeline.getSummary(MeasureArtifactType, pipeline.await()));
+    }
+
+    /*
+    Submits a task to bundle each measure in the IG to the given pipeline
+     */
+    public void submitMeasureBundles(BundlingPipeline pipeline, String igPath, List<String> binaryPaths, Boolean includeDependencies,
+            Boolean includeTerminology, Boolean includePatientScenarios, Boolean includeVersion, FhirContext fhirContext, String fhirUri,
+            Encoding encoding) {
         Map<String, IBaseResource> measures = IOUtils.getMeasures(fhirContext);
-        //Map<String, IBaseResource> libraries = IOUtils.getLibraries(fhirContext);
+        Map<String, String> measurePathMap = IOUtils.getMeasurePathMap(fhirContext);
 
-        List<String> bundledMeasures = new ArrayList<String>();
         for (Map.Entry<String, IBaseResource> measureEntry : measures.entrySet()) {
-            String measureSourcePath = IOUtils.getMeasurePathMap(fhirContext).get(measureEntry.getKey());
+            String measureId = measureEntry.getKey();
+            String measureSourcePath = measurePathMap.get(measureId);
             // Assumption - File name matches measure.name
             String measureName = FilenameUtils.getBaseName(measureSourcePath).replace(MeasureProcessor.ResourcePrefix, "");
-            try {
-                Map<String, IBaseResource> resources = new HashMap<String, IBaseResource>();
+            pipeline.submit(MeasureArtifactType, measureName, measureSourcePath,
+                    result -> bundleMeasure(result, pipeline.getDependencyClosures(), measureId, measureSourcePath, measureName, igPath, binaryPaths,
+                            includeDependencies, includeTerminology, includePatientScenarios, includeVersion, fhirContext, fhirUri, encoding));
+        }
+    }
 
-                Boolean shouldPersist = ResourceUtils.safeAddResource(measureSourcePath, resources, fhirContext);
-                if (!resources.containsKey("Measure/" + measureEntry.getKey())) {
-                    throw new IllegalArgumentException(String.format("Could not retrieve base resource for measure %s", measureName));
-                }
-                IBaseResource measure = resources.get("Measure/" + measureEntry.getKey());
-                String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
-                IBaseResource primaryLibrary;
-                if (primaryLibraryUrl.startsWith("http")) {
-                    primaryLibrary = IOUtils.getLibraryUrlMap(fhirContext).get(primaryLibraryUrl);
-                }
-                else {
-                    primaryLibrary = IOUtils.getLibraries(fhirContext).get(primaryLibraryUrl);
-                }
-                
-                if (primaryLibrary == null)
-                	throw new IllegalArgumentException(String.format("Could not resolve library url %s", primaryLibraryUrl));
-                
-                String primaryLibrarySourcePath = IOUtils.getLibraryPathMap(fhirContext).get(primaryLibrary.getIdElement().getIdPart());
-                String primaryLibraryName = ResourceUtils.getName(primaryLibrary, fhirContext);
-                if (includeVersion) {
-                    primaryLibraryName = primaryLibraryName + "-" + 
-                        fhirContext.newFhirPath().evaluateFirst(primaryLibrary, "version", IBase.class).get().toString();
-                }
+    private void bundleMeasure(ArtifactBundleResult result, DependencyClosureCache dependencyClosures, String measureId, String measureSourcePath, String measureName, String igPath,
+            List<String> binaryPaths, Boolean includeDependencies, Boolean includeTerminology, Boolean includePatientScenarios,
+            Boolean includeVersion, FhirContext fhirContext, String fhirUri, Encoding encoding) {
+        String manifestKey = "MeasureBundle/" + measureSourcePath;
+        try {
+            Map<String, IBaseResource> resources = new HashMap<String, IBaseResource>();
+
+            Boolean shouldPersist = ResourceUtils.safeAddResource(measureSourcePath, resources, fhirContext);
+            if (!resources.containsKey("Measure/" + measureId)) {
+                throw new IllegalArgumentException(String.format("Could not retrieve base resource for measure %s", measureName));
+            }
+            IBaseResource measure = resources.get("Measure/" + measureId);
+            String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
+            IBaseResource primaryLibrary;
+            if (primaryLibraryUrl.startsWith("http")) {
+                primaryLibrary = IOUtils.getLibraryUrlMap(fhirContext).get(primaryLibraryUrl);
+            }
+            else {
+                primaryLibrary = IOUtils.getLibraries(fhirContext).get(primaryLibraryUrl);
+            }
 
-                shouldPersist = shouldPersist
-                        & ResourceUtils.safeAddResource(primaryLibrarySourcePath, resources, fhirContext);
+            if (primaryLibrary == null)
+                throw new IllegalArgumentException(String.format("Could not resolve library url %s", primaryLibraryUrl));
 
-                String cqlFileName = IOUtils.formatFileName(primaryLibraryName, Encoding.CQL, fhirContext);
+            String primaryLibrarySourcePath = IOUtils.getLibraryPathMap(fhirContext).get(primaryLibrary.getIdElement().getIdPart());
+            String primaryLibraryName = ResourceUtils.getName(primaryLibrary, fhirContext);
+            if (includeVersion) {
+                primaryLibraryName = primaryLibraryName + "-" +
+                    fhirContext.newFhirPath().evaluateFirst(primaryLibrary, "version", IBase.class).get().toString();
+            }
 
-                String cqlLibrarySourcePath = IOUtils.getCqlLibrarySourcePath(primaryLibraryName, cqlFileName, binaryPaths);
+            if (!ResourceUtils.safeAddResource(primaryLibrarySourcePath, resources, fhirContext)) {
+                shouldPersist = false;
+            }
+            if (!shouldPersist) {
+                result.notBundled("The measure or its primary library could not be read.");
+            }
 
-                if (cqlLibrarySourcePath == null) {
-                    throw new IllegalArgumentException(String.format("Could not determine CqlLibrarySource path for library %s", primaryLibraryName));
-                }
+            String cqlFileName = IOUtils.formatFileName(primaryLibraryName, Encoding.CQL, fhirContext);
 
-                if (includeTerminology) {
-                    boolean result = ValueSetsProcessor.bundleValueSets(cqlLibrarySourcePath, igPath, fhirContext, resources, encoding, includeDependencies, includeVersion);
-                    if (shouldPersist && !result) {
-                        LogUtils.info("Measure will not be bundled because ValueSet bundling failed.");
-                    }
-                    shouldPersist = shouldPersist & result;
-                }
+            String cqlLibrarySourcePath = IOUtils.getCqlLibrarySourcePath(primaryLibraryName, cqlFileName, binaryPaths);
 
-                if (includeDependencies) {
-                    LibraryProcessor libraryProcessor = new LibraryProcessor();
-                    boolean result = libraryProcessor.bundleLibraryDependencies(primaryLibrarySourcePath, fhirContext, resources, encoding, includeVersion);
-                    if (shouldPersist && !result) {
-                        LogUtils.info("Measure will not be bundled because Library Dependency bundling failed.");
+            if (cqlLibrarySourcePath == null) {
+                throw new IllegalArgumentException(String.format("Could not determine CqlLibrarySource path for library %s", primaryLibraryName));
+            }
+
+            // With an incremental refresh, measures whose bundle inputs and output have not changed are not bundled again
+            // (unless the bundles are being loaded to a server)
+            String bundleDestPath = FilenameUtils.concat(FilenameUtils.concat(IGProcessor.getBundlesPath(igPath), MeasureTestGroupName), measureName);
+            List<String> trackedPaths = null;
+            if (refreshManifest != null && (fhirUri == null || fhirUri.equals(""))) {
+                trackedPaths = RefreshManifest.getBundleInputPaths(measureSourcePath, primaryLibrarySourcePath, igPath, MeasureTestGroupName,
+                        primaryLibraryName, binaryPaths, fhirContext, encoding, includeTerminology, includePatientScenarios, includeVersion);
+                if (trackedPaths != null) {
+                    trackedPaths.add(bundleDestPath);
+                    if (shouldPersist && refreshManifest.isUpToDate(manifestKey, trackedPaths)) {
+                        result.setStatus(ArtifactBundleResult.Status.UP_TO_DATE);
+                        return;
                     }
-                    shouldPersist = shouldPersist & result;
                 }
+            }
 
-                if (includePatientScenarios) {
-                    boolean result = TestCaseProcessor.bundleTestCases(igPath, MeasureTestGroupName, primaryLibraryName, fhirContext, resources);
-                    if (shouldPersist && !result) {
-                        LogUtils.info("Measure will not be bundled because Test Case bundling failed.");
-                    }
-                    shouldPersist = shouldPersist & result;
+            // Resolved once and shared by the bundle and the bundle files (and any other artifact with this primary library)
+            DependencyClosure dependencyClosure = dependencyClosures.get(primaryLibrarySourcePath, cqlLibrarySourcePath, igPath, fhirContext, encoding,
+                    includeTerminology, includeDependencies, includeVersion);
+
+            if (includeTerminology) {
+                boolean valueSetsBundled = dependencyClosure.addValueSets(resources);
+                if (shouldPersist && !valueSetsBundled) {
+                    result.notBundled("Measure will not be bundled because ValueSet bundling failed.");
                 }
+                shouldPersist = shouldPersist & valueSetsBundled;
+            }
 
-                if (shouldPersist) {
-                    String bundleDestPath = FilenameUtils.concat(FilenameUtils.concat(IGProcessor.getBundlesPath(igPath), MeasureTestGroupName), measureName);
-                    persistBundle(igPath, bundleDestPath, measureName, encoding, fhirContext, new ArrayList<IBaseResource>(resources.values()), fhirUri);
-                    bundleFiles(igPath, bundleDestPath, measureName, binaryPaths, measureSourcePath, primaryLibrarySourcePath, fhirContext, encoding, includeTerminology, includeDependencies, includePatientScenarios, includeVersion);
-                    bundledMeasures.add(measureSourcePath);
+            if (includeDependencies) {
+                boolean dependenciesBundled = dependencyClosure.addLibraries(resources);
+                if (shouldPersist && !dependenciesBundled) {
+                    result.notBundled("Measure will not be bundled because Library Dependency bundling failed.");
                 }
-            } catch (Exception e) {
-                LogUtils.putException(measureName, e);
-            } finally {
-                LogUtils.warn(measureName);
+                shouldPersist = shouldPersist & dependenciesBundled;
             }
-        }
-        String message = "\r\n" + bundledMeasures.size() + " Measures successfully bundled:";
-        for (String bundledMeasure : bundledMeasures) {
-            message += "\r\n     " + bundledMeasure + " BUNDLED";
-        }
 
-        List<String> measurePathLibraryNames = new ArrayList<>(IOUtils.getMeasurePaths(fhirContext));
-        ArrayList<String> failedMeasures = new ArrayList<>(measurePathLibraryNames);
-        measurePathLibraryNames.removeAll(bundledMeasures);
-        measurePathLibraryNames.retainAll(refreshedLibraryNames);
-        message += "\r\n" + measurePathLibraryNames.size() + " Measures refreshed, but not bundled (due to issues):";
-        for (String notBundled : measurePathLibraryNames) {
-            message += "\r\n     " + notBundled + " REFRESHED";
-        }
+            if (includePatientScenarios) {
+                boolean testCasesBundled = TestCaseProcessor.bundleTestCases(igPath, MeasureTestGroupName, primaryLibraryName, fhirContext, resources);
+                if (shouldPersist && !testCasesBundled) {
+                    result.notBundled("Measure will not be bundled because Test Case bundling failed.");
+                }
+                shouldPersist = shouldPersist & testCasesBundled;
+            }
 
-        failedMeasures.removeAll(bundledMeasures);
-        failedMeasures.removeAll(measurePathLibraryNames);
-        message += "\r\n" + failedMeasures.size() + " Measures failed refresh:";
-        for (String failed : failedMeasures) {
-            message += "\r\n     " + failed + " FAILED";
+            if (shouldPersist) {
+                persistBundle(igPath, bundleDestPath, measureName, encoding, fhirContext, new ArrayList<IBaseResource>(resources.values()), fhirUri);
+                bundleFiles(igPath, bundleDestPath, measureName, binaryPaths, measureSourcePath, primaryLibrarySourcePath, dependencyClosure, fhirContext, encoding, includeTerminology, includeDependencies, includePatientScenarios);
+                if (refreshManifest != null) {
+                    refreshManifest.record(manifestKey, trackedPaths);
+                }
+            } else if (refreshManifest != null) {
+                refreshManifest.invalidate(manifestKey);
+            }
+        } catch (Exception e) {
+            // Recorded as a warning, which the pipeline attaches to the result
+            LogUtils.putException(measureName, e);
+            result.setStatus(ArtifactBundleResult.Status.FAILED);
+            if (refreshManifest != null) {
+                refreshManifest.invalidate(manifestKey);
+            }
         }
-
-        LogUtils.info(message);
     }
 
     private void persistBundle(String igPath, String bundleDestPath, String libraryName, Encoding encoding, FhirContext fhirContext, List<IBaseResource> resources, String fhirUri) {
@@ -180,7 +209,7 @@ public class MeasureProcessor extends BaseProcessor {
         BundleUtils.postBundle(encoding, fhirContext, fhirUri, (IBaseResource) bundle);
     }
 
-    private void bundleFiles(String igPath, String bundleDestPath, String libraryName, List<String> binaryPaths, String resourceFocusSourcePath, String librarySourcePath, FhirContext fhirContext, Encoding encoding, Boolean includeTerminology, Boolean includeDependencies, Boolean includePatientScenarios, Boolean includeVersion) {
+    private void bundleFiles(String igPath, String bundleDestPath, String libraryName, List<String> binaryPaths, String resourceFocusSourcePath, String librarySourcePath, DependencyClosure dependencyClosure, FhirContext fhirContext, Encoding encoding, Boolean includeTerminology, Boolean includeDependencies, Boolean includePatientScenarios) {
         String bundleDestFilesPath = FilenameUtils.concat(bundleDestPath, libraryName + "-" + IGBundleProcessor.bundleFilesPathElement);
         IOUtils.initializeDirectory(bundleDestFilesPath);
 
@@ -195,26 +224,21 @@ public class MeasureProcessor extends BaseProcessor {
         String cqlDestPath = FilenameUtils.concat(bundleDestFilesPath, cqlFileName);
         IOUtils.copyFile(cqlLibrarySourcePath, cqlDestPath);
 
-        if (includeTerminology) {  
-            try {     
-                Map<String, IBaseResource> valuesets = ResourceUtils.getDepValueSetResources(cqlLibrarySourcePath, igPath, fhirContext, includeDependencies, includeVersion);      
-                if (!valuesets.isEmpty()) {
-                    Object bundle = BundleUtils.bundleArtifacts(ValueSetsProcessor.getId(libraryName), new ArrayList<IBaseResource>(valuesets.values()), fhirContext);
-                    IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);  
-                }  
-            }  catch (Exception e) {
-                e.printStackTrace();
-                LogUtils.putException(libraryName, e.getMessage());
-            }       
+        if (includeTerminology) {
+            Map<String, IBaseResource> valuesets = dependencyClosure.getValueSets();
+            if (!valuesets.isEmpty()) {
+                Object bundle = BundleUtils.bundleArtifacts(ValueSetsProcessor.getId(libraryName), new ArrayList<IBaseResource>(valuesets.values()), fhirContext);
+                IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);
+            }
         }
-        
+
         if (includeDependencies) {
-            Map<String, IBaseResource> depLibraries = ResourceUtils.getDepLibraryResources(librarySourcePath, fhirContext, encoding, includeVersion, logger);
+            Map<String, IBaseResource> depLibraries = dependencyClosure.getLibraries();
             if (!depLibraries.isEmpty()) {
                 String depLibrariesID = "library-deps-" + libraryName;
-                Object bundle = BundleUtils.bundleArtifacts(depLibrariesID, new ArrayList<IBaseResource>(depLibraries.values()), fhirContext);            
-                IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);  
-            }        
+                Object bundle = BundleUtils.bundleArtifacts(depLibrariesID, new ArrayList<IBaseResource>(depLibraries.values()), fhirContext);
+                IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);
+            }
         }
 
          if (includePatientScenarios) {
@@ -225,6 +249,56 @@ public class MeasureProcessor extends BaseProcessor {
     protected boolean versioned;
     protected FhirContext fhirContext;
 
+    private static String getManifestKey(String measurePath) {
+        return "Measure/" + measurePath;
+    }
+
+    /*
+    Returns the files a measure is refreshed from: the measure resource itself and everything its primary library
+    is generated from, or null if they can not be determined
+     */
+    private List<String> getRefreshInputPaths(String measurePath, Measure measure, Encoding encoding) {
+        try {
+            String libraryUrl = ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
+            IBaseResource library = libraryUrl.startsWith("http")
+                    ? IOUtils.getLibraryUrlMap(fhirContext).get(libraryUrl)
+                    : IOUtils.getLibraries(fhirContext).get(libraryUrl);
+            if (library == null) {
+                return null;
+            }
+
+            String libraryPath = IOUtils.getLibraryPathMap(fhirContext).get(library.getIdElement().getIdPart());
+            List<String> libraryInputPaths = RefreshManifest.getLibraryInputPaths(libraryPath, fhirContext, encoding, versioned, getBinaryPaths());
+            if (libraryInputPaths == null) {
+                return null;
+            }
+
+            List<String> paths = new ArrayList<String>();
+            paths.add(measurePath);
+            paths.addAll(libraryInputPaths);
+            return paths;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /*
+    Returns true if this is an incremental refresh and neither the measure resource at the given path nor anything
+    its primary library is generated from has changed since it was last refreshed.
+     */
+    protected boolean isUpToDate(String measurePath, Measure measure, Encoding encoding) {
+        if (refreshManifest == null) {
+            return false;
+        }
+        return refreshManifest.isUpToDate(getManifestKey(measurePath), getRefreshInputPaths(measurePath, measure, encoding));
+    }
+
+    protected void recordRefresh(String measurePath, Measure measure, Encoding encoding) {
+        if (refreshManifest != null) {
+            refreshManifest.record(getManifestKey(measurePath), getRefreshInputPaths(measurePath, measure, encoding));
+        }
+    }
+
     public List<String> refreshMeasureContent(RefreshMeasureParameters params) {
         return new ArrayList<String>();
     }
@@ -244,12 +318,13 @@ public class MeasureProcessor extends BaseProcessor {
 
     private Measure refreshGeneratedContent(Measure measure) {
         MeasureRefreshProcessor processor = new MeasureRefreshProcessor();
-        LibraryManager libraryManager = getCqlProcessor().getLibraryManager();
+        getCqlProcessor().ensureExecuted();
         CqlTranslatorOptions cqlTranslatorOptions = getCqlProcessor().getCqlTranslatorOptions();
         // Do not attempt to refresh if the measure does not have a library
         if (measure.hasLibrary()) {
             String libraryUrl = ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
             VersionedIdentifier primaryLibraryIdentifier = CanonicalUtils.toVersionedIdentifier(libraryUrl);
+            LibraryManager libraryManager = getCqlProcessor().getLibraryManager(primaryLibraryIdentifier);
             List<CqlTranslatorException> errors = new ArrayList<CqlTranslatorException>();
             TranslatedLibrary translatedLibrary = libraryManager.resolveLibrary(primaryLibraryIdentifier, cqlTranslatorOptions, errors);
             boolean hasErrors = false;
@@ -12,6 +12,7 @@ import org.opencds.cqf.tooling.measure.adapters.IMeasureReportAdapter;
 import org.opencds.cqf.tooling.measure.adapters.MeasureTestAdapter;
 import org.opencds.cqf.tooling.measure.adapters.ReadOnlyFhirServerMeasureTestAdapter;
 import org.opencds.cqf.tooling.measure.comparer.MeasureReportComparer;
+import org.opencds.cqf.tooling.measure.comparer.MeasureReportDiff;
 import org.opencds.cqf.tooling.processor.ITestProcessor;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -40,8 +41,9 @@ public class MeasureTestProcessor implements ITestProcessor {
 
         IMeasureReportAdapter actual = adapter.getActualMeasureReportAdapter();
 
-        Parameters results = comparer.compare(actual, expected);
-        logTestResults(measureId, results);
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(actual, expected, diff, adapter.getUnsupportedReportContent());
+        logTestResults(measureId, results, diff, adapter);
         return results;
     }
 
@@ -56,12 +58,13 @@ public class MeasureTestProcessor implements ITestProcessor {
 
         IMeasureReportAdapter actual = adapter.getActualMeasureReportAdapter();
 
-        Parameters results = comparer.compare(actual, expected);
-        logTestResults(measureId, results);
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(actual, expected, diff, adapter.getUnsupportedReportContent());
+        logTestResults(measureId, results, diff, adapter);
         return results;
     }
 
-    private void logTestResults(String artifactId, Parameters results) {
+    private void logTestResults(String artifactId, Parameters results, MeasureReportDiff diff, MeasureTestAdapter adapter) {
         //TODO: Can do whatever we want here, just printing to out for now - just hacked together console output.
         System.out.println("            Test results for Measure '" + artifactId + "':");
         for (ParametersParameter parameter : results.getParameter()) {
@@ -75,6 +78,14 @@ public class MeasureTestProcessor implements ITestProcessor {
             }
             System.out.println("            " + parameter.getName().getValue() + assertionString + parameter.getValueBoolean().isValue().toString());
         }
+
+        for (MeasureReportDiff.Difference difference : diff.getDifferences()) {
+            System.out.println("            Difference in " + difference);
+        }
+
+        if (!adapter.getUnsupportedReportContent().isEmpty()) {
+            System.out.println("            Not compared (not supported by this evaluation): " + adapter.getUnsupportedReportContent());
+        }
     }
 
     public MeasureTestAdapter getMeasureTestAdapter(IBaseResource testBundle, IBaseResource contentBundle, String fhirServer) {
@@ -84,7 +95,7 @@ public class MeasureTestProcessor implements ITestProcessor {
             throw new IllegalArgumentException("If fhirServer is not specified, contentBundle can not be null or empty.");
         }
 
-        if (fhirServer == null) {
+        if (fhirServer == null || fhirServer.trim().isEmpty()) {
             return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testBundle, contentBundle);
         }
 
@@ -111,7 +122,7 @@ public class MeasureTestProcessor implements ITestProcessor {
             throw new IllegalArgumentException("If fhirServer is not specified, contentBundlePath can not be null.");
         }
 
-        if (fhirServer == null) {
+        if (fhirServer == null || fhirServer.trim().isEmpty()) {
             return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testPath, contentBundlePath);
         }
         
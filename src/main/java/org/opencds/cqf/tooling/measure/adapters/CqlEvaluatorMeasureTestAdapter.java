@@ -1,38 +1,448 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
-import org.apache.commons.lang.NotImplementedException;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.cqframework.cql.elm.execution.Library;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.opencds.cqf.cql.engine.data.CompositeDataProvider;
+import org.opencds.cqf.cql.engine.execution.Context;
+import org.opencds.cqf.cql.engine.execution.CqlLibraryReader;
+import org.opencds.cqf.cql.engine.execution.InMemoryLibraryLoader;
+import org.opencds.cqf.cql.engine.fhir.model.Dstu3FhirModelResolver;
+import org.opencds.cqf.cql.engine.fhir.model.R4FhirModelResolver;
+import org.opencds.cqf.cql.engine.model.ModelResolver;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.runtime.DateTime;
+import org.opencds.cqf.cql.engine.runtime.Interval;
+import org.opencds.cqf.cql.engine.terminology.CodeSystemInfo;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+import org.opencds.cqf.cql.evaluator.builder.Constants;
+import org.opencds.cqf.cql.evaluator.engine.model.CachingModelResolverDecorator;
+import org.opencds.cqf.cql.evaluator.engine.retrieve.BundleRetrieveProvider;
+import org.opencds.cqf.cql.evaluator.engine.terminology.BundleTerminologyProvider;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.util.BundleUtil;
 
+/**
+ * Evaluates the measure in-process with the cql-engine, so measures can be tested without a FHIR server. The measure,
+ * its libraries (which must include ELM, as refreshed libraries do) and the terminology are taken from the content
+ * bundle produced by bundling the IG, and the data from the test case bundle.
+ *
+ * The result is an individual report for the test case patient. Population criteria that return a boolean are
+ * evaluated as patient based, applying the proportion measure rules (e.g. a denominator exclusion removes the patient
+ * from the numerator); criteria that return a list are counted by their size. Stratifiers, evaluated resources and
+ * supplemental data are not evaluated, so they are not compared (see getUnsupportedReportContent).
+ */
 public class CqlEvaluatorMeasureTestAdapter extends MeasureTestAdapter {
 
-    // private String contentPath;
-    // private IBaseResource contentBundle;
+    private static final String MEASUREMENT_PERIOD = "Measurement Period";
+
+    private static final String INITIAL_POPULATION = "initial-population";
+    private static final String NUMERATOR = "numerator";
+    private static final String NUMERATOR_EXCLUSION = "numerator-exclusion";
+    private static final String DENOMINATOR = "denominator";
+    private static final String DENOMINATOR_EXCLUSION = "denominator-exclusion";
+    private static final String DENOMINATOR_EXCEPTION = "denominator-exception";
+    private static final String MEASURE_POPULATION = "measure-population";
+    private static final String MEASURE_POPULATION_EXCLUSION = "measure-population-exclusion";
+
+    /*
+    The test cases of an artifact share its content bundle and run concurrently, so its terminology provider is built
+    once per content bundle and shared by them
+     */
+    private static final Map<IBaseResource, TerminologyProvider> terminologyProviders =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final IBaseResource contentBundle;
+    private List<Library> libraries;
 
-    /// This guy will eventually run the the cql-evaluator to get the results...
     public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, IBaseResource testBundle, IBaseResource contentBundle) {
         super(fhirContext, testBundle);
 
-        // this.contentBundle = contentBundle;
+        this.contentBundle = Objects.requireNonNull(contentBundle, "contentBundle can not be null.");
+        validateContentBundle();
     }
 
     public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, String testPath, String contentPath) {
         super(fhirContext, testPath);
 
-        // this.contentPath = contentPath;
+        Objects.requireNonNull(contentPath, "contentPath can not be null.");
+        this.contentBundle = IOUtils.readResource(contentPath, fhirContext);
+        if (this.contentBundle == null) {
+            throw new IllegalArgumentException(String.format("FHIR Resource does not exist at %s", contentPath));
+        }
+        validateContentBundle();
+    }
+
+    private void validateContentBundle() {
+        if (!this.contentBundle.fhirType().equals("Bundle") || !(this.contentBundle instanceof IBaseBundle)) {
+            throw new IllegalArgumentException("contentBundle is not a Bundle Resource");
+        }
     }
 
     @Override
     public IMeasureReportAdapter getActualMeasureReportAdapter() {
-        // 1. Get Measure and Patient Ids from Expected
-        // 2. Run evaluator with Measure, Patient, Content context
-        // 3. Parse the result
-        throw new NotImplementedException();
+        if (this.actualReportAdapter == null) {
+            this.actualReportAdapter = evaluate();
+        }
+        return this.actualReportAdapter;
+    }
+
+    @Override
+    public Set<ReportContent> getUnsupportedReportContent() {
+        return EnumSet.of(ReportContent.STRATIFIERS, ReportContent.EVALUATED_RESOURCES, ReportContent.SUPPLEMENTAL_DATA);
     }
 
     @Override
     protected IMeasureReportAdapter evaluate() {
-        throw new NotImplementedException();
+        String measureId = this.getMeasureId();
+        // The content bundle is shared by concurrent test cases and HAPI getters create missing elements, so the
+        // measure is evaluated from a copy
+        IBaseResource measure = ResourceUtils.copyResource(getMeasure(measureId));
+
+        Context context = createContext(getPrimaryLibrary(measure));
+
+        FhirVersionEnum version = fhirContext.getVersion().getVersion();
+        if (version == FhirVersionEnum.DSTU3) {
+            return new Dstu3MeasureReportAdapter(evaluateDstu3((org.hl7.fhir.dstu3.model.Measure) measure, measureId, context));
+        } else if (version == FhirVersionEnum.R4) {
+            return new R4MeasureReportAdapter(evaluateR4((org.hl7.fhir.r4.model.Measure) measure, measureId, context));
+        }
+        throw new IllegalArgumentException("Unsupported or unknown fhir version: " + version.getFhirVersionString());
+    }
+
+    private List<? extends IBaseResource> getContentResources(String resourceType) {
+        return BundleUtil.toListOfResourcesOfType(this.fhirContext, (IBaseBundle) this.contentBundle,
+            this.fhirContext.getResourceDefinition(resourceType).getImplementingClass());
+    }
+
+    private IBaseResource getMeasure(String measureId) {
+        for (IBaseResource measure : getContentResources("Measure")) {
+            if (measureId.equals(measure.getIdElement().getIdPart()) || measureId.equals(ResourceUtils.getName(measure, fhirContext))) {
+                return measure;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Measure %s is not in the content bundle", measureId));
+    }
+
+    private Optional<String> getString(IBase element, String path) {
+        return fhirContext.newFhirPath().evaluateFirst(element, path, IBase.class)
+            .filter(value -> value instanceof IPrimitiveType<?>)
+            .map(value -> ((IPrimitiveType<?>) value).getValueAsString());
+    }
+
+    private Library readElm(IBaseResource library) {
+        Optional<byte[]> elm = fhirContext.newFhirPath()
+            .evaluateFirst(library, "content.where(contentType = 'application/elm+xml').data", IBase.class)
+            .filter(value -> value instanceof IPrimitiveType<?> && ((IPrimitiveType<?>) value).getValue() instanceof byte[])
+            .map(value -> (byte[]) ((IPrimitiveType<?>) value).getValue());
+        if (!elm.isPresent()) {
+            throw new IllegalArgumentException(String.format("Library %s has no ELM content, refresh the IG before testing",
+                library.getIdElement().getIdPart()));
+        }
+
+        try {
+            return CqlLibraryReader.read(new ByteArrayInputStream(elm.get()));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(String.format("Error reading the ELM of library %s: %s",
+                library.getIdElement().getIdPart(), e.getMessage()));
+        }
+    }
+
+    /*
+    Reads the ELM of every library in the content bundle, and returns the measure's primary library
+     */
+    private Library getPrimaryLibrary(IBaseResource measure) {
+        String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
+        String canonical = primaryLibraryUrl.split("\\|")[0];
+        String tail = canonical.substring(canonical.lastIndexOf('/') + 1);
+
+        libraries = new ArrayList<>();
+        Library primaryLibrary = null;
+        for (IBaseResource library : getContentResources("Library")) {
+            Library elm = readElm(library);
+            libraries.add(elm);
+
+            boolean isPrimary = canonical.equals(getString(library, "url").orElse(null))
+                || tail.equals(library.getIdElement().getIdPart())
+                || tail.equals(ResourceUtils.getName(library, fhirContext));
+            if (isPrimary && primaryLibrary == null) {
+                primaryLibrary = elm;
+            }
+        }
+
+        if (primaryLibrary == null) {
+            throw new IllegalArgumentException(String.format("Library %s is not in the content bundle", primaryLibraryUrl));
+        }
+        return primaryLibrary;
+    }
+
+    private Context createContext(Library library) {
+        ModelResolver modelResolver = fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3
+            ? new Dstu3FhirModelResolver()
+            : new R4FhirModelResolver();
+
+        TerminologyProvider terminologyProvider = terminologyProviders.computeIfAbsent(contentBundle,
+            bundle -> new SynchronizedTerminologyProvider(new BundleTerminologyProvider(fhirContext, (IBaseBundle) bundle)));
+        BundleRetrieveProvider retrieveProvider = new BundleRetrieveProvider(fhirContext, (IBaseBundle) testBundle);
+        retrieveProvider.setTerminologyProvider(terminologyProvider);
+        retrieveProvider.setExpandValueSets(true);
+
+        Context context = new Context(library);
+        context.registerLibraryLoader(new InMemoryLibraryLoader(libraries));
+        context.registerDataProvider(Constants.FHIR_MODEL_URI,
+            new CompositeDataProvider(new CachingModelResolverDecorator(modelResolver), retrieveProvider));
+        context.registerTerminologyProvider(terminologyProvider);
+        context.setExpressionCaching(true);
+
+        context.setParameter(null, MEASUREMENT_PERIOD,
+            new Interval(toDateTime(getPeriodStartAsString(), false), true, toDateTime(getPeriodEndAsString(), true), true));
+        context.enterContext("Patient");
+        context.setContextValue("Patient", getPatientId());
+        return context;
+    }
+
+    /*
+    Converts a reported period boundary, keeping the time zone offset it was reported with, so the results don't
+    depend on the time zone of the machine. Dates without a time are taken to be in UTC, and a period end
+    without a time (or at midnight) includes the whole day (month, year).
+     */
+    static DateTime toDateTime(String value, boolean isEnd) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        OffsetDateTime dateTime;
+        if (value.contains("T")) {
+            dateTime = OffsetDateTime.parse(value);
+        }
+        else {
+            LocalDate date;
+            if (value.length() == 4) {
+                Year year = Year.parse(value);
+                date = isEnd ? year.atMonth(12).atEndOfMonth() : year.atDay(1);
+            }
+            else if (value.length() == 7) {
+                YearMonth yearMonth = YearMonth.parse(value);
+                date = isEnd ? yearMonth.atEndOfMonth() : yearMonth.atDay(1);
+            }
+            else {
+                date = LocalDate.parse(value);
+            }
+            dateTime = date.atStartOfDay().atOffset(ZoneOffset.UTC);
+        }
+
+        if (isEnd && dateTime.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            dateTime = dateTime.with(LocalTime.MAX).truncatedTo(ChronoUnit.MILLIS);
+        }
+        return new DateTime(dateTime);
+    }
+
+    /*
+    BundleTerminologyProvider indexes the value sets of the bundle on first use, without synchronization
+     */
+    private static class SynchronizedTerminologyProvider implements TerminologyProvider {
+        private final TerminologyProvider terminologyProvider;
+
+        private SynchronizedTerminologyProvider(TerminologyProvider terminologyProvider) {
+            this.terminologyProvider = terminologyProvider;
+        }
+
+        @Override
+        public synchronized boolean in(Code code, ValueSetInfo valueSet) {
+            return terminologyProvider.in(code, valueSet);
+        }
+
+        @Override
+        public synchronized Iterable<Code> expand(ValueSetInfo valueSet) {
+            return terminologyProvider.expand(valueSet);
+        }
+
+        @Override
+        public synchronized Code lookup(Code code, CodeSystemInfo codeSystem) {
+            return terminologyProvider.lookup(code, codeSystem);
+        }
+    }
+
+    private static Object evaluateCriteria(Context context, String expression) {
+        if (expression == null || expression.isEmpty()) {
+            return null;
+        }
+        return context.resolveExpressionRef(expression).getExpression().evaluate(context);
+    }
+
+    private static boolean isTrue(Object result) {
+        return Boolean.TRUE.equals(result);
+    }
+
+    private static int size(Object result) {
+        if (result instanceof Boolean) {
+            return isTrue(result) ? 1 : 0;
+        }
+        if (result instanceof Iterable) {
+            int count = 0;
+            for (Object item : (Iterable<?>) result) {
+                if (item != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        return result == null ? 0 : 1;
+    }
+
+    /*
+    Returns the count of each population from the results of its criteria
+     */
+    static Map<String, Integer> getCounts(Map<String, Object> results) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        boolean patientBased = results.values().stream().allMatch(result -> result == null || result instanceof Boolean);
+        if (!patientBased) {
+            for (Map.Entry<String, Object> result : results.entrySet()) {
+                counts.put(result.getKey(), size(result.getValue()));
+            }
+            return counts;
+        }
+
+        boolean initialPopulation = isTrue(results.get(INITIAL_POPULATION));
+        boolean denominator = initialPopulation && (results.containsKey(DENOMINATOR) ? isTrue(results.get(DENOMINATOR)) : true);
+        boolean denominatorExclusion = denominator && isTrue(results.get(DENOMINATOR_EXCLUSION));
+        boolean numerator = denominator && !denominatorExclusion && isTrue(results.get(NUMERATOR));
+        boolean numeratorExclusion = numerator && isTrue(results.get(NUMERATOR_EXCLUSION));
+        boolean denominatorException = denominator && !denominatorExclusion && !numerator && isTrue(results.get(DENOMINATOR_EXCEPTION));
+        boolean measurePopulation = initialPopulation && isTrue(results.get(MEASURE_POPULATION));
+        boolean measurePopulationExclusion = measurePopulation && isTrue(results.get(MEASURE_POPULATION_EXCLUSION));
+
+        for (String code : results.keySet()) {
+            boolean member;
+            switch (code) {
+                case INITIAL_POPULATION: member = initialPopulation; break;
+                case DENOMINATOR: member = denominator; break;
+                case DENOMINATOR_EXCLUSION: member = denominatorExclusion; break;
+                case DENOMINATOR_EXCEPTION: member = denominatorException; break;
+                case NUMERATOR: member = numerator; break;
+                case NUMERATOR_EXCLUSION: member = numeratorExclusion; break;
+                case MEASURE_POPULATION: member = measurePopulation; break;
+                case MEASURE_POPULATION_EXCLUSION: member = measurePopulationExclusion; break;
+                default: member = isTrue(results.get(code));
+            }
+            counts.put(code, member ? 1 : 0);
+        }
+        return counts;
+    }
+
+    /*
+    Returns the score of a proportion or ratio measure, or null if the score is not defined (empty denominator)
+     */
+    static BigDecimal getScore(String scoring, Map<String, Integer> counts) {
+        if (!"proportion".equals(scoring) && !"ratio".equals(scoring)) {
+            return null;
+        }
+        int numerator = counts.getOrDefault(NUMERATOR, 0) - counts.getOrDefault(NUMERATOR_EXCLUSION, 0);
+        int denominator = counts.getOrDefault(DENOMINATOR, 0) - counts.getOrDefault(DENOMINATOR_EXCLUSION, 0)
+            - counts.getOrDefault(DENOMINATOR_EXCEPTION, 0);
+        if (denominator <= 0) {
+            return null;
+        }
+        return new BigDecimal(numerator).divide(new BigDecimal(denominator), MathContext.DECIMAL64);
+    }
+
+    private org.hl7.fhir.r4.model.MeasureReport evaluateR4(org.hl7.fhir.r4.model.Measure measure, String measureId, Context context) {
+        org.hl7.fhir.r4.model.MeasureReport report = new org.hl7.fhir.r4.model.MeasureReport();
+        report.setStatus(org.hl7.fhir.r4.model.MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(org.hl7.fhir.r4.model.MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure("Measure/" + measureId);
+        report.setSubject(new org.hl7.fhir.r4.model.Reference("Patient/" + getPatientId()));
+        report.setPeriod(new org.hl7.fhir.r4.model.Period().setStart(getPeriodStart()).setEnd(getPeriodEnd()));
+
+        String scoring = measure.getScoring().getCodingFirstRep().getCode();
+        for (org.hl7.fhir.r4.model.Measure.MeasureGroupComponent group : measure.getGroup()) {
+            Map<String, Object> results = new LinkedHashMap<>();
+            Map<String, org.hl7.fhir.r4.model.CodeableConcept> codes = new LinkedHashMap<>();
+            for (org.hl7.fhir.r4.model.Measure.MeasureGroupPopulationComponent population : group.getPopulation()) {
+                String code = population.getCode().getCodingFirstRep().getCode();
+                if (code == null || code.equals("measure-observation")) {
+                    continue;
+                }
+                results.put(code, evaluateCriteria(context, population.getCriteria().getExpression()));
+                codes.put(code, population.getCode());
+            }
+
+            Map<String, Integer> counts = getCounts(results);
+            org.hl7.fhir.r4.model.MeasureReport.MeasureReportGroupComponent reportGroup = report.addGroup();
+            reportGroup.setId(group.getId());
+            reportGroup.setCode(group.getCode());
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                reportGroup.addPopulation().setCode(codes.get(count.getKey())).setCount(count.getValue());
+            }
+            BigDecimal score = getScore(scoring, counts);
+            if (score != null) {
+                reportGroup.setMeasureScore(new org.hl7.fhir.r4.model.Quantity().setValue(score));
+            }
+        }
+        return report;
+    }
+
+    private org.hl7.fhir.dstu3.model.MeasureReport evaluateDstu3(org.hl7.fhir.dstu3.model.Measure measure, String measureId, Context context) {
+        org.hl7.fhir.dstu3.model.MeasureReport report = new org.hl7.fhir.dstu3.model.MeasureReport();
+        report.setStatus(org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure(new org.hl7.fhir.dstu3.model.Reference("Measure/" + measureId));
+        report.setPatient(new org.hl7.fhir.dstu3.model.Reference("Patient/" + getPatientId()));
+        report.setPeriod(new org.hl7.fhir.dstu3.model.Period().setStart(getPeriodStart()).setEnd(getPeriodEnd()));
+
+        String scoring = measure.getScoring().getCodingFirstRep().getCode();
+        for (org.hl7.fhir.dstu3.model.Measure.MeasureGroupComponent group : measure.getGroup()) {
+            Map<String, Object> results = new LinkedHashMap<>();
+            Map<String, org.hl7.fhir.dstu3.model.CodeableConcept> codes = new LinkedHashMap<>();
+            for (org.hl7.fhir.dstu3.model.Measure.MeasureGroupPopulationComponent population : group.getPopulation()) {
+                String code = population.getCode().getCodingFirstRep().getCode();
+                if (code == null || code.equals("measure-observation")) {
+                    continue;
+                }
+                results.put(code, evaluateCriteria(context, population.getCriteria()));
+                codes.put(code, population.getCode());
+            }
+
+            Map<String, Integer> counts = getCounts(results);
+            org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportGroupComponent reportGroup = report.addGroup();
+            reportGroup.setId(group.hasId() ? group.getId() : group.getIdentifier().getValue());
+            reportGroup.setIdentifier(group.getIdentifier());
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                reportGroup.addPopulation().setCode(codes.get(count.getKey())).setCount(count.getValue());
+            }
+            BigDecimal score = getScore(scoring, counts);
+            if (score != null) {
+                reportGroup.setMeasureScore(score);
+            }
+        }
+        return report;
     }
-}
\ No newline at end of file
+}
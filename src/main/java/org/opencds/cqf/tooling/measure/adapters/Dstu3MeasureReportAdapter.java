@@ -1,6 +1,11 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
+import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.MeasureReport;
+import org.hl7.fhir.dstu3.model.Resource;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -64,25 +69,94 @@ public class Dstu3MeasureReportAdapter implements IMeasureReportAdapter {
         return null;
     }
 
+    @Override
+    public String getPeriodStartAsString() {
+        return measureReport.getPeriod().hasStart() ? measureReport.getPeriod().getStartElement().getValueAsString() : null;
+    }
+
+    @Override
+    public String getPeriodEndAsString() {
+        return measureReport.getPeriod().hasEnd() ? measureReport.getPeriod().getEndElement().getValueAsString() : null;
+    }
+
     @Override
     public List<Group> getGroups() {
         List<Group> groups = new ArrayList<Group>();
-        for (MeasureReport.MeasureReportGroupComponent groupComponent : measureReport.getGroup()) {
+        for (int i = 0; i < measureReport.getGroup().size(); i++) {
+            MeasureReport.MeasureReportGroupComponent groupComponent = measureReport.getGroup().get(i);
             Group group = new Group();
-            group.name = groupComponent.getId();
+            // Groups are usually reported without an id, so fall back to the identifier and then the position of the group
+            group.name = groupComponent.hasId() ? groupComponent.getId()
+                : groupComponent.hasIdentifier() && groupComponent.getIdentifier().hasValue() ? groupComponent.getIdentifier().getValue() : String.valueOf(i);
             group.score = groupComponent.getMeasureScore();
+            for (MeasureReport.MeasureReportGroupPopulationComponent population : groupComponent.getPopulation()) {
+                group.populations.put(population.getCode().getCodingFirstRep().getCode(), population.getCount());
+            }
+            for (int j = 0; j < groupComponent.getStratifier().size(); j++) {
+                group.stratifiers.add(getStratifier(groupComponent.getStratifier().get(j), j));
+            }
             groups.add(group);
         }
         return groups;
     }
 
+    private Stratifier getStratifier(MeasureReport.MeasureReportGroupStratifierComponent stratifierComponent, int index) {
+        Stratifier stratifier = new Stratifier();
+        stratifier.name = stratifierComponent.hasId() ? stratifierComponent.getId()
+            : stratifierComponent.hasIdentifier() && stratifierComponent.getIdentifier().hasValue() ? stratifierComponent.getIdentifier().getValue() : String.valueOf(index);
+        for (MeasureReport.StratifierGroupComponent stratumComponent : stratifierComponent.getStratum()) {
+            Stratum stratum = new Stratum();
+            stratum.value = stratumComponent.getValue();
+            stratum.score = stratumComponent.getMeasureScore();
+            for (MeasureReport.StratifierGroupPopulationComponent population : stratumComponent.getPopulation()) {
+                stratum.populations.put(population.getCode().getCodingFirstRep().getCode(), population.getCount());
+            }
+            stratifier.strata.put(stratum.value, stratum);
+        }
+        return stratifier;
+    }
+
+    @Override
+    public List<String> getEvaluatedResources() {
+        List<String> evaluatedResources = new ArrayList<String>();
+        if (measureReport.getEvaluatedResources().getResource() instanceof Bundle) {
+            // The evaluated resources are usually a (contained) Bundle
+            for (Bundle.BundleEntryComponent entry : ((Bundle) measureReport.getEvaluatedResources().getResource()).getEntry()) {
+                if (entry.hasResource()) {
+                    evaluatedResources.add(entry.getResource().getIdElement().toUnqualifiedVersionless().getValue());
+                }
+            }
+        } else if (measureReport.getEvaluatedResources().hasReference()
+                && !measureReport.getEvaluatedResources().getReference().startsWith("#")) {
+            // A reference to a contained resource is local to the report, so it is not compared
+            evaluatedResources.add(measureReport.getEvaluatedResources().getReferenceElement().toUnqualifiedVersionless().getValue());
+        }
+        return evaluatedResources;
+    }
+
+    @Override
+    public List<String> getSupplementalData() {
+        IParser parser = FhirContext.forDstu3Cached().newJsonParser();
+        List<String> supplementalData = new ArrayList<String>();
+        for (Resource resource : measureReport.getContained()) {
+            if (resource == measureReport.getEvaluatedResources().getResource()) {
+                continue;
+            }
+            Resource normalized = resource.copy();
+            normalized.setIdElement(null);
+            normalized.setMeta(null);
+            supplementalData.add(parser.encodeResourceToString(normalized));
+        }
+        return supplementalData;
+    }
+
     @Override
     public BigDecimal getGroupScore(String groupId) {
         Objects.requireNonNull(groupId, "groupId can not be null.");
         BigDecimal score = null;
         List<MeasureReport.MeasureReportGroupComponent> groups = measureReport.getGroup();
         for (MeasureReport.MeasureReportGroupComponent group : groups) {
-            if (group.getId().equals(groupId)) {
+            if (groupId.equals(group.getId())) {
                 score = group.getMeasureScore();
                 break;
             }
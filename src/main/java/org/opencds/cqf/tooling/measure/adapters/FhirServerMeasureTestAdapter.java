@@ -9,7 +9,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import org.opencds.cqf.tooling.utilities.HttpClientUtils;
+import org.opencds.cqf.tooling.utilities.FhirServerClient;
 import org.opencds.cqf.tooling.utilities.LogUtils;
 
 public abstract class FhirServerMeasureTestAdapter extends MeasureTestAdapter {
@@ -43,7 +43,7 @@ public abstract class FhirServerMeasureTestAdapter extends MeasureTestAdapter {
         // IMeasureReportAdapter expectedAdapter = this.getExpectedMeasureReportAdapter();
         String path = fhirServer.getServerBase() + "/Measure/" + measureId + "/$evaluate-measure?patient=" + patientId + "&periodStart=" + periodStart + "&periodEnd=" + periodEnd;
         try {
-            String response = HttpClientUtils.get(path);
+            String response = FhirServerClient.getDefault().get(path, fhirContext);
             IMeasureReportAdapter measureReportAdapter = parseEvaluatedResponse(response);
             return measureReportAdapter;
         }
@@ -1,8 +1,11 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface IMeasureReportAdapter {
     String getReportType();
@@ -10,14 +13,60 @@ public interface IMeasureReportAdapter {
     String getMeasureId();
     Date getPeriodStart();
     Date getPeriodEnd();
+
+    /*
+    The start and end of the period as reported, with the precision and time zone offset they were reported with
+    (or null if not reported)
+     */
+    String getPeriodStartAsString();
+    String getPeriodEndAsString();
     BigDecimal getGroupScore(String groupId);
     List<Group> getGroups();
 
+    /*
+    References to the resources evaluated to produce the report, versionless and relative to the server, excluding
+    references to resources contained in the report
+     */
+    List<String> getEvaluatedResources();
+
+    /*
+    The supplemental data of the report (the contained resources it is reported in), each normalized to a string
+    independent of the ids assigned to the resources, so equal supplemental data compares as equal strings
+     */
+    List<String> getSupplementalData();
+
     public class Group {
         String name;
         BigDecimal score;
+        Map<String, Integer> populations = new LinkedHashMap<>();
+        List<Stratifier> stratifiers = new ArrayList<>();
 
+        // The id of the group, or its code (identifier in DSTU3) or its position in the report when it has no id
         public String getName() { return name; }
         public BigDecimal getScore() { return score; }
+        // Population counts by population code
+        public Map<String, Integer> getPopulations() { return populations; }
+        public List<Stratifier> getStratifiers() { return stratifiers; }
+    }
+
+    public class Stratifier {
+        String name;
+        Map<String, Stratum> strata = new LinkedHashMap<>();
+
+        // The id of the stratifier, or its code (identifier in DSTU3) or its position in the group when it has no id
+        public String getName() { return name; }
+        // Strata by stratum value
+        public Map<String, Stratum> getStrata() { return strata; }
+    }
+
+    public class Stratum {
+        String value;
+        BigDecimal score;
+        Map<String, Integer> populations = new LinkedHashMap<>();
+
+        public String getValue() { return value; }
+        public BigDecimal getScore() { return score; }
+        // Population counts by population code
+        public Map<String, Integer> getPopulations() { return populations; }
     }
 }
@@ -1,8 +1,10 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -14,6 +16,15 @@ import ca.uhn.fhir.util.BundleUtil;
 
 public abstract class MeasureTestAdapter {
 
+    /**
+     * Parts of a MeasureReport an evaluation may not produce
+     */
+    public enum ReportContent {
+        STRATIFIERS,
+        EVALUATED_RESOURCES,
+        SUPPLEMENTAL_DATA
+    }
+
     protected String testPath;
     protected FhirContext fhirContext;
     protected IBaseResource testBundle;
@@ -87,6 +98,14 @@ public abstract class MeasureTestAdapter {
         return this.expectedReportAdapter;
     }
 
+    /**
+     * @return the parts of the expected report the actual report can not be compared on, because the evaluation
+     * does not produce them
+     */
+    public Set<ReportContent> getUnsupportedReportContent() {
+        return EnumSet.noneOf(ReportContent.class);
+    }
+
     protected Date getPeriodStart() {
         Date periodStart = this.expectedReportAdapter.getPeriodStart();
         return periodStart;
@@ -97,6 +116,14 @@ public abstract class MeasureTestAdapter {
         return periodEnd;
     }
 
+    protected String getPeriodStartAsString() {
+        return this.expectedReportAdapter.getPeriodStartAsString();
+    }
+
+    protected String getPeriodEndAsString() {
+        return this.expectedReportAdapter.getPeriodEndAsString();
+    }
+
     protected String getMeasureId() {
         String measureId = this.expectedReportAdapter.getMeasureId();
         return measureId;
@@ -1,6 +1,12 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
+import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.MeasureReport;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -64,25 +70,101 @@ public class R4MeasureReportAdapter implements IMeasureReportAdapter {
         return null;
     }
 
+    @Override
+    public String getPeriodStartAsString() {
+        return measureReport.getPeriod().hasStart() ? measureReport.getPeriod().getStartElement().getValueAsString() : null;
+    }
+
+    @Override
+    public String getPeriodEndAsString() {
+        return measureReport.getPeriod().hasEnd() ? measureReport.getPeriod().getEndElement().getValueAsString() : null;
+    }
+
     @Override
     public List<Group> getGroups() {
         List<Group> groups = new ArrayList<Group>();
-        for (MeasureReport.MeasureReportGroupComponent groupComponent : measureReport.getGroup()) {
+        for (int i = 0; i < measureReport.getGroup().size(); i++) {
+            MeasureReport.MeasureReportGroupComponent groupComponent = measureReport.getGroup().get(i);
             Group group = new Group();
-            group.name = groupComponent.getId();
+            // Groups are usually reported without an id, so fall back to the code and then the position of the group
+            group.name = groupComponent.hasId() ? groupComponent.getId()
+                : groupComponent.hasCode() ? getText(groupComponent.getCode()) : String.valueOf(i);
             group.score = groupComponent.getMeasureScore().getValue();
+            for (MeasureReport.MeasureReportGroupPopulationComponent population : groupComponent.getPopulation()) {
+                group.populations.put(population.getCode().getCodingFirstRep().getCode(), population.getCount());
+            }
+            for (int j = 0; j < groupComponent.getStratifier().size(); j++) {
+                group.stratifiers.add(getStratifier(groupComponent.getStratifier().get(j), j));
+            }
             groups.add(group);
         }
         return groups;
     }
 
+    private Stratifier getStratifier(MeasureReport.MeasureReportGroupStratifierComponent stratifierComponent, int index) {
+        Stratifier stratifier = new Stratifier();
+        stratifier.name = stratifierComponent.hasId() ? stratifierComponent.getId()
+            : stratifierComponent.hasCode() ? getText(stratifierComponent.getCodeFirstRep()) : String.valueOf(index);
+        for (MeasureReport.StratifierGroupComponent stratumComponent : stratifierComponent.getStratum()) {
+            Stratum stratum = new Stratum();
+            if (stratumComponent.hasComponent()) {
+                List<String> components = new ArrayList<String>();
+                for (MeasureReport.StratifierGroupComponentComponent component : stratumComponent.getComponent()) {
+                    components.add(getText(component.getCode()) + "=" + getText(component.getValue()));
+                }
+                stratum.value = String.join(",", components);
+            } else {
+                stratum.value = getText(stratumComponent.getValue());
+            }
+            stratum.score = stratumComponent.getMeasureScore().getValue();
+            for (MeasureReport.StratifierGroupPopulationComponent population : stratumComponent.getPopulation()) {
+                stratum.populations.put(population.getCode().getCodingFirstRep().getCode(), population.getCount());
+            }
+            stratifier.strata.put(stratum.value, stratum);
+        }
+        return stratifier;
+    }
+
+    private static String getText(CodeableConcept concept) {
+        if (concept.hasText()) {
+            return concept.getText();
+        }
+        return concept.getCodingFirstRep().getCode();
+    }
+
+    @Override
+    public List<String> getEvaluatedResources() {
+        List<String> evaluatedResources = new ArrayList<String>();
+        for (Reference reference : measureReport.getEvaluatedResource()) {
+            // References to contained resources are local to each report, so they are not compared
+            if (!reference.hasReference() || reference.getReference().startsWith("#")) {
+                continue;
+            }
+            evaluatedResources.add(reference.getReferenceElement().toUnqualifiedVersionless().getValue());
+        }
+        return evaluatedResources;
+    }
+
+    @Override
+    public List<String> getSupplementalData() {
+        IParser parser = FhirContext.forR4Cached().newJsonParser();
+        List<String> supplementalData = new ArrayList<String>();
+        for (Resource resource : measureReport.getContained()) {
+            Resource normalized = resource.copy();
+            normalized.setIdElement(null);
+            normalized.setMeta(null);
+            supplementalData.add(parser.encodeResourceToString(normalized));
+        }
+        return supplementalData;
+    }
+
     @Override
     public BigDecimal getGroupScore(String groupId) {
         Objects.requireNonNull(groupId, "groupId can not be null.");
         BigDecimal score = null;
         List<MeasureReport.MeasureReportGroupComponent> groups = measureReport.getGroup();
         for (MeasureReport.MeasureReportGroupComponent group : groups) {
-            if (group.getId().equals(groupId)) {
+            if (groupId.equals(group.getId())) {
                 score = group.getMeasureScore().getValue();
                 break;
             }
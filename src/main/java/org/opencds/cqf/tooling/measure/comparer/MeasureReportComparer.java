@@ -1,15 +1,34 @@
 package org.opencds.cqf.tooling.measure.comparer;
 
+import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import org.hl7.fhir.Parameters;
 import org.hl7.fhir.ParametersParameter;
 import org.hl7.fhir.String;
 import org.opencds.cqf.tooling.measure.MeasureTestProcessor;
 import org.opencds.cqf.tooling.measure.adapters.IMeasureReportAdapter;
+import org.opencds.cqf.tooling.measure.adapters.MeasureTestAdapter.ReportContent;
 
 import ca.uhn.fhir.context.FhirContext;
 
+/**
+ * Compares an actual MeasureReport to the expected one: the report type, measure and patient, and for each group the
+ * score, the population counts and the strata of each stratifier. The evaluated resources and supplemental data are
+ * compared when both reports include them. Content the evaluation producing the actual report does not support (see
+ * MeasureTestAdapter.getUnsupportedReportContent) is not compared.
+ *
+ * Groups, populations, strata and resources are matched through hash maps, so the comparison is linear in the size
+ * of the reports. Groups and stratifiers without an id are matched by code, or else by position (see
+ * IMeasureReportAdapter.Group.getName). Each comparison is added to the results as a pass/fail parameter, and each mismatch to the diff.
+ */
 public class MeasureReportComparer {
 
     // private FhirContext fhirContext;
@@ -19,39 +38,74 @@ public class MeasureReportComparer {
     }
 
     public Parameters compare(IMeasureReportAdapter actual, IMeasureReportAdapter expected) {
+        return compare(actual, expected, new MeasureReportDiff());
+    }
+
+    public Parameters compare(IMeasureReportAdapter actual, IMeasureReportAdapter expected, MeasureReportDiff diff) {
+        return compare(actual, expected, diff, EnumSet.noneOf(ReportContent.class));
+    }
+
+    /**
+     * @param unsupported the content the actual report can not include, which is not compared
+     */
+    public Parameters compare(IMeasureReportAdapter actual, IMeasureReportAdapter expected, MeasureReportDiff diff,
+            Set<ReportContent> unsupported) {
         Parameters results = new Parameters();
         boolean overallPassFail = true;
 
         ParametersParameter parameter = new ParametersParameter();
 
-        overallPassFail = overallPassFail & compareField("ReportType", actual.getReportType(), expected.getReportType(), results);
-        overallPassFail = overallPassFail & compareField("MeasureId", actual.getMeasureId(), expected.getMeasureId(), results);
-        overallPassFail = overallPassFail & compareField("PatientId", actual.getPatientId(), expected.getPatientId(), results);
+        overallPassFail = overallPassFail & compareField("ReportType", actual.getReportType(), expected.getReportType(), results, diff);
+        overallPassFail = overallPassFail & compareField("MeasureId", actual.getMeasureId(), expected.getMeasureId(), results, diff);
+        overallPassFail = overallPassFail & compareField("PatientId", actual.getPatientId(), expected.getPatientId(), results, diff);
 
         //NOTE: Set of groups must be equal. Expected must be a subset of Actual, but not a proper subset.
-        if (actual.getGroups().size() != expected.getGroups().size()) {
+        List<IMeasureReportAdapter.Group> actualGroups = actual.getGroups();
+        List<IMeasureReportAdapter.Group> expectedGroups = expected.getGroups();
+        if (actualGroups.size() != expectedGroups.size()) {
             addResultParameter("GroupCount", results, false);
+            diff.add("GroupCount", expectedGroups.size(), actualGroups.size());
             overallPassFail = false;
         }
 
-        // Compare the measurescore of each group.
-        List<IMeasureReportAdapter.Group> actualGroups = actual.getGroups();
+        Map<java.lang.String, IMeasureReportAdapter.Group> actualGroupsByName = new HashMap<>();
+        for (IMeasureReportAdapter.Group actualGroup : actualGroups) {
+            actualGroupsByName.putIfAbsent(actualGroup.getName(), actualGroup);
+        }
 
-        for (IMeasureReportAdapter.Group expectedGroup : expected.getGroups()) {
-            boolean foundMatch = false;
-            for (IMeasureReportAdapter.Group actualGroup : actualGroups) {
-                if (actualGroup.getName().equals(expectedGroup.getName())) {
-                    if (actualGroup.getScore().compareTo(expectedGroup.getScore()) == 0) {
-                        foundMatch = true;
-                        break;
-                    }
-                }
+        for (IMeasureReportAdapter.Group expectedGroup : expectedGroups) {
+            java.lang.String path = "Group[" + expectedGroup.getName() + "]";
+            IMeasureReportAdapter.Group actualGroup = actualGroupsByName.get(expectedGroup.getName());
+            if (actualGroup == null) {
+                addResultParameter(path + ".score", results, false);
+                diff.add(path, expectedGroup.getName(), null);
+                overallPassFail = false;
+                continue;
             }
-            addResultParameter("Group[" + expectedGroup.getName() + "].score", results, foundMatch);
-            overallPassFail = overallPassFail & foundMatch;
+
+            overallPassFail = overallPassFail & compareScore(path + ".score", actualGroup.getScore(), expectedGroup.getScore(), results, diff);
+            overallPassFail = overallPassFail & comparePopulations(path, actualGroup.getPopulations(), expectedGroup.getPopulations(), results, diff);
+            if (!unsupported.contains(ReportContent.STRATIFIERS)) {
+                overallPassFail = overallPassFail & compareStratifiers(path, actualGroup, expectedGroup, results, diff);
+            }
+        }
+
+        // Not every evaluation reports the evaluated resources and supplemental data (e.g. local evaluation does not)
+        List<java.lang.String> actualEvaluatedResources = actual.getEvaluatedResources();
+        List<java.lang.String> expectedEvaluatedResources = expected.getEvaluatedResources();
+        if (!unsupported.contains(ReportContent.EVALUATED_RESOURCES)
+                && !actualEvaluatedResources.isEmpty() && !expectedEvaluatedResources.isEmpty()) {
+            overallPassFail = overallPassFail & compareCollection("EvaluatedResources", actualEvaluatedResources,
+                expectedEvaluatedResources, results, diff);
         }
 
-        //TODO: Compare group population scores
+        List<java.lang.String> actualSupplementalData = actual.getSupplementalData();
+        List<java.lang.String> expectedSupplementalData = expected.getSupplementalData();
+        if (!unsupported.contains(ReportContent.SUPPLEMENTAL_DATA)
+                && !actualSupplementalData.isEmpty() && !expectedSupplementalData.isEmpty()) {
+            overallPassFail = overallPassFail & compareCollection("SupplementalData", actualSupplementalData,
+                expectedSupplementalData, results, diff);
+        }
 
         parameter.setName(new String().withValue("Measure '" + expected.getMeasureId() + "' " + MeasureTestProcessor.TestPassedKey));
         parameter.setValueBoolean(new org.hl7.fhir.Boolean().withValue(overallPassFail));
@@ -60,9 +114,113 @@ public class MeasureReportComparer {
         return results;
     }
 
-    private boolean compareField(java.lang.String fieldName, java.lang.String actual, java.lang.String expected, Parameters results) {
-        boolean matches = actual.equals(expected);
+    private boolean compareField(java.lang.String fieldName, java.lang.String actual, java.lang.String expected, Parameters results,
+            MeasureReportDiff diff) {
+        boolean matches = Objects.equals(actual, expected);
         addResultParameter(fieldName, results, matches);
+        if (!matches) {
+            diff.add(fieldName, expected, actual);
+        }
+
+        return matches;
+    }
+
+    private boolean compareScore(java.lang.String path, BigDecimal actual, BigDecimal expected, Parameters results, MeasureReportDiff diff) {
+        boolean matches = actual == null || expected == null ? actual == expected : actual.compareTo(expected) == 0;
+        addResultParameter(path, results, matches);
+        if (!matches) {
+            diff.add(path, expected, actual);
+        }
+
+        return matches;
+    }
+
+    /*
+    Compares the counts of every population in either report, when the expected report includes populations
+     */
+    private boolean comparePopulations(java.lang.String path, Map<java.lang.String, Integer> actual, Map<java.lang.String, Integer> expected,
+            Parameters results, MeasureReportDiff diff) {
+        if (expected.isEmpty()) {
+            return true;
+        }
+
+        boolean passed = true;
+        Set<java.lang.String> codes = new LinkedHashSet<>(expected.keySet());
+        codes.addAll(actual.keySet());
+        for (java.lang.String code : codes) {
+            java.lang.String populationPath = path + ".population[" + code + "]";
+            boolean matches = Objects.equals(actual.get(code), expected.get(code));
+            addResultParameter(populationPath, results, matches);
+            if (!matches) {
+                diff.add(populationPath + ".count", expected.get(code), actual.get(code));
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private boolean compareStratifiers(java.lang.String path, IMeasureReportAdapter.Group actual, IMeasureReportAdapter.Group expected,
+            Parameters results, MeasureReportDiff diff) {
+        Map<java.lang.String, IMeasureReportAdapter.Stratifier> actualStratifiersByName = new HashMap<>();
+        for (IMeasureReportAdapter.Stratifier actualStratifier : actual.getStratifiers()) {
+            actualStratifiersByName.putIfAbsent(actualStratifier.getName(), actualStratifier);
+        }
+
+        boolean passed = true;
+        for (IMeasureReportAdapter.Stratifier expectedStratifier : expected.getStratifiers()) {
+            java.lang.String stratifierPath = path + ".stratifier[" + expectedStratifier.getName() + "]";
+            IMeasureReportAdapter.Stratifier actualStratifier = actualStratifiersByName.get(expectedStratifier.getName());
+            if (actualStratifier == null) {
+                addResultParameter(stratifierPath, results, false);
+                diff.add(stratifierPath, expectedStratifier.getName(), null);
+                passed = false;
+                continue;
+            }
+
+            Map<java.lang.String, IMeasureReportAdapter.Stratum> actualStrata = actualStratifier.getStrata();
+            Map<java.lang.String, IMeasureReportAdapter.Stratum> expectedStrata = expectedStratifier.getStrata();
+            Set<java.lang.String> values = new LinkedHashSet<>(expectedStrata.keySet());
+            values.addAll(actualStrata.keySet());
+            for (java.lang.String value : values) {
+                java.lang.String stratumPath = stratifierPath + ".stratum[" + value + "]";
+                IMeasureReportAdapter.Stratum actualStratum = actualStrata.get(value);
+                IMeasureReportAdapter.Stratum expectedStratum = expectedStrata.get(value);
+                if (actualStratum == null || expectedStratum == null) {
+                    addResultParameter(stratumPath, results, false);
+                    diff.add(stratumPath, expectedStratum == null ? null : value, actualStratum == null ? null : value);
+                    passed = false;
+                    continue;
+                }
+
+                passed = passed & compareScore(stratumPath + ".score", actualStratum.getScore(), expectedStratum.getScore(), results, diff);
+                passed = passed & comparePopulations(stratumPath, actualStratum.getPopulations(), expectedStratum.getPopulations(), results, diff);
+            }
+        }
+        return passed;
+    }
+
+    /*
+    Compares the collections as multisets, reporting each value missing from, or unexpected in, the actual report
+     */
+    private boolean compareCollection(java.lang.String path, List<java.lang.String> actual, List<java.lang.String> expected,
+            Parameters results, MeasureReportDiff diff) {
+        Map<java.lang.String, Integer> counts = new LinkedHashMap<>();
+        for (java.lang.String value : expected) {
+            counts.merge(value, 1, Integer::sum);
+        }
+        for (java.lang.String value : actual) {
+            counts.merge(value, -1, Integer::sum);
+        }
+
+        boolean matches = true;
+        for (Map.Entry<java.lang.String, Integer> count : counts.entrySet()) {
+            for (int i = 0; i < Math.abs(count.getValue()); i++) {
+                // A positive count is expected but missing, a negative one is unexpected
+                diff.add(path, count.getValue() > 0 ? count.getKey() : null, count.getValue() < 0 ? count.getKey() : null);
+                matches = false;
+            }
+        }
+        addResultParameter(path, results, matches);
 
         return matches;
     }
@@ -73,4 +231,4 @@ public class MeasureReportComparer {
         param.setValueBoolean(new org.hl7.fhir.Boolean().withValue(passed));
         results.getParameter().add(param);
     }
-}
\ No newline at end of file
+}
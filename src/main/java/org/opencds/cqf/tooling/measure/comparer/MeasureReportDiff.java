@@ -0,0 +1,59 @@
+package org.opencds.cqf.tooling.measure.comparer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences found between an actual and an expected MeasureReport, each identified by the path of the
+ * compared element (e.g. Group[group-1].population[numerator].count).
+ */
+public class MeasureReportDiff {
+
+    public static class Difference {
+        private final String path;
+        private final String expected;
+        private final String actual;
+
+        public Difference(String path, Object expected, Object actual) {
+            this.path = path;
+            this.expected = expected == null ? null : expected.toString();
+            this.actual = actual == null ? null : actual.toString();
+        }
+
+        public String getPath() { return path; }
+        public String getExpected() { return expected; }
+        public String getActual() { return actual; }
+
+        @Override
+        public String toString() {
+            return path + ": expected " + (expected == null ? "<none>" : expected) + ", actual " + (actual == null ? "<none>" : actual);
+        }
+    }
+
+    private final List<Difference> differences = new ArrayList<>();
+
+    public void add(String path, Object expected, Object actual) {
+        differences.add(new Difference(path, expected, actual));
+    }
+
+    public List<Difference> getDifferences() {
+        return Collections.unmodifiableList(differences);
+    }
+
+    public boolean isEmpty() {
+        return differences.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Difference difference : differences) {
+            if (builder.length() > 0) {
+                builder.append(System.lineSeparator());
+            }
+            builder.append(difference);
+        }
+        return builder.toString();
+    }
+}
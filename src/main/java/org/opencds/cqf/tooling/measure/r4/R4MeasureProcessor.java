@@ -61,7 +61,19 @@ public class R4MeasureProcessor extends MeasureProcessor {
         }
 
         List<String> refreshedMeasureNames = new ArrayList<String>();
-        List<org.hl7.fhir.r5.model.Measure> refreshedMeasures = super.refreshGeneratedContent(measures);
+
+        // Measures refreshed in place whose inputs have not changed since the last incremental refresh are left as they are
+        List<org.hl7.fhir.r5.model.Measure> measuresToRefresh = new ArrayList<>();
+        for (org.hl7.fhir.r5.model.Measure measure : measures) {
+            String filePath = fileMap.get(measure.getId());
+            if (measureOutputDirectory == null && filePath != null && isUpToDate(filePath, measure, encoding)) {
+                refreshedMeasureNames.add(getRefreshedMeasureName(measure));
+            } else {
+                measuresToRefresh.add(measure);
+            }
+        }
+
+        List<org.hl7.fhir.r5.model.Measure> refreshedMeasures = super.refreshGeneratedContent(measuresToRefresh);
         VersionConvertor_40_50 versionConvertor_40_50 = new VersionConvertor_40_50(new BaseAdvisor_40_50());
         for (org.hl7.fhir.r5.model.Measure refreshedMeasure : refreshedMeasures) {
             org.hl7.fhir.r4.model.Measure measure = (org.hl7.fhir.r4.model.Measure) versionConvertor_40_50.convertResource(refreshedMeasure);
@@ -92,19 +104,23 @@ public class R4MeasureProcessor extends MeasureProcessor {
                     }
                 }
                 IOUtils.writeResource(measure, outputPath, fileEncoding, fhirContext, this.versioned);
-                String refreshedMeasureName;
-                if (this.versioned && refreshedMeasure.getVersion() != null) {
-                    refreshedMeasureName = refreshedMeasure.getName() + "-" + refreshedMeasure.getVersion();
-                } else {
-                    refreshedMeasureName = refreshedMeasure.getName();
+                if (fileMap.containsKey(refreshedMeasure.getId()) && outputPath.equals(filePath)) {
+                    recordRefresh(filePath, refreshedMeasure, encoding);
                 }
-                refreshedMeasureNames.add(refreshedMeasureName);
+                refreshedMeasureNames.add(getRefreshedMeasureName(refreshedMeasure));
             }
         }
 
         return refreshedMeasureNames;
     }
 
+    private String getRefreshedMeasureName(org.hl7.fhir.r5.model.Measure measure) {
+        if (this.versioned && measure.getVersion() != null) {
+            return measure.getName() + "-" + measure.getVersion();
+        }
+        return measure.getName();
+    }
+
     private void loadMeasure(Map<String, String> fileMap, List<org.hl7.fhir.r5.model.Measure> measures, File measureFile) {
         try {
             org.hl7.fhir.r4.model.Resource resource = FormatUtilities.loadFile(measureFile.getAbsolutePath());
@@ -2,7 +2,10 @@ package org.opencds.cqf.tooling.modelinfo;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -10,8 +13,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.google.common.io.Files;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
@@ -29,14 +39,27 @@ import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r4.model.SearchParameter;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.utilities.npm.NpmPackage;
 import org.opencds.cqf.tooling.utilities.CanonicalUtils;
+import org.opencds.cqf.tooling.utilities.ThreadPools;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 
 public class Atlas {
 
+    // The number of files parsed at a time
+    private final int maxThreads;
+
     public Atlas() {
+        this(ThreadPools.DEFAULT_MAX_THREADS);
+    }
+
+    public Atlas(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be at least 1");
+        }
+        this.maxThreads = maxThreads;
         resources = new HashMap<>();
         capabilityStatements = new HashMap<>();
         compartmentDefinitions = new HashMap<>();
@@ -121,6 +144,61 @@ public class Atlas {
         }
     }
 
+    /*
+    Loads the conformance resources of the packages from their .index.json, without unpacking or parsing the packages.
+    StructureDefinitions are parsed when they are first used (see LazyStructureDefinitionMap). The compartment
+    definitions and search parameters used to build the context info are parsed here, and the other resource types
+    (e.g. value sets and code systems) are not loaded.
+     */
+    public void loadPackages(List<NpmPackage> packages) {
+        LazyStructureDefinitionMap packageStructureDefinitions = new LazyStructureDefinitionMap();
+        packageStructureDefinitions.putAll(structureDefinitions);
+        structureDefinitions = packageStructureDefinitions;
+
+        IParser parser = FhirContext.forR4Cached().newJsonParser();
+        for (NpmPackage p : packages) {
+            System.out.println("Reading " + p.name() + "#" + p.version() + " Conformance Resources");
+            try {
+                for (JsonElement e : readIndex(p)) {
+                    JsonObject entry = e.getAsJsonObject();
+                    if (!entry.has("resourceType") || !entry.has("filename") || !entry.has("url")) {
+                        continue;
+                    }
+
+                    String fileName = entry.get("filename").getAsString();
+                    switch (entry.get("resourceType").getAsString()) {
+                        case "StructureDefinition":
+                            String id = CanonicalUtils.getTail(entry.get("url").getAsString());
+                            if (!packageStructureDefinitions.register(id, p, fileName)) {
+                                System.out.println("Duplicate StructureDefinition with id " + id);
+                            }
+                            break;
+                        case "CompartmentDefinition":
+                        case "SearchParameter":
+                            try (InputStream is = p.loadResource(fileName)) {
+                                indexResource(parser.parseResource(is));
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException(String.format("Could not read package %s#%s", p.name(), p.version()), e);
+            }
+        }
+    }
+
+    private JsonArray readIndex(NpmPackage p) throws IOException {
+        try (InputStream is = p.load("package", ".index.json")) {
+            if (is == null) {
+                throw new IOException("The package has no .index.json");
+            }
+            JsonObject index = JsonParser.parseReader(new InputStreamReader(is, StandardCharsets.UTF_8)).getAsJsonObject();
+            return index.has("files") ? index.getAsJsonArray("files") : new JsonArray();
+        }
+    }
+
     private String urlToId(String url) {
         int index = url.lastIndexOf("/StructureDefinition/");
         if (index > -1) {
@@ -342,18 +420,26 @@ public class Atlas {
         }
     }
 
+    /*
+    Parses the files on a bounded pool of threads, then indexes the resources in the order of the files, so which of
+    any duplicates is kept (and so the content of the model info) does not depend on the order the files are parsed in
+     */
     private void readConformanceResourcesFromFolder(String path) {
         Collection<File> files = getFiles(path);
 
-        IParser parser = FhirContext.forR4Cached().newJsonParser();
-
-        // List<StructureDefinition> objects = new ArrayList<StructureDefinition>();
+        ExecutorService executor = ThreadPools.newDaemonPool("atlas-loader", Math.min(maxThreads, Math.max(1, files.size())));
 
-        for (File f : files) {
+        try {
+            List<Future<IBaseResource>> futures = new ArrayList<>();
+            for (File f : files) {
+                futures.add(executor.submit(() -> readResource(f)));
+            }
 
-            try {
-                String content = Files.asCharSource(f, Charset.forName("UTF-8")).read();
-                IBaseResource resource = parser.parseResource(content);
+            for (Future<IBaseResource> future : futures) {
+                IBaseResource resource = future.get();
+                if (resource == null) {
+                    continue;
+                }
 
                 if (resource instanceof Bundle) {
                     for (IBaseResource R : unrollBundles((Bundle)resource)) {
@@ -363,9 +449,29 @@ public class Atlas {
                 else {
                     indexResource(resource);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Reading conformance resources was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(String.valueOf(e.getCause()), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private IBaseResource readResource(File f) {
+        // Parsers are not thread-safe, so each file gets its own
+        IParser parser = FhirContext.forR4Cached().newJsonParser();
+        try {
+            String content = Files.asCharSource(f, Charset.forName("UTF-8")).read();
+            return parser.parseResource(content);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
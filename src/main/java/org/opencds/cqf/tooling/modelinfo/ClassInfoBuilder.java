@@ -3,8 +3,10 @@ package org.opencds.cqf.tooling.modelinfo;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -1289,9 +1291,13 @@ public abstract class ClassInfoBuilder {
                     this.typeInfos.put(qualifiedTypeName, elementType);
                 }
 
+                Set<String> elementNames = new HashSet<>();
+                for (ClassInfoElement e : elementType.getElement()) {
+                    elementNames.add(e.getName());
+                }
                 for (ClassInfoElement slice : slices.getSlices()) {
                     System.out.println(String.format("Adding slice %s to derived type %s", slice.getName(), qualifiedTypeName));
-                    if (elementType.getElement().stream().noneMatch(x -> x.getName().equals(slice.getName()))) {
+                    if (elementNames.add(slice.getName())) {
                         elementType.getElement().add(slice);
                     }
                     else {
@@ -0,0 +1,117 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * StructureDefinitions by id, where those registered from an NPM package are only parsed when they are first used.
+ *
+ * Lookups by id (get, containsKey) parse at most the one definition; iterating the values parses every definition.
+ */
+public class LazyStructureDefinitionMap extends AbstractMap<String, StructureDefinition> {
+
+    private static class PackageFile {
+        private final NpmPackage npmPackage;
+        private final String fileName;
+
+        private PackageFile(NpmPackage npmPackage, String fileName) {
+            this.npmPackage = npmPackage;
+            this.fileName = fileName;
+        }
+    }
+
+    // Every id, in the order the definitions were added, mapped to the file of the definition if it is not yet parsed
+    private final Map<String, PackageFile> ids = new LinkedHashMap<>();
+    private final Map<String, StructureDefinition> structureDefinitions = new HashMap<>();
+
+    /**
+     * Registers the definition in the given file of the package, to be parsed when it is first used
+     * @return false if there is already a definition with the id
+     */
+    public boolean register(String id, NpmPackage npmPackage, String fileName) {
+        if (ids.containsKey(id)) {
+            return false;
+        }
+        ids.put(id, new PackageFile(npmPackage, fileName));
+        return true;
+    }
+
+    @Override
+    public StructureDefinition put(String id, StructureDefinition structureDefinition) {
+        ids.put(id, null);
+        return structureDefinitions.put(id, structureDefinition);
+    }
+
+    @Override
+    public StructureDefinition get(Object id) {
+        StructureDefinition structureDefinition = structureDefinitions.get(id);
+        if (structureDefinition == null) {
+            PackageFile file = ids.get(id);
+            if (file != null) {
+                structureDefinition = load(file);
+                ids.put((String)id, null);
+                structureDefinitions.put((String)id, structureDefinition);
+            }
+        }
+        return structureDefinition;
+    }
+
+    @Override
+    public boolean containsKey(Object id) {
+        return ids.containsKey(id);
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    private StructureDefinition load(PackageFile file) {
+        System.out.println(String.format("Reading %s from %s#%s", file.fileName, file.npmPackage.name(), file.npmPackage.version()));
+        try (InputStream is = file.npmPackage.loadResource(file.fileName)) {
+            return FhirContext.forR4Cached().newJsonParser().parseResource(StructureDefinition.class, is);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Could not read %s from %s#%s",
+                    file.fileName, file.npmPackage.name(), file.npmPackage.version()), e);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, StructureDefinition>> entrySet() {
+        return new AbstractSet<Entry<String, StructureDefinition>>() {
+            @Override
+            public Iterator<Entry<String, StructureDefinition>> iterator() {
+                Iterator<String> idIterator = ids.keySet().iterator();
+                return new Iterator<Entry<String, StructureDefinition>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return idIterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, StructureDefinition> next() {
+                        String id = idIterator.next();
+                        return new SimpleImmutableEntry<>(id, get(id));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ids.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+
+import org.hl7.elm_modelinfo.r1.ClassInfo;
+import org.hl7.elm_modelinfo.r1.ConversionInfo;
+import org.hl7.elm_modelinfo.r1.ModelInfo;
+import org.hl7.elm_modelinfo.r1.TypeInfo;
+
+/**
+ * Reads ModelInfo XML with a JAXBContext that is created once and shared, rather than once per document as
+ * JAXB.unmarshal does. JAXBContext is thread-safe; an Unmarshaller is created for each read.
+ */
+public class ModelInfoReader {
+
+    private ModelInfoReader() {
+    }
+
+    private static class ContextHolder {
+        private static final JAXBContext CONTEXT = createContext();
+
+        private static JAXBContext createContext() {
+            try {
+                return JAXBContext.newInstance(ModelInfo.class, TypeInfo.class, ClassInfo.class, ConversionInfo.class);
+            } catch (JAXBException e) {
+                throw new RuntimeException("Error creating JAXBContext - " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return The shared JAXBContext for the ModelInfo types, for marshalling as well as reading
+     */
+    public static JAXBContext getContext() {
+        return ContextHolder.CONTEXT;
+    }
+
+    public static ModelInfo read(InputStream is) {
+        try {
+            return getContext().createUnmarshaller().unmarshal(new StreamSource(is), ModelInfo.class).getValue();
+        } catch (JAXBException e) {
+            throw new RuntimeException("Error reading ModelInfo - " + e.getMessage(), e);
+        }
+    }
+}
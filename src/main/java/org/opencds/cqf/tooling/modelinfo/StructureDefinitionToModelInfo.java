@@ -5,6 +5,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Map;
 
 // import javax.xml.bind.JAXBContext;
@@ -12,8 +13,6 @@ import java.util.Map;
 // import javax.xml.bind.Marshaller;
 import javax.xml.namespace.QName;
 
-import org.hl7.elm_modelinfo.r1.ClassInfo;
-import org.hl7.elm_modelinfo.r1.ConversionInfo;
 import org.hl7.elm_modelinfo.r1.ModelInfo;
 import org.hl7.elm_modelinfo.r1.TypeInfo;
 import org.opencds.cqf.tooling.Operation;
@@ -25,6 +24,8 @@ import org.opencds.cqf.tooling.modelinfo.quick.QuickClassInfoBuilder;
 import org.opencds.cqf.tooling.modelinfo.quick.QuickModelInfoBuilder;
 import org.opencds.cqf.tooling.modelinfo.uscore.USCoreClassInfoBuilder;
 import org.opencds.cqf.tooling.modelinfo.uscore.USCoreModelInfoBuilder;
+import org.opencds.cqf.tooling.npm.NpmPackageManager;
+import org.opencds.cqf.tooling.utilities.ThreadPools;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -34,10 +35,12 @@ public class StructureDefinitionToModelInfo extends Operation {
 
     private String inputPath;
     private String resourcePaths;
+    private String packages;
     private String modelName;
     private String modelVersion;
     private boolean useCQLPrimitives = false;
     private boolean includeMetadata = true;
+    private int maxThreads = ThreadPools.DEFAULT_MAX_THREADS;
 
     /*
     // NOTE: This documentation is present in the Main.java class for the tooling as well, keep these in sync
@@ -46,11 +49,13 @@ public class StructureDefinitionToModelInfo extends Operation {
           [-GenerateMIs]
           [-inputPath | -ip]
           [-resourcePaths | -rp]
+          (-packages | -pk)
           [-modelName | -mn]
           [-modelVersion | -mv]
           (-useCqlPrimitives | ucp)
           (-includeMetadata | -im)
           (-outputpath | -op)
+          (-maxthreads | -mt)
         "
 
         Examples:
@@ -67,11 +72,16 @@ public class StructureDefinitionToModelInfo extends Operation {
             The directories should contain the unzipped contents of the definitions.json.zip or definitions.xml.zip files
                 (i.e. all conformance resources published as part of the specification or ig)
 
+        packages: Semi-colon delimited list of NPM packages (as id#version) to load the definitions from, instead of (or as
+            well as) resourcePaths. The packages are loaded from (or downloaded to) the local package cache, and only
+            the definitions used are parsed, e.g. -packages="hl7.fhir.r4.core#4.0.1;hl7.fhir.us.core#3.1.0"
+
         modelName: The name of the model being generated
         modelVersion: The version of the model being generated
         useCqlPrimitives: Determines whether the generated structures should use Cql primitives for "primitive types"
         includeMetadata: Determines whether to include additional (non-structural) information such as definitions, comments, bindings, and constraints
         outputPath: Specifies the output directory for the resulting ModelInfo
+        maxThreads: The number of definition files read at a time (defaults to the number of processors)
 
         Arguments for producing FHIR Model Info
             -resourcePaths="4.0.1"
@@ -117,19 +127,29 @@ public class StructureDefinitionToModelInfo extends Operation {
                 case "inputpath": case "ip": inputPath = value; break; // -inputpath (-ip)
                 case "outputpath": case "op": setOutputPath(value); break; // -outputpath (-op)
                 case "resourcepaths": case "rp": resourcePaths = value; break; // -resourcepaths (-rp)
+                case "packages": case "pk": packages = value; break; // -packages (-pk)
                 // TODO : Can we autodetect this from the structure defintions?
                 // Yes, would need to be an extension definition on the ImplementationGuide...
                 case "modelname": case "mn": modelName = value; break; // -modelname (-mn)
                 case "modelversion": case "mv": modelVersion = value; break; // -modelversion (-mv)
                 case "usecqlprimitives": case "ucp": useCQLPrimitives = value.toLowerCase().equals("true") ? true : false; break;
                 case "includemetadata": case "im": includeMetadata = value.toLowerCase().equals("true") ? true : false; break;
+                case "maxthreads": case "mt": maxThreads = Integer.valueOf(value); break; // -maxthreads (-mt)
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
 
-        // TODO: Need to load from NPMPackages, not directories...
-        Atlas atlas = new Atlas();
-        atlas.loadPaths(inputPath, resourcePaths);
+        if (resourcePaths == null && packages == null) {
+            throw new IllegalArgumentException("Either resourcePaths or packages is required");
+        }
+
+        Atlas atlas = new Atlas(maxThreads);
+        if (resourcePaths != null) {
+            atlas.loadPaths(inputPath, resourcePaths);
+        }
+        if (packages != null) {
+            atlas.loadPackages(NpmPackageManager.loadPackages(Arrays.asList(packages.split(";"))));
+        }
 
         File outputPath = new File(getOutputPath());
         if (!outputPath.exists()) {
@@ -195,8 +215,7 @@ public class StructureDefinitionToModelInfo extends Operation {
         }
 
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(ModelInfo.class, TypeInfo.class, ClassInfo.class,
-                    ConversionInfo.class);
+            JAXBContext jaxbContext = ModelInfoReader.getContext();
 
             JAXBElement<ModelInfo> jbe = new JAXBElement<ModelInfo>(
                     new QName("urn:hl7-org:elm-modelinfo:r1", "modelInfo"), ModelInfo.class, null, mi);
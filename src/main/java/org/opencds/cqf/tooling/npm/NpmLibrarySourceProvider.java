@@ -17,13 +17,20 @@ import org.hl7.fhir.utilities.npm.NpmPackage;
 public class NpmLibrarySourceProvider implements LibrarySourceProvider {
 
     public NpmLibrarySourceProvider(List<NpmPackage> packages, ILibraryReader reader, IWorkerContext.ILoggingService logger) {
+        this(packages, new NpmPackageIndex(packages, reader), logger);
+    }
+
+    /**
+     * @param index An index of the packages, which may be shared with other providers over the same packages
+     */
+    public NpmLibrarySourceProvider(List<NpmPackage> packages, NpmPackageIndex index, IWorkerContext.ILoggingService logger) {
         this.packages = packages;
-        this.reader = reader;
+        this.index = index;
         this.logger = logger;
     }
 
     private List<NpmPackage> packages;
-    private ILibraryReader reader;
+    private NpmPackageIndex index;
     private IWorkerContext.ILoggingService logger;
 
     @Override
@@ -43,9 +50,8 @@ public class NpmLibrarySourceProvider implements LibrarySourceProvider {
                     libraryIdentifier.setSystem(p.canonical());
                 }
 
-                InputStream s = p.loadByCanonicalVersion(libraryIdentifier.getSystem()+"/Library/"+libraryIdentifier.getId(), libraryIdentifier.getVersion());
-                if (s != null) {
-                    Library l = reader.readLibrary(s);
+                Library l = index.getLibrary(p, libraryIdentifier.getSystem()+"/Library/"+libraryIdentifier.getId(), libraryIdentifier.getVersion());
+                if (l != null) {
                     for (org.hl7.fhir.r5.model.Attachment a : l.getContent()) {
                         if (a.getContentType() != null && a.getContentType().equals("text/cql")) {
                             if (identifier.getSystem() == null) {
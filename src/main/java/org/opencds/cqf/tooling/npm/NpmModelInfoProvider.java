@@ -1,32 +1,35 @@
 package org.opencds.cqf.tooling.npm;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
 
 import org.cqframework.cql.cql2elm.ModelInfoProvider;
 import org.hl7.elm.r1.VersionedIdentifier;
 import org.hl7.elm_modelinfo.r1.ModelInfo;
 import org.hl7.fhir.r5.context.IWorkerContext;
-import org.hl7.fhir.r5.model.Library;
 import org.hl7.fhir.utilities.npm.NpmPackage;
 
-import javax.xml.bind.JAXB;
-
 /**
  * Provides a model info provider that can resolve CQL model info from an Npm package
  */
 public class NpmModelInfoProvider implements ModelInfoProvider {
 
     public NpmModelInfoProvider(List<NpmPackage> packages, ILibraryReader reader, IWorkerContext.ILoggingService logger) {
+        this(packages, new NpmPackageIndex(packages, reader), logger);
+    }
+
+    /**
+     * @param index An index of the packages, which may be shared with other providers over the same packages (the
+     *              model info read through it is cached in the index, so each is unmarshalled once for all of them)
+     */
+    public NpmModelInfoProvider(List<NpmPackage> packages, NpmPackageIndex index, IWorkerContext.ILoggingService logger) {
         this.packages = packages;
-        this.reader = reader;
+        this.index = index;
         this.logger = logger;
     }
 
     private List<NpmPackage> packages;
-    private ILibraryReader reader;
+    private NpmPackageIndex index;
     private IWorkerContext.ILoggingService logger;
 
     public ModelInfo load(VersionedIdentifier modelIdentifier) {
@@ -44,18 +47,13 @@ public class NpmModelInfoProvider implements ModelInfoProvider {
                     identifier.setSystem(p.canonical());
                 }
 
-                InputStream s = p.loadByCanonicalVersion(identifier.getSystem()+"/Library/"+identifier.getId()+"-ModelInfo", identifier.getVersion());
-                if (s != null) {
-                    Library l = reader.readLibrary(s);
-                    for (org.hl7.fhir.r5.model.Attachment a : l.getContent()) {
-                        if (a.getContentType() != null && a.getContentType().equals("application/xml")) {
-                            if (modelIdentifier.getSystem() == null) {
-                                modelIdentifier.setSystem(identifier.getSystem());
-                            }
-                            InputStream is = new ByteArrayInputStream(a.getData());
-                            return JAXB.unmarshal(is, ModelInfo.class);
-                        }
+                String canonical = identifier.getSystem()+"/Library/"+identifier.getId()+"-ModelInfo";
+                ModelInfo modelInfo = index.getModelInfo(p, canonical, identifier.getVersion());
+                if (modelInfo != null) {
+                    if (modelIdentifier.getSystem() == null) {
+                        modelIdentifier.setSystem(identifier.getSystem());
                     }
+                    return modelInfo;
                 }
             } catch (IOException e) {
                 logger.logDebugMessage(IWorkerContext.ILoggingService.LogCategory.PROGRESS, String.format("Exceptions occurred attempting to load npm library for model %s", modelIdentifier.toString()));
@@ -0,0 +1,206 @@
+package org.opencds.cqf.tooling.npm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.hl7.elm_modelinfo.r1.ModelInfo;
+import org.hl7.fhir.r5.model.Attachment;
+import org.hl7.fhir.r5.model.Library;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.opencds.cqf.tooling.modelinfo.ModelInfoReader;
+
+/**
+ * An index of the canonical resources in a set of Npm packages, built once from the .index.json of each package,
+ * and bounded caches of the Libraries and model info read through it. Providers over the same packages share an
+ * index, and so read and unmarshal each Library and model info once.
+ *
+ * Lookups resolve a canonical url and (optional) version to a file of a given package the same way
+ * NpmPackage.loadByCanonicalVersion does, without scanning the package index on every call.
+ */
+public class NpmPackageIndex {
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static class PackageFile {
+        private final NpmPackage npmPackage;
+        private final String fileName;
+
+        private PackageFile(NpmPackage npmPackage, String fileName) {
+            this.npmPackage = npmPackage;
+            this.fileName = fileName;
+        }
+    }
+
+    private final ILibraryReader reader;
+    // Files by url|version and by url alone (the first file with the url, for lookups without a version), in package order
+    private final Map<String, List<PackageFile>> filesByCanonical = new HashMap<>();
+    // Packages without a readable .index.json, which fall back to NpmPackage.loadByCanonicalVersion
+    private final Set<NpmPackage> unindexedPackages = new HashSet<>();
+    // Least recently used Libraries are evicted first
+    private final Cache<PackageFile, Library> libraries;
+    // Model info by package and by canonical url and version of the ModelInfo library
+    private final Cache<String, ModelInfo> modelInfos;
+
+    public NpmPackageIndex(List<NpmPackage> packages, ILibraryReader reader) {
+        this(packages, reader, DEFAULT_CACHE_SIZE);
+    }
+
+    public NpmPackageIndex(List<NpmPackage> packages, ILibraryReader reader, int cacheSize) {
+        this.reader = reader;
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be at least 1");
+        }
+        this.libraries = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.modelInfos = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        for (NpmPackage p : packages) {
+            index(p);
+        }
+    }
+
+    private void index(NpmPackage p) {
+        JsonObject index;
+        try (InputStream is = p.load("package", ".index.json")) {
+            if (is == null) {
+                unindexedPackages.add(p);
+                return;
+            }
+            index = JsonParser.parseReader(new InputStreamReader(is, StandardCharsets.UTF_8)).getAsJsonObject();
+        } catch (IOException | RuntimeException e) {
+            unindexedPackages.add(p);
+            return;
+        }
+
+        if (!index.has("files")) {
+            return;
+        }
+
+        Set<String> urls = new HashSet<>();
+        for (JsonElement e : index.getAsJsonArray("files")) {
+            JsonObject file = e.getAsJsonObject();
+            if (!file.has("url") || !file.has("filename")) {
+                continue;
+            }
+
+            String url = file.get("url").getAsString();
+            PackageFile packageFile = new PackageFile(p, file.get("filename").getAsString());
+            if (file.has("version")) {
+                add(url + "|" + file.get("version").getAsString(), packageFile);
+            }
+            if (urls.add(url)) {
+                add(url, packageFile);
+            }
+        }
+    }
+
+    private void add(String key, PackageFile packageFile) {
+        List<PackageFile> files = filesByCanonical.get(key);
+        if (files == null) {
+            files = new ArrayList<>(1);
+            filesByCanonical.put(key, files);
+        }
+        // Only the first file of a package with a given key is reachable
+        for (PackageFile f : files) {
+            if (f.npmPackage == packageFile.npmPackage) {
+                return;
+            }
+        }
+        files.add(packageFile);
+    }
+
+    private PackageFile find(NpmPackage p, String canonical, String version) {
+        List<PackageFile> files = filesByCanonical.get(version == null ? canonical : canonical + "|" + version);
+        if (files != null) {
+            for (PackageFile f : files) {
+                if (f.npmPackage == p) {
+                    return f;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads the resource with the given canonical url and version from the package
+     * @param version The version of the resource, or null for the first resource with the url
+     * @return The content of the resource, or null if the package does not contain it
+     */
+    public InputStream loadByCanonicalVersion(NpmPackage p, String canonical, String version) throws IOException {
+        if (unindexedPackages.contains(p)) {
+            return p.loadByCanonicalVersion(canonical, version);
+        }
+
+        PackageFile file = find(p, canonical, version);
+        return file != null ? p.load("package", file.fileName) : null;
+    }
+
+    /**
+     * Reads the Library with the given canonical url and version from the package, caching the result
+     * @param version The version of the Library, or null for the first Library with the url
+     * @return The Library, or null if the package does not contain it
+     */
+    public Library getLibrary(NpmPackage p, String canonical, String version) throws IOException {
+        if (unindexedPackages.contains(p)) {
+            try (InputStream s = p.loadByCanonicalVersion(canonical, version)) {
+                return s != null ? reader.readLibrary(s) : null;
+            }
+        }
+
+        PackageFile file = find(p, canonical, version);
+        if (file == null) {
+            return null;
+        }
+
+        Library library = libraries.getIfPresent(file);
+        if (library == null) {
+            try (InputStream s = p.load("package", file.fileName)) {
+                if (s == null) {
+                    return null;
+                }
+                library = reader.readLibrary(s);
+            }
+            libraries.put(file, library);
+        }
+        return library;
+    }
+
+    /**
+     * Reads the model info from the XML content of the ModelInfo Library with the given canonical url and version
+     * from the package, caching the result
+     * @param version The version of the Library, or null for the first Library with the url
+     * @return The model info, or null if the package does not contain the Library or it has no XML content
+     */
+    public ModelInfo getModelInfo(NpmPackage p, String canonical, String version) throws IOException {
+        String key = p.name() + "#" + p.version() + "|" + canonical + "|" + version;
+        ModelInfo modelInfo = modelInfos.getIfPresent(key);
+        if (modelInfo != null) {
+            return modelInfo;
+        }
+
+        Library l = getLibrary(p, canonical, version);
+        if (l != null) {
+            for (Attachment a : l.getContent()) {
+                if (a.getContentType() != null && a.getContentType().equals("application/xml")) {
+                    modelInfo = ModelInfoReader.read(new ByteArrayInputStream(a.getData()));
+                    modelInfos.put(key, modelInfo);
+                    return modelInfo;
+                }
+            }
+        }
+        return null;
+    }
+}
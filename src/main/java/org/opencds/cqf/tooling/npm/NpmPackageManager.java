@@ -91,6 +91,36 @@ public class NpmPackageManager implements IWorkerContext.ILoggingService {
         }
     }
 
+    /*
+    Loads the given packages (without their dependencies) from the package cache, downloading any that are not cached
+
+    @param packages The packages, as id#version (e.g. hl7.fhir.r4.core#4.0.1)
+     */
+    public static List<NpmPackage> loadPackages(List<String> packages) {
+        FilesystemPackageCacheManager pcm;
+        try {
+            pcm = new FilesystemPackageCacheManager(true, ToolsVersion.TOOLS_VERSION);
+        }
+        catch(IOException e) {
+            throw new NpmPackageManagerException("error creating the FilesystemPackageCacheManager", e);
+        }
+
+        List<NpmPackage> result = new ArrayList<>();
+        for (String p : packages) {
+            String[] idAndVersion = p.trim().split("#");
+            if (idAndVersion.length != 2) {
+                throw new IllegalArgumentException("Packages must be given as id#version: " + p);
+            }
+            try {
+                result.add(pcm.loadPackage(idAndVersion[0], idAndVersion[1]));
+            }
+            catch (Exception e) {
+                throw new NpmPackageManagerException("Error loading package " + p, e);
+            }
+        }
+        return result;
+    }
+
     private void loadCorePackage() {
         NpmPackage pi = null;
 
@@ -8,4 +8,7 @@ public class PostBundlesInDirParameters {
     public String fhirUri;
     public FHIRVersion fhirVersion;
     public IOUtils.Encoding encoding;
+    public Integer maxInFlight;
+    public Integer maxBundleEntries;
+    public String journalPath;
 }
\ No newline at end of file
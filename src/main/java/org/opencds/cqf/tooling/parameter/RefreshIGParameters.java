@@ -20,4 +20,6 @@ public class RefreshIGParameters {
     public String measureToRefreshPath;
     public String libraryOutputPath;
     public String measureOutputPath;
+    public Boolean incremental;
+    public Boolean noTranslationCache;
 }
\ No newline at end of file
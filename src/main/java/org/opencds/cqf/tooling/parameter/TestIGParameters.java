@@ -43,4 +43,19 @@ public class TestIGParameters {
     Execution engine (i.e., CQF Ruler) to load the test content to and run the evaluation on.
     */
     public String fhirServerUri;
+
+    /*
+    Maximum number of test cases run concurrently, or null for the number of processors
+    */
+    public Integer maxThreads;
+
+    /*
+    Maximum time in seconds a test case may run, or null for no limit
+    */
+    public Integer testTimeoutSeconds;
+
+    /*
+    Directory the test results are written to (test-results.xml in JUnit XML format, and test-results.json), or null to not write them
+    */
+    public String resultsPath;
 }
@@ -0,0 +1,86 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of bundling a single artifact (a measure or plan definition) in a BundlingPipeline
+ */
+public class ArtifactBundleResult {
+
+    public enum Status {
+        /** The bundle was written */
+        BUNDLED,
+        /** The bundle was left as it is because none of its inputs changed (incremental refresh) */
+        UP_TO_DATE,
+        /** Some of the content could not be resolved, so the bundle was not written */
+        NOT_BUNDLED,
+        /** Bundling failed with an exception */
+        FAILED
+    }
+
+    private final String artifactType;
+    private final String name;
+    private final String sourcePath;
+    private Status status;
+    private final List<String> messages = new ArrayList<>();
+    private long elapsedMillis;
+
+    public ArtifactBundleResult(String artifactType, String name, String sourcePath) {
+        this.artifactType = artifactType;
+        this.name = name;
+        this.sourcePath = sourcePath;
+    }
+
+    public String getArtifactType() {
+        return artifactType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public List<String> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    public void addMessage(String message) {
+        messages.add(message);
+    }
+
+    /**
+     * Marks the artifact as not bundled, recording the reason
+     */
+    public void notBundled(String reason) {
+        if (status != Status.FAILED) {
+            status = Status.NOT_BUNDLED;
+        }
+        messages.add(reason);
+    }
+
+    public void fail(Exception e) {
+        status = Status.FAILED;
+        messages.add(e.getMessage() == null ? e.toString() : e.getMessage());
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+}
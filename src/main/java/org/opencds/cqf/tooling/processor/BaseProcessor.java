@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
+import org.apache.commons.io.FilenameUtils;
 import org.fhir.ucum.UcumEssenceService;
 import org.fhir.ucum.UcumException;
 import org.fhir.ucum.UcumService;
@@ -83,6 +84,7 @@ public class BaseProcessor implements IProcessorContext, IWorkerContext.ILogging
             this.packageManager = parentContext.getPackageManager();
             this.binaryPaths = parentContext.getBinaryPaths();
             this.cqlProcessor = parentContext.getCqlProcessor();
+            this.refreshManifest = parentContext.getRefreshManifest();
         }
     }
 
@@ -155,6 +157,35 @@ public class BaseProcessor implements IProcessorContext, IWorkerContext.ILogging
         this.binaryPaths = binaryPaths;
     }
 
+    protected RefreshManifest refreshManifest;
+
+    /**
+     * @return the manifest used to skip artifacts whose inputs have not changed, or null if the refresh is not incremental
+     */
+    public RefreshManifest getRefreshManifest() {
+        return refreshManifest;
+    }
+
+    public void setRefreshManifest(RefreshManifest refreshManifest) {
+        this.refreshManifest = refreshManifest;
+    }
+
+    private boolean translationCacheEnabled = true;
+
+    public boolean isTranslationCacheEnabled() {
+        return translationCacheEnabled;
+    }
+
+    /**
+     * Whether CQL translation results are cached under the root directory and reused across runs
+     */
+    public void setTranslationCacheEnabled(boolean translationCacheEnabled) {
+        this.translationCacheEnabled = translationCacheEnabled;
+        if (!translationCacheEnabled && cqlProcessor != null) {
+            cqlProcessor.setTranslationCache(null);
+        }
+    }
+
     private CqlProcessor cqlProcessor;
 
     public CqlProcessor getCqlProcessor() {
@@ -170,6 +201,9 @@ public class BaseProcessor implements IProcessorContext, IWorkerContext.ILogging
             }
             cqlProcessor = new CqlProcessor(packageManager.getNpmList(), binaryPaths, reader, this, ucumService,
                     packageId, canonicalBase);
+            if (rootDir != null && translationCacheEnabled) {
+                cqlProcessor.setTranslationCache(new CqlTranslationCache(FilenameUtils.concat(rootDir, IGProcessor.cqlTranslationCachePathElement)));
+            }
         }
 
         return cqlProcessor;
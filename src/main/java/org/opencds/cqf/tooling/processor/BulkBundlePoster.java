@@ -0,0 +1,301 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.FhirServerClient;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Posts the bundles in a directory to a FHIR server, with a bounded number of bundles in flight.
+ *
+ * Every bundle (or part of a bundle) that is posted successfully is appended to an optional journal, together with
+ * a hash of its content. When the journal exists, the bundles it records as posted to the same server with the same
+ * content are skipped, so an interrupted run can be resumed. Transaction and batch bundles with more entries than the
+ * configured maximum are split into parts, posted in order; bundles whose entries reference each other through
+ * urn:uuid or urn:oid full urls are never split, since the references would not resolve across parts.
+ */
+public class BulkBundlePoster {
+
+    public static class Report {
+        private final AtomicInteger postedBundles = new AtomicInteger();
+        private final AtomicInteger skippedBundles = new AtomicInteger();
+        private final AtomicInteger postedParts = new AtomicInteger();
+        private final AtomicInteger skippedParts = new AtomicInteger();
+        private final AtomicInteger postedEntries = new AtomicInteger();
+        private final AtomicLong postedBytes = new AtomicLong();
+        private final Map<String, String> failures = new ConcurrentHashMap<>();
+        private long elapsedMillis;
+
+        public int getPostedBundles() {
+            return postedBundles.get();
+        }
+
+        /**
+         * @return the number of bundles not posted at all, because the journal records every part as already posted
+         */
+        public int getSkippedBundles() {
+            return skippedBundles.get();
+        }
+
+        public int getPostedParts() {
+            return postedParts.get();
+        }
+
+        public int getSkippedParts() {
+            return skippedParts.get();
+        }
+
+        public int getPostedEntries() {
+            return postedEntries.get();
+        }
+
+        /**
+         * @return the error message of each bundle that could not be (completely) posted, by path
+         */
+        public Map<String, String> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+            StringBuilder message = new StringBuilder();
+            message.append(String.format("%d bundles posted (%d requests, %d entries, %d KB) in %.1f s: %.1f requests/s, %.1f entries/s",
+                    postedBundles.get(), postedParts.get(), postedEntries.get(), postedBytes.get() / 1024, seconds,
+                    postedParts.get() / seconds, postedEntries.get() / seconds));
+            message.append(String.format("%n%d bundles (%d requests) skipped (already posted according to the journal)", skippedBundles.get(), skippedParts.get()));
+            message.append(String.format("%n%d bundles failed", failures.size()));
+            for (String path : new TreeSet<>(failures.keySet())) {
+                message.append(String.format("%n     %s FAILED: %s", path, failures.get(path)));
+            }
+            return message.toString();
+        }
+    }
+
+    private final FhirServerClient client;
+    private final String fhirUri;
+    private final Encoding encoding;
+    private final FhirContext fhirContext;
+    private final int maxInFlight;
+    private final int maxBundleEntries;
+    private final File journalFile;
+
+    private final Set<String> journaled = ConcurrentHashMap.newKeySet();
+    private BufferedWriter journalWriter;
+
+    /**
+     * @param maxInFlight the maximum number of bundles posted concurrently
+     * @param maxBundleEntries the maximum number of entries per request, or 0 to never split bundles
+     * @param journalPath the journal of posted bundles, or null to post every bundle
+     */
+    public BulkBundlePoster(FhirServerClient client, String fhirUri, Encoding encoding, FhirContext fhirContext, int maxInFlight,
+            int maxBundleEntries, String journalPath) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        if (maxBundleEntries < 0) {
+            throw new IllegalArgumentException("maxBundleEntries can not be negative");
+        }
+        this.client = client;
+        this.fhirUri = fhirUri;
+        this.encoding = encoding;
+        this.fhirContext = fhirContext;
+        this.maxInFlight = maxInFlight;
+        this.maxBundleEntries = maxBundleEntries;
+        this.journalFile = journalPath == null || journalPath.isEmpty() ? null : new File(journalPath);
+    }
+
+    /**
+     * Posts the bundles, as returned by BundleUtils.GetBundlesInDir
+     */
+    public Report post(List<Map.Entry<String, IBaseResource>> bundles) throws IOException {
+        Report report = new Report();
+        long start = System.currentTimeMillis();
+
+        openJournal();
+        ExecutorService executor = Executors.newFixedThreadPool(maxInFlight);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<String, IBaseResource> bundle : bundles) {
+                futures.add(executor.submit(() -> postBundle(bundle.getKey(), bundle.getValue(), report)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Unexpected error posting bundles", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while posting bundles", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            closeJournal();
+            report.elapsedMillis = System.currentTimeMillis() - start;
+        }
+
+        return report;
+    }
+
+    private void postBundle(String path, IBaseResource bundle, Report report) {
+        try {
+            List<IBaseResource> parts = split(bundle);
+            int skipped = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                IBaseResource part = parts.get(i);
+                String content = IOUtils.encodeResourceAsString(part, encoding, fhirContext);
+                String key = fhirUri + "|" + path + "#" + i + "|" + DigestUtils.sha256Hex(content);
+                if (journaled.contains(key)) {
+                    report.skippedParts.incrementAndGet();
+                    skipped++;
+                    continue;
+                }
+
+                // Parts are posted in order, later parts may depend on the resources in earlier ones
+                client.post(fhirUri, content, part.getIdElement().getIdPart(), encoding, fhirContext);
+                journal(key);
+                report.postedParts.incrementAndGet();
+                report.postedEntries.addAndGet(getEntryCount(part));
+                report.postedBytes.addAndGet(content.getBytes(StandardCharsets.UTF_8).length);
+            }
+            if (skipped == parts.size()) {
+                report.skippedBundles.incrementAndGet();
+                System.out.println("Resource already posted to FHIR server (" + fhirUri + "), skipped: " + bundle.getIdElement().getIdPart());
+            } else {
+                report.postedBundles.incrementAndGet();
+                System.out.println("Resource successfully posted to FHIR server (" + fhirUri + "): " + bundle.getIdElement().getIdPart());
+            }
+        } catch (Exception e) {
+            report.failures.put(path, e.getMessage() == null ? e.toString() : e.getMessage());
+            System.out.println(bundle.getIdElement().getIdPart() + " " + e);
+        }
+    }
+
+    private static int getEntryCount(IBaseResource bundle) {
+        if (bundle instanceof org.hl7.fhir.r4.model.Bundle) {
+            return ((org.hl7.fhir.r4.model.Bundle) bundle).getEntry().size();
+        }
+        if (bundle instanceof org.hl7.fhir.dstu3.model.Bundle) {
+            return ((org.hl7.fhir.dstu3.model.Bundle) bundle).getEntry().size();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the bundle split into parts of at most maxBundleEntries entries, or the bundle itself if it does not
+     * need to, or can not, be split
+     */
+    List<IBaseResource> split(IBaseResource bundle) {
+        if (maxBundleEntries > 0 && bundle instanceof org.hl7.fhir.r4.model.Bundle) {
+            return splitR4((org.hl7.fhir.r4.model.Bundle) bundle);
+        }
+        if (maxBundleEntries > 0 && bundle instanceof org.hl7.fhir.dstu3.model.Bundle) {
+            return splitDstu3((org.hl7.fhir.dstu3.model.Bundle) bundle);
+        }
+        return Collections.singletonList(bundle);
+    }
+
+    private static boolean isLocalReference(String fullUrl) {
+        return fullUrl != null && (fullUrl.startsWith("urn:uuid:") || fullUrl.startsWith("urn:oid:"));
+    }
+
+    private List<IBaseResource> splitR4(org.hl7.fhir.r4.model.Bundle bundle) {
+        List<org.hl7.fhir.r4.model.Bundle.BundleEntryComponent> entries = bundle.getEntry();
+        boolean splittable = (bundle.getType() == org.hl7.fhir.r4.model.Bundle.BundleType.TRANSACTION
+                || bundle.getType() == org.hl7.fhir.r4.model.Bundle.BundleType.BATCH)
+                && entries.stream().noneMatch(entry -> isLocalReference(entry.getFullUrl()));
+        if (!splittable || entries.size() <= maxBundleEntries) {
+            return Collections.singletonList(bundle);
+        }
+
+        List<IBaseResource> parts = new ArrayList<>();
+        for (int start = 0; start < entries.size(); start += maxBundleEntries) {
+            org.hl7.fhir.r4.model.Bundle part = new org.hl7.fhir.r4.model.Bundle();
+            part.setId(bundle.getIdElement().getIdPart() + "-part-" + (parts.size() + 1));
+            part.setType(bundle.getType());
+            part.getEntry().addAll(entries.subList(start, Math.min(start + maxBundleEntries, entries.size())));
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    private List<IBaseResource> splitDstu3(org.hl7.fhir.dstu3.model.Bundle bundle) {
+        List<org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent> entries = bundle.getEntry();
+        boolean splittable = (bundle.getType() == org.hl7.fhir.dstu3.model.Bundle.BundleType.TRANSACTION
+                || bundle.getType() == org.hl7.fhir.dstu3.model.Bundle.BundleType.BATCH)
+                && entries.stream().noneMatch(entry -> isLocalReference(entry.getFullUrl()));
+        if (!splittable || entries.size() <= maxBundleEntries) {
+            return Collections.singletonList(bundle);
+        }
+
+        List<IBaseResource> parts = new ArrayList<>();
+        for (int start = 0; start < entries.size(); start += maxBundleEntries) {
+            org.hl7.fhir.dstu3.model.Bundle part = new org.hl7.fhir.dstu3.model.Bundle();
+            part.setId(bundle.getIdElement().getIdPart() + "-part-" + (parts.size() + 1));
+            part.setType(bundle.getType());
+            part.getEntry().addAll(entries.subList(start, Math.min(start + maxBundleEntries, entries.size())));
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    private void openJournal() throws IOException {
+        journaled.clear();
+        if (journalFile == null) {
+            return;
+        }
+
+        if (journalFile.exists()) {
+            journaled.addAll(Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8));
+            System.out.println(String.format("Resuming from journal %s (%d requests already posted)", journalFile.getAbsolutePath(), journaled.size()));
+        } else if (journalFile.getAbsoluteFile().getParentFile() != null) {
+            journalFile.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        journalWriter = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private synchronized void journal(String key) throws IOException {
+        journaled.add(key);
+        if (journalWriter != null) {
+            journalWriter.write(key);
+            journalWriter.newLine();
+            // Flushed per request, so the journal is complete up to the point the run was interrupted
+            journalWriter.flush();
+        }
+    }
+
+    private synchronized void closeJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+    }
+}
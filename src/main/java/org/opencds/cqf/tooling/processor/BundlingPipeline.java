@@ -0,0 +1,168 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.opencds.cqf.tooling.utilities.LogUtils;
+import org.opencds.cqf.tooling.utilities.ThreadPools;
+
+/**
+ * Bundles artifacts (measures, plan definitions) on a bounded pool of threads.
+ *
+ * Each artifact is bundled independently: an exception while bundling one artifact is recorded in its
+ * ArtifactBundleResult and does not affect the others. The warnings reported through LogUtils while an
+ * artifact is bundled are attached to its result, so they can be reported together in a deterministic
+ * summary once the whole pipeline has completed, rather than interleaved as the artifacts complete.
+ */
+public class BundlingPipeline {
+
+    @FunctionalInterface
+    public interface ArtifactBundler {
+        /**
+         * Bundles the artifact, recording anything that prevented it from being bundled on the result
+         */
+        void bundle(ArtifactBundleResult result) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final List<ArtifactBundleResult> results = new ArrayList<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final DependencyClosureCache dependencyClosures;
+
+    /**
+     * @param maxThreads the maximum number of artifacts bundled concurrently
+     */
+    public BundlingPipeline(int maxThreads) {
+        this(maxThreads, null);
+    }
+
+    /**
+     * @param maxThreads the maximum number of artifacts bundled concurrently
+     * @param translationSession the libraries translated in this run, used to resolve dependencies from ELM (may be null)
+     */
+    public BundlingPipeline(int maxThreads, CqlTranslationSession translationSession) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be at least 1");
+        }
+
+        this.executor = ThreadPools.newDaemonPool("bundling", maxThreads);
+        this.dependencyClosures = new DependencyClosureCache(translationSession);
+    }
+
+    /**
+     * @return the dependency closures shared by the artifacts bundled in this pipeline
+     */
+    public DependencyClosureCache getDependencyClosures() {
+        return dependencyClosures;
+    }
+
+    public synchronized ArtifactBundleResult submit(String artifactType, String name, String sourcePath, ArtifactBundler bundler) {
+        ArtifactBundleResult result = new ArtifactBundleResult(artifactType, name, sourcePath);
+        results.add(result);
+        futures.add(executor.submit(() -> {
+            long start = System.currentTimeMillis();
+            // Discard anything a previous task on this thread left behind
+            LogUtils.takeWarnings();
+            try {
+                bundler.bundle(result);
+                if (result.getStatus() == null) {
+                    result.setStatus(ArtifactBundleResult.Status.BUNDLED);
+                }
+            } catch (Exception e) {
+                result.fail(e);
+            } finally {
+                for (Map.Entry<String, String> warning : LogUtils.takeWarnings().entrySet()) {
+                    result.addMessage(warning.getKey() + ": " + warning.getValue());
+                }
+                result.setElapsedMillis(System.currentTimeMillis() - start);
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Waits for every submitted artifact to be bundled and shuts the pipeline down
+     * @return the results, in the order the artifacts were submitted
+     */
+    public synchronized List<ArtifactBundleResult> await() {
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    // The task catches exceptions itself, so this is an Error
+                    ArtifactBundleResult result = results.get(i);
+                    result.setStatus(ArtifactBundleResult.Status.FAILED);
+                    result.addMessage(String.valueOf(e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ArtifactBundleResult result : results) {
+                if (result.getStatus() == null) {
+                    result.setStatus(ArtifactBundleResult.Status.FAILED);
+                    result.addMessage("Bundling was interrupted");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new ArrayList<>(results);
+    }
+
+    private static String indent(String message) {
+        return message.replace("\r\n", "\n").replace("\n", "\r\n          ");
+    }
+
+    /**
+     * @param artifactType the type of the artifacts to summarize (e.g. "Measure")
+     * @return a summary of the results for artifacts of that type, ordered by source path
+     */
+    public static String getSummary(String artifactType, List<ArtifactBundleResult> results) {
+        List<ArtifactBundleResult> artifactResults = results.stream()
+                .filter(r -> artifactType.equals(r.getArtifactType()))
+                .sorted(Comparator.comparing(ArtifactBundleResult::getSourcePath, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .collect(Collectors.toList());
+
+        List<ArtifactBundleResult> bundled = artifactResults.stream()
+                .filter(r -> r.getStatus() == ArtifactBundleResult.Status.BUNDLED || r.getStatus() == ArtifactBundleResult.Status.UP_TO_DATE)
+                .collect(Collectors.toList());
+        List<ArtifactBundleResult> notBundled = artifactResults.stream()
+                .filter(r -> r.getStatus() == ArtifactBundleResult.Status.NOT_BUNDLED)
+                .collect(Collectors.toList());
+        List<ArtifactBundleResult> failed = artifactResults.stream()
+                .filter(r -> r.getStatus() == ArtifactBundleResult.Status.FAILED)
+                .collect(Collectors.toList());
+
+        StringBuilder message = new StringBuilder();
+        message.append("\r\n").append(bundled.size()).append(" ").append(artifactType).append("s successfully bundled:");
+        for (ArtifactBundleResult result : bundled) {
+            message.append("\r\n     ").append(result.getSourcePath())
+                    .append(result.getStatus() == ArtifactBundleResult.Status.UP_TO_DATE ? " UP TO DATE" : " BUNDLED");
+        }
+
+        message.append("\r\n").append(notBundled.size()).append(" ").append(artifactType).append("s refreshed, but not bundled (due to issues):");
+        for (ArtifactBundleResult result : notBundled) {
+            message.append("\r\n     ").append(result.getSourcePath()).append(" REFRESHED");
+            for (String reason : result.getMessages()) {
+                message.append("\r\n          ").append(indent(reason));
+            }
+        }
+
+        message.append("\r\n").append(failed.size()).append(" ").append(artifactType).append("s failed refresh:");
+        for (ArtifactBundleResult result : failed) {
+            message.append("\r\n     ").append(result.getSourcePath()).append(" FAILED");
+            for (String reason : result.getMessages()) {
+                message.append("\r\n          ").append(indent(reason));
+            }
+        }
+
+        return message.toString();
+    }
+}
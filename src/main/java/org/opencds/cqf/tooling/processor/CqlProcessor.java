@@ -2,14 +2,27 @@ package org.opencds.cqf.tooling.processor;
 
 import java.io.File;
 import java.io.FilenameFilter;
-import java.lang.reflect.Array;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorException;
@@ -18,6 +31,7 @@ import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
 import org.cqframework.cql.cql2elm.DefaultModelInfoProvider;
 import org.cqframework.cql.cql2elm.FhirLibrarySourceProvider;
 import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
 import org.cqframework.cql.cql2elm.ModelManager;
 import org.cqframework.cql.cql2elm.NamespaceInfo;
 import org.cqframework.cql.cql2elm.NamespaceManager;
@@ -38,6 +52,7 @@ import org.hl7.fhir.utilities.validation.ValidationMessage.IssueType;
 import org.opencds.cqf.tooling.npm.ILibraryReader;
 import org.opencds.cqf.tooling.npm.NpmLibrarySourceProvider;
 import org.opencds.cqf.tooling.npm.NpmModelInfoProvider;
+import org.opencds.cqf.tooling.npm.NpmPackageIndex;
 
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
 
@@ -46,7 +61,7 @@ public class CqlProcessor {
     /**
      * information about a cql file
      */
-    public class CqlSourceFileInformation {
+    public static class CqlSourceFileInformation {
         private VersionedIdentifier identifier;
         private byte[] elm;
         private byte[] jsonElm;
@@ -95,6 +110,11 @@ public class CqlProcessor {
      */
     private List<NpmPackage> packages;
 
+    /**
+     * Canonical index of the packages, shared by the library managers of all folders and threads
+     */
+    private NpmPackageIndex packageIndex;
+
     /**
      * All the file paths cql files might be found in (absolute local file paths)
      *
@@ -141,6 +161,22 @@ public class CqlProcessor {
 
     private NamespaceInfo namespaceInfo;
 
+    /**
+     * Maximum number of CQL files translated concurrently, defaults to the number of available processors
+     */
+    private int maxTranslationThreads = Runtime.getRuntime().availableProcessors();
+
+    public int getMaxTranslationThreads() {
+        return maxTranslationThreads;
+    }
+
+    public void setMaxTranslationThreads(int maxTranslationThreads) {
+        if (maxTranslationThreads < 1) {
+            throw new IllegalArgumentException("maxTranslationThreads must be at least 1");
+        }
+        this.maxTranslationThreads = maxTranslationThreads;
+    }
+
     public CqlProcessor(List<NpmPackage> packages, List<String> folders, ILibraryReader reader, ILoggingService logger, UcumService ucumService, String packageId, String canonicalBase) {
         super();
         this.packages = packages;
@@ -165,18 +201,31 @@ public class CqlProcessor {
     public void execute() throws FHIRException {
         try {
             logger.logMessage("Translating CQL source");
-            fileMap = new HashMap<>();
+            fileMap = new LinkedHashMap<>();
 
             // foreach folder
+            List<FolderTranslation> translations = new ArrayList<>();
             for (String folder : folders) {
-                translateFolder(folder);
+                translations.add(new FolderTranslation(folder));
             }
+
+            translateFolders(translations);
         }
         catch (Exception E) {
             logger.logDebugMessage(ILoggingService.LogCategory.PROGRESS, String.format("Errors occurred attempting to translate CQL content: %s", E.getMessage()));
         }
     }
 
+    /**
+     * Executes the processor if it has not been executed yet, e.g. because an incremental refresh found no
+     * library to refresh but a measure still needs the translated libraries
+     */
+    public synchronized void ensureExecuted() {
+        if (fileMap == null) {
+            execute();
+        }
+    }
+
     /**
      * Return CqlSourceFileInformation for the given filename
      * @param filename Fully qualified name of the source file
@@ -247,24 +296,354 @@ public class CqlProcessor {
     }
 
     private LibraryManager cachedLibraryManager;
+    private String cachedScope;
     public LibraryManager getLibraryManager() {
         checkCachedManager();
+        translationSession.seed(cachedLibraryManager, cachedScope);
         return cachedLibraryManager;
     }
 
-    private void translateFolder(String folder) {
-        logger.logMessage(String.format("Translating CQL source in folder %s", folder));
+    /**
+     * @return the library manager, seeded with the given library (and its includes) even if its translation
+     * results came from the translation cache
+     */
+    public LibraryManager getLibraryManager(VersionedIdentifier libraryIdentifier) {
+        checkCachedManager();
+        translationSession.resolve(cachedScope, libraryIdentifier);
+        return getLibraryManager();
+    }
+
+    /**
+     * Libraries translated by this processor, shared with every consumer for the duration of the run
+     */
+    private final CqlTranslationSession translationSession = new CqlTranslationSession();
+    public CqlTranslationSession getTranslationSession() {
+        return translationSession;
+    }
+
+    /**
+     * Optional persistent cache of translation results, unchanged libraries skip translation entirely
+     */
+    private CqlTranslationCache translationCache;
+    public CqlTranslationCache getTranslationCache() {
+        return translationCache;
+    }
+    public void setTranslationCache(CqlTranslationCache translationCache) {
+        this.translationCache = translationCache;
+    }
+
+    /**
+     * The translation state for a single binary path. LibraryManager is not thread-safe, so each worker
+     * thread translating files in the folder gets its own ModelManager/LibraryManager, seeded from the
+     * translation session before each file is translated.
+     */
+    private class FolderTranslation {
+        private final String folder;
+        private final String scope;
+        private final CqlTranslatorOptions options;
+        private final List<File> files;
+        private final ThreadLocal<LibraryManager> threadLibraryManager;
+        private final Map<File, String> cacheKeys = new HashMap<>();
+        private final Map<File, Map<String, String>> includes = new HashMap<>();
+        private final Map<String, File> filesByLibraryName = new HashMap<>();
+        private final Map<File, Integer> waveIndexes = new HashMap<>();
+        private List<LibrarySourceProvider> sourceProviders;
+        private final Map<String, String> includeFingerprints = new HashMap<>();
+
+        FolderTranslation(String folder) {
+            this.folder = folder;
+            this.scope = CqlTranslationSession.getScope(folder);
+            this.options = ResourceUtils.getTranslatorOptions(folder);
+            File[] cqlFiles = new File(folder).listFiles(getCqlFilenameFilter());
+            this.files = cqlFiles == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(cqlFiles));
+            // Sort so results are reported in the same order regardless of file system or scheduling
+            this.files.sort((a, b) -> a.getName().compareTo(b.getName()));
+            this.threadLibraryManager = ThreadLocal.withInitial(() -> createLibraryManager(folder));
+        }
+
+        LibraryManager getLibraryManager() {
+            LibraryManager libraryManager = threadLibraryManager.get();
+            translationSession.seed(libraryManager, scope);
+            return libraryManager;
+        }
 
-        CqlTranslatorOptions options = ResourceUtils.getTranslatorOptions(folder);
+        /**
+         * Makes sure the local libraries the file includes are translated into the session. Only includes from
+         * earlier waves are considered, so translations waiting on each other can never form a cycle.
+         */
+        void resolveIncludes(File file) {
+            Integer waveIndex = waveIndexes.get(file);
+            Map<String, String> fileIncludes = includes.get(file);
+            if (waveIndex == null || fileIncludes == null) {
+                return;
+            }
+            for (String include : fileIncludes.keySet()) {
+                File includedFile = filesByLibraryName.get(include);
+                Integer includedWaveIndex = includedFile != null ? waveIndexes.get(includedFile) : null;
+                if (includedWaveIndex != null && includedWaveIndex < waveIndex) {
+                    translationSession.getFile(includedFile.getAbsolutePath());
+                }
+            }
+        }
 
+        /**
+         * Groups the files in this folder into waves such that every library included by a file in a wave
+         * is defined by a file in an earlier wave. Files within a wave can be translated concurrently, and
+         * their includes will already be available in the translation session.
+         */
+        List<List<File>> getTranslationWaves() {
+            Map<File, String> libraryNames = new LinkedHashMap<>();
+            Map<File, byte[]> sources = new HashMap<>();
+            for (File file : files) {
+                byte[] bytes;
+                try {
+                    bytes = Files.readAllBytes(file.toPath());
+                }
+                catch (IOException e) {
+                    bytes = new byte[0];
+                }
+                String source = new String(bytes, StandardCharsets.UTF_8);
+                sources.put(file, bytes);
+                libraryNames.put(file, getDeclaredLibraryName(file, source));
+                includes.put(file, getIncludedLibraries(source));
+            }
+            for (Map.Entry<File, String> entry : libraryNames.entrySet()) {
+                filesByLibraryName.putIfAbsent(entry.getValue(), entry.getKey());
+            }
+
+            Set<String> folderLibraryNames = new HashSet<>(libraryNames.values());
+            Set<String> translated = new HashSet<>();
+            List<File> remaining = new ArrayList<>(files);
+            List<List<File>> waves = new ArrayList<>();
+            while (!remaining.isEmpty()) {
+                List<File> wave = new ArrayList<>();
+                for (File file : remaining) {
+                    boolean ready = true;
+                    for (String include : includes.get(file).keySet()) {
+                        if (folderLibraryNames.contains(include) && !translated.contains(include) && !include.equals(libraryNames.get(file))) {
+                            ready = false;
+                            break;
+                        }
+                    }
+                    if (ready) {
+                        wave.add(file);
+                    }
+                }
+
+                // Circular (or otherwise unresolvable) includes, translate the rest together and let the translator report it
+                if (wave.isEmpty()) {
+                    wave.addAll(remaining);
+                }
+
+                remaining.removeAll(wave);
+                for (File file : wave) {
+                    translated.add(libraryNames.get(file));
+                    waveIndexes.put(file, waves.size());
+                }
+                waves.add(wave);
+            }
+
+            if (translationCache != null) {
+                // Key each file by its source and the resolved source of every library it includes, so a change
+                // to any library (local, or in a package) invalidates the cached translations that depend on it
+                String cacheContext = getCacheContext(folder);
+                for (File file : files) {
+                    List<String> dependencyKeys = new ArrayList<>();
+                    for (Map.Entry<String, String> include : includes.get(file).entrySet()) {
+                        dependencyKeys.add(getIncludeFingerprint(include.getKey(), include.getValue(), new HashSet<>()));
+                    }
+                    cacheKeys.put(file, CqlTranslationCache.computeKey(sources.get(file), dependencyKeys, cacheContext));
+                }
+            }
+
+            return waves;
+        }
+
+        /**
+         * Fingerprint of the source the include resolves to, resolved the way the folder's LibraryManager
+         * resolves it (packages, then the folder, then the translator's FHIR libraries), and of everything
+         * that source includes in turn
+         */
+        private String getIncludeFingerprint(String name, String version, Set<String> visiting) {
+            String include = name + "|" + (version != null ? version : "");
+            String fingerprint = includeFingerprints.get(include);
+            if (fingerprint != null) {
+                return fingerprint;
+            }
+            // Circular includes are reported by the translator, the key just has to terminate
+            if (!visiting.add(include)) {
+                return include;
+            }
+
+            byte[] source = getIncludeSource(name, version);
+            if (source == null) {
+                fingerprint = include;
+            }
+            else {
+                List<String> dependencyKeys = new ArrayList<>();
+                for (Map.Entry<String, String> dependency : getIncludedLibraries(new String(source, StandardCharsets.UTF_8)).entrySet()) {
+                    dependencyKeys.add(getIncludeFingerprint(dependency.getKey(), dependency.getValue(), visiting));
+                }
+                fingerprint = CqlTranslationCache.computeKey(source, dependencyKeys, include);
+            }
+
+            visiting.remove(include);
+            includeFingerprints.put(include, fingerprint);
+            return fingerprint;
+        }
+
+        private byte[] getIncludeSource(String name, String version) {
+            if (sourceProviders == null) {
+                sourceProviders = new ArrayList<>();
+                if (packages != null) {
+                    sourceProviders.add(new NpmLibrarySourceProvider(packages, getPackageIndex(), logger));
+                }
+                sourceProviders.add(new DefaultLibrarySourceProvider(Paths.get(folder)));
+                sourceProviders.add(new FhirLibrarySourceProvider());
+            }
+
+            for (LibrarySourceProvider provider : sourceProviders) {
+                try (InputStream source = provider.getLibrarySource(new VersionedIdentifier().withId(name).withVersion(version))) {
+                    if (source != null) {
+                        return org.apache.commons.io.IOUtils.toByteArray(source);
+                    }
+                }
+                catch (Exception e) {
+                    // Not resolvable by this provider, the translator reports it if no provider resolves it
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Everything outside the CQL source that affects translation of files in the folder
+     */
+    private String getCacheContext(String folder) {
+        StringBuilder context = new StringBuilder();
+        File optionsFile = new File(folder, "cql-options.json");
+        if (optionsFile.exists()) {
+            try {
+                context.append(new String(Files.readAllBytes(optionsFile.toPath()), StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                // Unreadable options can't be matched against a previous run, so never hit the cache
+                context.append(System.nanoTime());
+            }
+        }
+        else {
+            context.append("default");
+        }
+        context.append('\n').append(packageId).append('|').append(canonicalBase);
+        if (packages != null) {
+            for (NpmPackage p : packages) {
+                context.append('\n').append(p.name()).append('#').append(p.version());
+            }
+        }
+        return context.toString();
+    }
+
+    private static final String IDENTIFIER = "(?:[A-Za-z_][A-Za-z0-9_]*|\"[^\"]+\"|`[^`]+`)";
+    private static final Pattern LIBRARY_PATTERN = Pattern.compile("^\\s*library\\s+(" + IDENTIFIER + "(?:\\." + IDENTIFIER + ")*)", Pattern.MULTILINE);
+    private static final Pattern INCLUDE_PATTERN = Pattern.compile("^\\s*include\\s+(" + IDENTIFIER + "(?:\\." + IDENTIFIER + ")*)(?:\\s+version\\s+'([^']*)')?", Pattern.MULTILINE);
+
+    private static String getUnqualifiedName(String qualifiedIdentifier) {
+        String name = qualifiedIdentifier;
+        if (name.endsWith("\"") || name.endsWith("`")) {
+            char quote = name.charAt(name.length() - 1);
+            int start = name.lastIndexOf(quote, name.length() - 2);
+            return name.substring(start + 1, name.length() - 1);
+        }
+        int index = name.lastIndexOf('.');
+        return index >= 0 ? name.substring(index + 1) : name;
+    }
+
+    /**
+     * Blanks out comments and the contents of string literals and quoted identifiers so that the
+     * library and include patterns only match actual declarations. Offsets are preserved, so groups
+     * matched against the result can be read back from the original source.
+     */
+    static String maskCommentsAndLiterals(String source) {
+        char[] masked = source.toCharArray();
+        int i = 0;
+        while (i < masked.length) {
+            char c = masked[i];
+            if (c == '/' && i + 1 < masked.length && masked[i + 1] == '/') {
+                while (i < masked.length && masked[i] != '\n') {
+                    masked[i++] = ' ';
+                }
+            }
+            else if (c == '/' && i + 1 < masked.length && masked[i + 1] == '*') {
+                int end = source.indexOf("*/", i + 2);
+                end = end < 0 ? masked.length : end + 2;
+                for (; i < end; i++) {
+                    if (masked[i] != '\n') {
+                        masked[i] = ' ';
+                    }
+                }
+            }
+            else if (c == '\'' || c == '"' || c == '`') {
+                i++;
+                while (i < masked.length && masked[i] != c) {
+                    if (masked[i] == '\\' && i + 1 < masked.length) {
+                        masked[i++] = ' ';
+                    }
+                    if (masked[i] != '\n') {
+                        masked[i] = ' ';
+                    }
+                    i++;
+                }
+                i++;
+            }
+            else {
+                i++;
+            }
+        }
+        return new String(masked);
+    }
+
+    private static String group(String source, Matcher matcher, int group) {
+        return matcher.start(group) < 0 ? null : source.substring(matcher.start(group), matcher.end(group));
+    }
+
+    private static String getDeclaredLibraryName(File file, String source) {
+        Matcher matcher = LIBRARY_PATTERN.matcher(maskCommentsAndLiterals(source));
+        if (matcher.find()) {
+            return getUnqualifiedName(group(source, matcher, 1));
+        }
+        String fileName = file.getName();
+        return fileName.substring(0, fileName.length() - ".cql".length());
+    }
+
+    /**
+     * @return the versions (or null) of the included libraries by name
+     */
+    static Map<String, String> getIncludedLibraries(String source) {
+        Map<String, String> result = new LinkedHashMap<>();
+        Matcher matcher = INCLUDE_PATTERN.matcher(maskCommentsAndLiterals(source));
+        while (matcher.find()) {
+            result.put(getUnqualifiedName(group(source, matcher, 1)), group(source, matcher, 2));
+        }
+        return result;
+    }
+
+    private synchronized NpmPackageIndex getPackageIndex() {
+        if (packageIndex == null) {
+            packageIndex = new NpmPackageIndex(packages, reader);
+        }
+        return packageIndex;
+    }
+
+    private LibraryManager createLibraryManager(String folder) {
         // Setup
         // Construct DefaultLibrarySourceProvider
         // Construct FhirLibrarySourceProvider
         ModelManager modelManager = new ModelManager();
         LibraryManager libraryManager = new LibraryManager(modelManager);
         if (packages != null) {
-            modelManager.getModelInfoLoader().registerModelInfoProvider(new NpmModelInfoProvider(packages, reader, logger), true);
-            libraryManager.getLibrarySourceLoader().registerProvider(new NpmLibrarySourceProvider(packages, reader, logger));
+            NpmPackageIndex index = getPackageIndex();
+            modelManager.getModelInfoLoader().registerModelInfoProvider(new NpmModelInfoProvider(packages, index, logger), true);
+            libraryManager.getLibrarySourceLoader().registerProvider(new NpmLibrarySourceProvider(packages, index, logger));
         }
         libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
         libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
@@ -272,30 +651,146 @@ public class CqlProcessor {
 
         loadNamespaces(libraryManager);
 
-        // foreach *.cql file
-        boolean hadCqlFiles = false;
-        for (File file : new File(folder).listFiles(getCqlFilenameFilter())) {
-            hadCqlFiles = true;
-            translateFile(modelManager, libraryManager, file, options);
+        return libraryManager;
+    }
+
+    private void translateFolders(List<FolderTranslation> translations) throws InterruptedException, ExecutionException {
+        int fileCount = 0;
+        List<List<List<File>>> folderWaves = new ArrayList<>();
+        int waveCount = 0;
+        for (FolderTranslation translation : translations) {
+            fileCount += translation.files.size();
+            List<List<File>> waves = translation.getTranslationWaves();
+            folderWaves.add(waves);
+            waveCount = Math.max(waveCount, waves.size());
         }
 
-        if (hadCqlFiles) {
-            if (cachedOptions == null) {
-                if (!hasMultipleBinaryPaths) {
-                    cachedOptions = options;
-                    cachedLibraryManager = libraryManager;
+        if (fileCount > 0) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxTranslationThreads, fileCount));
+            try {
+                for (FolderTranslation translation : translations) {
+                    if (!translation.files.isEmpty()) {
+                        logger.logMessage(String.format("Translating CQL source in folder %s", translation.folder));
+                    }
+                }
+
+                // Translate wave by wave so each library's includes have already been translated once into the session
+                Map<File, CqlSourceFileInformation> translatedFiles = new HashMap<>();
+                for (int wave = 0; wave < waveCount; wave++) {
+                    Map<File, Future<CqlSourceFileInformation>> results = new LinkedHashMap<>();
+                    for (int i = 0; i < translations.size(); i++) {
+                        FolderTranslation translation = translations.get(i);
+                        List<List<File>> waves = folderWaves.get(i);
+                        if (wave >= waves.size()) {
+                            continue;
+                        }
+                        for (File file : waves.get(wave)) {
+                            results.put(file, executor.submit(() -> translateFile(translation, file)));
+                        }
+                    }
+
+                    for (Map.Entry<File, Future<CqlSourceFileInformation>> result : results.entrySet()) {
+                        translatedFiles.put(result.getKey(), result.getValue().get());
+                    }
+                }
+
+                // populate the fileMap in folder/file order so results are deterministic
+                for (FolderTranslation translation : translations) {
+                    for (File file : translation.files) {
+                        fileMap.put(file.getAbsoluteFile().toString(), translatedFiles.get(file));
+                    }
                 }
             }
-            else {
-                if (!hasMultipleBinaryPaths) {
-                    hasMultipleBinaryPaths = true;
-                    cachedOptions = null;
-                    cachedLibraryManager = null;
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+
+        for (FolderTranslation translation : translations) {
+            if (!translation.files.isEmpty()) {
+                if (cachedOptions == null) {
+                    if (!hasMultipleBinaryPaths) {
+                        cachedOptions = translation.options;
+                        cachedLibraryManager = createLibraryManager(translation.folder);
+                        cachedScope = translation.scope;
+                    }
+                }
+                else {
+                    if (!hasMultipleBinaryPaths) {
+                        hasMultipleBinaryPaths = true;
+                        cachedOptions = null;
+                        cachedLibraryManager = null;
+                        cachedScope = null;
+                    }
                 }
             }
         }
     }
 
+    private CqlSourceFileInformation translateFile(FolderTranslation translation, File file) {
+        String cacheKey = translationCache != null ? translation.cacheKeys.get(file) : null;
+        if (cacheKey != null) {
+            CqlSourceFileInformation cached = translationCache.get(cacheKey);
+            if (cached != null) {
+                logger.logMessage(String.format("Using cached translation for CQL source in file %s", file.toString()));
+                // Dependents and consumers still need the translated library, translate it when first asked for
+                translationSession.defer(file.getAbsolutePath(), cached.getIdentifier(), () -> translateIntoSession(translation, file));
+                return cached;
+            }
+        }
+
+        translation.resolveIncludes(file);
+        LibraryManager libraryManager = translation.getLibraryManager();
+        CqlSourceFileInformation result = translateFile(libraryManager.getModelManager(), libraryManager, file, translation.options);
+        translationSession.harvest(libraryManager, translation.scope);
+
+        if (cacheKey != null && result.getElm() != null && !hasErrors(result)) {
+            try {
+                translationCache.put(cacheKey, result);
+            }
+            catch (IOException e) {
+                logger.logDebugMessage(ILoggingService.LogCategory.PROGRESS, String.format("Could not cache translation for %s: %s", file.toString(), e.getMessage()));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Translates a file whose translation results came from the cache, only to make the translated library
+     * available in the translation session
+     */
+    private TranslatedLibrary translateIntoSession(FolderTranslation translation, File file) throws IOException {
+        translation.resolveIncludes(file);
+        LibraryManager libraryManager = translation.getLibraryManager();
+        logger.logDebugMessage(ILoggingService.LogCategory.PROGRESS, String.format("Translating cached CQL source in file %s", file.toString()));
+        CqlTranslatorOptions options = translation.options;
+        CqlTranslator translator = CqlTranslator.fromFile(namespaceInfo, file, libraryManager.getModelManager(), libraryManager,
+                options.getValidateUnits() ? ucumService : null, options);
+        if (!translator.getErrors().isEmpty()) {
+            return null;
+        }
+
+        TranslatedLibrary translatedLibrary = translator.getTranslatedLibrary();
+        libraryManager.getTranslatedLibraries().put(CqlTranslationSession.getLibraryPath(translatedLibrary.getIdentifier()), translatedLibrary);
+        translationSession.putFile(file.getAbsolutePath(), translatedLibrary);
+        translationSession.harvest(libraryManager, translation.scope);
+        return translatedLibrary;
+    }
+
+    private static boolean hasErrors(CqlSourceFileInformation info) {
+        for (ValidationMessage message : info.getErrors()) {
+            if (message.getLevel() == IssueSeverity.ERROR || message.getLevel() == IssueSeverity.FATAL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void loadNamespaces(LibraryManager libraryManager) {
         if (namespaceInfo != null) {
             libraryManager.getNamespaceManager().addNamespace(namespaceInfo);
@@ -342,10 +837,9 @@ public class CqlProcessor {
         }
     }
 
-    private void translateFile(ModelManager modelManager, LibraryManager libraryManager, File file, CqlTranslatorOptions options) {
+    private CqlSourceFileInformation translateFile(ModelManager modelManager, LibraryManager libraryManager, File file, CqlTranslatorOptions options) {
         logger.logMessage(String.format("Translating CQL source in file %s", file.toString()));
         CqlSourceFileInformation result = new CqlSourceFileInformation();
-        fileMap.put(file.getAbsoluteFile().toString(), result);
 
         try {
 
@@ -385,6 +879,7 @@ public class CqlProcessor {
                     TranslatedLibrary translatedLibrary = translator.getTranslatedLibrary();
                     String libraryPath = NamespaceManager.getPath(translatedLibrary.getIdentifier().getSystem(), translatedLibrary.getIdentifier().getId());
                     libraryManager.getTranslatedLibraries().put(libraryPath, translatedLibrary);
+                    translationSession.putFile(file.getAbsolutePath(), translatedLibrary);
 
                     DataRequirementsProcessor drp = new DataRequirementsProcessor();
                     org.hl7.fhir.r5.model.Library requirementsLibrary =
@@ -418,6 +913,8 @@ public class CqlProcessor {
         catch (Exception e) {
             result.getErrors().add(new ValidationMessage(ValidationMessage.Source.Publisher, IssueType.EXCEPTION, file.getName(), "CQL Processing failed with exception: "+e.getMessage(), IssueSeverity.ERROR));
         }
+
+        return result;
     }
 
     private FilenameFilter getCqlFilenameFilter() {
@@ -0,0 +1,252 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.r5.model.Library;
+import org.hl7.fhir.utilities.validation.ValidationMessage;
+
+/**
+ * Persistent, content-addressed cache of CqlProcessor translation results.
+ *
+ * Entries are keyed by a hash of the CQL source, the resolved source of every library it (transitively)
+ * includes, the translator options, the cql-translator and tooling versions and the NPM packages in scope,
+ * so an entry is only ever reused for identical inputs. Entries are written atomically, unreadable entries are treated as misses, and the
+ * cache directory can be deleted at any time.
+ */
+public class CqlTranslationCache {
+
+    /**
+     * Bump whenever the entry format changes so stale entries are ignored
+     */
+    private static final String CACHE_FORMAT_VERSION = "1";
+
+    private static final String TRANSLATOR_VERSION = getVersion(CqlTranslator.class);
+
+    private static final String TOOLING_VERSION = getVersion(CqlTranslationCache.class);
+
+    private final File cacheDirectory;
+
+    public CqlTranslationCache(String cacheDirectory) {
+        if (cacheDirectory == null || cacheDirectory.isEmpty()) {
+            throw new IllegalArgumentException("cacheDirectory is required");
+        }
+        this.cacheDirectory = new File(cacheDirectory);
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * The version of the jar the class was loaded from. Development builds (classes directories, snapshots
+     * built without a manifest version) fall back to the time the class was built, so rebuilding the
+     * translator or the tooling invalidates the cache.
+     */
+    public static String getTranslatorVersion() {
+        return TRANSLATOR_VERSION;
+    }
+
+    public static String getToolingVersion() {
+        return TOOLING_VERSION;
+    }
+
+    static String getVersion(Class<?> clazz) {
+        Package classPackage = clazz.getPackage();
+        String version = classPackage != null ? classPackage.getImplementationVersion() : null;
+        if (version != null && !version.endsWith("-SNAPSHOT")) {
+            return version;
+        }
+
+        try {
+            URL classFile = clazz.getResource(clazz.getSimpleName() + ".class");
+            if (classFile != null) {
+                return (version != null ? version : "unknown") + "@" + classFile.openConnection().getLastModified();
+            }
+        }
+        catch (IOException e) {
+            // fall through
+        }
+        return version != null ? version : "unknown";
+    }
+
+    /**
+     * Computes the cache key for a CQL source file
+     * @param source the CQL source
+     * @param dependencyKeys the fingerprints of the resolved sources of the included libraries
+     * @param context anything else the translation depends on (options, namespace, package ids)
+     * @return a hex encoded SHA-256 key
+     */
+    public static String computeKey(byte[] source, List<String> dependencyKeys, String context) {
+        List<String> sortedDependencyKeys = new ArrayList<>(dependencyKeys);
+        Collections.sort(sortedDependencyKeys);
+
+        StringBuilder header = new StringBuilder();
+        header.append(CACHE_FORMAT_VERSION).append('\n');
+        header.append("cql-translator ").append(TRANSLATOR_VERSION).append('\n');
+        header.append("tooling ").append(TOOLING_VERSION).append('\n');
+        header.append(context == null ? "" : context).append('\n');
+        for (String dependencyKey : sortedDependencyKeys) {
+            header.append(dependencyKey).append('\n');
+        }
+
+        byte[] headerBytes = header.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] input = new byte[headerBytes.length + source.length];
+        System.arraycopy(headerBytes, 0, input, 0, headerBytes.length);
+        System.arraycopy(source, 0, input, headerBytes.length, source.length);
+        return DigestUtils.sha256Hex(input);
+    }
+
+    private File getEntryFile(String key) {
+        // Two character fan-out keeps directory listings small on large IGs
+        return new File(new File(cacheDirectory, key.substring(0, 2)), key + ".json");
+    }
+
+    /**
+     * @return the cached translation result for the key, or null if there is no usable entry
+     */
+    public CqlProcessor.CqlSourceFileInformation get(String key) {
+        File entryFile = getEntryFile(key);
+        if (!entryFile.exists()) {
+            return null;
+        }
+
+        try {
+            String content = new String(Files.readAllBytes(entryFile.toPath()), StandardCharsets.UTF_8);
+            return fromJson(JsonParser.parseString(content).getAsJsonObject());
+        }
+        catch (Exception e) {
+            // Corrupt or incompatible entry, discard it and translate again
+            entryFile.delete();
+            return null;
+        }
+    }
+
+    public void put(String key, CqlProcessor.CqlSourceFileInformation info) throws IOException {
+        File entryFile = getEntryFile(key);
+        File entryDirectory = entryFile.getParentFile();
+        if (!entryDirectory.exists() && !entryDirectory.mkdirs() && !entryDirectory.exists()) {
+            throw new IOException("Could not create directory: " + entryDirectory.getAbsolutePath());
+        }
+
+        Path temp = Files.createTempFile(entryDirectory.toPath(), key, ".tmp");
+        try {
+            Files.write(temp, toJson(info).toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static JsonObject toJson(CqlProcessor.CqlSourceFileInformation info) throws IOException {
+        JsonObject result = new JsonObject();
+
+        VersionedIdentifier identifier = info.getIdentifier();
+        if (identifier != null) {
+            JsonObject id = new JsonObject();
+            id.addProperty("system", identifier.getSystem());
+            id.addProperty("id", identifier.getId());
+            id.addProperty("version", identifier.getVersion());
+            result.add("identifier", id);
+        }
+
+        if (info.getElm() != null) {
+            result.addProperty("elm", Base64.getEncoder().encodeToString(info.getElm()));
+        }
+        if (info.getJsonElm() != null) {
+            result.addProperty("jsonElm", Base64.getEncoder().encodeToString(info.getJsonElm()));
+        }
+
+        JsonArray messages = new JsonArray();
+        for (ValidationMessage message : info.getErrors()) {
+            JsonObject m = new JsonObject();
+            m.addProperty("source", message.getSource() != null ? message.getSource().name() : null);
+            m.addProperty("type", message.getType() != null ? message.getType().name() : null);
+            m.addProperty("line", message.getLine());
+            m.addProperty("col", message.getCol());
+            m.addProperty("location", message.getLocation());
+            m.addProperty("message", message.getMessage());
+            m.addProperty("level", message.getLevel() != null ? message.getLevel().name() : null);
+            messages.add(m);
+        }
+        result.add("messages", messages);
+
+        // The FHIR content is stored as an R5 Library so it round-trips through the standard parser
+        Library requirements = new Library();
+        requirements.getRelatedArtifact().addAll(info.getRelatedArtifacts());
+        requirements.getParameter().addAll(info.getParameters());
+        requirements.getDataRequirement().addAll(info.getDataRequirements());
+        result.addProperty("requirements", new org.hl7.fhir.r5.formats.JsonParser().composeString(requirements));
+
+        return result;
+    }
+
+    private static String getString(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static CqlProcessor.CqlSourceFileInformation fromJson(JsonObject json) throws IOException {
+        CqlProcessor.CqlSourceFileInformation info = new CqlProcessor.CqlSourceFileInformation();
+
+        if (json.has("identifier")) {
+            JsonObject id = json.getAsJsonObject("identifier");
+            info.setIdentifier(new VersionedIdentifier()
+                    .withSystem(getString(id, "system"))
+                    .withId(getString(id, "id"))
+                    .withVersion(getString(id, "version")));
+        }
+
+        String elm = getString(json, "elm");
+        if (elm != null) {
+            info.setElm(Base64.getDecoder().decode(elm));
+        }
+        String jsonElm = getString(json, "jsonElm");
+        if (jsonElm != null) {
+            info.setJsonElm(Base64.getDecoder().decode(jsonElm));
+        }
+
+        for (JsonElement element : json.getAsJsonArray("messages")) {
+            JsonObject m = element.getAsJsonObject();
+            String source = getString(m, "source");
+            String type = getString(m, "type");
+            String level = getString(m, "level");
+            info.getErrors().add(new ValidationMessage(
+                    source != null ? ValidationMessage.Source.valueOf(source) : ValidationMessage.Source.Publisher,
+                    type != null ? ValidationMessage.IssueType.valueOf(type) : ValidationMessage.IssueType.UNKNOWN,
+                    m.get("line").getAsInt(), m.get("col").getAsInt(), getString(m, "location"), getString(m, "message"),
+                    level != null ? ValidationMessage.IssueSeverity.valueOf(level) : ValidationMessage.IssueSeverity.NULL));
+        }
+
+        Library requirements = (Library) new org.hl7.fhir.r5.formats.JsonParser().parse(getString(json, "requirements"));
+        info.getRelatedArtifacts().addAll(requirements.getRelatedArtifact());
+        info.getParameters().addAll(requirements.getParameter());
+        info.getDataRequirements().addAll(requirements.getDataRequirement());
+
+        return info;
+    }
+}
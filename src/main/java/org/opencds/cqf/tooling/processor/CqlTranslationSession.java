@@ -0,0 +1,225 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.NamespaceManager;
+import org.cqframework.cql.cql2elm.model.TranslatedLibrary;
+import org.hl7.elm.r1.VersionedIdentifier;
+
+/**
+ * Run-scoped, thread-safe store of the libraries translated during a refresh.
+ *
+ * The CqlProcessor translates each library once, in dependency order, and records the result here.
+ * Consumers (measure refresh and data requirements through CqlProcessor.getLibraryManager, and
+ * ResourceUtils.getElmFromCql) seed their LibraryManager from the session so that includes like
+ * FHIRHelpers resolve to the already translated library rather than being parsed and translated again.
+ *
+ * Libraries are recorded per scope, the folder (binary path) whose LibraryManager resolved them, and
+ * by their full versioned identifier. A LibraryManager is only seeded with the libraries of its own
+ * folder, so a library resolved in one binary path never stands in for a library of the same name
+ * (and possibly a different version) in another.
+ *
+ * A file whose translation results came from the persistent CqlTranslationCache is deferred rather than
+ * translated: it is translated into the session (once) the first time a dependent or a consumer asks for it.
+ */
+public class CqlTranslationSession {
+
+    private static class DeferredFile {
+        private final String scope;
+        private final VersionedIdentifier identifier;
+        private final FutureTask<TranslatedLibrary> translation;
+
+        private DeferredFile(String scope, VersionedIdentifier identifier, Callable<TranslatedLibrary> translation) {
+            this.scope = scope;
+            this.identifier = identifier;
+            this.translation = new FutureTask<>(translation);
+        }
+    }
+
+    /**
+     * Translated libraries by scope, then by library key (see getLibraryKey)
+     */
+    private final Map<String, Map<String, TranslatedLibrary>> scopes = new ConcurrentHashMap<>();
+
+    /**
+     * Translated libraries by the absolute path of the CQL source file they were translated from
+     */
+    private final Map<String, TranslatedLibrary> translatedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Files not yet translated in this session, by the absolute path of the CQL source file
+     */
+    private final Map<String, DeferredFile> deferredFiles = new ConcurrentHashMap<>();
+
+    public static String getLibraryPath(VersionedIdentifier identifier) {
+        return NamespaceManager.getPath(identifier.getSystem(), identifier.getId());
+    }
+
+    public static String getLibraryKey(VersionedIdentifier identifier) {
+        return getLibraryPath(identifier) + "|" + (identifier.getVersion() != null ? identifier.getVersion() : "");
+    }
+
+    /**
+     * @return the scope of the libraries resolved in the given folder
+     */
+    public static String getScope(String folder) {
+        return new File(folder).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    private static String getFileKey(String cqlFilePath) {
+        return new File(cqlFilePath).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    private static String getFileScope(String cqlFilePath) {
+        return getScope(new File(getFileKey(cqlFilePath)).getParent());
+    }
+
+    private Map<String, TranslatedLibrary> getScopeLibraries(String scope) {
+        return scopes.computeIfAbsent(scope, s -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Records the library translated from the given CQL source file, in the scope of the file's folder
+     */
+    public void putFile(String cqlFilePath, TranslatedLibrary translatedLibrary) {
+        translatedFiles.put(getFileKey(cqlFilePath), translatedLibrary);
+        getScopeLibraries(getFileScope(cqlFilePath)).putIfAbsent(getLibraryKey(translatedLibrary.getIdentifier()), translatedLibrary);
+    }
+
+    /**
+     * Registers a file that has not been translated in this session, to be translated when it is first needed
+     * @param identifier the identifier of the library the file declares, if known
+     * @param translation translates the file, recording the result with putFile, and returns it (or null on failure)
+     */
+    public void defer(String cqlFilePath, VersionedIdentifier identifier, Callable<TranslatedLibrary> translation) {
+        String fileKey = getFileKey(cqlFilePath);
+        if (!translatedFiles.containsKey(fileKey)) {
+            deferredFiles.putIfAbsent(fileKey, new DeferredFile(getFileScope(cqlFilePath), identifier, translation));
+        }
+    }
+
+    /**
+     * @return the library translated from the file, translating it first if it was deferred, or null
+     */
+    public TranslatedLibrary getFile(String cqlFilePath) {
+        String fileKey = getFileKey(cqlFilePath);
+        TranslatedLibrary translatedLibrary = translatedFiles.get(fileKey);
+        if (translatedLibrary == null) {
+            DeferredFile deferred = deferredFiles.get(fileKey);
+            if (deferred != null) {
+                translatedLibrary = translate(deferred);
+            }
+        }
+        return translatedLibrary;
+    }
+
+    private static TranslatedLibrary translate(DeferredFile deferred) {
+        // Runs the translation on this thread, or waits for the thread already running it
+        deferred.translation.run();
+        try {
+            return deferred.translation.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Translates the deferred files in the scope that declare the library with the given identifier, so it can
+     * be seeded (see seed). A version of null matches any version.
+     */
+    public void resolve(String scope, VersionedIdentifier identifier) {
+        for (DeferredFile deferred : deferredFiles.values()) {
+            if (deferred.scope.equals(scope) && deferred.identifier != null
+                    && identifier.getId() != null && identifier.getId().equals(deferred.identifier.getId())
+                    && (identifier.getVersion() == null || identifier.getVersion().equals(deferred.identifier.getVersion()))) {
+                translate(deferred);
+            }
+        }
+    }
+
+    public org.hl7.elm.r1.Library getElm(String cqlFilePath) {
+        TranslatedLibrary translatedLibrary = getFile(cqlFilePath);
+        return translatedLibrary != null ? translatedLibrary.getLibrary() : null;
+    }
+
+    /**
+     * @return the library with exactly the given identifier (including version) resolved in the scope, or null
+     */
+    public TranslatedLibrary getTranslatedLibrary(String scope, VersionedIdentifier identifier) {
+        Map<String, TranslatedLibrary> libraries = scopes.get(scope);
+        return libraries != null ? libraries.get(getLibraryKey(identifier)) : null;
+    }
+
+    public boolean hasTranslatedLibrary(String scope, VersionedIdentifier identifier) {
+        return getTranslatedLibrary(scope, identifier) != null;
+    }
+
+    /**
+     * Makes the libraries resolved in the scope available to the given LibraryManager. The manager holds one
+     * library per path, so a path resolved to more than one version in the scope is left for the manager to
+     * resolve itself.
+     */
+    public void seed(LibraryManager libraryManager, String scope) {
+        Map<String, TranslatedLibrary> libraries = scopes.get(scope);
+        if (libraries == null) {
+            return;
+        }
+
+        Map<String, TranslatedLibrary> byPath = new HashMap<>();
+        Set<String> ambiguousPaths = new HashSet<>();
+        for (TranslatedLibrary library : libraries.values()) {
+            String path = getLibraryPath(library.getIdentifier());
+            TranslatedLibrary existing = byPath.putIfAbsent(path, library);
+            if (existing != null && existing != library) {
+                ambiguousPaths.add(path);
+            }
+        }
+
+        Map<String, TranslatedLibrary> managerLibraries = libraryManager.getTranslatedLibraries();
+        for (Map.Entry<String, TranslatedLibrary> entry : byPath.entrySet()) {
+            if (!ambiguousPaths.contains(entry.getKey())) {
+                managerLibraries.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Records every library the given LibraryManager has translated (including indirect dependencies
+     * such as FHIRHelpers) in the scope the manager resolves libraries for, so later translations in
+     * that scope can reuse them
+     */
+    public void harvest(LibraryManager libraryManager, String scope) {
+        Map<String, TranslatedLibrary> libraries = getScopeLibraries(scope);
+        for (TranslatedLibrary library : libraryManager.getTranslatedLibraries().values()) {
+            libraries.putIfAbsent(getLibraryKey(library.getIdentifier()), library);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, TranslatedLibrary> libraries : scopes.values()) {
+            size += libraries.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        scopes.clear();
+        translatedFiles.clear();
+        deferredFiles.clear();
+    }
+}
@@ -0,0 +1,163 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+import org.opencds.cqf.tooling.utilities.LogUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * The value sets and libraries an artifact's primary library (transitively) depends on.
+ *
+ * The closure is resolved once, the first time it is used, and then shared by everything that needs it: the bundle
+ * for the artifact, the bundle files, and (through the DependencyClosureCache) every other artifact with the same
+ * primary library. Resolution failures are kept and reported by each user on its own thread, the same way
+ * ValueSetsProcessor.bundleValueSets and LibraryProcessor.bundleLibraryDependencies report them.
+ */
+public class DependencyClosure {
+    private static final Logger logger = LoggerFactory.getLogger(DependencyClosure.class);
+
+    private final String librarySourcePath;
+    private final String cqlLibrarySourcePath;
+    private final String igPath;
+    private final FhirContext fhirContext;
+    private final Encoding encoding;
+    private final boolean includeTerminology;
+    private final boolean includeDependencies;
+    private final boolean includeVersion;
+    private final CqlTranslationSession translationSession;
+
+    private boolean resolved;
+    private Map<String, IBaseResource> valueSets = Collections.emptyMap();
+    private Exception valueSetsError;
+    private Map<String, IBaseResource> libraries = Collections.emptyMap();
+    private Exception librariesError;
+
+    public DependencyClosure(String librarySourcePath, String cqlLibrarySourcePath, String igPath, FhirContext fhirContext, Encoding encoding,
+            boolean includeTerminology, boolean includeDependencies, boolean includeVersion) {
+        this(librarySourcePath, cqlLibrarySourcePath, igPath, fhirContext, encoding, includeTerminology, includeDependencies, includeVersion, null);
+    }
+
+    /**
+     * @param translationSession the libraries translated in this run, used to resolve the ELM of the CQL (may be null)
+     */
+    public DependencyClosure(String librarySourcePath, String cqlLibrarySourcePath, String igPath, FhirContext fhirContext, Encoding encoding,
+            boolean includeTerminology, boolean includeDependencies, boolean includeVersion, CqlTranslationSession translationSession) {
+        this.librarySourcePath = librarySourcePath;
+        this.cqlLibrarySourcePath = cqlLibrarySourcePath;
+        this.igPath = igPath;
+        this.fhirContext = fhirContext;
+        this.encoding = encoding;
+        this.includeTerminology = includeTerminology;
+        this.includeDependencies = includeDependencies;
+        this.includeVersion = includeVersion;
+        this.translationSession = translationSession;
+    }
+
+    public static String getKey(String librarySourcePath, String cqlLibrarySourcePath, String igPath, FhirContext fhirContext, Encoding encoding,
+            boolean includeTerminology, boolean includeDependencies, boolean includeVersion) {
+        return String.join("|", librarySourcePath, cqlLibrarySourcePath, igPath, fhirContext.getVersion().getVersion().name(), String.valueOf(encoding),
+                String.valueOf(includeTerminology), String.valueOf(includeDependencies), String.valueOf(includeVersion));
+    }
+
+    public String getLibrarySourcePath() {
+        return librarySourcePath;
+    }
+
+    public String getCqlLibrarySourcePath() {
+        return cqlLibrarySourcePath;
+    }
+
+    /**
+     * Resolves the value set and library dependencies, unless they have already been resolved
+     */
+    public synchronized DependencyClosure resolve() {
+        if (resolved) {
+            return this;
+        }
+
+        if (includeTerminology) {
+            try {
+                valueSets = Collections.unmodifiableMap(new LinkedHashMap<>(
+                        ResourceUtils.getDepValueSetResources(cqlLibrarySourcePath, igPath, fhirContext, includeDependencies, includeVersion,
+                                translationSession)));
+            } catch (Exception e) {
+                valueSetsError = e;
+            }
+        }
+
+        if (includeDependencies) {
+            try {
+                // The dependency paths are resolved transitively, so this is the whole closure
+                libraries = Collections.unmodifiableMap(new LinkedHashMap<>(
+                        ResourceUtils.getDepLibraryResources(librarySourcePath, fhirContext, encoding, includeVersion, logger)));
+            } catch (Exception e) {
+                librariesError = e;
+            }
+        }
+
+        resolved = true;
+        return this;
+    }
+
+    /**
+     * @return the value sets by url, empty if terminology is not included or could not be resolved
+     */
+    public synchronized Map<String, IBaseResource> getValueSets() {
+        return resolve().valueSets;
+    }
+
+    /**
+     * @return the dependency libraries by id, empty if dependencies are not included or could not be resolved
+     */
+    public synchronized Map<String, IBaseResource> getLibraries() {
+        return resolve().libraries;
+    }
+
+    /**
+     * Adds the value sets to the given resources
+     * @return false if the value sets could not be resolved (e.g. some are missing)
+     */
+    public boolean addValueSets(Map<String, IBaseResource> resources) {
+        Exception error;
+        synchronized (this) {
+            resolve();
+            error = valueSetsError;
+        }
+        if (error != null) {
+            LogUtils.putException(cqlLibrarySourcePath, error.getMessage());
+            return false;
+        }
+        for (IBaseResource resource : getValueSets().values()) {
+            resources.putIfAbsent(resource.getIdElement().getIdPart(), resource);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the dependency libraries to the given resources
+     * @return false if the libraries could not be resolved
+     */
+    public boolean addLibraries(Map<String, IBaseResource> resources) {
+        Exception error;
+        synchronized (this) {
+            resolve();
+            error = librariesError;
+        }
+        if (error != null) {
+            LogUtils.putException(librarySourcePath, error);
+            return false;
+        }
+        for (IBaseResource resource : getLibraries().values()) {
+            resources.putIfAbsent(resource.getIdElement().getIdPart(), resource);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * The dependency closures of the primary libraries bundled in a run, so artifacts that share a primary library
+ * resolve its dependencies only once. Closures are resolved outside of the map, so artifacts with different
+ * libraries do not wait on each other.
+ */
+public class DependencyClosureCache {
+    private final Map<String, DependencyClosure> closures = new ConcurrentHashMap<>();
+    private final CqlTranslationSession translationSession;
+
+    public DependencyClosureCache() {
+        this(null);
+    }
+
+    /**
+     * @param translationSession the libraries translated in this run, used to resolve the ELM of the CQL (may be null)
+     */
+    public DependencyClosureCache(CqlTranslationSession translationSession) {
+        this.translationSession = translationSession;
+    }
+
+    public DependencyClosure get(String librarySourcePath, String cqlLibrarySourcePath, String igPath, FhirContext fhirContext, Encoding encoding,
+            boolean includeTerminology, boolean includeDependencies, boolean includeVersion) {
+        String key = DependencyClosure.getKey(librarySourcePath, cqlLibrarySourcePath, igPath, fhirContext, encoding, includeTerminology,
+                includeDependencies, includeVersion);
+        return closures.computeIfAbsent(key, k -> new DependencyClosure(librarySourcePath, cqlLibrarySourcePath, igPath, fhirContext, encoding,
+                includeTerminology, includeDependencies, includeVersion, translationSession)).resolve();
+    }
+
+    public int size() {
+        return closures.size();
+    }
+
+    public void clear() {
+        closures.clear();
+    }
+}
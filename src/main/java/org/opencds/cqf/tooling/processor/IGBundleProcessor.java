@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.opencds.cqf.tooling.measure.MeasureProcessor;
+import org.opencds.cqf.tooling.utilities.LogUtils;
+import org.opencds.cqf.tooling.utilities.ThreadPools;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -12,20 +14,57 @@ public class IGBundleProcessor {
     public static final String bundleFilesPathElement = "files/";  
     MeasureProcessor measureProcessor;
     PlanDefinitionProcessor planDefinitionProcessor;  
+    private int maxBundlingThreads = ThreadPools.DEFAULT_MAX_THREADS;
+    private CqlTranslationSession translationSession;
 
     public IGBundleProcessor(MeasureProcessor measureProcessor, PlanDefinitionProcessor planDefinitionProcessor) {
         this.measureProcessor = measureProcessor;
         this.planDefinitionProcessor = planDefinitionProcessor;
     }
 
+    /**
+     * Makes bundling incremental: artifacts whose bundle inputs have not changed since the last run are not bundled again
+     */
+    public void setRefreshManifest(RefreshManifest refreshManifest) {
+        measureProcessor.setRefreshManifest(refreshManifest);
+        planDefinitionProcessor.setRefreshManifest(refreshManifest);
+    }
+
+    /**
+     * Resolves the ELM of the bundled libraries from the libraries translated in this run, rather than translating again
+     */
+    public void setTranslationSession(CqlTranslationSession translationSession) {
+        this.translationSession = translationSession;
+    }
+
+    public int getMaxBundlingThreads() {
+        return maxBundlingThreads;
+    }
+
+    /**
+     * Sets the maximum number of measures and plan definitions bundled concurrently
+     */
+    public void setMaxBundlingThreads(int maxBundlingThreads) {
+        if (maxBundlingThreads < 1) {
+            throw new IllegalArgumentException("maxBundlingThreads must be at least 1");
+        }
+        this.maxBundlingThreads = maxBundlingThreads;
+    }
+
     public void bundleIg(ArrayList<String> refreshedLibraryNames, String igPath, List<String> binaryPaths, Encoding encoding, Boolean includeELM,
     Boolean includeDependencies, Boolean includeTerminology, Boolean includePatientScenarios, Boolean versioned,
     FhirContext fhirContext, String fhirUri) {
 
-        measureProcessor.bundleMeasures(refreshedLibraryNames, igPath, binaryPaths, includeDependencies, includeTerminology, includePatientScenarios, versioned,
+        // Measures and plan definitions are bundled independently of each other, so share one pipeline
+        BundlingPipeline pipeline = new BundlingPipeline(maxBundlingThreads, translationSession);
+        measureProcessor.submitMeasureBundles(pipeline, igPath, binaryPaths, includeDependencies, includeTerminology, includePatientScenarios, versioned,
         fhirContext, fhirUri, encoding);
 
-        planDefinitionProcessor.bundlePlanDefinitions(refreshedLibraryNames, igPath, binaryPaths, includeDependencies, includeTerminology,
+        planDefinitionProcessor.submitPlanDefinitionBundles(pipeline, igPath, binaryPaths, includeDependencies, includeTerminology,
         includePatientScenarios, versioned, fhirContext, fhirUri, encoding);
+
+        List<ArtifactBundleResult> results = pipeline.await();
+        LogUtils.info(BundlingPipeline.getSummary(MeasureProcessor.MeasureArtifactType, results));
+        LogUtils.info(BundlingPipeline.getSummary(PlanDefinitionProcessor.PlanDefinitionArtifactType, results));
     }
 }
\ No newline at end of file
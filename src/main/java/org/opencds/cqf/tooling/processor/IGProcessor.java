@@ -89,8 +89,13 @@ public class IGProcessor extends BaseProcessor {
         //Use case 3
         //package everything
         LogUtils.info("IGProcessor.publishIG - bundleIg");
+        igBundleProcessor.setRefreshManifest(refreshManifest);
+        igBundleProcessor.setTranslationSession(getCqlProcessor().getTranslationSession());
         igBundleProcessor.bundleIg(refreshedResourcesNames, rootDir, getBinaryPaths(), encoding, includeELM, includeDependencies, includeTerminology, includePatientScenarios,
         versioned, fhirContext, fhirUri);
+        saveRefreshManifest();
+        LogUtils.info(IOUtils.getResourceCache().getStatsSummary());
+        LogUtils.info(IOUtils.getTranslatorCache().getStatsSummary());
         //test everything
         //IGTestProcessor.testIg(IGTestParameters);
         //Publish?
@@ -98,6 +103,7 @@ public class IGProcessor extends BaseProcessor {
 
     public ArrayList<String> refreshedResourcesNames = new ArrayList<String>();
     public void refreshIG(RefreshIGParameters params) {
+        setTranslationCacheEnabled(!Boolean.TRUE.equals(params.noTranslationCache));
         if (params.ini != null) {
             initializeFromIni(params.ini);
         }
@@ -134,6 +140,16 @@ public class IGProcessor extends BaseProcessor {
 
         IGProcessor.ensure(rootDir, includePatientScenarios, includeTerminology, IOUtils.resourceDirectories);
 
+        if (Boolean.TRUE.equals(params.incremental)) {
+            if (Strings.isNullOrEmpty(libraryOutputPath) && Strings.isNullOrEmpty(measureOutputPath)) {
+                refreshManifest = new RefreshManifest(FilenameUtils.concat(rootDir, IGProcessor.refreshManifestPathElement),
+                        getRefreshManifestContext(params, fhirContext));
+            }
+            else {
+                LogUtils.info("Incremental refresh is not supported with library or measure output paths, all artifacts will be refreshed.");
+            }
+        }
+
         List<String> refreshedLibraryNames;
         if (Strings.isNullOrEmpty(libraryOutputPath)) {
             refreshedLibraryNames = libraryProcessor.refreshIgLibraryContent(this, encoding, versioned, fhirContext);
@@ -152,12 +168,35 @@ public class IGProcessor extends BaseProcessor {
 
         if (refreshedResourcesNames.isEmpty()) {
             LogUtils.info("No resources successfully refreshed.");
+            saveRefreshManifest();
             return;
         }
 
         if (includePatientScenarios) {
             TestCaseProcessor testCaseProcessor = new TestCaseProcessor();
-            testCaseProcessor.refreshTestCases(FilenameUtils.concat(rootDir, IGProcessor.testCasePathElement), encoding, fhirContext, refreshedResourcesNames);
+            testCaseProcessor.refreshTestCases(FilenameUtils.concat(rootDir, IGProcessor.testCasePathElement), encoding, fhirContext, refreshedResourcesNames, refreshManifest);
+        }
+        saveRefreshManifest();
+    }
+
+    private static String getRefreshManifestContext(RefreshIGParameters params, FhirContext fhirContext) {
+        // Output of another FHIR version, translator or tooling build is never up to date
+        return String.format("fhirVersion=%s|cql-translator=%s|tooling=%s|encoding=%s|includeELM=%s|includeDependencies=%s|includeTerminology=%s|includePatientScenarios=%s|versioned=%s",
+                fhirContext.getVersion().getVersion().getFhirVersionString(), CqlTranslationCache.getTranslatorVersion(),
+                CqlTranslationCache.getToolingVersion(), params.outputEncoding, params.includeELM, params.includeDependencies,
+                params.includeTerminology, params.includePatientScenarios, params.versioned);
+    }
+
+    private void saveRefreshManifest() {
+        if (refreshManifest == null) {
+            return;
+        }
+
+        try {
+            refreshManifest.save();
+            LogUtils.info(refreshManifest.getSummary());
+        } catch (IOException e) {
+            LogUtils.putException("ig", e);
         }
     }
 
@@ -193,6 +232,8 @@ public class IGProcessor extends BaseProcessor {
     public static final String valuesetsPathElement = "input/vocabulary/valueset/";
     public static final String testCasePathElement = "input/tests/";
     public static final String devicePathElement = "input/resources/device/";
+    public static final String cqlTranslationCachePathElement = "input-cache/cql-translation/";
+    public static final String refreshManifestPathElement = "input-cache/refresh-manifest.json";
     
     public static void ensure(String igPath, Boolean includePatientScenarios, Boolean includeTerminology, ArrayList<String> resourcePaths) {                
         File directory = new File(getBundlesPath(igPath));
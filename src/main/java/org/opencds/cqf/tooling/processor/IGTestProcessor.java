@@ -15,13 +15,14 @@ import org.opencds.cqf.tooling.parameter.TestIGParameters;
 import org.opencds.cqf.tooling.utilities.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 
 public class IGTestProcessor extends BaseProcessor {
 
-    public class TestCaseResultSummaryComparator implements Comparator<TestCaseResultSummary> {
+    public static class TestCaseResultSummaryComparator implements Comparator<TestCaseResultSummary> {
         public int compare(TestCaseResultSummary o1, TestCaseResultSummary o2) {
             int value1 = o1.resourceTypeGroup.compareTo(o2.resourceTypeGroup);
             if (value1 == 0) {
@@ -36,7 +37,7 @@ public class IGTestProcessor extends BaseProcessor {
         }
     }
 
-    public class TestCaseResultSummary {
+    public static class TestCaseResultSummary {
         public TestCaseResultSummary(String resourceTypeGroup, String testArtifactName, String testCaseID) {
             this.resourceTypeGroup = resourceTypeGroup;
             this.testArtifactName = testArtifactName;
@@ -63,6 +64,14 @@ public class IGTestProcessor extends BaseProcessor {
         public String getMessage() { return this.message; }
         public void setMessage(String value) { this.message = value; }
 
+        private boolean timedOut;
+        public boolean getTimedOut() { return this.timedOut; }
+        public void setTimedOut(boolean value) { this.timedOut = value; }
+
+        private long elapsedMillis;
+        public long getElapsedMillis() { return this.elapsedMillis; }
+        public void setElapsedMillis(long value) { this.elapsedMillis = value; }
+
         @Override
         public String toString() {
             StringBuilder builder = new StringBuilder();
@@ -82,7 +91,7 @@ public class IGTestProcessor extends BaseProcessor {
 
         String path = testServerUri + "/metadata";
         try {
-            String response = HttpClientUtils.get(path);
+            String response = FhirServerClient.getDefault().get(path, fhirContext);
 
             if (response != null && !response.isEmpty()) {
                 IParser parser = fhirContext.newJsonParser();
@@ -166,7 +175,9 @@ public class IGTestProcessor extends BaseProcessor {
             initializeFromIg(params.rootDir, params.igPath, fhirContext.getVersion().toString());
         }
 
-        CqfmSoftwareSystem testTargetSoftwareSystem =  getCqfRulerSoftwareSystem(params.fhirServerUri);
+        // Without a FHIR server, measures are evaluated locally and there is no test target to stamp the content with
+        String fhirServerUri = params.fhirServerUri == null || params.fhirServerUri.trim().isEmpty() ? null : params.fhirServerUri;
+        CqfmSoftwareSystem testTargetSoftwareSystem = fhirServerUri == null ? null : getCqfRulerSoftwareSystem(fhirServerUri);
 
         System.out.println("Running IG test cases...");
 
@@ -180,7 +191,12 @@ public class IGTestProcessor extends BaseProcessor {
         TestCaseProcessor testCaseProcessor = new TestCaseProcessor();
         testCaseProcessor.refreshTestCases(params.testCasesPath, IOUtils.Encoding.JSON, fhirContext);
 
-        List<TestCaseResultSummary> TestResults = new ArrayList<TestCaseResultSummary>();
+        int maxThreads = params.maxThreads == null ? ThreadPools.DEFAULT_MAX_THREADS : params.maxThreads;
+        long testTimeoutSeconds = params.testTimeoutSeconds == null ? 0 : params.testTimeoutSeconds;
+        IGTestRunner testRunner = new IGTestRunner(maxThreads, testTimeoutSeconds);
+
+        // Content bundles are stamped only once all test cases have run, since the test cases read them concurrently
+        List<Map.Entry<String, IBaseResource>> testedContentBundles = new ArrayList<Map.Entry<String, IBaseResource>>();
 
         File[] resourceTypeTestGroups = testCasesDirectory.listFiles(file -> file.isDirectory());
         //TODO: How can we validate the set of directories here - that they're actually FHIR resources - and message when they're not. Really it doesn't matter, it can be any grouping so long as it has a corresponding path in /bundles.
@@ -193,7 +209,6 @@ public class IGTestProcessor extends BaseProcessor {
 
             for (File testArtifact : testArtifactNames) {
                 System.out.println(String.format("  Processing test cases for %s: %s", group.getName(), testArtifact.getName()));
-                Boolean allTestArtifactTestsPassed = true;
 
                 // Get content bundle
                 Map.Entry<String, IBaseResource> testArtifactContentBundleMap = getContentBundleForTestArtifact(group.getName(), testArtifact.getName());
@@ -210,11 +225,12 @@ public class IGTestProcessor extends BaseProcessor {
 
                 for (Map.Entry<String, IBaseResource> testCaseBundleMapEntry : testCasesBundles) {
                     IBaseResource testCaseBundle = testCaseBundleMapEntry.getValue();
-                    TestCaseResultSummary testCaseResult  = new TestCaseResultSummary(group.getName(), testArtifact.getName(),
-                        testCaseBundle.getIdElement().toString());
-                    try {
+                    testRunner.submit(group.getName(), testArtifact.getName(), testCaseBundle.getIdElement().toString(), () -> {
                         System.out.println(String.format("      Starting processing of test case '%s' for %s: %s", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName()));
-                        Parameters testResults = testProcessor.executeTest(testCaseBundle, testArtifactContentBundleMap.getValue(), params.fhirServerUri);
+                        if (testProcessor == null) {
+                            throw new IllegalArgumentException(String.format("No test processor implemented for resource type: %s", group.getName()));
+                        }
+                        Parameters testResults = testProcessor.executeTest(testCaseBundle, testArtifactContentBundleMap.getValue(), fhirServerUri);
 
                         Boolean testPassed = false;
                         for (ParametersParameter param : testResults.getParameter()) {
@@ -223,41 +239,42 @@ public class IGTestProcessor extends BaseProcessor {
                                 break;
                             }
                         }
-                        testCaseResult.setTestPassed(testPassed);
-                        System.out.println(String.format("      Done processing test case '%s' for %s: %s", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName()));
-                    } catch (Exception ex) {
-                        testCaseResult.setTestPassed(false);
-                        testCaseResult.setMessage(ex.getMessage());
-                        System.out.println(String.format("      Error: Test case '%s' for %s: %s failed with message: %s", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName(), ex.getMessage()));
-                    }
-                    TestResults.add(testCaseResult);
+                        return testPassed;
+                    });
                 }
 
-                System.out.println(String.format("  Done processing all test cases for %s: %s", group.getName(), testArtifact.getName()));
+                testedContentBundles.add(testArtifactContentBundleMap);
+                System.out.println(String.format("  Submitted all test cases for %s: %s", group.getName(), testArtifact.getName()));
+            }
 
-                if (allTestArtifactTestsPassed) {
-                    List<CqfmSoftwareSystem> softwareSystems = new ArrayList<CqfmSoftwareSystem>() {
-                        {
-                            add(testTargetSoftwareSystem);
-                        }
-                    };
-
-                    if ((fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) || (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4)) {
-                        if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
-                            // Stamp the testContentBundle artifacts
-                            BundleUtils.stampDstu3BundleEntriesWithSoftwareSystems((org.hl7.fhir.dstu3.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
-                        } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
-                            BundleUtils.stampR4BundleEntriesWithSoftwareSystems((org.hl7.fhir.r4.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
-                        }
+            System.out.println(String.format("Done processing %s test cases", group.getName()));
+        }
+
+        System.out.println(String.format("Waiting for test cases to complete (%d threads%s)...", maxThreads,
+            testTimeoutSeconds > 0 ? String.format(", %d second timeout per test case", testTimeoutSeconds) : ""));
+        List<TestCaseResultSummary> TestResults = testRunner.await();
 
-                        String bundleFilePath = testArtifactContentBundleMap.getKey();
-                        IBaseResource bundle = testArtifactContentBundleMap.getValue();
-                        IOUtils.writeResource(bundle, bundleFilePath, IOUtils.getEncoding(bundleFilePath), fhirContext);
+        if (testTargetSoftwareSystem != null) {
+            List<CqfmSoftwareSystem> softwareSystems = new ArrayList<CqfmSoftwareSystem>() {
+                {
+                    add(testTargetSoftwareSystem);
+                }
+            };
+
+            for (Map.Entry<String, IBaseResource> testArtifactContentBundleMap : testedContentBundles) {
+                if ((fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) || (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4)) {
+                    if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
+                        // Stamp the testContentBundle artifacts
+                        BundleUtils.stampDstu3BundleEntriesWithSoftwareSystems((org.hl7.fhir.dstu3.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
+                    } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
+                        BundleUtils.stampR4BundleEntriesWithSoftwareSystems((org.hl7.fhir.r4.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
                     }
+
+                    String bundleFilePath = testArtifactContentBundleMap.getKey();
+                    IBaseResource bundle = testArtifactContentBundleMap.getValue();
+                    IOUtils.writeResource(bundle, bundleFilePath, IOUtils.getEncoding(bundleFilePath), fhirContext);
                 }
             }
-
-            System.out.println(String.format("Done processing %s test cases", group.getName()));
         }
 
         TestCaseResultSummaryComparator comparator = new TestCaseResultSummaryComparator();
@@ -276,6 +293,24 @@ public class IGTestProcessor extends BaseProcessor {
 
         System.out.println(String.format("%d tests failed", failedTests.size()));
         System.out.println(String.format("%d tests passed", passedTests.size()));
+        long timedOutTests = TestResults.stream().filter(TestCaseResultSummary::getTimedOut).count();
+        if (timedOutTests > 0) {
+            System.out.println(String.format("%d tests timed out", timedOutTests));
+        }
+        System.out.println(String.format("Ran %d tests in %.1f s", TestResults.size(), testRunner.getElapsedMillis() / 1000.0));
+
+        if (params.resultsPath != null && !params.resultsPath.isEmpty()) {
+            File junitFile = new File(params.resultsPath, "test-results.xml");
+            File jsonFile = new File(params.resultsPath, "test-results.json");
+            try {
+                IGTestRunner.writeJUnitXml(TestResults, junitFile);
+                IGTestRunner.writeJson(TestResults, testRunner.getElapsedMillis(), jsonFile);
+                System.out.println(String.format("Test results written to %s and %s", junitFile.getAbsolutePath(), jsonFile.getAbsolutePath()));
+            } catch (IOException e) {
+                LogUtils.putException("Error writing test results to " + params.resultsPath, e);
+                LogUtils.warn(params.resultsPath);
+            }
+        }
     }
 
     private Map.Entry<String, IBaseResource> getContentBundleForTestArtifact(String groupName, String testArtifactName) {
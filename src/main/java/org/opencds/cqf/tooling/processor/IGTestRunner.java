@@ -0,0 +1,281 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.opencds.cqf.tooling.processor.IGTestProcessor.TestCaseResultSummary;
+import org.opencds.cqf.tooling.utilities.ThreadPools;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Runs IG test cases on a bounded pool of threads, with an optional timeout per test case.
+ *
+ * Every test case is run independently: an exception or timeout fails that test case only. The outcome and elapsed
+ * time of each test case are recorded in its TestCaseResultSummary, and once all test cases have completed the
+ * results can be written as JUnit XML (one test suite per test artifact) and as JSON.
+ */
+public class IGTestRunner {
+
+    @FunctionalInterface
+    public interface TestCase {
+        /**
+         * @return whether the test case passed
+         */
+        boolean execute() throws Exception;
+    }
+
+    private final long timeoutSeconds;
+    private final ExecutorService executor;
+    private final ExecutorService timedExecutor;
+    private final List<TestCaseResultSummary> results = new ArrayList<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private long start;
+    private long elapsedMillis;
+
+    /**
+     * @param maxThreads the maximum number of test cases run concurrently
+     * @param timeoutSeconds the maximum time a test case may run, or 0 for no limit
+     */
+    public IGTestRunner(int maxThreads, long timeoutSeconds) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be at least 1");
+        }
+        if (timeoutSeconds < 0) {
+            throw new IllegalArgumentException("timeoutSeconds can not be negative");
+        }
+
+        this.timeoutSeconds = timeoutSeconds;
+        this.executor = ThreadPools.newDaemonPool("test-runner", maxThreads);
+        // A test case that times out is interrupted, but may not stop; it must not hold one of the runner threads
+        this.timedExecutor = timeoutSeconds > 0 ? ThreadPools.newCachedDaemonPool("test-case") : null;
+    }
+
+    public synchronized TestCaseResultSummary submit(String resourceTypeGroup, String testArtifactName, String testCaseID, TestCase testCase) {
+        if (results.isEmpty()) {
+            start = System.currentTimeMillis();
+        }
+
+        TestCaseResultSummary result = new TestCaseResultSummary(resourceTypeGroup, testArtifactName, testCaseID);
+        results.add(result);
+        futures.add(executor.submit(() -> {
+            long testStart = System.currentTimeMillis();
+            try {
+                result.setTestPassed(timedExecutor == null ? testCase.execute() : executeWithTimeout(testCase));
+            } catch (TimeoutException e) {
+                result.setTestPassed(false);
+                result.setTimedOut(true);
+                result.setMessage(String.format("Timed out after %d seconds", timeoutSeconds));
+            } catch (Exception e) {
+                result.setTestPassed(false);
+                result.setMessage(e.getMessage() == null ? e.toString() : e.getMessage());
+            } finally {
+                result.setElapsedMillis(System.currentTimeMillis() - testStart);
+            }
+
+            System.out.println(String.format("      %s test case '%s' for %s: %s (%d ms)", result.getTestPassed() ? "Passed" : "Failed",
+                    testCaseID, resourceTypeGroup, testArtifactName, result.getElapsedMillis()));
+        }));
+        return result;
+    }
+
+    private boolean executeWithTimeout(TestCase testCase) throws Exception {
+        Callable<Boolean> task = testCase::execute;
+        Future<Boolean> future = timedExecutor.submit(task);
+        try {
+            return future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for every submitted test case to complete and shuts the runner down
+     * @return the results, in the order the test cases were submitted
+     */
+    public synchronized List<TestCaseResultSummary> await() {
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    // The task catches exceptions itself, so this is an Error
+                    TestCaseResultSummary result = results.get(i);
+                    result.setTestPassed(false);
+                    result.setMessage(String.valueOf(e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (TestCaseResultSummary result : results) {
+                if (result.getTestPassed() == null) {
+                    result.setTestPassed(false);
+                    result.setMessage("Testing was interrupted");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (timedExecutor != null) {
+                timedExecutor.shutdownNow();
+            }
+            elapsedMillis = results.isEmpty() ? 0 : System.currentTimeMillis() - start;
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * @return the wall clock time from the first test case submitted until all test cases completed
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    private static boolean isError(TestCaseResultSummary result) {
+        // Test cases that ran to completion but did not match the expected results have no message
+        return !Boolean.TRUE.equals(result.getTestPassed()) && (result.getTimedOut() || result.getMessage() != null);
+    }
+
+    private static boolean isFailure(TestCaseResultSummary result) {
+        return !Boolean.TRUE.equals(result.getTestPassed()) && !isError(result);
+    }
+
+    private static String formatSeconds(long millis) {
+        return String.format("%.3f", millis / 1000.0);
+    }
+
+    /**
+     * Writes the results in the JUnit XML format, with a test suite per test artifact
+     */
+    public static void writeJUnitXml(List<TestCaseResultSummary> results, File file) throws IOException {
+        Map<String, List<TestCaseResultSummary>> suites = new LinkedHashMap<>();
+        List<TestCaseResultSummary> sortedResults = new ArrayList<>(results);
+        sortedResults.sort(new IGTestProcessor.TestCaseResultSummaryComparator());
+        for (TestCaseResultSummary result : sortedResults) {
+            suites.computeIfAbsent(result.getResourceTypeGroup() + "." + result.getTestArtifactName(), k -> new ArrayList<>()).add(result);
+        }
+
+        ensureParentDirectory(file);
+        try (OutputStream output = Files.newOutputStream(file.toPath())) {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, StandardCharsets.UTF_8.name());
+            writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("testsuites");
+            writeCounts(writer, sortedResults);
+            writer.writeCharacters("\n");
+
+            for (Map.Entry<String, List<TestCaseResultSummary>> suite : suites.entrySet()) {
+                writer.writeCharacters("  ");
+                writer.writeStartElement("testsuite");
+                writer.writeAttribute("name", suite.getKey());
+                writeCounts(writer, suite.getValue());
+                writer.writeCharacters("\n");
+
+                for (TestCaseResultSummary result : suite.getValue()) {
+                    writer.writeCharacters("    ");
+                    writer.writeStartElement("testcase");
+                    writer.writeAttribute("classname", suite.getKey());
+                    writer.writeAttribute("name", result.getTestCaseID());
+                    writer.writeAttribute("time", formatSeconds(result.getElapsedMillis()));
+                    if (isError(result) || isFailure(result)) {
+                        writer.writeStartElement(isError(result) ? "error" : "failure");
+                        writer.writeAttribute("message", result.getMessage() == null
+                                ? "The actual results did not match the expected results" : result.getMessage());
+                        writer.writeEndElement();
+                    }
+                    writer.writeEndElement();
+                    writer.writeCharacters("\n");
+                }
+
+                writer.writeCharacters("  ");
+                writer.writeEndElement();
+                writer.writeCharacters("\n");
+            }
+
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error writing JUnit results to " + file.getAbsolutePath(), e);
+        }
+    }
+
+    private static void writeCounts(XMLStreamWriter writer, List<TestCaseResultSummary> results) throws XMLStreamException {
+        writer.writeAttribute("tests", String.valueOf(results.size()));
+        writer.writeAttribute("failures", String.valueOf(results.stream().filter(IGTestRunner::isFailure).count()));
+        writer.writeAttribute("errors", String.valueOf(results.stream().filter(IGTestRunner::isError).count()));
+        writer.writeAttribute("time", formatSeconds(results.stream().mapToLong(TestCaseResultSummary::getElapsedMillis).sum()));
+    }
+
+    /**
+     * Writes the results, and the totals, as JSON
+     */
+    public static void writeJson(List<TestCaseResultSummary> results, long elapsedMillis, File file) throws IOException {
+        List<TestCaseResultSummary> sortedResults = new ArrayList<>(results);
+        sortedResults.sort(new IGTestProcessor.TestCaseResultSummaryComparator());
+
+        JsonObject summary = new JsonObject();
+        summary.addProperty("total", sortedResults.size());
+        summary.addProperty("passed", sortedResults.stream().filter(r -> Boolean.TRUE.equals(r.getTestPassed())).count());
+        summary.addProperty("failed", sortedResults.stream().filter(r -> !Boolean.TRUE.equals(r.getTestPassed())).count());
+        summary.addProperty("timedOut", sortedResults.stream().filter(TestCaseResultSummary::getTimedOut).count());
+        summary.addProperty("elapsedMillis", elapsedMillis);
+
+        JsonArray testCases = new JsonArray();
+        for (TestCaseResultSummary result : sortedResults) {
+            JsonObject testCase = new JsonObject();
+            testCase.addProperty("resourceTypeGroup", result.getResourceTypeGroup());
+            testCase.addProperty("testArtifactName", result.getTestArtifactName());
+            testCase.addProperty("testCaseID", result.getTestCaseID());
+            testCase.addProperty("passed", Boolean.TRUE.equals(result.getTestPassed()));
+            testCase.addProperty("timedOut", result.getTimedOut());
+            testCase.addProperty("elapsedMillis", result.getElapsedMillis());
+            if (result.getMessage() != null) {
+                testCase.addProperty("message", result.getMessage());
+            }
+            testCases.add(testCase);
+        }
+
+        JsonObject root = new JsonObject();
+        root.add("summary", summary);
+        root.add("testCases", testCases);
+
+        ensureParentDirectory(file);
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+        }
+    }
+
+    private static void ensureParentDirectory(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+    }
+}
@@ -23,123 +23,163 @@ public class PlanDefinitionProcessor {
     private CDSHooksProcessor cdsHooksProcessor;
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private RefreshManifest refreshManifest;
+
     public PlanDefinitionProcessor(LibraryProcessor libraryProcessor, CDSHooksProcessor cdsHooksProcessor) {
         this.libraryProcessor = libraryProcessor;
         this.cdsHooksProcessor = cdsHooksProcessor;
     }
 
+    public RefreshManifest getRefreshManifest() {
+        return refreshManifest;
+    }
+
+    public void setRefreshManifest(RefreshManifest refreshManifest) {
+        this.refreshManifest = refreshManifest;
+    }
+
+    public static final String PlanDefinitionArtifactType = "PlanDefinition";
+
     public void bundlePlanDefinitions(ArrayList<String> refreshedLibraryNames, String igPath, List<String> binaryPaths, Boolean includeDependencies,
                                              Boolean includeTerminology, Boolean includePatientScenarios, Boolean includeVersion,
                                              FhirContext fhirContext, String fhirUri, Encoding encoding) {
+        BundlingPipeline pipeline = new BundlingPipeline(ThreadPools.DEFAULT_MAX_THREADS);
+        submitPlanDefinitionBundles(pipeline, igPath, binaryPaths, includeDependencies, includeTerminology, includePatientScenarios,
+                includeVersion, fhirContext, fhirUri, encoding);
+        LogUtils.info(BundlingPipeline.getSummary(PlanDefinitionArtifactType, pipeline.await()));
+    }
 
+    /*
+    Submits a task to bundle each plan definition in the IG to the given pipeline
+     */
+    public void submitPlanDefinitionBundles(BundlingPipeline pipeline, String igPath, List<String> binaryPaths, Boolean includeDependencies,
+                                             Boolean includeTerminology, Boolean includePatientScenarios, Boolean includeVersion,
+                                             FhirContext fhirContext, String fhirUri, Encoding encoding) {
         Map<String, IBaseResource> planDefinitions = IOUtils.getPlanDefinitions(fhirContext);
+        Map<String, String> planDefinitionPathMap = IOUtils.getPlanDefinitionPathMap(fhirContext);
 
-        List<String> bundledPlanDefinitions = new ArrayList<String>();
         for (Map.Entry<String, IBaseResource> planDefinitionEntry : planDefinitions.entrySet()) {
-            String planDefinitionSourcePath = IOUtils.getPlanDefinitionPathMap(fhirContext).get(planDefinitionEntry.getKey());
-
+            String planDefinitionId = planDefinitionEntry.getKey();
+            String planDefinitionSourcePath = planDefinitionPathMap.get(planDefinitionId);
             // Assumption - File name matches planDefinition.name
             String planDefinitionName = FilenameUtils.getBaseName(planDefinitionSourcePath).replace(PlanDefinitionProcessor.ResourcePrefix, "");
-            try {
-                Map<String, IBaseResource> resources = new HashMap<String, IBaseResource>();
+            pipeline.submit(PlanDefinitionArtifactType, planDefinitionName, planDefinitionSourcePath,
+                    result -> bundlePlanDefinition(result, pipeline.getDependencyClosures(), planDefinitionId, planDefinitionSourcePath, planDefinitionName, igPath, binaryPaths,
+                            includeDependencies, includeTerminology, includePatientScenarios, includeVersion, fhirContext, fhirUri, encoding));
+        }
+    }
 
-                Boolean shouldPersist = ResourceUtils.safeAddResource(planDefinitionSourcePath, resources, fhirContext);
-                if (!resources.containsKey("PlanDefinition/" + planDefinitionEntry.getKey())) {
-                    throw new IllegalArgumentException(String.format("Could not retrieve base resource for PlanDefinition %s", planDefinitionName));
-                }
-                IBaseResource planDefinition = resources.get("PlanDefinition/" + planDefinitionEntry.getKey());
-                String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(planDefinition, fhirContext);
-                IBaseResource primaryLibrary;
-                if (primaryLibraryUrl.startsWith("http")) {
-                    primaryLibrary = IOUtils.getLibraryUrlMap(fhirContext).get(primaryLibraryUrl);
-                }
-                else {
-                    primaryLibrary = IOUtils.getLibraries(fhirContext).get(primaryLibraryUrl);
-                }
+    private void bundlePlanDefinition(ArtifactBundleResult result, DependencyClosureCache dependencyClosures, String planDefinitionId, String planDefinitionSourcePath, String planDefinitionName,
+                                      String igPath, List<String> binaryPaths, Boolean includeDependencies, Boolean includeTerminology,
+                                      Boolean includePatientScenarios, Boolean includeVersion, FhirContext fhirContext, String fhirUri, Encoding encoding) {
+        String manifestKey = "PlanDefinitionBundle/" + planDefinitionSourcePath;
+        try {
+            Map<String, IBaseResource> resources = new HashMap<String, IBaseResource>();
 
-                if (primaryLibrary == null)
-                    throw new IllegalArgumentException(String.format("Could not resolve library url %s", primaryLibraryUrl));
+            Boolean shouldPersist = ResourceUtils.safeAddResource(planDefinitionSourcePath, resources, fhirContext);
+            if (!resources.containsKey("PlanDefinition/" + planDefinitionId)) {
+                throw new IllegalArgumentException(String.format("Could not retrieve base resource for PlanDefinition %s", planDefinitionName));
+            }
+            IBaseResource planDefinition = resources.get("PlanDefinition/" + planDefinitionId);
+            String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(planDefinition, fhirContext);
+            IBaseResource primaryLibrary;
+            if (primaryLibraryUrl.startsWith("http")) {
+                primaryLibrary = IOUtils.getLibraryUrlMap(fhirContext).get(primaryLibraryUrl);
+            }
+            else {
+                primaryLibrary = IOUtils.getLibraries(fhirContext).get(primaryLibraryUrl);
+            }
 
-                String primaryLibrarySourcePath = IOUtils.getLibraryPathMap(fhirContext).get(primaryLibrary.getIdElement().getIdPart());
-                String primaryLibraryName = ResourceUtils.getName(primaryLibrary, fhirContext);
-                if (includeVersion) {
-                    primaryLibraryName = primaryLibraryName + "-" +
-                            fhirContext.newFhirPath().evaluateFirst(primaryLibrary, "version", IBase.class).get().toString();
-                }
+            if (primaryLibrary == null)
+                throw new IllegalArgumentException(String.format("Could not resolve library url %s", primaryLibraryUrl));
+
+            String primaryLibrarySourcePath = IOUtils.getLibraryPathMap(fhirContext).get(primaryLibrary.getIdElement().getIdPart());
+            String primaryLibraryName = ResourceUtils.getName(primaryLibrary, fhirContext);
+            if (includeVersion) {
+                primaryLibraryName = primaryLibraryName + "-" +
+                        fhirContext.newFhirPath().evaluateFirst(primaryLibrary, "version", IBase.class).get().toString();
+            }
 
-                shouldPersist = shouldPersist
-                        & ResourceUtils.safeAddResource(primaryLibrarySourcePath, resources, fhirContext);
+            if (!ResourceUtils.safeAddResource(primaryLibrarySourcePath, resources, fhirContext)) {
+                shouldPersist = false;
+            }
+            if (!shouldPersist) {
+                result.notBundled("The PlanDefinition or its primary library could not be read.");
+            }
 
-                String cqlFileName = IOUtils.formatFileName(primaryLibraryName, Encoding.CQL, fhirContext);
+            String cqlFileName = IOUtils.formatFileName(primaryLibraryName, Encoding.CQL, fhirContext);
 
-                String cqlLibrarySourcePath = IOUtils.getCqlLibrarySourcePath(primaryLibraryName, cqlFileName, binaryPaths);
+            String cqlLibrarySourcePath = IOUtils.getCqlLibrarySourcePath(primaryLibraryName, cqlFileName, binaryPaths);
 
-                if (cqlLibrarySourcePath == null) {
-                    throw new IllegalArgumentException(String.format("Could not determine CqlLibrarySource path for library %s", primaryLibraryName));
-                }
+            if (cqlLibrarySourcePath == null) {
+                throw new IllegalArgumentException(String.format("Could not determine CqlLibrarySource path for library %s", primaryLibraryName));
+            }
 
-                if (includeTerminology) {
-                    boolean result = ValueSetsProcessor.bundleValueSets(cqlLibrarySourcePath, igPath, fhirContext, resources, encoding, includeDependencies, includeVersion);
-                    if (shouldPersist && !result) {
-                        LogUtils.info("PlanDefinition will not be bundled because ValueSet bundling failed.");
+            // With an incremental refresh, plan definitions whose bundle inputs and output have not changed are not bundled again
+            // (unless the bundles are being loaded to a server)
+            String bundleDestPath = FilenameUtils.concat(FilenameUtils.concat(IGProcessor.getBundlesPath(igPath), PlanDefinitionTestGroupName), planDefinitionName);
+            List<String> trackedPaths = null;
+            if (refreshManifest != null && (fhirUri == null || fhirUri.equals(""))) {
+                trackedPaths = RefreshManifest.getBundleInputPaths(planDefinitionSourcePath, primaryLibrarySourcePath, igPath, PlanDefinitionTestGroupName,
+                        primaryLibraryName, binaryPaths, fhirContext, encoding, includeTerminology, includePatientScenarios, includeVersion);
+                if (trackedPaths != null) {
+                    trackedPaths.addAll(IOUtils.getActivityDefinitionPaths(fhirContext));
+                    trackedPaths.add(bundleDestPath);
+                    if (shouldPersist && refreshManifest.isUpToDate(manifestKey, trackedPaths)) {
+                        result.setStatus(ArtifactBundleResult.Status.UP_TO_DATE);
+                        return;
                     }
-                    shouldPersist = shouldPersist & result;
                 }
+            }
 
-                if (includeDependencies) {
-                    boolean result = libraryProcessor.bundleLibraryDependencies(primaryLibrarySourcePath, fhirContext, resources, encoding, includeVersion);
-                    if (shouldPersist && !result) {
-                        LogUtils.info("PlanDefinition will not be bundled because Library Dependency bundling failed.");
-                    }
-                    shouldPersist = shouldPersist & result;
-                }
+            // Resolved once and shared by the bundle and the bundle files (and any other artifact with this primary library)
+            DependencyClosure dependencyClosure = dependencyClosures.get(primaryLibrarySourcePath, cqlLibrarySourcePath, igPath, fhirContext, encoding,
+                    includeTerminology, includeDependencies, includeVersion);
 
-                if (includePatientScenarios) {
-                    boolean result = TestCaseProcessor.bundleTestCases(igPath, PlanDefinitionTestGroupName, primaryLibraryName, fhirContext, resources);
-                    if (shouldPersist && !result) {
-                        LogUtils.info("PlanDefinition will not be bundled because Test Case bundling failed.");
-                    }
-                    shouldPersist = shouldPersist & result;
+            if (includeTerminology) {
+                boolean valueSetsBundled = dependencyClosure.addValueSets(resources);
+                if (shouldPersist && !valueSetsBundled) {
+                    result.notBundled("PlanDefinition will not be bundled because ValueSet bundling failed.");
                 }
+                shouldPersist = shouldPersist & valueSetsBundled;
+            }
 
-                List<String> activityDefinitionPaths =  CDSHooksProcessor.bundleActivityDefinitions(planDefinitionSourcePath, fhirContext, resources, encoding, includeVersion, shouldPersist);
-
-                if (shouldPersist) {
-                    String bundleDestPath = FilenameUtils.concat(FilenameUtils.concat(IGProcessor.getBundlesPath(igPath), PlanDefinitionTestGroupName), planDefinitionName);
-                    persistBundle(igPath, bundleDestPath, planDefinitionName, encoding, fhirContext, new ArrayList<IBaseResource>(resources.values()), fhirUri);
-                    bundleFiles(igPath, bundleDestPath, primaryLibraryName, binaryPaths, planDefinitionSourcePath, primaryLibrarySourcePath, fhirContext, encoding, includeTerminology, includeDependencies, includePatientScenarios, includeVersion);
-                    cdsHooksProcessor.addActivityDefinitionFilesToBundle(igPath, bundleDestPath, activityDefinitionPaths, fhirContext, encoding);
-                    bundledPlanDefinitions.add(planDefinitionSourcePath);
+            if (includeDependencies) {
+                boolean dependenciesBundled = dependencyClosure.addLibraries(resources);
+                if (shouldPersist && !dependenciesBundled) {
+                    result.notBundled("PlanDefinition will not be bundled because Library Dependency bundling failed.");
                 }
-            } catch (Exception e) {
-                LogUtils.putException(planDefinitionName, e);
-            } finally {
-                LogUtils.warn(planDefinitionName);
+                shouldPersist = shouldPersist & dependenciesBundled;
             }
-        }
 
-        String message = "\r\n" + bundledPlanDefinitions.size() + " PlanDefinitions successfully bundled:";
-        for (String bundledPlanDefinition : bundledPlanDefinitions) {
-            message += "\r\n     " + bundledPlanDefinition + " BUNDLED";
-        }
+            if (includePatientScenarios) {
+                boolean testCasesBundled = TestCaseProcessor.bundleTestCases(igPath, PlanDefinitionTestGroupName, primaryLibraryName, fhirContext, resources);
+                if (shouldPersist && !testCasesBundled) {
+                    result.notBundled("PlanDefinition will not be bundled because Test Case bundling failed.");
+                }
+                shouldPersist = shouldPersist & testCasesBundled;
+            }
 
-        List<String> planDefinitionPathLibraryNames = new ArrayList<>(IOUtils.getPlanDefinitionPaths(fhirContext));
-        ArrayList<String> failedPlanDefinitions = new ArrayList<>(planDefinitionPathLibraryNames);
-        planDefinitionPathLibraryNames.removeAll(bundledPlanDefinitions);
-        planDefinitionPathLibraryNames.retainAll(refreshedLibraryNames);
-        message += "\r\n" + planDefinitionPathLibraryNames.size() + " PlanDefinitions refreshed, but not bundled (due to issues):";
-        for (String notBundled : planDefinitionPathLibraryNames) {
-            message += "\r\n     " + notBundled + " REFRESHED";
-        }
+            List<String> activityDefinitionPaths =  CDSHooksProcessor.bundleActivityDefinitions(planDefinitionSourcePath, fhirContext, resources, encoding, includeVersion, shouldPersist);
 
-        failedPlanDefinitions.removeAll(bundledPlanDefinitions);
-        failedPlanDefinitions.removeAll(planDefinitionPathLibraryNames);
-        message += "\r\n" + failedPlanDefinitions.size() + " PlanDefinitions failed refresh:";
-        for (String failed : failedPlanDefinitions) {
-            message += "\r\n     " + failed + " FAILED";
+            if (shouldPersist) {
+                persistBundle(igPath, bundleDestPath, planDefinitionName, encoding, fhirContext, new ArrayList<IBaseResource>(resources.values()), fhirUri);
+                bundleFiles(igPath, bundleDestPath, primaryLibraryName, binaryPaths, planDefinitionSourcePath, primaryLibrarySourcePath, dependencyClosure, fhirContext, encoding, includeTerminology, includeDependencies, includePatientScenarios);
+                cdsHooksProcessor.addActivityDefinitionFilesToBundle(igPath, bundleDestPath, activityDefinitionPaths, fhirContext, encoding);
+                if (refreshManifest != null) {
+                    refreshManifest.record(manifestKey, trackedPaths);
+                }
+            } else if (refreshManifest != null) {
+                refreshManifest.invalidate(manifestKey);
+            }
+        } catch (Exception e) {
+            // Recorded as a warning, which the pipeline attaches to the result
+            LogUtils.putException(planDefinitionName, e);
+            result.setStatus(ArtifactBundleResult.Status.FAILED);
+            if (refreshManifest != null) {
+                refreshManifest.invalidate(manifestKey);
+            }
         }
-
-        LogUtils.info(message);
     }
 
     private void persistBundle(String igPath, String bundleDestPath, String libraryName, Encoding encoding, FhirContext fhirContext, List<IBaseResource> resources, String fhirUri) {
@@ -149,7 +189,7 @@ public class PlanDefinitionProcessor {
 
         if (fhirUri != null && !fhirUri.equals("")) {
             try {
-                HttpClientUtils.post(fhirUri, (IBaseResource) bundle, encoding, fhirContext);
+                FhirServerClient.getDefault().post(fhirUri, (IBaseResource) bundle, encoding, fhirContext);
             } catch (IOException e) {
                 LogUtils.putException(((IBaseResource)bundle).getIdElement().getIdPart(), "Error posting to FHIR Server: " + fhirUri + ".  Bundle not posted.");
                 File dir = new File("C:\\src\\GitHub\\logs");
@@ -159,7 +199,7 @@ public class PlanDefinitionProcessor {
         }
     }
 
-    private void bundleFiles(String igPath, String bundleDestPath, String libraryName, List<String> binaryPaths, String resourceFocusSourcePath, String librarySourcePath, FhirContext fhirContext, Encoding encoding, Boolean includeTerminology, Boolean includeDependencies, Boolean includePatientScenarios, Boolean includeVersion) {
+    private void bundleFiles(String igPath, String bundleDestPath, String libraryName, List<String> binaryPaths, String resourceFocusSourcePath, String librarySourcePath, DependencyClosure dependencyClosure, FhirContext fhirContext, Encoding encoding, Boolean includeTerminology, Boolean includeDependencies, Boolean includePatientScenarios) {
         String bundleDestFilesPath = FilenameUtils.concat(bundleDestPath, FilenameUtils.getBaseName(bundleDestPath) + "-" + IGBundleProcessor.bundleFilesPathElement);
         IOUtils.initializeDirectory(bundleDestFilesPath);
 
@@ -172,24 +212,20 @@ public class PlanDefinitionProcessor {
         IOUtils.copyFile(cqlLibrarySourcePath, cqlDestPath);
 
         if (includeTerminology) {
-            try {     
-                Map<String, IBaseResource> valuesets = ResourceUtils.getDepValueSetResources(cqlLibrarySourcePath, igPath, fhirContext, includeDependencies, includeVersion);      
-                if (!valuesets.isEmpty()) {
-                    Object bundle = BundleUtils.bundleArtifacts(ValueSetsProcessor.getId(libraryName), new ArrayList<IBaseResource>(valuesets.values()), fhirContext);
-                    IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);  
-                }  
-            }  catch (Exception e) {
-                LogUtils.putException(libraryName, e.getMessage());
-            }       
+            Map<String, IBaseResource> valuesets = dependencyClosure.getValueSets();
+            if (!valuesets.isEmpty()) {
+                Object bundle = BundleUtils.bundleArtifacts(ValueSetsProcessor.getId(libraryName), new ArrayList<IBaseResource>(valuesets.values()), fhirContext);
+                IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);
+            }
         }
-        
+
         if (includeDependencies) {
-            Map<String, IBaseResource> depLibraries = ResourceUtils.getDepLibraryResources(librarySourcePath, fhirContext, encoding, includeVersion, logger);
+            Map<String, IBaseResource> depLibraries = dependencyClosure.getLibraries();
             if (!depLibraries.isEmpty()) {
                 String depLibrariesID = "library-deps-" + libraryName;
-                Object bundle = BundleUtils.bundleArtifacts(depLibrariesID, new ArrayList<IBaseResource>(depLibraries.values()), fhirContext);            
-                IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);  
-            }        
+                Object bundle = BundleUtils.bundleArtifacts(depLibrariesID, new ArrayList<IBaseResource>(depLibraries.values()), fhirContext);
+                IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);
+            }
         }
 
          if (includePatientScenarios) {
@@ -1,12 +1,13 @@
 package org.opencds.cqf.tooling.processor;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.parameter.PostBundlesInDirParameters;
 import org.opencds.cqf.tooling.utilities.BundleUtils;
-import org.opencds.cqf.tooling.utilities.HttpClientUtils;
+import org.opencds.cqf.tooling.utilities.FhirServerClient;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -50,24 +51,30 @@ public class PostBundlesInDirProcessor {
             }     
         }
 
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
     public static void PostBundlesInDir(PostBundlesInDirParameters params) {
         String fhirUri = params.fhirUri;
         FHIRVersion fhirVersion = params.fhirVersion;
         Encoding encoding = params.encoding;
         FhirContext fhirContext = getFhirContext(fhirVersion);
+        int maxInFlight = params.maxInFlight != null ? params.maxInFlight : DEFAULT_MAX_IN_FLIGHT;
+        int maxBundleEntries = params.maxBundleEntries != null ? params.maxBundleEntries : 0;
+
+        if (fhirUri == null || fhirUri.equals("")) {
+            return;
+        }
 
         List<Map.Entry<String, IBaseResource>> resources = BundleUtils.GetBundlesInDir(params.directoryPath, fhirContext);
-        resources.forEach(entry -> postBundleToFhirUri(fhirUri, encoding, fhirContext, entry.getValue()));
-    }
 
-	private static void postBundleToFhirUri(String fhirUri, Encoding encoding, FhirContext fhirContext, IBaseResource bundle) {
-        if (fhirUri != null && !fhirUri.equals("")) {  
-            try {
-                HttpClientUtils.post(fhirUri, bundle, encoding, fhirContext);
-                System.out.println("Resource successfully posted to FHIR server (" + fhirUri + "): " + bundle.getIdElement().getIdPart());
-            } catch (Exception e) {
-                System.out.println(bundle.getIdElement().getIdPart() + e);             
-            }  
+        // A client of its own, so every bundle in flight has a connection
+        try (FhirServerClient client = new FhirServerClient(maxInFlight, FhirServerClient.DEFAULT_MAX_RETRIES,
+                FhirServerClient.DEFAULT_INITIAL_BACKOFF_MILLIS, FhirServerClient.DEFAULT_GZIP_REQUESTS)) {
+            BulkBundlePoster poster = new BulkBundlePoster(client, fhirUri, encoding, fhirContext, maxInFlight, maxBundleEntries, params.journalPath);
+            BulkBundlePoster.Report report = poster.post(resources);
+            System.out.println(report);
+        } catch (IOException e) {
+            throw new RuntimeException("Error posting bundles to " + fhirUri + ": " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+}
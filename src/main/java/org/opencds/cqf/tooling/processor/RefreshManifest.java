@@ -0,0 +1,340 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+import org.opencds.cqf.tooling.utilities.LogUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Persisted record of the files each generated artifact was produced from, used for incremental refresh.
+ *
+ * For every artifact (a refreshed library or measure, a test case bundle, a measure bundle...) the manifest
+ * stores a content hash of each file it depends on, including the transitive library dependencies found
+ * through ResourceUtils.getDepLibraryPaths, and of the files it produces. An artifact only needs to be
+ * regenerated if one of those hashes has changed since the last run. The whole manifest is discarded if
+ * the context (tooling version, refresh options) differs from the one it was written with.
+ */
+public class RefreshManifest {
+
+    /**
+     * Bump whenever the manifest format changes so stale manifests are ignored
+     */
+    private static final String MANIFEST_FORMAT_VERSION = "1";
+
+    private static final String MISSING = "missing";
+
+    private static class FileHash {
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+
+        private FileHash(long lastModified, long length, String hash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private final File manifestFile;
+    private final String context;
+
+    /**
+     * Tracked file hashes by artifact key, as of the last completed run
+     */
+    private final Map<String, Map<String, String>> artifacts = new ConcurrentHashMap<>();
+
+    /**
+     * Tracked files by artifact key for the artifacts generated in this run, hashed when the manifest is saved
+     */
+    private final Map<String, List<String>> pending = new ConcurrentHashMap<>();
+
+    private final Map<String, FileHash> fileHashes = new ConcurrentHashMap<>();
+    private final AtomicInteger upToDateCount = new AtomicInteger();
+    private final AtomicInteger generatedCount = new AtomicInteger();
+
+    /**
+     * @param manifestPath the path of the manifest file, which is created on save if it does not exist
+     * @param context the settings the artifacts are generated with (options, encoding...)
+     */
+    public RefreshManifest(String manifestPath, String context) {
+        if (manifestPath == null || manifestPath.isEmpty()) {
+            throw new IllegalArgumentException("manifestPath is required");
+        }
+        this.manifestFile = new File(manifestPath);
+        this.context = MANIFEST_FORMAT_VERSION + "|" + getToolingVersion() + "|" + (context == null ? "" : context);
+        load();
+    }
+
+    private static String getToolingVersion() {
+        String version = RefreshManifest.class.getPackage().getImplementationVersion();
+        return version != null ? version : "unknown";
+    }
+
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    private void load() {
+        if (!manifestFile.exists()) {
+            return;
+        }
+
+        try {
+            String content = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8);
+            JsonObject json = JsonParser.parseString(content).getAsJsonObject();
+            if (!context.equals(json.get("context").getAsString())) {
+                LogUtils.info("Refresh settings have changed since the last run, all artifacts will be regenerated.");
+                return;
+            }
+
+            for (Map.Entry<String, JsonElement> artifact : json.getAsJsonObject("artifacts").entrySet()) {
+                Map<String, String> files = new LinkedHashMap<>();
+                for (Map.Entry<String, JsonElement> file : artifact.getValue().getAsJsonObject().entrySet()) {
+                    files.put(file.getKey(), file.getValue().getAsString());
+                }
+                artifacts.put(artifact.getKey(), files);
+            }
+        }
+        catch (Exception e) {
+            // Unreadable manifest, regenerate everything
+            LogUtils.info(String.format("Could not read refresh manifest %s, all artifacts will be regenerated.", manifestFile.getAbsolutePath()));
+            artifacts.clear();
+        }
+    }
+
+    /**
+     * @param key the artifact key (e.g. "Measure/<path>")
+     * @param paths the files and directories the artifact depends on and produces
+     * @return true if the artifact was generated from exactly these files, and none of them has changed since
+     */
+    public boolean isUpToDate(String key, Collection<String> paths) {
+        Map<String, String> recorded = artifacts.get(key);
+        if (recorded == null || paths == null || !recorded.keySet().equals(new LinkedHashSet<>(paths))) {
+            return false;
+        }
+
+        for (Map.Entry<String, String> entry : recorded.entrySet()) {
+            if (!entry.getValue().equals(hash(entry.getKey()))) {
+                return false;
+            }
+        }
+
+        upToDateCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records that the artifact has been generated from the given files. The files are hashed when the
+     * manifest is saved, so files rewritten later in the same run (e.g. dependent libraries) are recorded
+     * with their final content.
+     */
+    public void record(String key, Collection<String> paths) {
+        if (paths == null) {
+            invalidate(key);
+            return;
+        }
+        pending.put(key, new ArrayList<>(paths));
+        generatedCount.incrementAndGet();
+    }
+
+    /**
+     * Forgets the artifact, so it is regenerated on the next run (e.g. because generating it failed)
+     */
+    public void invalidate(String key) {
+        artifacts.remove(key);
+        pending.remove(key);
+    }
+
+    public synchronized void save() throws IOException {
+        for (Map.Entry<String, List<String>> entry : pending.entrySet()) {
+            Map<String, String> files = new LinkedHashMap<>();
+            for (String path : entry.getValue()) {
+                files.put(path, hash(path));
+            }
+            artifacts.put(entry.getKey(), files);
+        }
+        pending.clear();
+
+        JsonObject json = new JsonObject();
+        json.addProperty("context", context);
+        JsonObject artifactsJson = new JsonObject();
+        for (Map.Entry<String, Map<String, String>> artifact : new TreeMap<>(artifacts).entrySet()) {
+            JsonObject files = new JsonObject();
+            for (Map.Entry<String, String> file : new TreeMap<>(artifact.getValue()).entrySet()) {
+                files.addProperty(file.getKey(), file.getValue());
+            }
+            artifactsJson.add(artifact.getKey(), files);
+        }
+        json.add("artifacts", artifactsJson);
+
+        File directory = manifestFile.getAbsoluteFile().getParentFile();
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Could not create directory: " + directory.getAbsolutePath());
+        }
+
+        Path temp = Files.createTempFile(directory.toPath(), manifestFile.getName(), ".tmp");
+        try {
+            Files.write(temp, new GsonBuilder().setPrettyPrinting().create().toJson(json).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public String getSummary() {
+        return String.format("Incremental refresh: %d artifacts up to date, %d regenerated", upToDateCount.get(), generatedCount.get());
+    }
+
+    /**
+     * @return the content hash of the file, or of every file under the directory
+     */
+    public String hash(String path) {
+        File file = new File(path);
+        if (!file.exists()) {
+            return MISSING;
+        }
+
+        if (file.isDirectory()) {
+            List<String> filePaths = IOUtils.getFilePaths(path, true);
+            Collections.sort(filePaths);
+            StringBuilder hashes = new StringBuilder();
+            for (String filePath : filePaths) {
+                hashes.append(new File(path).toURI().relativize(new File(filePath).toURI()).getPath())
+                        .append('=').append(hash(filePath)).append('\n');
+            }
+            return DigestUtils.sha256Hex(hashes.toString());
+        }
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+        FileHash fileHash = fileHashes.get(path);
+        if (fileHash == null || fileHash.lastModified != lastModified || fileHash.length != length) {
+            try (InputStream input = new FileInputStream(file)) {
+                fileHash = new FileHash(lastModified, length, DigestUtils.sha256Hex(input));
+            }
+            catch (IOException e) {
+                return MISSING;
+            }
+            fileHashes.put(path, fileHash);
+        }
+        return fileHash.hash;
+    }
+
+    /**
+     * Returns the files the bundle for a measure or plan definition is generated from: the artifact, everything its
+     * primary library is generated from and, depending on the options, the terminology and the test cases.
+     *
+     * @return the files, or null if the dependencies could not be determined
+     */
+    public static List<String> getBundleInputPaths(String artifactPath, String primaryLibraryPath, String igPath, String testGroupName,
+            String primaryLibraryName, List<String> binaryPaths, FhirContext fhirContext, Encoding encoding,
+            Boolean includeTerminology, Boolean includePatientScenarios, Boolean includeVersion) {
+        List<String> libraryInputPaths = getLibraryInputPaths(primaryLibraryPath, fhirContext, encoding, includeVersion, binaryPaths);
+        if (libraryInputPaths == null) {
+            return null;
+        }
+
+        List<String> paths = new ArrayList<>();
+        paths.add(artifactPath);
+        paths.addAll(libraryInputPaths);
+        if (includeTerminology) {
+            // Value set dependencies are resolved against all of the terminology in the IG
+            paths.addAll(IOUtils.getTerminologyPaths(fhirContext));
+        }
+        if (includePatientScenarios) {
+            paths.add(FilenameUtils.concat(FilenameUtils.concat(FilenameUtils.concat(igPath, IGProcessor.testCasePathElement),
+                    testGroupName), primaryLibraryName));
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the files a library resource is generated from: the library resource itself and its CQL source,
+     * plus the same for every library it (transitively) depends on.
+     *
+     * @return the files, or null if the dependencies could not be determined
+     */
+    public static List<String> getLibraryInputPaths(String libraryPath, FhirContext fhirContext, Encoding encoding,
+            Boolean versioned, List<String> binaryPaths) {
+        Set<String> paths = new LinkedHashSet<>();
+        Set<String> visited = new LinkedHashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(libraryPath);
+
+        try {
+            while (!toVisit.isEmpty()) {
+                String path = toVisit.pop();
+                if (!visited.add(path)) {
+                    continue;
+                }
+
+                paths.add(path);
+                if (!new File(path).exists()) {
+                    // Tracked as missing so the artifact is regenerated once it appears
+                    continue;
+                }
+
+                IBaseResource library = IOUtils.readResource(path, fhirContext, true);
+                String libraryName = ResourceUtils.getName(library, fhirContext);
+                String version = IOUtils.getCanonicalResourceVersion(library, fhirContext);
+                if (versioned && version != null) {
+                    libraryName = libraryName + "-" + version;
+                }
+                String cqlFileName = IOUtils.formatFileName(libraryName, Encoding.CQL, fhirContext);
+                String cqlPath = binaryPaths == null ? null : IOUtils.getCqlLibrarySourcePath(libraryName, cqlFileName, binaryPaths);
+                if (cqlPath != null) {
+                    paths.add(cqlPath);
+                }
+
+                for (String dependencyPath : ResourceUtils.getDepLibraryPaths(path, fhirContext, encoding, versioned)) {
+                    toVisit.push(dependencyPath);
+                }
+            }
+        }
+        catch (Exception e) {
+            LogUtils.info(String.format("Could not determine the dependencies of %s: %s", libraryPath, e.getMessage()));
+            return null;
+        }
+
+        return new ArrayList<>(paths);
+    }
+}
@@ -1,6 +1,7 @@
 package org.opencds.cqf.tooling.processor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -23,6 +24,16 @@ public class TestCaseProcessor
     }
 
     public void refreshTestCases(String path, IOUtils.Encoding encoding, FhirContext fhirContext, @Nullable List<String> refreshedResourcesNames)
+    {
+        refreshTestCases(path, encoding, fhirContext, refreshedResourcesNames, null);
+    }
+
+    /**
+     * @param refreshManifest if not null, test cases whose files and bundle have not changed since the last
+     *                        incremental refresh are not bundled again
+     */
+    public void refreshTestCases(String path, IOUtils.Encoding encoding, FhirContext fhirContext, @Nullable List<String> refreshedResourcesNames,
+            @Nullable RefreshManifest refreshManifest)
     {
         System.out.println("Refreshing tests");
         List<String> resourceTypeTestGroups = IOUtils.getDirectoryPaths(path, false);
@@ -32,12 +43,21 @@ public class TestCaseProcessor
             for (String testArtifactPath : testArtifactPaths) {
                 List<String> testCasePaths = IOUtils.getDirectoryPaths(testArtifactPath, false);
                 for (String testCasePath : testCasePaths) {
+                    String manifestKey = "TestCase/" + testCasePath;
+                    List<String> trackedPaths = Arrays.asList(testCasePath, FilenameUtils.concat(testArtifactPath,
+                            IOUtils.formatFileName(getId(FilenameUtils.getName(testCasePath)), encoding, fhirContext)));
+                    if (refreshManifest != null && refreshManifest.isUpToDate(manifestKey, trackedPaths)) {
+                        continue;
+                    }
                     try {
                         List<String> paths = IOUtils.getFilePaths(testCasePath, true);
                         List<IBaseResource> resources = IOUtils.readResources(paths, fhirContext);
-                        ensureIds(testCasePath, resources);
+                        resources = ensureIds(testCasePath, resources);
                         Object bundle = BundleUtils.bundleArtifacts(getId(FilenameUtils.getName(testCasePath)), resources, fhirContext);
                         IOUtils.writeBundle(bundle, testArtifactPath, encoding, fhirContext);
+                        if (refreshManifest != null) {
+                            refreshManifest.record(manifestKey, trackedPaths);
+                        }
                     } catch (Exception e) {
                         LogUtils.putException(testCasePath, e);
                     }
@@ -60,14 +80,20 @@ public class TestCaseProcessor
         return resources; 
     }
 
+    /**
+     * @return the resources, with copies (the read resources are shared) given an id where they have none
+     */
     private static List<IBaseResource> ensureIds(String baseId, List<IBaseResource> resources) {
+        List<IBaseResource> result = new ArrayList<IBaseResource>(resources.size());
         for (IBaseResource resource : resources) {
             if (resource.getIdElement().getIdPart() == null || resource.getIdElement().getIdPart().equals("")) {
+                resource = ResourceUtils.copyResource(resource);
                 ResourceUtils.setIgId(FilenameUtils.getName(baseId), resource, false);
                 resource.setId(resource.getClass().getSimpleName() + "/" + resource.getIdElement().getIdPart());
             }
+            result.add(resource);
         }
-        return resources;
+        return result;
     }
 
     public static String getId(String baseId) {
@@ -124,6 +150,7 @@ public class TestCaseProcessor
                             String measureReportStatusValue = ResourceUtils.resolveProperty(measureReportStatus, "value", fhirContext).toString();
                             if (measureReportStatusValue.equals("COMPLETE")) {
                                 String expectedResultsId = FilenameUtils.getBaseName(testContentPath) + (FilenameUtils.getBaseName(testContentPath).endsWith("-expectedresults") ? "" : "-expectedresults");
+                                measureReport = ResourceUtils.copyResource(measureReport);
                                 measureReport.setId(expectedResultsId);
                             }
                         }
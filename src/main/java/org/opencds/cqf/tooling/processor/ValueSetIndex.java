@@ -0,0 +1,66 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+/**
+ * The value sets available to a run, indexed by canonical url and by url and version.
+ *
+ * Where several value sets have the same url (or url and version), the first one added is used, matching the
+ * url map ValueSetsProcessor has always cached.
+ */
+public class ValueSetIndex {
+
+    private final Map<String, IBaseResource> byUrl = new LinkedHashMap<>();
+    private final Map<String, IBaseResource> byUrlAndVersion = new HashMap<>();
+
+    public void add(String url, String version, IBaseResource valueSet) {
+        if (url == null) {
+            return;
+        }
+        byUrl.putIfAbsent(url, valueSet);
+        if (version != null) {
+            byUrlAndVersion.putIfAbsent(url + "|" + version, valueSet);
+        }
+    }
+
+    /**
+     * @param canonical the url of the value set, optionally followed by |version
+     */
+    public IBaseResource get(String canonical) {
+        if (canonical == null) {
+            return null;
+        }
+        int index = canonical.indexOf('|');
+        return index < 0 ? get(canonical, null) : get(canonical.substring(0, index), canonical.substring(index + 1));
+    }
+
+    /**
+     * @return the value set with the url and version, or, if there is none with that version (or no version is
+     * given), the first value set with the url
+     */
+    public IBaseResource get(String url, String version) {
+        if (version != null && !version.isEmpty()) {
+            IBaseResource valueSet = byUrlAndVersion.get(url + "|" + version);
+            if (valueSet != null) {
+                return valueSet;
+            }
+        }
+        return byUrl.get(url);
+    }
+
+    /**
+     * @return the first value set with each url
+     */
+    public Map<String, IBaseResource> getValueSetsByUrl() {
+        return Collections.unmodifiableMap(byUrl);
+    }
+
+    public int size() {
+        return byUrl.size();
+    }
+}
@@ -1,6 +1,5 @@
 package org.opencds.cqf.tooling.processor;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -14,63 +13,72 @@ import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import ca.uhn.fhir.context.FhirContext;
 
 public class ValueSetsProcessor {
-    private static Map<String, IBaseResource> copyToUrls(List<IBaseResource> valueSets, FhirContext fhirContext) {
+    private static ValueSetIndex indexValueSets(List<IBaseResource> valueSets, FhirContext fhirContext) {
         switch (fhirContext.getVersion().getVersion()) {
         case DSTU3:
-            return copyToStu3Urls(valueSets, fhirContext);
+            return indexStu3ValueSets(valueSets);
         case R4:
-            return copyToR4Urls(valueSets, fhirContext);
+            return indexR4ValueSets(valueSets);
         default:
             throw new IllegalArgumentException(
                     "Unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
         }
     }
 
-    private static Map<String, IBaseResource> copyToStu3Urls(List<IBaseResource> valueSets, FhirContext fhirContext) {
-        Map<String, IBaseResource> valueSetUrls = new HashMap<String, IBaseResource>();
+    private static ValueSetIndex indexStu3ValueSets(List<IBaseResource> valueSets) {
+        ValueSetIndex index = new ValueSetIndex();
         for (IBaseResource resource : valueSets) {
             if (resource instanceof org.hl7.fhir.dstu3.model.ValueSet) {
-                valueSetUrls.putIfAbsent(((org.hl7.fhir.dstu3.model.ValueSet)resource).getUrl(), resource);
+                org.hl7.fhir.dstu3.model.ValueSet valueSet = (org.hl7.fhir.dstu3.model.ValueSet)resource;
+                index.add(valueSet.getUrl(), valueSet.getVersion(), valueSet);
             } else if (resource instanceof org.hl7.fhir.dstu3.model.Bundle) {
                 org.hl7.fhir.dstu3.model.Bundle bundle = (org.hl7.fhir.dstu3.model.Bundle) resource; 
                 for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent bundleEntry : bundle.getEntry()) {
                     org.hl7.fhir.dstu3.model.ValueSet valueSet = (org.hl7.fhir.dstu3.model.ValueSet)bundleEntry.getResource();
-                    valueSetUrls.putIfAbsent((valueSet).getUrl(), valueSet);
+                    index.add(valueSet.getUrl(), valueSet.getVersion(), valueSet);
                 }
             }
         }
-        return valueSetUrls;
+        return index;
     }
 
-    private static Map<String, IBaseResource> copyToR4Urls(List<IBaseResource> valueSets, FhirContext fhirContext) {
-        Map<String, IBaseResource> valueSetUrls = new HashMap<String, IBaseResource>();
+    private static ValueSetIndex indexR4ValueSets(List<IBaseResource> valueSets) {
+        ValueSetIndex index = new ValueSetIndex();
         for (IBaseResource resource : valueSets) {
             if (resource instanceof org.hl7.fhir.r4.model.ValueSet) {
-                valueSetUrls.putIfAbsent(((org.hl7.fhir.r4.model.ValueSet)resource).getUrl(), resource);
+                org.hl7.fhir.r4.model.ValueSet valueSet = (org.hl7.fhir.r4.model.ValueSet)resource;
+                index.add(valueSet.getUrl(), valueSet.getVersion(), valueSet);
             } else if (resource instanceof org.hl7.fhir.r4.model.Bundle) {
                 org.hl7.fhir.r4.model.Bundle bundle = (org.hl7.fhir.r4.model.Bundle) resource; 
                 for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent bundleEntry : bundle.getEntry()) {
                     org.hl7.fhir.r4.model.ValueSet valueSet = (org.hl7.fhir.r4.model.ValueSet)bundleEntry.getResource();
-                    valueSetUrls.putIfAbsent((valueSet).getUrl(), valueSet);
+                    index.add(valueSet.getUrl(), valueSet.getVersion(), valueSet);
                 }
             }
         }
-        return valueSetUrls;
+        return index;
     }
 
-    private static Map<String, IBaseResource> cachedValueSets = null;
-    public static Map<String, IBaseResource> getCachedValueSets(FhirContext fhirContext) {
-        if (cachedValueSets == null) {
+    private static ValueSetIndex cachedValueSetIndex = null;
+    public static synchronized Map<String, IBaseResource> getCachedValueSets(FhirContext fhirContext) {
+        return getCachedValueSetIndex(fhirContext).getValueSetsByUrl();
+    }
+
+    /**
+     * @return the value sets in the terminology paths, indexed by url and version
+     */
+    public static synchronized ValueSetIndex getCachedValueSetIndex(FhirContext fhirContext) {
+        if (cachedValueSetIndex == null) {
             IntitializeCachedValueSets(fhirContext);
         }
-        return cachedValueSets;
+        return cachedValueSetIndex;
     }
 
     private static void IntitializeCachedValueSets(FhirContext fhirContext) {
         List<String> allValueSetPaths = IOUtils.getTerminologyPaths(fhirContext).stream().collect(Collectors.toList());
         List<IBaseResource> allValueSets = IOUtils.readResources(allValueSetPaths, fhirContext); 
             
-        cachedValueSets = ValueSetsProcessor.copyToUrls(allValueSets, fhirContext);
+        cachedValueSetIndex = ValueSetsProcessor.indexValueSets(allValueSets, fhirContext);
     }
     
     public static String getId(String baseId) {
@@ -21,6 +21,9 @@ public class PostBundlesInDirArgumentProcessor {
     public static final String[] FHIR_VERSION_OPTIONS = {"fv", "fhir-version"};
     public static final String[] ENCODING_OPTIONS = {"e", "encoding"};
     public static final String[] FHIR_URI_OPTIONS = {"fs", "fhir-uri"};
+    public static final String[] MAX_IN_FLIGHT_OPTIONS = {"mif", "max-in-flight"};
+    public static final String[] MAX_BUNDLE_ENTRIES_OPTIONS = {"mbe", "max-bundle-entries"};
+    public static final String[] JOURNAL_PATH_OPTIONS = {"jp", "journal-path"};
 
     @SuppressWarnings("unused")
     public OptionParser build() {
@@ -30,12 +33,18 @@ public class PostBundlesInDirArgumentProcessor {
         OptionSpecBuilder fhirVersionBuilder = parser.acceptsAll(asList(FHIR_VERSION_OPTIONS),"As of now FHIR DSTU3 and R4 are supported");
         OptionSpecBuilder encodingBuilder = parser.acceptsAll(asList(ENCODING_OPTIONS), "If omitted, output will be generated using JSON encoding.");
         OptionSpecBuilder fhirUriBuilder = parser.acceptsAll(asList(FHIR_URI_OPTIONS),"FHIR server.");
+        OptionSpecBuilder maxInFlightBuilder = parser.acceptsAll(asList(MAX_IN_FLIGHT_OPTIONS), "If omitted, 4 bundles will be posted concurrently.");
+        OptionSpecBuilder maxBundleEntriesBuilder = parser.acceptsAll(asList(MAX_BUNDLE_ENTRIES_OPTIONS), "If omitted, bundles will not be split.");
+        OptionSpecBuilder journalPathBuilder = parser.acceptsAll(asList(JOURNAL_PATH_OPTIONS), "If omitted, all bundles will be posted. If the journal exists, bundles it records as posted will be skipped.");
 
         OptionSpec<String> dirPath = dirPathBuilder.withRequiredArg().describedAs("path to directory containing bundle resources");
         OptionSpec<String> fhirVersion = fhirVersionBuilder.withRequiredArg().describedAs("fhir version");
         OptionSpec<String> encoding = encodingBuilder.withOptionalArg().describedAs("encoding for bundle resources"); 
         
         OptionSpec<String> fhirUri = fhirUriBuilder.withRequiredArg().describedAs("uri of fhir server"); 
+        OptionSpec<String> maxInFlight = maxInFlightBuilder.withRequiredArg().describedAs("maximum number of bundles posted concurrently");
+        OptionSpec<String> maxBundleEntries = maxBundleEntriesBuilder.withRequiredArg().describedAs("maximum number of entries posted per transaction");
+        OptionSpec<String> journalPath = journalPathBuilder.withRequiredArg().describedAs("path to the journal of posted bundles");
 
         parser.acceptsAll(asList(OPERATION_OPTIONS),"The operation to run.");
 
@@ -54,6 +63,9 @@ public class PostBundlesInDirArgumentProcessor {
         String fhirVersion = (String)options.valueOf(FHIR_VERSION_OPTIONS[0]);
         String outputEncoding = (String)options.valueOf(ENCODING_OPTIONS[0]);
         String fhirUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
+        String maxInFlight = (String)options.valueOf(MAX_IN_FLIGHT_OPTIONS[0]);
+        String maxBundleEntries = (String)options.valueOf(MAX_BUNDLE_ENTRIES_OPTIONS[0]);
+        String journalPath = (String)options.valueOf(JOURNAL_PATH_OPTIONS[0]);
         Encoding outputEncodingEnum = Encoding.JSON;
         if (outputEncoding != null) {
             outputEncodingEnum = Encoding.parse(outputEncoding.toLowerCase());
@@ -64,6 +76,9 @@ public class PostBundlesInDirArgumentProcessor {
         pbp.fhirVersion = FHIRVersion.parse(fhirVersion);
         pbp.encoding = outputEncodingEnum;
         pbp.fhirUri = fhirUri;
+        pbp.maxInFlight = maxInFlight == null ? null : Integer.valueOf(maxInFlight);
+        pbp.maxBundleEntries = maxBundleEntries == null ? null : Integer.valueOf(maxBundleEntries);
+        pbp.journalPath = journalPath;
        
         return pbp;
     }
@@ -33,6 +33,8 @@ public class RefreshIGArgumentProcessor {
     public static final String[] RESOURCE_PATH_OPTIONS = {"rp", "resourcepath"};
     public static final String[] LIBRARY_OUTPUT_PATH_OPTIONS = {"libraryOutput", "libraryOutputPath", "lop"};
     public static final String[] MEASURE_OUTPUT_PATH_OPTIONS = {"measureOutput", "measureOutputPath", "mop"};
+    public static final String[] INCREMENTAL_OPTIONS = {"inc", "incremental"};
+    public static final String[] NO_TRANSLATION_CACHE_OPTIONS = {"ntc", "no-translation-cache"};
 
     @SuppressWarnings("unused")
     public OptionParser build() {
@@ -66,6 +68,8 @@ public class RefreshIGArgumentProcessor {
         parser.acceptsAll(asList(INCLUDE_TERMINOLOGY_OPTIONS),"If omitted terminology will not be packaged.");
         parser.acceptsAll(asList(INCLUDE_PATIENT_SCENARIOS_OPTIONS),"If omitted patient scenario information will not be packaged.");
         parser.acceptsAll(asList(VERSIONED_OPTIONS),"If omitted resources must be uniquely named.");
+        parser.acceptsAll(asList(INCREMENTAL_OPTIONS),"If omitted every artifact is regenerated, otherwise only those whose inputs changed since the last incremental run.");
+        parser.acceptsAll(asList(NO_TRANSLATION_CACHE_OPTIONS),"If omitted CQL translation results are cached in input-cache/cql-translation and reused while their inputs are unchanged.");
 
         OptionSpec<Void> help = parser.acceptsAll(asList(ArgUtils.HELP_OPTIONS), "Show this help page").forHelp();
 
@@ -95,6 +99,8 @@ public class RefreshIGArgumentProcessor {
         Boolean includeTerminology = options.has(INCLUDE_TERMINOLOGY_OPTIONS[0]);
         Boolean includePatientScenarios = options.has(INCLUDE_PATIENT_SCENARIOS_OPTIONS[0]);
         Boolean versioned = options.has(VERSIONED_OPTIONS[0]);
+        Boolean incremental = options.has(INCREMENTAL_OPTIONS[0]);
+        Boolean noTranslationCache = options.has(NO_TRANSLATION_CACHE_OPTIONS[0]);
         String fhirUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
         String measureToRefreshPath = (String)options.valueOf(MEASURE_TO_REFRESH_PATH[0]);
 
@@ -128,6 +134,8 @@ public class RefreshIGArgumentProcessor {
         ip.measureToRefreshPath = measureToRefreshPath;
         ip.libraryOutputPath = libraryOutputPath;
         ip.measureOutputPath = measureOutputPath;
+        ip.incremental = incremental;
+        ip.noTranslationCache = noTranslationCache;
        
         return ip;
     }
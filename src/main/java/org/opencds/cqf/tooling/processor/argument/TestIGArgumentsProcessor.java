@@ -22,6 +22,9 @@ public class TestIGArgumentsProcessor {
     public static final String[] FHIR_VERSION_OPTIONS = {"fv", "fhir-version"};
     public static final String[] TEST_CASES_PATH_OPTIONS = {"tests", "testsPath", "testCasesPath", "tp", "tcp"};
     public static final String[] FHIR_URI_OPTIONS = {"fs", "fhir-uri"};
+    public static final String[] MAX_THREADS_OPTIONS = {"mt", "max-threads"};
+    public static final String[] TEST_TIMEOUT_OPTIONS = {"tt", "test-timeout"};
+    public static final String[] RESULTS_PATH_OPTIONS = {"rp", "results-path"};
 
     @SuppressWarnings("unused")
     public OptionParser build() {
@@ -34,6 +37,9 @@ public class TestIGArgumentsProcessor {
         OptionSpecBuilder fhirVersionBuilder = parser.acceptsAll(asList(FHIR_VERSION_OPTIONS),"Limited to a single version of FHIR.");
         OptionSpecBuilder testCasesPathBuilder = parser.acceptsAll(asList(TEST_CASES_PATH_OPTIONS),"Path to test cases");
         OptionSpecBuilder fhirUriBuilder = parser.acceptsAll(asList(FHIR_URI_OPTIONS),"If omitted the final bundle will not be loaded to a FHIR server.");
+        OptionSpecBuilder maxThreadsBuilder = parser.acceptsAll(asList(MAX_THREADS_OPTIONS),"If omitted, as many test cases as there are processors will be run concurrently.");
+        OptionSpecBuilder testTimeoutBuilder = parser.acceptsAll(asList(TEST_TIMEOUT_OPTIONS),"If omitted, test cases will not time out.");
+        OptionSpecBuilder resultsPathBuilder = parser.acceptsAll(asList(RESULTS_PATH_OPTIONS),"If omitted, the test results will only be written to the console.");
 
         OptionSpec<String> ini = iniBuilder.withOptionalArg().describedAs("IG ini file");
         OptionSpec<String> rootDir = rootDirBuilder.withOptionalArg().describedAs("Root directory of the IG");
@@ -42,6 +48,9 @@ public class TestIGArgumentsProcessor {
         OptionSpec<String> fhirVersion = fhirVersionBuilder.withOptionalArg().describedAs("fhir version");
         OptionSpec<String> testCasesPath = testCasesPathBuilder.withRequiredArg().describedAs("path to the test cases");
         OptionSpec<String> fhirServerUri = fhirUriBuilder.withRequiredArg().describedAs("uri for fhir server to test on");
+        OptionSpec<String> maxThreads = maxThreadsBuilder.withRequiredArg().describedAs("maximum number of test cases run concurrently");
+        OptionSpec<String> testTimeout = testTimeoutBuilder.withRequiredArg().describedAs("maximum time in seconds a test case may run");
+        OptionSpec<String> resultsPath = resultsPathBuilder.withRequiredArg().describedAs("directory to write the JUnit XML and JSON test results to");
 
         parser.acceptsAll(asList(OPERATION_OPTIONS),"The operation to run.");
 
@@ -63,6 +72,9 @@ public class TestIGArgumentsProcessor {
         String fhirVersion = (String)options.valueOf(FHIR_VERSION_OPTIONS[0]);
         String testCasesPath = (String)options.valueOf(TEST_CASES_PATH_OPTIONS[0]);
         String fhirServerUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
+        String maxThreads = (String)options.valueOf(MAX_THREADS_OPTIONS[0]);
+        String testTimeout = (String)options.valueOf(TEST_TIMEOUT_OPTIONS[0]);
+        String resultsPath = (String)options.valueOf(RESULTS_PATH_OPTIONS[0]);
 
         TestIGParameters ip = new TestIGParameters();
         ip.ini = ini;
@@ -71,6 +83,9 @@ public class TestIGArgumentsProcessor {
 //        ip.igCanonicalBase = igCanonicalBase;
         ip.testCasesPath = testCasesPath;
         ip.fhirServerUri = fhirServerUri;
+        ip.maxThreads = maxThreads == null ? null : Integer.valueOf(maxThreads);
+        ip.testTimeoutSeconds = testTimeout == null ? null : Integer.valueOf(testTimeout);
+        ip.resultsPath = resultsPath;
         ip.fhirContext = IGProcessor.getIgFhirContext(fhirVersion);
 
         return ip;
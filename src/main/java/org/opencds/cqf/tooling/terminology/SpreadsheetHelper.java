@@ -4,6 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 
 import org.apache.poi.ss.usermodel.Cell;
@@ -173,4 +177,24 @@ public class SpreadsheetHelper {
             throw new IllegalArgumentException("Error writing ValueSet to file: " + e.getMessage());
         }
     }
+
+    /*
+    Writes the content to a temporary file in the target directory and moves it into place, so concurrent writers
+    and readers never see a partially written file
+     */
+    public static void writeFileAtomically(File file, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
 }
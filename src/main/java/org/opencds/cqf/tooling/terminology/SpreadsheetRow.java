@@ -0,0 +1,55 @@
+package org.opencds.cqf.tooling.terminology;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * A row read by the StreamingSpreadsheetReader: the formatted value of each cell present in the row, by column index.
+ */
+public class SpreadsheetRow {
+
+    private final int rowNum;
+    private final SortedMap<Integer, String> cells;
+
+    public SpreadsheetRow(int rowNum, SortedMap<Integer, String> cells) {
+        this.rowNum = rowNum;
+        this.cells = cells;
+    }
+
+    /**
+     * @return the 0-based index of the row in the sheet
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * @return the value of each cell present in the row (including blank cells, as ""), ordered by column index
+     */
+    public SortedMap<Integer, String> getCells() {
+        return Collections.unmodifiableSortedMap(cells);
+    }
+
+    /**
+     * @return the formatted value of the cell, as DataFormatter would format it, or null if the row has no such cell
+     */
+    public String getCellValue(int cellIndex) {
+        return cellIndex < 0 ? null : cells.get(cellIndex);
+    }
+
+    /*
+    Equivalent to SpreadsheetHelper.getCellAsString(row.getCell(cellIndex))
+     */
+    public String getCellAsString(int cellIndex) {
+        String value = getCellValue(cellIndex);
+        return value == null ? null : SpreadsheetHelper.protectedString(value, true);
+    }
+
+    /*
+    Equivalent to SpreadsheetHelper.getCellAsStringNoReplacement(row.getCell(cellIndex))
+     */
+    public String getCellAsStringNoReplacement(int cellIndex) {
+        String value = getCellValue(cellIndex);
+        return value == null ? null : SpreadsheetHelper.protectedString(value, false);
+    }
+}
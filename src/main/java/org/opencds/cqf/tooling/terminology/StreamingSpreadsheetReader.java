@@ -0,0 +1,309 @@
+package org.opencds.cqf.tooling.terminology;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the rows of an .xlsx spreadsheet without loading the workbook into memory.
+ *
+ * The package is opened read-only with XSSFReader, and the sheet XML is parsed as a stream, one row at a time, so
+ * only the shared strings and styles of the workbook are held in memory. Cell values are formatted the way
+ * SpreadsheetHelper formats the cells of a Workbook (with a DataFormatter), except that formula cells have the value
+ * last calculated by Excel rather than the formula.
+ *
+ * Usage:
+ *     try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(path);
+ *          SpreadsheetRowIterator rows = reader.rows(0)) {
+ *         while (rows.hasNext()) { ... }
+ *     }
+ */
+public class StreamingSpreadsheetReader implements Closeable {
+
+    private static final String SPREADSHEET_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private final OPCPackage opcPackage;
+    private final XSSFReader reader;
+    private final SharedStrings sharedStrings;
+    private final StylesTable styles;
+    private final List<String> sheetNames = new ArrayList<>();
+    private final DataFormatter dataFormatter = new DataFormatter();
+    private final XMLInputFactory xmlInputFactory;
+
+    public StreamingSpreadsheetReader(String pathToSpreadsheet) {
+        OPCPackage openedPackage = null;
+        try {
+            openedPackage = OPCPackage.open(pathToSpreadsheet, PackageAccess.READ);
+            this.reader = new XSSFReader(openedPackage);
+            this.sharedStrings = new ReadOnlySharedStringsTable(openedPackage);
+            this.styles = reader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                sheets.next().close();
+                sheetNames.add(sheets.getSheetName());
+            }
+        } catch (IOException | OpenXML4JException | SAXException e) {
+            if (openedPackage != null) {
+                openedPackage.revert();
+            }
+            e.printStackTrace();
+            throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+        }
+        this.opcPackage = openedPackage;
+
+        this.xmlInputFactory = XMLInputFactory.newInstance();
+        this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public List<String> getSheetNames() {
+        return Collections.unmodifiableList(sheetNames);
+    }
+
+    public int getNumberOfSheets() {
+        return sheetNames.size();
+    }
+
+    /**
+     * @return the index of the sheet with the given name, or -1 if the workbook has no such sheet
+     */
+    public int getSheetIndex(String sheetName) {
+        return sheetNames.indexOf(sheetName);
+    }
+
+    /**
+     * @return an iterator over the rows present in the sheet, which must be closed
+     */
+    public SpreadsheetRowIterator rows(int sheetIndex) {
+        if (sheetIndex < 0 || sheetIndex >= sheetNames.size()) {
+            throw new IllegalArgumentException(String.format("Sheet index (%d) is out of range (0..%d)", sheetIndex, sheetNames.size() - 1));
+        }
+
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            for (int i = 0; i < sheetIndex; i++) {
+                sheets.next().close();
+            }
+            InputStream sheet = sheets.next();
+            try {
+                return new SpreadsheetRowIterator(sheet, xmlInputFactory.createXMLStreamReader(sheet));
+            } catch (XMLStreamException e) {
+                sheet.close();
+                throw e;
+            }
+        } catch (IOException | OpenXML4JException | XMLStreamException e) {
+            e.printStackTrace();
+            throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return an iterator over the rows present in the sheet, which must be closed
+     */
+    public SpreadsheetRowIterator rows(String sheetName) {
+        int sheetIndex = getSheetIndex(sheetName);
+        if (sheetIndex < 0) {
+            throw new IllegalArgumentException("Workbook does not contain a sheet named " + sheetName);
+        }
+        return rows(sheetIndex);
+    }
+
+    /**
+     * Reads all the rows of a sheet, for small sheets (e.g. metadata) that are read more than once or out of order
+     */
+    public List<SpreadsheetRow> readRows(int sheetIndex) {
+        List<SpreadsheetRow> rows = new ArrayList<>();
+        try (SpreadsheetRowIterator iterator = rows(sheetIndex)) {
+            while (iterator.hasNext()) {
+                rows.add(iterator.next());
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() {
+        // Opened read-only, so there is nothing to save
+        opcPackage.revert();
+    }
+
+    private String formatValue(String type, String styleIndex, String value, String inlineString) {
+        if ("inlineStr".equals(type)) {
+            return inlineString == null ? "" : inlineString;
+        }
+        if (value == null) {
+            return "";
+        }
+
+        switch (type == null ? "n" : type) {
+            case "s":
+                return sharedStrings.getItemAt(Integer.parseInt(value)).getString();
+            case "b":
+                return "0".equals(value) ? "FALSE" : "TRUE";
+            case "n":
+                XSSFCellStyle style = null;
+                if (styleIndex != null) {
+                    style = styles.getStyleAt(Integer.parseInt(styleIndex));
+                } else if (styles.getNumCellStyles() > 0) {
+                    style = styles.getStyleAt(0);
+                }
+                int formatIndex = style == null ? 0 : style.getDataFormat();
+                String formatString = style == null ? null : style.getDataFormatString();
+                if (formatString == null) {
+                    formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+                }
+                return dataFormatter.formatRawCellContents(Double.parseDouble(value), formatIndex, formatString);
+            default:
+                // Formula strings ("str"), errors ("e") and ISO dates ("d") are stored as they are displayed
+                return value;
+        }
+    }
+
+    /**
+     * Iterates over the rows of a sheet, parsing the sheet XML as the rows are requested
+     */
+    public class SpreadsheetRowIterator implements Iterator<SpreadsheetRow>, Closeable {
+
+        private final InputStream sheet;
+        private final XMLStreamReader xml;
+        private SpreadsheetRow next;
+        private int lastRowNum = -1;
+
+        private SpreadsheetRowIterator(InputStream sheet, XMLStreamReader xml) {
+            this.sheet = sheet;
+            this.xml = xml;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = readRow();
+                } catch (XMLStreamException e) {
+                    throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public SpreadsheetRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SpreadsheetRow row = next;
+            next = null;
+            return row;
+        }
+
+        private boolean isElement(String localName) {
+            return localName.equals(xml.getLocalName()) && SPREADSHEET_NAMESPACE.equals(xml.getNamespaceURI());
+        }
+
+        private SpreadsheetRow readRow() throws XMLStreamException {
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && isElement("row")) {
+                    String reference = xml.getAttributeValue(null, "r");
+                    // The row number is optional, rows without one follow the previous row
+                    int rowNum = reference == null ? lastRowNum + 1 : Integer.parseInt(reference) - 1;
+                    lastRowNum = rowNum;
+                    return new SpreadsheetRow(rowNum, readCells());
+                }
+            }
+            return null;
+        }
+
+        private SortedMap<Integer, String> readCells() throws XMLStreamException {
+            SortedMap<Integer, String> cells = new TreeMap<>();
+            int lastColumn = -1;
+            String type = null;
+            String styleIndex = null;
+            String value = null;
+            StringBuilder inlineString = null;
+            int column = -1;
+
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (isElement("c")) {
+                        String reference = xml.getAttributeValue(null, "r");
+                        column = reference == null ? lastColumn + 1 : new CellReference(reference).getCol();
+                        type = xml.getAttributeValue(null, "t");
+                        styleIndex = xml.getAttributeValue(null, "s");
+                        value = null;
+                        inlineString = null;
+                    } else if (isElement("v")) {
+                        value = xml.getElementText();
+                    } else if (isElement("is")) {
+                        inlineString = new StringBuilder();
+                    } else if (isElement("t") && inlineString != null) {
+                        inlineString.append(xml.getElementText());
+                    } else if (isElement("rPh")) {
+                        // Phonetic runs of inline strings are not part of the value
+                        skipElement();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (isElement("c")) {
+                        cells.put(column, formatValue(type, styleIndex, value, inlineString == null ? null : inlineString.toString()));
+                        lastColumn = column;
+                    } else if (isElement("row")) {
+                        break;
+                    }
+                }
+            }
+            return cells;
+        }
+
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0 && xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                xml.close();
+            } catch (XMLStreamException e) {
+                // Nothing to release beyond the stream
+            }
+            try {
+                sheet.close();
+            } catch (IOException e) {
+                // Read-only, nothing to lose
+            }
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package org.opencds.cqf.tooling.terminology;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.ValueSet;
@@ -14,9 +14,11 @@ import org.opencds.cqf.tooling.Operation;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 
 public class ToJsonValueSetDbOperation extends Operation {
     private String valueSetPath;
+    private ValueSetDbWriter.ShardBy shardBy = ValueSetDbWriter.ShardBy.NONE; // -shardby (-sb) { "none", "codesystem", "prefix" }
 
     @SuppressWarnings("unused")
     private String encoding = IOUtils.Encoding.JSON.toString();
@@ -47,6 +49,7 @@ public class ToJsonValueSetDbOperation extends Operation {
                 case "outputpath": case "op": setOutputPath(value); break; // -outputpath (-op)
                 case "valuesetpath": case "path": case "vsp": valueSetPath = value; break; // -valuesetpath (-vsp, -path)
                 case "encoding": case "e": encoding = value.toLowerCase(); break;
+                case "shardby": case "sb": shardBy = ValueSetDbWriter.ShardBy.fromCode(value); break;
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
@@ -55,68 +58,42 @@ public class ToJsonValueSetDbOperation extends Operation {
             throw new IllegalArgumentException("The path to the value set directory is required");
         }
 
-        JsonObject valueSetDb = new JsonObject();
+        File[] files = new File(valueSetPath).listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException("The value set path is not a directory: " + valueSetPath);
+        }
+        // Sorted so the output is the same however the file system lists the directory
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        // Each value set is written as it is read, so only one is held in memory at a time
+        try (ValueSetDbWriter writer = new ValueSetDbWriter(new File(getOutputPath()), shardBy)) {
+            for (File file : files) {
+                if (file.getName().endsWith(".json") || file.getName().endsWith(".xml")) {
+                    ValueSet valueSet;
+                    // Parsed directly rather than through IOUtils.readResource, which would keep every value set cached
+                    IParser parser = file.getName().endsWith(".json") ? getFhirContext().newJsonParser() : getFhirContext().newXmlParser();
+                    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                        IBaseResource resource = parser.parseResource(reader);
+                        if (!(resource instanceof org.hl7.fhir.r4.model.ValueSet)) {
+                            continue;
+                        }
+                        valueSet = (ValueSet)resource;
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                        // Ignore errors that occur, some files in output directories are json or xml but not FHIR resources...
+                        continue;
+                    }
 
-        for (File file : new File(valueSetPath).listFiles()) {
-            if (file.getName().endsWith(".json") || file.getName().endsWith(".xml")) {
-                try {
-                    IBaseResource resource = IOUtils.readResource(file.getAbsolutePath(), getFhirContext());
-                    if (resource instanceof org.hl7.fhir.r4.model.ValueSet) {
-                        org.hl7.fhir.r4.model.ValueSet valueSet = (ValueSet)resource;
-                        addValueSetToDb(valueSetDb, valueSet);
+                    if (!writer.write(valueSet)) {
+                        System.out.println(String.format("Skipped ValueSet %s (%s): the url and version are required, and the url must be unique",
+                                valueSet.getIdElement().getIdPart(), file.getName()));
                     }
                 }
-                catch (Exception e) {
-                    e.printStackTrace();
-                    // Ignore errors that occur, some files in output directories are json or xml but not FHIR resources...
-                }
             }
-        }
-
-        try {
-            FileWriter fw = new FileWriter(getOutputPath() + "/valueset-db.json");
-            new GsonBuilder()
-                    .setPrettyPrinting()
-                    .create()
-                    .toJson(valueSetDb, fw);
-            fw.close();
         } catch (IOException e) {
             e.printStackTrace();
             throw new IllegalArgumentException("Error writing ValueSet to file: " + e.getMessage());
         }
     }
-
-    private void addValueSetToDb(JsonObject valueSetDb, ValueSet valueSet) {
-        valueSetDb.add(valueSet.getUrl(), toValueSetVersionExpansion(valueSet));
-    }
-
-    private JsonObject toValueSetVersionExpansion(ValueSet valueSet) {
-        JsonObject expansion = new JsonObject();
-        expansion.add(valueSet.getVersion(), toValueSetExpansion(valueSet));
-        return expansion;
-    }
-
-    private JsonArray toValueSetExpansion(ValueSet valueSet) {
-        JsonArray result = new JsonArray();
-        if (valueSet.hasExpansion()) {
-            for (ValueSet.ValueSetExpansionContainsComponent cc : valueSet.getExpansion().getContains()) {
-                result.add(toCodeEntry(cc));
-            }
-        }
-        return result;
-    }
-
-    private JsonObject toCodeEntry(ValueSet.ValueSetExpansionContainsComponent cc) {
-        JsonObject result = new JsonObject();
-        if (cc.hasCode()) {
-            result.addProperty("code", cc.getCode());
-        }
-        if (cc.hasSystem()) {
-            result.addProperty("system", cc.getSystem());
-        }
-        if (cc.hasVersion()) {
-            result.addProperty("version", cc.getVersion());
-        }
-        return result;
-    }
 }
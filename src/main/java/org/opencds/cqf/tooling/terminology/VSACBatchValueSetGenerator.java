@@ -1,15 +1,45 @@
 package org.opencds.cqf.tooling.terminology;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.utilities.ThreadPools;
 
+/**
+ * Converts each .xlsx spreadsheet in a directory to ValueSets, using the generator for the value set source.
+ *
+ * Spreadsheets are converted concurrently, each by its own generator, so a spreadsheet that fails to convert does not
+ * stop the others. The time taken and any failure are reported for each spreadsheet once they have all been
+ * converted, and the batch fails if any spreadsheet did.
+ */
 public class VSACBatchValueSetGenerator extends Operation {
 
     private String pathToSpreadsheetDirectory; // -pathtospreadsheetdir (-ptsd)
     private String valueSetSource = "vsac"; //vsac or cms
     private String baseUrl; // -baseurl (-burl)
     private boolean setName; // -setname (-name)
+    private int maxThreads = ThreadPools.DEFAULT_MAX_THREADS; // -maxthreads (-mt)
+
+    public static class ConversionResult {
+        private final File spreadsheet;
+        private long elapsedMillis;
+        private Exception error;
+
+        public ConversionResult(File spreadsheet) {
+            this.spreadsheet = spreadsheet;
+        }
+
+        public File getSpreadsheet() { return spreadsheet; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public Exception getError() { return error; }
+        public boolean isSuccessful() { return error == null; }
+    }
 
     @Override
     public void execute(String[] args) {
@@ -43,6 +73,10 @@ public class VSACBatchValueSetGenerator extends Operation {
                 case "name":
                     setName = value.toLowerCase().equals("true") ? true : false;
                     break;
+                case "maxthreads":
+                case "mt":
+                    maxThreads = Integer.valueOf(value);
+                    break;
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
@@ -63,34 +97,114 @@ public class VSACBatchValueSetGenerator extends Operation {
             if (baseUrl != null) {
                 throw new RuntimeException("baseUrl flag is not valid with valueSetSource flag set to 'cms'");
             }
-            CMSFlatMultiValueSetGenerator generator;
-            for (File valueSet : valueSetFiles) {
-                if (!valueSet.getPath().endsWith(".xlsx")) continue;
-                String[] argsForSpreadsheet = { "-pts=" + valueSet.getPath(), "-op=" + getOutputPath() }; //-pts=${valueSetExcelSpreadSheet} -op=${resourcesValueSetDirectory}
-                generator =  new CMSFlatMultiValueSetGenerator();
-                generator.execute(argsForSpreadsheet);
-            }
         }
         else if (valueSetSource.equals("vsac")) {
-            VSACValueSetGenerator generator;
             if (baseUrl == null) {
                 baseUrl = VSACValueSetGenerator.VSAC_BASE_URL;
             }
-            for (File valueSet : valueSetFiles) {
-                if (!valueSet.getPath().endsWith(".xlsx")) continue;
-                String[] argsForSpreadsheet = { "-VsacXlsxToValueSet", "-pts=" + valueSet.getAbsolutePath(), "-op=" + getOutputPath(), "-burl=" + baseUrl, "-name=" + (setName ? "true" : "false") };
-                generator =  new VSACValueSetGenerator();
-                generator.execute(argsForSpreadsheet);
+        }
+        else if (!valueSetSource.equals("hedis")) {
+            return;
+        }
+
+        List<File> spreadsheets = new ArrayList<>();
+        for (File valueSet : valueSetFiles) {
+            if (valueSet.getPath().endsWith(".xlsx")) {
+                spreadsheets.add(valueSet);
             }
         }
-        else if (valueSetSource.equals("hedis")) {
-            HEDISValueSetGenerator generator;
-            for (File valueSet : valueSetFiles) {
-                if (!valueSet.getPath().endsWith(".xlsx")) continue;
-                String[] argsForSpreadsheet = { "-HedisXlsxToValueSet", "-pts=" + valueSet.getAbsolutePath(), "-op=" + getOutputPath() };
-                generator =  new HEDISValueSetGenerator();
-                generator.execute(argsForSpreadsheet);
+        spreadsheets.sort(Comparator.comparing(File::getName));
+
+        long start = System.currentTimeMillis();
+        List<ConversionResult> results = convert(spreadsheets);
+        long elapsedMillis = System.currentTimeMillis() - start;
+
+        System.out.println(getSummary(results, elapsedMillis));
+        long failed = results.stream().filter(r -> !r.isSuccessful()).count();
+        if (failed > 0) {
+            throw new RuntimeException(String.format("%d of %d spreadsheets could not be converted", failed, results.size()));
+        }
+    }
+
+    private void convert(File spreadsheet) {
+        switch (valueSetSource) {
+            case "cms":
+                new CMSFlatMultiValueSetGenerator().execute(new String[] { "-pts=" + spreadsheet.getPath(), "-op=" + getOutputPath() });
+                break;
+            case "vsac":
+                new VSACValueSetGenerator().execute(new String[] { "-VsacXlsxToValueSet", "-pts=" + spreadsheet.getAbsolutePath(), "-op=" + getOutputPath(), "-burl=" + baseUrl, "-name=" + (setName ? "true" : "false") });
+                break;
+            case "hedis":
+                new HEDISValueSetGenerator().execute(new String[] { "-HedisXlsxToValueSet", "-pts=" + spreadsheet.getAbsolutePath(), "-op=" + getOutputPath() });
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown value set source: " + valueSetSource);
+        }
+    }
+
+    /*
+    Converts the spreadsheets on a bounded pool of threads, each with its own generator (the generators accumulate
+    the ValueSets of the spreadsheet they convert), and returns the results in the order of the spreadsheets
+     */
+    private List<ConversionResult> convert(List<File> spreadsheets) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be at least 1");
+        }
+
+        ExecutorService executor = ThreadPools.newDaemonPool("valueset-batch", Math.min(maxThreads, Math.max(1, spreadsheets.size())));
+
+        List<ConversionResult> results = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (File spreadsheet : spreadsheets) {
+                ConversionResult result = new ConversionResult(spreadsheet);
+                results.add(result);
+                futures.add(executor.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    try {
+                        convert(spreadsheet);
+                    } catch (Exception e) {
+                        result.error = e;
+                    } finally {
+                        result.elapsedMillis = System.currentTimeMillis() - start;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    // The task catches exceptions itself, so this is an Error (e.g. OutOfMemoryError)
+                    results.get(i).error = new RuntimeException(String.valueOf(e.getCause()), e.getCause());
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Value set conversion was interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    public static String getSummary(List<ConversionResult> results, long elapsedMillis) {
+        StringBuilder summary = new StringBuilder();
+        int failed = 0;
+        for (ConversionResult result : results) {
+            if (result.isSuccessful()) {
+                summary.append(String.format("  Converted %s (%d ms)%n", result.getSpreadsheet().getName(), result.getElapsedMillis()));
+            }
+            else {
+                failed++;
+                summary.append(String.format("  FAILED %s (%d ms): %s%n", result.getSpreadsheet().getName(), result.getElapsedMillis(),
+                    result.getError().getMessage()));
+            }
+        }
+        summary.append(String.format("Converted %d of %d spreadsheets in %d ms", results.size() - failed, results.size(), elapsedMillis));
+        if (failed > 0) {
+            summary.append(String.format(" (%d failed)", failed));
         }
+        return summary.toString();
     }
 }
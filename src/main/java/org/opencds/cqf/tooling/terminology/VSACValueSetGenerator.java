@@ -1,17 +1,12 @@
 package org.opencds.cqf.tooling.terminology;
 
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.hl7.fhir.dstu3.model.CodeType;
 import org.hl7.fhir.dstu3.model.Enumerations;
 import org.hl7.fhir.dstu3.model.Extension;
@@ -105,12 +100,10 @@ public class VSACValueSetGenerator extends Operation {
             baseUrl = VSAC_BASE_URL;
         }
 
-        Workbook workbook = SpreadsheetHelper.getWorkbook(pathToSpreadsheet);
-
         ValueSet vs = new ValueSet();
-        try {
-            resolveMetaData(vs, workbook);
-            resolveCodeList(workbook);
+        try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(pathToSpreadsheet)) {
+            resolveMetaData(vs, reader);
+            resolveCodeList(reader);
             if (includeCompose) {
                 resolveValueSet(vs);
                 if (declareCPGProfiles) {
@@ -135,22 +128,26 @@ public class VSACValueSetGenerator extends Operation {
         }
     }
 
-    private String getSecondStringInRow(Sheet sheet, int rowIdx) {
+    private String getSecondStringInRow(Map<Integer, SpreadsheetRow> metaSheet, int rowIdx) {
+        SpreadsheetRow row = metaSheet.get(rowIdx);
+        if (row == null) {
+            return null;
+        }
         int col = 1;
-        for (Cell cell : sheet.getRow(rowIdx)) {
-            if (cell == null) {
-                continue;
-            }
+        for (Integer cellIndex : row.getCells().keySet()) {
             if (col == 2) {
-                return SpreadsheetHelper.getCellAsString(cell);
+                return row.getCellAsString(cellIndex);
             }
             ++col;
         }
         return null;
     }
 
-    public void resolveMetaData(ValueSet vs, Workbook workbook) {
-        Sheet metaSheet = workbook.getSheetAt(metaSheetNum);
+    public void resolveMetaData(ValueSet vs, StreamingSpreadsheetReader reader) {
+        Map<Integer, SpreadsheetRow> metaSheet = new HashMap<>();
+        for (SpreadsheetRow row : reader.readRows(metaSheetNum)) {
+            metaSheet.put(row.getRowNum(), row);
+        }
         String title = getSecondStringInRow(metaSheet, metaNameRow);
         if (title != null) {
             title = title.replace("/", "");
@@ -209,65 +206,69 @@ public class VSACValueSetGenerator extends Operation {
         }
     }
 
-    public void resolveCodeList(Workbook workbook) {
-        Iterator<Row> it = workbook.getSheetAt(codeSheetNum).rowIterator();
-        while(it.hasNext()) {
-            Row row = it.next();
-            if (row.getRowNum() < codeListRow) {
-                continue;
+    public void resolveCodeList(StreamingSpreadsheetReader reader) {
+        try (StreamingSpreadsheetReader.SpreadsheetRowIterator it = reader.rows(codeSheetNum)) {
+            while (it.hasNext()) {
+                resolveCode(it.next());
             }
+        }
+    }
 
-            String version = SpreadsheetHelper.getCellAsString(row.getCell(versionCol));            
-            String systemName = SpreadsheetHelper.getCellAsString(row.getCell(systemNameCol));
-            String display = SpreadsheetHelper.getCellAsString(row.getCell(descriptionCol));
+    private void resolveCode(SpreadsheetRow row) {
+        if (row.getRowNum() < codeListRow) {
+            return;
+        }
 
-            String code = SpreadsheetHelper.getCellAsString(row.getCell(codeCol));
+        String version = row.getCellAsString(versionCol);
+        String systemName = row.getCellAsString(systemNameCol);
+        String display = row.getCellAsString(descriptionCol);
 
-            if (code == null) {
-                throw new IllegalArgumentException(String.format("No code value found on row: %d", row.getRowNum()));
-            }
+        String code = row.getCellAsString(codeCol);
 
-            if (code.matches("[+-]?\\d(\\.\\d+)?[Ee][+-]?\\d+")) {
-                throw new IllegalArgumentException(String.format("Scientific Notation is not allowed for a code: %s", code));
-            }
+        if (code == null) {
+            throw new IllegalArgumentException(String.format("No code value found on row: %d", row.getRowNum()));
+        }
 
-            if ((version == null || version.equals(""))
-                && (code == null || code.equals(""))
-                && (
-                    (systemName == null || systemName.equals("")) 
-                        && (SpreadsheetHelper.getCellAsString(row.getCell(systemOidCol)) == null || SpreadsheetHelper.getCellAsString(row.getCell(systemOidCol)).equals(""))
-                )
-            ) {
-                //Protecting against error where last line has no content except hidden characters introduced by copy/paste operations
-                continue;
-            }
+        if (code.matches("[+-]?\\d(\\.\\d+)?[Ee][+-]?\\d+")) {
+            throw new IllegalArgumentException(String.format("Scientific Notation is not allowed for a code: %s", code));
+        }
 
-            String system;
-            if (systemName == null || systemName.equals("")) {
-                system = SpreadsheetHelper.getCellAsString(row.getCell(systemOidCol));
-                if (system == null || system.equals("")) {
-                    throw new IllegalArgumentException(String.format("No system value found on row: %d", row.getRowNum()));
-                }
-                system = CodeSystemLookupDictionary.getUrlFromOid(system);
-            }
-            else {
-                system = CodeSystemLookupDictionary.getUrlFromName(systemName);
-            }
+        if ((version == null || version.equals(""))
+            && (code == null || code.equals(""))
+            && (
+                (systemName == null || systemName.equals("")) 
+                    && (row.getCellAsString(systemOidCol) == null || row.getCellAsString(systemOidCol).equals(""))
+            )
+        ) {
+            //Protecting against error where last line has no content except hidden characters introduced by copy/paste operations
+            return;
+        }
 
+        String system;
+        if (systemName == null || systemName.equals("")) {
+            system = row.getCellAsString(systemOidCol);
             if (system == null || system.equals("")) {
                 throw new IllegalArgumentException(String.format("No system value found on row: %d", row.getRowNum()));
             }
+            system = CodeSystemLookupDictionary.getUrlFromOid(system);
+        }
+        else {
+            system = CodeSystemLookupDictionary.getUrlFromName(systemName);
+        }
 
-            int hash = system.hashCode() * (version != null && !version.equals("") ? version.hashCode() : 1);
-
-            if (!codesBySystem.containsKey(hash)) {
-                codesBySystem.put(hash, new org.opencds.cqf.tooling.terminology.ValueSet().setSystem(system).setVersion(version));
-            }
+        if (system == null || system.equals("")) {
+            throw new IllegalArgumentException(String.format("No system value found on row: %d", row.getRowNum()));
+        }
 
-            ValueSet.ConceptReferenceComponent concept = new ValueSet.ConceptReferenceComponent().setCode(code).setDisplay(display);
+        int hash = system.hashCode() * (version != null && !version.equals("") ? version.hashCode() : 1);
 
-            codesBySystem.get(hash).addCode(concept);
+        if (!codesBySystem.containsKey(hash)) {
+            codesBySystem.put(hash, new org.opencds.cqf.tooling.terminology.ValueSet().setSystem(system).setVersion(version));
         }
+
+        ValueSet.ConceptReferenceComponent concept = new ValueSet.ConceptReferenceComponent().setCode(code).setDisplay(display);
+
+        codesBySystem.get(hash).addCode(concept);
     }
 
     public void resolveValueSet(ValueSet vs) {
@@ -297,9 +298,8 @@ public class VSACValueSetGenerator extends Operation {
                         : encoding.toLowerCase().startsWith("j")
                                 ? FhirContext.forDstu3Cached().newJsonParser()
                                 : FhirContext.forDstu3Cached().newXmlParser();
-        try (FileOutputStream writer = new FileOutputStream(getOutputPath() + "/" + fileName)) {
-            writer.write(parser.setPrettyPrint(true).encodeResourceToString(vs).getBytes());
-            writer.flush();
+        try {
+            SpreadsheetHelper.writeFileAtomically(new File(getOutputPath(), fileName), parser.setPrettyPrint(true).encodeResourceToString(vs).getBytes());
         } catch (IOException e) {
             e.printStackTrace();
             throw new IllegalArgumentException("Error writing ValueSet to file: " + e.getMessage());
@@ -0,0 +1,181 @@
+package org.opencds.cqf.tooling.terminology;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.hl7.fhir.r4.model.ValueSet;
+
+/**
+ * Writes ValueSet expansions to a valueset-db.json file as they are read, so only the value set being written is held
+ * in memory:
+ *
+ *     { "url": { "version": [ { "code": "...", "system": "...", "version": "..." }, ... ] }, ... }
+ *
+ * The output can be sharded by code system, where each shard contains the codes of every value set from that system,
+ * or by the canonical base of the value set urls (the prefix before /ValueSet/). Each shard is written to its own
+ * valueset-db-[shard].json file, with the same structure as valueset-db.json.
+ */
+public class ValueSetDbWriter implements Closeable {
+
+    public enum ShardBy {
+        NONE, CODESYSTEM, PREFIX;
+
+        public static ShardBy fromCode(String code) {
+            switch (code.toLowerCase()) {
+                case "none": return NONE;
+                case "codesystem": case "system": return CODESYSTEM;
+                case "prefix": return PREFIX;
+                default: throw new IllegalArgumentException("Unknown shard option: " + code);
+            }
+        }
+    }
+
+    private final File outputDirectory;
+    private final ShardBy shardBy;
+    private final Map<String, JsonWriter> shards = new LinkedHashMap<>();
+    // Across all shards, so the first value set with a url wins even if a later one has codes in other shards
+    private final Set<String> writtenUrls = new HashSet<>();
+
+    public ValueSetDbWriter(File outputDirectory, ShardBy shardBy) {
+        this.outputDirectory = outputDirectory;
+        this.shardBy = shardBy;
+    }
+
+    /**
+     * Writes the expansion of the value set to the output (or to each shard it has codes in)
+     *
+     * @return false if the value set could not be written, because it has no url or version, or a value set with
+     * the same url has already been written
+     */
+    public boolean write(ValueSet valueSet) throws IOException {
+        if (!valueSet.hasUrl() || !valueSet.hasVersion() || !writtenUrls.add(valueSet.getUrl())) {
+            return false;
+        }
+
+        Map<String, List<ValueSet.ValueSetExpansionContainsComponent>> codesByShard = new LinkedHashMap<>();
+        String shardName = getShardName(valueSet);
+        if (shardName != null) {
+            codesByShard.put(shardName, new ArrayList<>());
+        }
+        if (valueSet.hasExpansion()) {
+            for (ValueSet.ValueSetExpansionContainsComponent cc : valueSet.getExpansion().getContains()) {
+                String name = shardName != null ? shardName : toFileName(cc.hasSystem() ? cc.getSystem() : "unknown");
+                codesByShard.computeIfAbsent(name, k -> new ArrayList<>()).add(cc);
+            }
+        }
+
+        for (Map.Entry<String, List<ValueSet.ValueSetExpansionContainsComponent>> entry : codesByShard.entrySet()) {
+            JsonWriter writer = getShard(entry.getKey());
+            writer.name(valueSet.getUrl());
+            writer.beginObject();
+            writer.name(valueSet.getVersion());
+            writer.beginArray();
+            for (ValueSet.ValueSetExpansionContainsComponent cc : entry.getValue()) {
+                writeCodeEntry(writer, cc);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return true;
+    }
+
+    /*
+    The name of the shard for the whole value set, or null if the value set is sharded by the system of each code
+     */
+    private String getShardName(ValueSet valueSet) {
+        switch (shardBy) {
+            case CODESYSTEM:
+                return null;
+            case PREFIX:
+                String url = valueSet.getUrl();
+                int index = url.lastIndexOf("/ValueSet/");
+                return toFileName(index > 0 ? url.substring(0, index) : "unknown");
+            default:
+                return "";
+        }
+    }
+
+    static String toFileName(String url) {
+        return url.replaceFirst("^[A-Za-z]+://", "").replaceAll("[^A-Za-z0-9.-]+", "_");
+    }
+
+    private JsonWriter getShard(String name) throws IOException {
+        JsonWriter writer = shards.get(name);
+        if (writer == null) {
+            writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getFile(name)), StandardCharsets.UTF_8)));
+            // Formatted as Gson's pretty printing formatted the JsonObject this replaces
+            writer.setIndent("  ");
+            writer.setHtmlSafe(true);
+            writer.beginObject();
+            shards.put(name, writer);
+        }
+        return writer;
+    }
+
+    private void writeCodeEntry(JsonWriter writer, ValueSet.ValueSetExpansionContainsComponent cc) throws IOException {
+        writer.beginObject();
+        if (cc.hasCode()) {
+            writer.name("code").value(cc.getCode());
+        }
+        if (cc.hasSystem()) {
+            writer.name("system").value(cc.getSystem());
+        }
+        if (cc.hasVersion()) {
+            writer.name("version").value(cc.getVersion());
+        }
+        writer.endObject();
+    }
+
+    /**
+     * @return the files written, in the order they were created
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<>();
+        for (String name : shards.keySet()) {
+            files.add(getFile(name));
+        }
+        return files;
+    }
+
+    private File getFile(String shardName) {
+        return new File(outputDirectory, shardName.isEmpty() ? "valueset-db.json" : "valueset-db-" + shardName + ".json");
+    }
+
+    /**
+     * Completes and closes each file. An empty valueset-db.json is written if no value set was written unsharded.
+     */
+    @Override
+    public void close() throws IOException {
+        if (shardBy == ShardBy.NONE) {
+            getShard("");
+        }
+
+        IOException error = null;
+        for (JsonWriter writer : shards.values()) {
+            try {
+                writer.endObject();
+                writer.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -12,16 +12,12 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.hl7.fhir.r4.model.CodeType;
 import org.hl7.fhir.r4.model.StringType;
 import org.hl7.fhir.r4.model.ValueSet;
 import org.opencds.cqf.tooling.Operation;
-import org.opencds.cqf.tooling.terminology.SpreadsheetHelper;
+import org.opencds.cqf.tooling.terminology.SpreadsheetRow;
+import org.opencds.cqf.tooling.terminology.StreamingSpreadsheetReader;
 import org.opencds.cqf.tooling.terminology.distributable.OrganizationalMetaData;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -88,12 +84,18 @@ public class TemplateToValueSetGenerator extends Operation {
             }
         }
 
-        Workbook workbook = SpreadsheetHelper.getWorkbook(pathToSpreadsheet);
-
-        OrganizationalMetaData organizationalMetaData = resolveOrganizationalMeta(workbook.getSheetAt(0));
-        Map<String, Integer> vsMap = resolveVsMap(workbook, workbook.getSheetAt(1));
-        List<ValueSet> valueSets = resolveValueSets(organizationalMetaData, vsMap, workbook);
-        output(valueSets);
+        try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(pathToSpreadsheet)) {
+            OrganizationalMetaData organizationalMetaData;
+            try (StreamingSpreadsheetReader.SpreadsheetRowIterator rows = reader.rows(0)) {
+                organizationalMetaData = resolveOrganizationalMeta(rows);
+            }
+            Map<String, Integer> vsMap;
+            try (StreamingSpreadsheetReader.SpreadsheetRowIterator rows = reader.rows(1)) {
+                vsMap = resolveVsMap(rows);
+            }
+            List<ValueSet> valueSets = resolveValueSets(organizationalMetaData, vsMap, reader);
+            output(valueSets);
+        }
     }
 
     private void setOutputVersion(String value) {
@@ -107,52 +109,51 @@ public class TemplateToValueSetGenerator extends Operation {
     /**
      * Iterates over each row in sheet params, builds OrganizationalMeta obj with pre-defined strs.
      *
-     * @param sheet
+     * @param rowIterator
      * @return OrganizationalMeta object with properties parsed from given sheet.
      */
-    private OrganizationalMetaData resolveOrganizationalMeta(Sheet sheet) {
+    private OrganizationalMetaData resolveOrganizationalMeta(Iterator<SpreadsheetRow> rowIterator) {
         OrganizationalMetaData organizationalMetaData = new OrganizationalMetaData();
-        Iterator<Row> rowIterator = sheet.rowIterator();
 
         while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
-            switch (row.getCell(0, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).getStringCellValue()) {
+            SpreadsheetRow row = rowIterator.next();
+            switch (getFirstCellValue(row)) {
                 case "Canonical URL":
-                    organizationalMetaData.setCanonicalUrlBase(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setCanonicalUrlBase(row.getCellAsString(1));
                     break;
                 case "Copyright":
-                    organizationalMetaData.setCopyright(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setCopyright(row.getCellAsString(1));
                     break;
                 case "Jurisdiction":
-                    organizationalMetaData.setJurisdiction(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setJurisdiction(row.getCellAsString(1));
                     break;
                 case "Publisher":
-                    organizationalMetaData.setPublisher(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setPublisher(row.getCellAsString(1));
                     break;
                 case "approvalDate":
-                    organizationalMetaData.setApprovalDate(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setApprovalDate(row.getCellAsString(1));
                     break;
                 case "effectiveDate":
-                    organizationalMetaData.setEffectiveDate(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setEffectiveDate(row.getCellAsString(1));
                     break;
                 case "lastReviewDate":
-                    organizationalMetaData.setLastReviewDate(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setLastReviewDate(row.getCellAsString(1));
                     break;
                 case "author.name":
-                    organizationalMetaData.setAuthorName(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setAuthorName(row.getCellAsString(1));
                     break;
                 case "author.telecom.system":
-                    organizationalMetaData.setAuthorTelecomSystem(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setAuthorTelecomSystem(row.getCellAsString(1));
                     break;
                 case "author.telecom.value":
-                    organizationalMetaData.setAuthorTelecomValue(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    organizationalMetaData.setAuthorTelecomValue(row.getCellAsString(1));
                     break;
                 case "CodeSystems":
                     while (rowIterator.hasNext()) {
                         row = rowIterator.next();
-                        String urlCell = SpreadsheetHelper.getCellAsString(row.getCell(1));
+                        String urlCell = row.getCellAsString(1);
                         if (null != urlCell && urlCell.length() > 0) {
-                            codeSystemDataVersionMap.put(SpreadsheetHelper.getCellAsString(row.getCell(1)), SpreadsheetHelper.getCellAsString(row.getCell(2)));
+                            codeSystemDataVersionMap.put(row.getCellAsString(1), row.getCellAsString(2));
                         }
 
                     }
@@ -167,91 +168,83 @@ public class TemplateToValueSetGenerator extends Operation {
     /**
      * Iterates over each row in sheet params, builds CPGMeta obj with pre-defined strs.
      *
-     * @param sheet
+     * @param rows
      * @return CPGMeta object with properties parsed from given sheet.
      */
-    private CPGMeta resolveCpgMeta(Sheet sheet) {
+    private CPGMeta resolveCpgMeta(List<SpreadsheetRow> rows) {
         CPGMeta meta = new CPGMeta();
-        Iterator<Row> rowIterator = sheet.rowIterator();
-        while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
-
-            CellType cellType = row.getCell(0, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).getCellType();
-            String cellString = cellType.compareTo(CellType.STRING) == 0
-                    ? row.getCell(0, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).getStringCellValue()
-                    : String.valueOf(row.getCell(0, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).getNumericCellValue());
-
-            switch (cellString) {
+        for (SpreadsheetRow row : rows) {
+            switch (getFirstCellValue(row)) {
                 case "id":
-                    meta.setId(SpreadsheetHelper.getCellAsString(row.getCell(1)).toLowerCase());
+                    meta.setId(row.getCellAsString(1).toLowerCase());
                     // In the latest workbook we were given, many valuesets had unpopulated name cells.
                     // However each valueset had a populated id cell.
                     meta.setName(meta.getId());
                     break;
                 case "keyword":
-                    meta.setKeyword(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setKeyword(row.getCellAsString(1));
                     break;
                 case "rules-text":
-                    meta.setRulesText(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setRulesText(row.getCellAsString(1));
                     break;
                 case "expression.description":
-                    meta.setExpressionDescription(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setExpressionDescription(row.getCellAsString(1));
                     break;
                 case "expression.name":
-                    meta.setExpressionName(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setExpressionName(row.getCellAsString(1));
                     break;
                 case "expression.language":
-                    meta.setExpressionLanguage(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setExpressionLanguage(row.getCellAsString(1));
                     break;
                 case "expression.expression":
-                    meta.setExpressionExpression(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setExpressionExpression(row.getCellAsString(1));
                     break;
                 case "warning":
-                    meta.setWarning(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setWarning(row.getCellAsString(1));
                     break;
                 case "version":
-                    meta.setVersion(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setVersion(row.getCellAsString(1));
                     break;
 //                case "name":
-//                    meta.setName(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+//                    meta.setName(row.getCellAsString(1));
 //                    break;
                 case "title":
-                    String title = SpreadsheetHelper.getCellAsString(row.getCell(1));
+                    String title = row.getCellAsString(1);
                     meta.setTitle(title);
                     if ((null != title && title.length() > 0) && (null == meta.getId() || meta.getId().length() < 1)) {
                         meta.setId(title.toLowerCase(Locale.ROOT).replace(" ", "-"));
                     }
                     break;
                 case "status":
-                    meta.setStatus(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setStatus(row.getCellAsString(1));
                     break;
                 case "experimental":
-                    meta.setExperimental(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setExperimental(row.getCellAsString(1));
                     break;
                 case "date":
-                    meta.setDate(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setDate(row.getCellAsString(1));
                     break;
                 case "description":
-                    meta.setDescription(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setDescription(row.getCellAsString(1));
                     break;
                 case "purpose":
-                    meta.setPurpose(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setPurpose(row.getCellAsString(1));
                     break;
                 case "purpose.ClinicalFocus":
-                    meta.setPurposeClinicalFocus(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setPurposeClinicalFocus(row.getCellAsString(1));
                     break;
                 case "purpose.DataElementScope":
-                    meta.setPurposeDataElementScope(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setPurposeDataElementScope(row.getCellAsString(1));
                     break;
                 case "purpose.InclusionCriteria":
-                    meta.setPurposeInclusionCriteria(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setPurposeInclusionCriteria(row.getCellAsString(1));
                     break;
                 case "purpose.ExclusionCriteria":
-                    meta.setPurposeExclusionCriteria(SpreadsheetHelper.getCellAsString(row.getCell(1)));
+                    meta.setPurposeExclusionCriteria(row.getCellAsString(1));
                     break;
                 case "compose":
-                    if (row.getCell(1, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).getStringCellValue().length() > 1)
-                        meta.setCompose(SpreadsheetHelper.getCellAsStringNoReplacement(row.getCell(1)));
+                    if (row.getCellValue(1) != null && row.getCellValue(1).length() > 1)
+                        meta.setCompose(row.getCellAsStringNoReplacement(1));
                     break;
                 default:
                     break;
@@ -260,39 +253,43 @@ public class TemplateToValueSetGenerator extends Operation {
         return meta;
     }
 
-    private Map<String, Integer> resolveVsMap(Workbook workbook, Sheet sheet) {
+    private Map<String, Integer> resolveVsMap(Iterator<SpreadsheetRow> rowIterator) {
         Map<String, Integer> vsMap = new HashMap<>();
-        Iterator<Row> rowIterator = sheet.rowIterator();
-        Row row = rowIterator.next();// skip first row
+        SpreadsheetRow row = rowIterator.next();// skip first row
         while (rowIterator.hasNext()) {
             row = rowIterator.next();
-            String sheetName = SpreadsheetHelper.getCellAsString(row.getCell(2, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK));
+            String sheetName = row.getCellAsString(2);
 
-            if (sheetName.length() <= 0) continue;
+            if (sheetName == null || sheetName.length() <= 0) continue;
 
-            vsMap.put(
-                    SpreadsheetHelper.getCellAsString(row.getCell(2, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)),
-                    row.getCell(3, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).getRowIndex());
+            vsMap.put(sheetName, row.getRowNum());
         }
         return vsMap;
     }
 
+    private String getFirstCellValue(SpreadsheetRow row) {
+        String value = row.getCellValue(0);
+        return value == null ? "" : value;
+    }
+
     /**
      * Iterates over vsMap.entrySet() to resolve & populate CPGMeta objects.
      *
      * @param meta
      * @param vsMap
-     * @param workbook
+     * @param reader
      * @return List of ValueSets
      */
-    private List<ValueSet> resolveValueSets(OrganizationalMetaData meta, Map<String, Integer> vsMap, Workbook workbook) {
+    private List<ValueSet> resolveValueSets(OrganizationalMetaData meta, Map<String, Integer> vsMap, StreamingSpreadsheetReader reader) {
         List<ValueSet> valueSets = new ArrayList<>();
         CPGMeta cpgMeta;
         ValueSet vs;
 
         for (Map.Entry<String, Integer> entrySet : vsMap.entrySet()) {
-            Sheet sheet = workbook.getSheet(entrySet.getKey());
-            if (null != sheet) {
+            int sheetIndex = reader.getSheetIndex(entrySet.getKey());
+            if (sheetIndex >= 0) {
+                // The meta sheet is small, and read for both the metadata and the compose check
+                List<SpreadsheetRow> sheet = reader.readRows(sheetIndex);
                 cpgMeta = resolveCpgMeta(sheet);
                 try {
                     if (cpgMeta.getTitle().equals("only fill this out"))
@@ -303,7 +300,9 @@ public class TemplateToValueSetGenerator extends Operation {
 
                 vs = cpgMeta.populate(fhirContext, outputVersion);
                 meta.populate(vs, outputVersion);
-                resolveCodeList(workbook.getSheet(entrySet.getKey().split("-")[0] + "-cl"), vs, meta.getSnomedVersion());
+                try (StreamingSpreadsheetReader.SpreadsheetRowIterator codeList = reader.rows(entrySet.getKey().split("-")[0] + "-cl")) {
+                    resolveCodeList(codeList, vs, meta.getSnomedVersion());
+                }
 
                 if (outputVersion.equalsIgnoreCase("r4")) {
 
@@ -328,27 +327,23 @@ public class TemplateToValueSetGenerator extends Operation {
         return valueSets;
     }
 
-    private boolean shouldAddCompose(ValueSet vs, Sheet sheet) {
+    private boolean shouldAddCompose(ValueSet vs, List<SpreadsheetRow> rows) {
         if (vs.hasCompose() && outputVersion.equalsIgnoreCase("r4")) {
             return true;
         }
-        Iterator<Row> rowIterator = sheet.rowIterator();
-        while (rowIterator.hasNext()) {
-            Row thisRow = rowIterator.next();
-            Cell firstCell = thisRow.getCell(0);
-            Cell secondCell = thisRow.getCell(1);
-            if (firstCell.getStringCellValue() != null &&
-                    firstCell.getStringCellValue().equalsIgnoreCase("rules-text") &&
+        for (SpreadsheetRow thisRow : rows) {
+            String firstCell = thisRow.getCellValue(0);
+            String secondCell = thisRow.getCellValue(1);
+            if (firstCell != null &&
+                    firstCell.equalsIgnoreCase("rules-text") &&
                     secondCell != null &&
-                    secondCell.getStringCellValue() != null &&
-                    secondCell.getStringCellValue().length() > 0) {
+                    secondCell.length() > 0) {
                 return true;
             }
-            if (firstCell.getStringCellValue() != null &&
-                    firstCell.getStringCellValue().equalsIgnoreCase("expression") &&
+            if (firstCell != null &&
+                    firstCell.equalsIgnoreCase("expression") &&
                     secondCell != null &&
-                    secondCell.getStringCellValue() != null &&
-                    secondCell.getStringCellValue().length() > 0) {
+                    secondCell.length() > 0) {
                 return true;
             }
         }
@@ -369,13 +364,11 @@ public class TemplateToValueSetGenerator extends Operation {
     /**
      * Iterates over -cl sheet adding an expansion and compose when appropriate.
      *
-     * @param sheet
+     * @param rowIterator
      * @param vs
      * @param snomedVersion
      */
-    private void resolveCodeList(Sheet sheet, ValueSet vs, String snomedVersion) {
-        Iterator<Row> rowIterator = sheet.rowIterator();
-
+    private void resolveCodeList(Iterator<SpreadsheetRow> rowIterator, ValueSet vs, String snomedVersion) {
         Boolean active = true;
         String system = null;
         String version = null;
@@ -384,27 +377,26 @@ public class TemplateToValueSetGenerator extends Operation {
         expansion.setTimestamp(Date.from(Instant.now()));
 
         while (rowIterator.hasNext()) {
-            Row row = rowIterator.next();
+            SpreadsheetRow row = rowIterator.next();
 
-            String code = SpreadsheetHelper.getCellAsString(row.getCell(0));
-            if (code.length() <= 0) continue;
+            String code = row.getCellAsString(0);
+            if (code == null || code.length() <= 0) continue;
 
-            if (code == null || code.equals("Code")) continue;
+            if (code.equals("Code")) continue;
 
             // ???
             if (code.equals("expansion")) {
 
             } else {
-                String description = SpreadsheetHelper.getCellAsString(row.getCell(1));
-                active = SpreadsheetHelper.getCellAsString(row.getCell(2)) == null ? active : Boolean.valueOf(SpreadsheetHelper.getCellAsString(row.getCell(2)));
-                system = SpreadsheetHelper.getCellAsString(row.getCell(3, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)) == null ? system : SpreadsheetHelper.getCellAsString(row.getCell(3));
+                String description = row.getCellAsString(1);
+                active = row.getCellAsString(2) == null ? active : Boolean.valueOf(row.getCellAsString(2));
+                system = row.getCellValue(3) == null ? system : row.getCellAsString(3);
 
                 if (system == null)
                     throw new RuntimeException("A system must be specified in the code list");
                 system = replaceBadSystem(system);
-                version = SpreadsheetHelper.getCellAsString(
-                        row.getCell(4)) == null
-                        ? version : SpreadsheetHelper.getCellAsString(row.getCell(4));
+                version = row.getCellAsString(4) == null
+                        ? version : row.getCellAsString(4);
                 if (null == version || version.equalsIgnoreCase("")) {
                     version = this.codeSystemDataVersionMap.get(system);
                 }
@@ -18,18 +18,22 @@ import ca.uhn.fhir.context.RuntimeResourceDefinition;
 public class BundleUtils {
 
     public static Object bundleArtifacts(String id, List<IBaseResource> resources, FhirContext fhirContext) {
+        // The resources are shared with other (concurrently bundled) artifacts, so ids are only assigned on copies
+        List<IBaseResource> bundleResources = new ArrayList<>(resources.size());
         for (IBaseResource resource : resources) {
             if (resource.getIdElement().getIdPart() == null || resource.getIdElement().getIdPart().equals("")) {
+                resource = ResourceUtils.copyResource(resource);
                 ResourceUtils.setIgId(id.replace("-bundle", "-" + UUID.randomUUID()), resource, false);
                 resource.setId(resource.getClass().getSimpleName() + "/" + resource.getIdElement().getIdPart());
             }
+            bundleResources.add(resource);
         }
         
         switch (fhirContext.getVersion().getVersion()) {
             case DSTU3:
-                return bundleStu3Artifacts(id, resources);
+                return bundleStu3Artifacts(id, bundleResources);
             case R4:
-                return bundleR4Artifacts(id, resources);
+                return bundleR4Artifacts(id, bundleResources);
             default:
                 throw new IllegalArgumentException("Unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
         }
@@ -79,10 +83,10 @@ public class BundleUtils {
     public static void postBundle(IOUtils.Encoding encoding, FhirContext fhirContext, String fhirUri, IBaseResource bundle) {
         if (fhirUri != null && !fhirUri.equals("")) {
             try {
-                HttpClientUtils.post(fhirUri, bundle, encoding, fhirContext);
+                FhirServerClient.getDefault().post(fhirUri, bundle, encoding, fhirContext);
             } catch (IOException e) {
                 e.printStackTrace();
-                LogUtils.putException(bundle.getIdElement().getIdPart(), "Error posting to FHIR Server: " + fhirUri + ".  Bundle not posted.");
+                LogUtils.putException(bundle.getIdElement().getIdPart(), "Error posting to FHIR Server: " + fhirUri + ".  Bundle not posted. " + e.getMessage());
             }
         }
     }
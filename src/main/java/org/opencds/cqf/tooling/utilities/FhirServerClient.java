@@ -0,0 +1,307 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Client for posting resources to and reading from a FHIR server.
+ *
+ * A single client holds a pool of keep-alive connections, which bounds the number of concurrent requests, and is
+ * safe to share between threads. Requests failing with 429 (Too Many Requests) or 503 (Service Unavailable), or
+ * failing to connect, are retried with an exponential backoff (or after the delay the server asks for in
+ * Retry-After). Reads are also retried on any other 5xx status, posts are not: the server may have (partly)
+ * processed the transaction before failing. Responses are checked for
+ * OperationOutcome issues with error or fatal severity, including those of the entries of a transaction response.
+ * Response bodies are always accepted gzip-compressed; request bodies are only compressed when enabled, since not
+ * every server accepts them.
+ */
+public class FhirServerClient implements Closeable {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = Integer.getInteger("cqf.tooling.fhirClient.maxConnections", 8);
+    public static final int DEFAULT_MAX_RETRIES = Integer.getInteger("cqf.tooling.fhirClient.maxRetries", 4);
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = Long.getLong("cqf.tooling.fhirClient.initialBackoffMillis", 500L);
+    public static final boolean DEFAULT_GZIP_REQUESTS = Boolean.getBoolean("cqf.tooling.fhirClient.gzipRequests");
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = Integer.getInteger("cqf.tooling.fhirClient.socketTimeoutMillis", 5 * 60 * 1000);
+
+    private static final long MAX_BACKOFF_MILLIS = 60 * 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+
+    /**
+     * A request the server rejected, either with an error status or with an OperationOutcome reporting errors
+     */
+    public static class FhirServerException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+        private final List<String> issues;
+
+        public FhirServerException(String message, int statusCode, List<String> issues) {
+            super(issues.isEmpty() ? message : message + ": " + String.join("; ", issues));
+            this.statusCode = statusCode;
+            this.issues = issues;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return the diagnostics of the error and fatal OperationOutcome issues in the response, if any
+         */
+        public List<String> getIssues() {
+            return issues;
+        }
+    }
+
+    private static FhirServerClient defaultClient;
+
+    /**
+     * @return the client shared by the tooling, created with the default (system property) settings
+     */
+    public static synchronized FhirServerClient getDefault() {
+        if (defaultClient == null) {
+            defaultClient = new FhirServerClient();
+        }
+        return defaultClient;
+    }
+
+    private final CloseableHttpClient httpClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final boolean gzipRequests;
+
+    public FhirServerClient() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_GZIP_REQUESTS);
+    }
+
+    /**
+     * @param maxConnections the maximum number of concurrent requests (per server)
+     * @param maxRetries the number of times a failed request is retried
+     * @param initialBackoffMillis the delay before the first retry, doubled for each further retry
+     * @param gzipRequests whether request bodies are sent gzip-compressed
+     */
+    public FhirServerClient(int maxConnections, int maxRetries, long initialBackoffMillis, boolean gzipRequests) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1");
+        }
+        if (maxRetries < 0 || initialBackoffMillis < 0) {
+            throw new IllegalArgumentException("maxRetries and initialBackoffMillis can not be negative");
+        }
+
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.gzipRequests = gzipRequests;
+
+        connectionManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                .setConnectionRequestTimeout(0)
+                .setSocketTimeout(DEFAULT_SOCKET_TIMEOUT_MILLIS)
+                .build();
+
+        // The builder adds Accept-Encoding: gzip,deflate and decompresses responses
+        httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Posts the resource (typically a transaction bundle) to the server
+     * @return the response body
+     * @throws FhirServerException if the server rejects the resource
+     */
+    public String post(String fhirServerUrl, IBaseResource resource, Encoding encoding, FhirContext fhirContext) throws IOException {
+        return post(fhirServerUrl, IOUtils.encodeResourceAsString(resource, encoding, fhirContext), resource.getIdElement().getIdPart(), encoding, fhirContext);
+    }
+
+    /**
+     * Posts an already encoded resource to the server
+     * @param resourceId the id of the resource, for error messages
+     * @return the response body
+     * @throws FhirServerException if the server rejects the resource
+     */
+    public String post(String fhirServerUrl, String resourceString, String resourceId, Encoding encoding, FhirContext fhirContext) throws IOException {
+        ContentType contentType = ContentType.create("application/fhir+" + encoding.toString(), StandardCharsets.UTF_8);
+
+        HttpPost post = new HttpPost(fhirServerUrl);
+        post.addHeader(HttpHeaders.ACCEPT, contentType.getMimeType());
+        HttpEntity entity = new StringEntity(resourceString, contentType);
+        post.setEntity(gzipRequests ? new GzipCompressingEntity(entity) : entity);
+
+        String description = String.format("Error posting resource to FHIR server (%s). Resource was not posted : %s",
+                fhirServerUrl, resourceId);
+        return execute(post, fhirContext, description);
+    }
+
+    /**
+     * @return the response body
+     * @throws FhirServerException if the server responds with an error status
+     */
+    public String get(String url) throws IOException {
+        return get(url, null);
+    }
+
+    /**
+     * @param fhirContext used to check the response for OperationOutcome errors, or null to only check the status
+     * @return the response body
+     * @throws FhirServerException if the server responds with an error status or an OperationOutcome reporting errors
+     */
+    public String get(String url, FhirContext fhirContext) throws IOException {
+        HttpGet get = new HttpGet(url);
+        get.addHeader(HttpHeaders.ACCEPT, "application/fhir+json, application/json;q=0.9, */*;q=0.8");
+        return execute(get, fhirContext, String.format("Error reading from FHIR server (%s)", url));
+    }
+
+    private String execute(HttpRequestBase request, FhirContext fhirContext, String description) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            int statusCode;
+            String body;
+            long retryAfterMillis = -1;
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                statusCode = response.getStatusLine().getStatusCode();
+                // Always consume the body so the connection goes back to the pool
+                body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+                if (retryAfter != null) {
+                    retryAfterMillis = parseRetryAfter(retryAfter.getValue());
+                }
+            }
+            catch (ConnectException | ConnectTimeoutException e) {
+                // The request was never sent, so it is safe to retry whatever the method
+                if (attempt < maxRetries) {
+                    sleep(getBackoffMillis(attempt));
+                    continue;
+                }
+                throw e;
+            }
+
+            if (isRetryable(request, statusCode) && attempt < maxRetries) {
+                sleep(retryAfterMillis >= 0 ? Math.min(retryAfterMillis, MAX_BACKOFF_MILLIS) : getBackoffMillis(attempt));
+                continue;
+            }
+
+            List<String> issues = getErrorIssues(body, fhirContext);
+            if (statusCode >= 400 || !issues.isEmpty()) {
+                throw new FhirServerException(description + " (HTTP " + statusCode + ")", statusCode, issues);
+            }
+            return body;
+        }
+    }
+
+    private static boolean isRetryable(HttpRequestBase request, int statusCode) {
+        if (statusCode == 429 || statusCode == 503) {
+            return true;
+        }
+        // Other server errors may come after a post was (partly) applied, only retry reads
+        return statusCode >= 500 && !HttpPost.METHOD_NAME.equals(request.getMethod());
+    }
+
+    long getBackoffMillis(int attempt) {
+        long backoff = initialBackoffMillis << Math.min(attempt, 20);
+        return Math.min(backoff, MAX_BACKOFF_MILLIS);
+    }
+
+    private static long parseRetryAfter(String value) {
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            // HTTP dates are not worth supporting here, fall back to the backoff
+            return -1;
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry request", e);
+        }
+    }
+
+    /**
+     * Returns the diagnostics of the error and fatal issues of the OperationOutcome in the response body, or of the
+     * OperationOutcomes of the entries of a Bundle response
+     */
+    static List<String> getErrorIssues(String body, FhirContext fhirContext) {
+        List<String> issues = new ArrayList<>();
+        if (fhirContext == null || body == null || body.trim().isEmpty()) {
+            return issues;
+        }
+
+        IBaseResource resource;
+        try {
+            String trimmed = body.trim();
+            resource = trimmed.startsWith("<")
+                    ? fhirContext.newXmlParser().parseResource(trimmed)
+                    : fhirContext.newJsonParser().parseResource(trimmed);
+        } catch (Exception e) {
+            // Not a FHIR resource, the status code has to do
+            return issues;
+        }
+
+        String issuePath;
+        if (resource.fhirType().equals("OperationOutcome")) {
+            issuePath = "issue";
+        } else if (resource.fhirType().equals("Bundle")) {
+            issuePath = "entry.response.outcome.issue";
+        } else {
+            return issues;
+        }
+
+        for (IBase issue : fhirContext.newFhirPath().evaluate(resource,
+                issuePath + ".where(severity = 'error' or severity = 'fatal')", IBase.class)) {
+            String diagnostics = getString(fhirContext, issue, "diagnostics");
+            issues.add(diagnostics != null ? diagnostics : String.valueOf(getString(fhirContext, issue, "code")));
+        }
+        return issues;
+    }
+
+    private static String getString(FhirContext fhirContext, IBase element, String path) {
+        return fhirContext.newFhirPath().evaluateFirst(element, path, IBase.class)
+                .filter(value -> value instanceof IPrimitiveType<?>)
+                .map(value -> ((IPrimitiveType<?>) value).getValueAsString())
+                .orElse(null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+        connectionManager.close();
+    }
+}
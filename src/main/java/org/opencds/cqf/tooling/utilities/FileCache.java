@@ -0,0 +1,191 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+/**
+ * Bounded, thread-safe cache of values loaded from files.
+ *
+ * Entries are keyed by path and weighed by an estimate of the memory their (parsed) values hold: the size
+ * of the file they were loaded from times a factor for the kind of value cached. Each entry records
+ * the modification time and length of the file when it was loaded, and is reloaded if either has changed
+ * since, so a long-running process never serves content for a file that has been rewritten.
+ */
+public class FileCache<V> {
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        /**
+         * @return the value for the file, or null if nothing should be cached
+         */
+        V load() throws IOException;
+    }
+
+    private static class Stamp {
+        private final long lastModified;
+        private final long length;
+
+        private Stamp(File file) {
+            // Both are 0 if the file does not exist
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        private boolean matches(Stamp other) {
+            return lastModified == other.lastModified && length == other.length;
+        }
+    }
+
+    private static class CachedValue<V> {
+        private final V value;
+        private final Stamp stamp;
+
+        private CachedValue(V value, Stamp stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+
+        private int getWeight(int parsedSizeFactor) {
+            // Never weigh 0, so empty files still count towards the bound
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE, stamp.length * parsedSizeFactor));
+        }
+    }
+
+    private final String name;
+    private final Cache<String, CachedValue<V>> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleReloads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param name a name for the cache, used in the statistics summary
+     * @param maximumWeight the maximum estimated memory (in bytes) held by the cached values
+     * @param parsedSizeFactor the estimated memory held by a cached value per byte of the file it was loaded from
+     */
+    public FileCache(String name, long maximumWeight, int parsedSizeFactor) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("maximumWeight must be non-negative");
+        }
+        if (parsedSizeFactor < 1) {
+            throw new IllegalArgumentException("parsedSizeFactor must be at least 1");
+        }
+        this.name = name;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((String key, CachedValue<V> value) -> value.getWeight(parsedSizeFactor))
+                .removalListener((String key, CachedValue<V> value, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                // Notify on the calling thread, so the eviction count is current
+                .executor(Runnable::run)
+                .build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the cached value for the path if the file is unchanged since it was loaded, otherwise loads it.
+     *
+     * The loader runs outside of any cache lock, so concurrent callers may occasionally load the same
+     * file twice; the last value loaded wins.
+     */
+    public V get(String path, Loader<V> loader) throws IOException {
+        Stamp stamp = new Stamp(new File(path));
+        CachedValue<V> cached = cache.getIfPresent(path);
+        if (cached != null) {
+            if (cached.stamp.matches(stamp)) {
+                hits.increment();
+                return cached.value;
+            }
+            staleReloads.increment();
+            cache.invalidate(path);
+        }
+
+        misses.increment();
+        V value = loader.load();
+        if (value != null) {
+            cache.put(path, new CachedValue<>(value, stamp));
+        }
+        return value;
+    }
+
+    /**
+     * @return the cached value for the path if there is one and the file is unchanged, otherwise null
+     */
+    public V getIfPresent(String path) {
+        CachedValue<V> cached = cache.getIfPresent(path);
+        if (cached != null && cached.stamp.matches(new Stamp(new File(path)))) {
+            hits.increment();
+            return cached.value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the value for the path, stamped with the current state of the file
+     */
+    public void put(String path, V value) {
+        cache.put(path, new CachedValue<>(value, new Stamp(new File(path))));
+    }
+
+    /**
+     * Replaces the cached value for the path, if there is one (e.g. after the file has been rewritten)
+     */
+    public void replace(String path, V value) {
+        cache.asMap().computeIfPresent(path, (key, existing) -> new CachedValue<>(value, new Stamp(new File(path))));
+    }
+
+    public void invalidate(String path) {
+        cache.invalidate(path);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Performs any pending maintenance (such as evictions), which otherwise happens asynchronously
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getStaleReloadCount() {
+        return staleReloads.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public String getStatsSummary() {
+        long hitCount = getHitCount();
+        long requestCount = hitCount + getMissCount();
+        return String.format("%s cache: %d entries, %d hits, %d misses (%d stale), %d evictions, %.1f%% hit rate",
+                name, size(), hitCount, getMissCount(), getStaleReloadCount(), getEvictionCount(),
+                requestCount == 0 ? 0.0 : 100.0 * hitCount / requestCount);
+    }
+}
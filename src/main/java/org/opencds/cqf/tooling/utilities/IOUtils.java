@@ -27,10 +27,9 @@ import org.cqframework.cql.elm.tracking.TrackBack;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.utilities.Utilities;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
+import org.opencds.cqf.tooling.processor.CqlTranslationSession;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.context.RuntimeCompositeDatatypeDefinition;
-import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.parser.IParser;
 
 public class IOUtils 
@@ -215,8 +214,18 @@ public class IOUtils
         return readResource(path, fhirContext, false);
     }
     
+    /**
+     * Maximum estimated memory (in bytes) held by the resources kept parsed in memory, see RESOURCE_PARSED_SIZE_FACTOR
+     */
+    public static final long RESOURCE_CACHE_MAXIMUM_WEIGHT = Long.getLong("cqf.tooling.resourceCacheMaximumWeight", 512L * 1024 * 1024);
+
+    /**
+     * Estimated memory held by a parsed HAPI resource per byte of its JSON or XML source
+     */
+    public static final int RESOURCE_PARSED_SIZE_FACTOR = 8;
+
     //users should always check for null
-    private static Map<String, IBaseResource> cachedResources = new LinkedHashMap<String, IBaseResource>();
+    private static final FileCache<IBaseResource> cachedResources = new FileCache<>("Resource", RESOURCE_CACHE_MAXIMUM_WEIGHT, RESOURCE_PARSED_SIZE_FACTOR);
     public static IBaseResource readResource(String path, FhirContext fhirContext, Boolean safeRead) 
     {        
         Encoding encoding = getEncoding(path);
@@ -224,47 +233,49 @@ public class IOUtils
             return null;
         }
 
-        IBaseResource resource = cachedResources.get(path);     
-        if (resource != null) {
-            return resource;
-        } 
-
         try
         {
-            IParser parser = getParser(encoding, fhirContext);
-            File file = new File(path);
+            return cachedResources.get(path, () -> {
+                File file = new File(path);
 
-            if (file.exists() && file.isDirectory()) {
-                throw new IllegalArgumentException(String.format("Cannot read a resource from a directory: %s", path));
-            }
+                if (file.exists() && file.isDirectory()) {
+                    throw new IllegalArgumentException(String.format("Cannot read a resource from a directory: %s", path));
+                }
 
-            // if (!file.exists()) {
-            //     String[] paths = file.getParent().split("\\\\");
-            //     file = new File(Paths.get(file.getParent(), paths[paths.length - 1] + "-" + file.getName()).toString());
-            // }
+                if (safeRead) {
+                    if (!file.exists()) {
+                        return null;
+                    }
+                }
 
-            if (safeRead) {
-                if (!file.exists()) {
-                    return null;
+                // Parsers are not thread-safe, get a new one for each read
+                IParser parser = getParser(encoding, fhirContext);
+                try (FileReader reader = new FileReader(file)) {
+                    return parser.parseResource(reader);
                 }
-            }
-            try (FileReader reader = new FileReader(file)){
-                resource = parser.parseResource(reader);
-            }
-            cachedResources.put(path, resource);
+            });
         }
         catch (Exception e)
         {
             throw new RuntimeException(String.format("Error reading resource from path %s: %s", path, e.getMessage()), e);
         }
-        return resource;
+    }
+
+    public static FileCache<IBaseResource> getResourceCache() {
+        return cachedResources;
+    }
+
+    public static FileCache<CqlTranslator> getTranslatorCache() {
+        return cachedTranslator;
     }
 
     public static void updateCachedResource(IBaseResource updatedResource, String path){
-        if(null != cachedResources.get(path)){
-            cachedResources.put(path, updatedResource);
+        cachedResources.replace(path, updatedResource);
+        synchronized (IOUtils.class) {
+            if (resourceIndex != null) {
+                resourceIndex.updateResource(path, updatedResource);
+            }
         }
-
     }
 
     public static List<IBaseResource> readResources(List<String> paths, FhirContext fhirContext) 
@@ -424,7 +435,11 @@ public class IOUtils
     }
 
     public static List<String> getDependencyCqlPaths(String cqlContentPath, Boolean includeVersion) throws Exception {
-        ArrayList<File> DependencyFiles = getDependencyCqlFiles(cqlContentPath, includeVersion);
+        return getDependencyCqlPaths(cqlContentPath, includeVersion, null);
+    }
+
+    public static List<String> getDependencyCqlPaths(String cqlContentPath, Boolean includeVersion, CqlTranslationSession session) throws Exception {
+        ArrayList<File> DependencyFiles = getDependencyCqlFiles(cqlContentPath, includeVersion, session);
         ArrayList<String> DependencyPaths = new ArrayList<String>();
         for (File file : DependencyFiles) {
             DependencyPaths.add(file.getPath().toString());
@@ -433,12 +448,16 @@ public class IOUtils
     }
 
     public static ArrayList<File> getDependencyCqlFiles(String cqlContentPath, Boolean includeVersion) throws Exception {
+        return getDependencyCqlFiles(cqlContentPath, includeVersion, null);
+    }
+
+    public static ArrayList<File> getDependencyCqlFiles(String cqlContentPath, Boolean includeVersion, CqlTranslationSession session) throws Exception {
         File cqlContent = new File(cqlContentPath);
         File cqlContentDir = cqlContent.getParentFile();
         if (!cqlContentDir.isDirectory()) {
             throw new IllegalArgumentException("The specified path to library files is not a directory");
         }
-        ArrayList<String> dependencyLibraries = ResourceUtils.getIncludedLibraryNames(cqlContentPath, includeVersion);
+        ArrayList<String> dependencyLibraries = ResourceUtils.getIncludedLibraryNames(cqlContentPath, includeVersion, session);
         File[] allCqlContentFiles = cqlContentDir.listFiles();
         if (allCqlContentFiles.length == 1) {
             return new ArrayList<File>();
@@ -462,9 +481,20 @@ public class IOUtils
         return dependencyCqlFiles;
     } 
   
-    private static Map<String, CqlTranslator> cachedTranslator = new LinkedHashMap<String, CqlTranslator>();
+    /**
+     * Maximum estimated memory (in bytes) held by the CQL translators (and ELM) kept in memory,
+     * see TRANSLATOR_PARSED_SIZE_FACTOR
+     */
+    public static final long TRANSLATOR_CACHE_MAXIMUM_WEIGHT = Long.getLong("cqf.tooling.translatorCacheMaximumWeight", 256L * 1024 * 1024);
+
+    /**
+     * Estimated memory held by a CqlTranslator (parse tree, tokens, ELM and track backs) per byte of CQL source
+     */
+    public static final int TRANSLATOR_PARSED_SIZE_FACTOR = 64;
+
+    private static final FileCache<CqlTranslator> cachedTranslator = new FileCache<>("CqlTranslator", TRANSLATOR_CACHE_MAXIMUM_WEIGHT, TRANSLATOR_PARSED_SIZE_FACTOR);
     public static CqlTranslator translate(String cqlContentPath, ModelManager modelManager, LibraryManager libraryManager, CqlTranslatorOptions options) {
-        CqlTranslator translator = cachedTranslator.get(cqlContentPath);
+        CqlTranslator translator = cachedTranslator.getIfPresent(cqlContentPath);
         if (translator != null) {
             return translator;
         }
@@ -584,11 +614,11 @@ public class IOUtils
     }
 
     private static HashSet<String> cqlLibraryPaths = new LinkedHashSet<String>();
-    public static HashSet<String> getCqlLibraryPaths() {
+    public static synchronized HashSet<String> getCqlLibraryPaths() {
         if (cqlLibraryPaths.isEmpty()) {
             setupCqlLibraryPaths();
         }
-        return cqlLibraryPaths;
+        return new LinkedHashSet<String>(cqlLibraryPaths);
     }
     private static void setupCqlLibraryPaths() {  
         //need to add a error report for bad resource paths
@@ -625,44 +655,151 @@ public class IOUtils
         return cqlLibrarySourcePath;
     }
 
-    private static HashSet<String> terminologyPaths = new LinkedHashSet<String>();
-    public static HashSet<String> getTerminologyPaths(FhirContext fhirContext) {
-        if (terminologyPaths.isEmpty()) {
-            setupTerminologyPaths(fhirContext);
+    private static ResourceIndex resourceIndex;
+    private static long indexedModificationCount = -1;
+
+    /**
+     * Returns the index of the resources in the current resourceDirectories. Each file is read once; directories
+     * added since the last call are indexed incrementally, and the index is rebuilt if the FHIR version changes
+     * or resourceDirectories has been reset.
+     */
+    public static synchronized ResourceIndex getResourceIndex(FhirContext fhirContext) {
+        if (resourceIndex == null
+                || resourceIndex.getFhirContext().getVersion().getVersion() != fhirContext.getVersion().getVersion()
+                || !resourceDirectories.containsAll(resourceIndex.getIndexedDirectories())) {
+            resourceIndex = new ResourceIndex(fhirContext);
+            indexedModificationCount = -1;
+        }
+
+        resourceIndex.indexDirectories(resourceDirectories);
+        // Entries are added as directories are indexed, and replaced or dropped when their files change
+        long modificationCount = resourceIndex.getModificationCount();
+        if (modificationCount != indexedModificationCount) {
+            clearIndexedResources();
+            for (ResourceIndex.Entry entry : resourceIndex.getEntries()) {
+                addIndexedResource(entry);
+            }
+            indexedModificationCount = modificationCount;
         }
-        return terminologyPaths;
+
+        return resourceIndex;
     }
-    private static void setupTerminologyPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<String, IBaseResource>();
-        for(String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true))
-            {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    if (path.toLowerCase().contains("valuesets") || path.toLowerCase().contains("valueset")) {
-                        System.out.println("Error reading in Terminology from path: " + path + "\n" + e);
-                    }
+
+    private static void clearIndexedResources() {
+        terminologyPaths.clear();
+        libraryPaths.clear();
+        libraryUrlPathMap.clear();
+        libraryPathMap.clear();
+        measurePaths.clear();
+        measurePathMap.clear();
+        measureReportPaths.clear();
+        planDefinitionPaths.clear();
+        planDefinitionPathMap.clear();
+        activityDefinitionPaths.clear();
+        devicePaths = null;
+    }
+
+    private static void addIndexedResource(ResourceIndex.Entry entry) {
+        switch (entry.getResourceType()) {
+            // Same classification as the original terminology scan, which also collected CodeableConcept and
+            // Coding content alongside value sets
+            case "ValueSet":
+            case "CodeableConcept":
+            case "Coding":
+                terminologyPaths.add(entry.getPath());
+                break;
+            case "Library":
+                libraryPaths.add(entry.getPath());
+                libraryPathMap.put(entry.getId(), entry.getPath());
+                libraryUrlPathMap.put(entry.getUrl(), entry.getPath());
+                break;
+            case "Measure":
+                measurePaths.add(entry.getPath());
+                measurePathMap.put(entry.getId(), entry.getPath());
+                break;
+            case "MeasureReport":
+                measureReportPaths.add(entry.getPath());
+                break;
+            case "PlanDefinition":
+                planDefinitionPaths.add(entry.getPath());
+                planDefinitionPathMap.put(entry.getId(), entry.getPath());
+                break;
+            case "ActivityDefinition":
+                activityDefinitionPaths.add(entry.getPath());
+                break;
+            case "Device":
+                if (devicePaths != null) {
+                    devicePaths.add(entry.getPath());
                 }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition valuesetDefinition = ResourceUtils.getResourceDefinition(fhirContext, "ValueSet");
-            RuntimeCompositeDatatypeDefinition conceptDefinition = (RuntimeCompositeDatatypeDefinition)ResourceUtils.getElementDefinition(fhirContext, "CodeableConcept");
-            RuntimeCompositeDatatypeDefinition codingDefinition = (RuntimeCompositeDatatypeDefinition)ResourceUtils.getElementDefinition(fhirContext, "Coding");
-            String valuesetClassName = valuesetDefinition.getImplementingClass().getName();
-            String conceptClassName = conceptDefinition.getImplementingClass().getName();
-            String codingClassName = codingDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                .filter(entry -> entry.getValue() != null)
-                .filter(entry ->  
-                    valuesetClassName.equals(entry.getValue().getClass().getName())
-                    || conceptClassName.equals(entry.getValue().getClass().getName())
-                    || codingClassName.equals(entry.getValue().getClass().getName())
-                )
-                .forEach(entry -> terminologyPaths.add(entry.getKey()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Read-only view of a snapshot of keys to indexed paths, resolving each path to its resource (through the resource
+     * cache) when it is accessed, so the index never holds on to parsed resources itself
+     */
+    private static class IndexedResourceMap extends AbstractMap<String, IBaseResource> {
+        private final ResourceIndex index;
+        private final Map<String, String> paths;
+
+        private IndexedResourceMap(ResourceIndex index, Map<String, String> paths) {
+            this.index = index;
+            this.paths = paths;
+        }
+
+        @Override
+        public IBaseResource get(Object key) {
+            String path = paths.get(key);
+            return path != null ? index.getResource(path) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return paths.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return paths.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, IBaseResource>> entrySet() {
+            return new AbstractSet<Map.Entry<String, IBaseResource>>() {
+                @Override
+                public Iterator<Map.Entry<String, IBaseResource>> iterator() {
+                    Iterator<Map.Entry<String, String>> iterator = paths.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, IBaseResource>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, IBaseResource> next() {
+                            Map.Entry<String, String> entry = iterator.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), index.getResource(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return paths.size();
+                }
+            };
         }
     }
 
+    private static HashSet<String> terminologyPaths = new LinkedHashSet<String>();
+    public static synchronized HashSet<String> getTerminologyPaths(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return new LinkedHashSet<String>(terminologyPaths);
+    }
+
     public static IBaseResource getLibraryByUrl(FhirContext fhirContext, String url) {
         IBaseResource library = getLibraryUrlMap(fhirContext).get(url);
         if (library == null) {
@@ -672,214 +809,64 @@ public class IOUtils
     }
 
     private static HashSet<String> libraryPaths = new LinkedHashSet<String>();
-    public static HashSet<String> getLibraryPaths(FhirContext fhirContext) {
-        if (libraryPaths.isEmpty()) {
-            setupLibraryPaths(fhirContext);
-        }
-        return libraryPaths;
+    public static synchronized HashSet<String> getLibraryPaths(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return new LinkedHashSet<String>(libraryPaths);
     }
-    private static Map<String, IBaseResource> libraryUrlMap = new LinkedHashMap<String, IBaseResource>();
-    public static Map<String, IBaseResource> getLibraryUrlMap(FhirContext fhirContext) {
-        if (libraryPathMap.isEmpty()) {
-            setupLibraryPaths(fhirContext);
-        }
-        return libraryUrlMap;
+    private static Map<String, String> libraryUrlPathMap = new LinkedHashMap<String, String>();
+    public static synchronized Map<String, IBaseResource> getLibraryUrlMap(FhirContext fhirContext) {
+        return new IndexedResourceMap(getResourceIndex(fhirContext), new LinkedHashMap<>(libraryUrlPathMap));
     }
     private static Map<String, String> libraryPathMap = new LinkedHashMap<String, String>();
-    public static Map<String, String> getLibraryPathMap(FhirContext fhirContext) {
-        if (libraryPathMap.isEmpty()) {
-            setupLibraryPaths(fhirContext);
-        }
-        return libraryPathMap;
+    public static synchronized Map<String, String> getLibraryPathMap(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return Collections.unmodifiableMap(new LinkedHashMap<String, String>(libraryPathMap));
     }
-    private static Map<String, IBaseResource> libraries = new LinkedHashMap<String, IBaseResource>();
-    public static Map<String, IBaseResource> getLibraries(FhirContext fhirContext) {
-        if (libraries.isEmpty()) {
-            setupLibraryPaths(fhirContext);
-        }
-        return libraries;
-    }
-    private static void setupLibraryPaths(FhirContext fhirContext) {
-        Map<String, IBaseResource> resources = new LinkedHashMap<String, IBaseResource>();
-        for(String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true))
-            {
-                try {
-                    IBaseResource resource = IOUtils.readResource(path, fhirContext, true);
-                    resources.put(path, resource);
-                } catch (Exception e) {
-                    if(path.toLowerCase().contains("library")) {
-                        System.out.println("Error reading in Library from path: " + path + "\n" + e);
-                    }
-                }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition libraryDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Library");
-            String libraryClassName = libraryDefinition.getImplementingClass().getName();
-            // BaseRuntimeChildDefinition urlElement = libraryDefinition.getChildByNameOrThrowDataFormatException("url");
-            resources.entrySet().stream()
-                .filter(entry -> entry.getValue() != null)
-                .filter(entry ->  libraryClassName.equals(entry.getValue().getClass().getName()))
-                .forEach(entry -> {
-                    libraryPaths.add(entry.getKey());
-                    libraries.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                    libraryPathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                    libraryUrlMap.put(ResourceUtils.getUrl(entry.getValue(), fhirContext), entry.getValue());
-                });
-        }
+    public static synchronized Map<String, IBaseResource> getLibraries(FhirContext fhirContext) {
+        return new IndexedResourceMap(getResourceIndex(fhirContext), new LinkedHashMap<>(libraryPathMap));
     }
 
     private static HashSet<String> measurePaths = new LinkedHashSet<String>();
-    public static HashSet<String> getMeasurePaths(FhirContext fhirContext) {
-        if (measurePaths.isEmpty()) {
-            setupMeasurePaths(fhirContext);
-        }
-        return measurePaths;
+    public static synchronized HashSet<String> getMeasurePaths(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return new LinkedHashSet<String>(measurePaths);
     }
     private static Map<String, String> measurePathMap = new LinkedHashMap<String, String>();
-    public static Map<String, String> getMeasurePathMap(FhirContext fhirContext) {
-        if (measurePathMap.isEmpty()) {
-            setupMeasurePaths(fhirContext);
-        }
-        return measurePathMap;
+    public static synchronized Map<String, String> getMeasurePathMap(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return Collections.unmodifiableMap(new LinkedHashMap<String, String>(measurePathMap));
     }
-    private static Map<String, IBaseResource> measures = new LinkedHashMap<String, IBaseResource>();
-    public static Map<String, IBaseResource> getMeasures(FhirContext fhirContext) {
-        if (measures.isEmpty()) {
-            setupMeasurePaths(fhirContext);
-        }
-        return measures;
-    }
-    private static void setupMeasurePaths(FhirContext fhirContext) {
-        Map<String, IBaseResource> resources = new LinkedHashMap<String, IBaseResource>();
-        for(String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true))
-            {
-                try {
-                    IBaseResource resource = IOUtils.readResource(path, fhirContext, true);
-                    resources.put(path, resource);
-                } catch (Exception e) {
-                    if(path.toLowerCase().contains("measure")) {
-                        System.out.println("Error reading in Measure from path: " + path + "\n" + e);
-                    }
-                }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition measureDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Measure");
-            String measureClassName = measureDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                .filter(entry -> entry.getValue() != null)
-                .filter(entry ->  measureClassName.equals(entry.getValue().getClass().getName()))
-                .forEach(entry -> {
-                    measurePaths.add(entry.getKey());
-                    measures.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                    measurePathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                });
-        }
+    public static synchronized Map<String, IBaseResource> getMeasures(FhirContext fhirContext) {
+        return new IndexedResourceMap(getResourceIndex(fhirContext), new LinkedHashMap<>(measurePathMap));
     }
 
     private static HashSet<String> measureReportPaths = new LinkedHashSet<String>();
-    public static HashSet<String> getMeasureReportPaths(FhirContext fhirContext) {
-        if (measureReportPaths.isEmpty()) {
-            setupMeasureReportPaths(fhirContext);
-        }
-        return measureReportPaths;
-    }
-    private static void setupMeasureReportPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<String, IBaseResource>();
-        for(String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true))
-            {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    //TODO: handle exception
-                }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition measureReportDefinition = ResourceUtils.getResourceDefinition(fhirContext, "MeasureReport");
-            String measureReportClassName = measureReportDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                .filter(entry -> entry.getValue() != null)
-                .filter(entry ->  measureReportClassName.equals(entry.getValue().getClass().getName()))
-                .forEach(entry -> measureReportPaths.add(entry.getKey()));
-        }
+    public static synchronized HashSet<String> getMeasureReportPaths(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return new LinkedHashSet<String>(measureReportPaths);
     }
 
-	private static HashSet<String> planDefinitionPaths = new LinkedHashSet<String>();
-    public static HashSet<String> getPlanDefinitionPaths(FhirContext fhirContext) {
-        if (planDefinitionPaths.isEmpty()) {
-            setupPlanDefinitionPaths(fhirContext);
-        }
-        return planDefinitionPaths;
+    private static HashSet<String> planDefinitionPaths = new LinkedHashSet<String>();
+    public static synchronized HashSet<String> getPlanDefinitionPaths(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return new LinkedHashSet<String>(planDefinitionPaths);
     }
     private static Map<String, String> planDefinitionPathMap = new LinkedHashMap<String, String>();
-    public static Map<String, String> getPlanDefinitionPathMap(FhirContext fhirContext) {
-        if (planDefinitionPathMap.isEmpty()) {
-            setupPlanDefinitionPaths(fhirContext);
-        }
-        return planDefinitionPathMap;
-    }
-    private static Map<String, IBaseResource> planDefinitions = new LinkedHashMap<String, IBaseResource>();
-    public static Map<String, IBaseResource> getPlanDefinitions(FhirContext fhirContext) {
-        if (planDefinitions.isEmpty()) {
-            setupPlanDefinitionPaths(fhirContext);
-        }
-        return planDefinitions;
+    public static synchronized Map<String, String> getPlanDefinitionPathMap(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return Collections.unmodifiableMap(new LinkedHashMap<String, String>(planDefinitionPathMap));
     }
-    private static void setupPlanDefinitionPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<String, IBaseResource>();
-        for(String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true))
-            {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    System.out.println(String.format("Error setting PlanDefinition paths while reading resource at: '%s'. Error: %s", path, e.getMessage()));
-                }
-            }
-            RuntimeResourceDefinition planDefinitionDefinition = ResourceUtils.getResourceDefinition(fhirContext, "PlanDefinition");
-            String planDefinitionClassName = planDefinitionDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                .filter(entry -> entry.getValue() != null)
-                .filter(entry ->  planDefinitionClassName.equals(entry.getValue().getClass().getName()))
-                .forEach(entry -> {
-                    planDefinitionPaths.add(entry.getKey());
-                    planDefinitions.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                    planDefinitionPathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                });
-        }
+    public static synchronized Map<String, IBaseResource> getPlanDefinitions(FhirContext fhirContext) {
+        return new IndexedResourceMap(getResourceIndex(fhirContext), new LinkedHashMap<>(planDefinitionPathMap));
     }
 
+    // BUG: resourceDirectories is being populated with all "per-convention" directories during validation. So,
+    // if you have resources in the /tests directory for example, they will be picked up from there, rather than
+    // from your resources directories.
     private static HashSet<String> activityDefinitionPaths = new LinkedHashSet<String>();
-    public static HashSet<String> getActivityDefinitionPaths(FhirContext fhirContext) {
-        if (activityDefinitionPaths.isEmpty()) {
-            System.out.println("Reading activitydefinitions");
-            setupActivityDefinitionPaths(fhirContext);
-        }
-        return activityDefinitionPaths;
-    }
-    private static void setupActivityDefinitionPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<String, IBaseResource>();
-        // BUG: resourceDirectories is being populated with all "per-convention" directories during validation. So,
-        // if you have resources in the /tests directory for example, they will be picked up from there, rather than
-        // from your resources directories.
-        for(String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true))
-            {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    //TODO: handle exception
-                }
-            }
-            RuntimeResourceDefinition activityDefinitionDefinition = ResourceUtils.getResourceDefinition(fhirContext, "ActivityDefinition");
-            String activityDefinitionClassName = activityDefinitionDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                .filter(entry -> entry.getValue() != null)
-                .filter(entry ->  activityDefinitionClassName.equals(entry.getValue().getClass().getName()))
-                .forEach(entry -> activityDefinitionPaths.add(entry.getKey()));
-        }
+    public static synchronized HashSet<String> getActivityDefinitionPaths(FhirContext fhirContext) {
+        getResourceIndex(fhirContext);
+        return new LinkedHashSet<String>(activityDefinitionPaths);
     }
 
     public static void ensurePath(String path) throws IOException {
@@ -894,42 +881,22 @@ public class IOUtils
     }
 
     private static HashSet<String> devicePaths;
-    public static HashSet<String> getDevicePaths(FhirContext fhirContext) {
+    public static synchronized HashSet<String> getDevicePaths(FhirContext fhirContext) {
+        ResourceIndex index = getResourceIndex(fhirContext);
         if (devicePaths == null) {
-            setupDevicePaths(fhirContext);
+            devicePaths = new LinkedHashSet<String>();
+            for (ResourceIndex.Entry entry : index.getEntries("Device")) {
+                devicePaths.add(entry.getPath());
+            }
         }
-        return devicePaths;
+        return new LinkedHashSet<String>(devicePaths);
     }
 
     // TODO: This should not be necessary this is awful... For now it is needed for passing tests in Travis
-    public static void clearDevicePaths() {
+    public static synchronized void clearDevicePaths() {
         devicePaths = null;
     }
 
-    private static void setupDevicePaths(FhirContext fhirContext) {
-        devicePaths = new LinkedHashSet<String>();
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<String, IBaseResource>();
-        for(String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true))
-            {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    if(path.toLowerCase().contains("device")) {
-                        System.out.println("Error reading in Device from path: " + path + "\n" + e);
-                    }
-                }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition deviceDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Device");
-            String deviceClassName = deviceDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                .filter(entry -> entry.getValue() != null)
-                .filter(entry ->  deviceClassName.equals(entry.getValue().getClass().getName()))
-                .forEach(entry -> devicePaths.add(entry.getKey()));
-        }
-    }
-
     public static boolean isXMLOrJson(String fileDirPath, String libraryName){
         String fileExtension = libraryName.substring(libraryName.lastIndexOf(".") + 1);
         if(fileExtension.equalsIgnoreCase("xml") ||
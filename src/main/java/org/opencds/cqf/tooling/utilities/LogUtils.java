@@ -10,15 +10,17 @@ import org.apache.commons.io.FilenameUtils;
 public class LogUtils 
 {    
     private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(LogUtils.class);
-    private static final Map<String, String> resourceWarnings = new LinkedHashMap<String, String>();  
+    // Warnings are kept per thread so artifacts processed concurrently don't report each other's problems
+    private static final ThreadLocal<Map<String, String>> resourceWarnings = ThreadLocal.withInitial(LinkedHashMap::new);
     
     public static void putException(String id, Exception e) {
-        e.printStackTrace();
-        resourceWarnings.put(LocalDateTime.now().toString() + ": " + id,  e.getMessage() == null ? e.toString() : e.getMessage());
+        // Logged as a single event, so the traces of artifacts processed concurrently don't interleave
+        ourLog.warn("Exception processing " + id, e);
+        resourceWarnings.get().put(LocalDateTime.now().toString() + ": " + id,  e.getMessage() == null ? e.toString() : e.getMessage());
     }
 
     public static void putException(String id, String warning) {
-        resourceWarnings.put(LocalDateTime.now().toString() + ": " + id, warning);
+        resourceWarnings.get().put(LocalDateTime.now().toString() + ": " + id, warning);
     }
 
     public static void info(String message) {
@@ -40,19 +42,31 @@ public class LogUtils
     }
 
     public static void warn(String libraryName) {
-        if (resourceWarnings.isEmpty()) {
+        Map<String, String> warnings = takeWarnings();
+        if (warnings.isEmpty()) {
             return;
         }
         String exceptionMessage = "";
-        for (Map.Entry<String, String> resourceException : resourceWarnings.entrySet()) {
-            String resourceExceptionMessage = truncateMessage(resourceException.getValue()); 
-            String resource =  FilenameUtils.getBaseName(stripTimestamp(resourceException.getKey()));
-            exceptionMessage += "\r\n          Resource could not be processed: " + resource + "\r\n                    "  + resourceExceptionMessage;
+        for (Map.Entry<String, String> warning : warnings.entrySet()) {
+            exceptionMessage += "\r\n          Resource could not be processed: " + warning.getKey() + "\r\n                    "  + warning.getValue();
         }
         ourLog.warn(libraryName +" could not be processed: "  + exceptionMessage);
-        resourceWarnings.clear(); 
     } 
 
+    /**
+     * Returns the warnings recorded on the current thread since they were last taken (by resource), and clears them
+     */
+    public static Map<String, String> takeWarnings() {
+        Map<String, String> warnings = resourceWarnings.get();
+        Map<String, String> messages = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> resourceException : warnings.entrySet()) {
+            String resource =  FilenameUtils.getBaseName(stripTimestamp(resourceException.getKey()));
+            messages.merge(resource, truncateMessage(resourceException.getValue()), (a, b) -> a + "\r\n" + b);
+        }
+        warnings.clear();
+        return messages;
+    }
+
     private static String truncateMessage(String message) {   
         int maxSize = 500;     
         if (message == null) {
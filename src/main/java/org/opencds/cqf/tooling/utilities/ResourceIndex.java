@@ -0,0 +1,224 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Index of the resources found in a set of resource directories.
+ *
+ * Each file is read once (through IOUtils.readResource) and recorded with its resource type, id,
+ * canonical url, version and path, so lookups by type don't need to walk and parse the directories again.
+ * The index only keeps this metadata: resources are resolved through IOUtils.readResource, so the memory
+ * they hold stays bounded by the resource cache. An entry whose file has been modified since it was indexed
+ * is dropped and the file indexed again when its resource is next resolved.
+ */
+public class ResourceIndex {
+
+    public static class Entry {
+        private final String path;
+        private final String resourceType;
+        private final String id;
+        private final String url;
+        private final String version;
+        private final long lastModified;
+
+        public Entry(String path, IBaseResource resource, String url, String version, long lastModified) {
+            this.path = path;
+            this.resourceType = resource.fhirType();
+            this.id = resource.getIdElement().getIdPart();
+            this.url = url;
+            this.version = version;
+            this.lastModified = lastModified;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getResourceType() {
+            return resourceType;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return whether the file has been modified (or removed) since it was indexed
+         */
+        public boolean isStale() {
+            return new File(path).lastModified() != lastModified;
+        }
+    }
+
+    private final FhirContext fhirContext;
+    private final Set<String> indexedDirectories = new LinkedHashSet<>();
+    private final Map<String, Entry> entriesByPath = new LinkedHashMap<>();
+    private final Map<String, List<Entry>> entriesByType = new HashMap<>();
+    private long modificationCount;
+
+    public ResourceIndex(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+    }
+
+    public FhirContext getFhirContext() {
+        return fhirContext;
+    }
+
+    public synchronized Set<String> getIndexedDirectories() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(indexedDirectories));
+    }
+
+    /**
+     * @return a count that changes whenever entries are added, replaced or dropped
+     */
+    public synchronized long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Indexes any of the given directories that have not been indexed yet
+     * @return the entries added to the index, in directory/file order
+     */
+    public synchronized List<Entry> indexDirectories(List<String> directories) {
+        List<Entry> added = new ArrayList<>();
+        for (String dir : directories) {
+            if (!indexedDirectories.add(dir)) {
+                continue;
+            }
+
+            for (String path : IOUtils.getFilePaths(dir, true)) {
+                if (entriesByPath.containsKey(path)) {
+                    continue;
+                }
+
+                Entry entry = indexFile(path);
+                if (entry != null) {
+                    added.add(entry);
+                }
+            }
+        }
+        return added;
+    }
+
+    private Entry indexFile(String path) {
+        // Stamp before reading, so a concurrent rewrite makes the entry stale rather than silently current
+        long lastModified = new File(path).lastModified();
+        IBaseResource resource;
+        try {
+            resource = IOUtils.readResource(path, fhirContext, true);
+        } catch (Exception e) {
+            logReadError(path, e);
+            return null;
+        }
+
+        if (resource == null) {
+            return null;
+        }
+
+        Entry entry = new Entry(path, resource, getUrl(resource), IOUtils.getCanonicalResourceVersion(resource, fhirContext), lastModified);
+        putEntry(entry);
+        return entry;
+    }
+
+    private void putEntry(Entry entry) {
+        removeEntry(entry.getPath());
+        entriesByPath.put(entry.getPath(), entry);
+        entriesByType.computeIfAbsent(entry.getResourceType(), k -> new ArrayList<>()).add(entry);
+        modificationCount++;
+    }
+
+    private void removeEntry(String path) {
+        Entry existing = entriesByPath.remove(path);
+        if (existing != null) {
+            entriesByType.get(existing.getResourceType()).remove(existing);
+            modificationCount++;
+        }
+    }
+
+    private String getUrl(IBaseResource resource) {
+        try {
+            return ResourceUtils.getUrl(resource, fhirContext);
+        } catch (IllegalArgumentException e) {
+            // Not a canonical resource
+            return null;
+        }
+    }
+
+    private static void logReadError(String path, Exception e) {
+        // Only report files that look like they were meant to be one of the indexed artifacts, the resource
+        // directories routinely contain non-FHIR content (cql-options.json, etc.)
+        String lowerPath = path.toLowerCase();
+        if (lowerPath.contains("library") || lowerPath.contains("measure") || lowerPath.contains("valueset")
+                || lowerPath.contains("plandefinition") || lowerPath.contains("device")) {
+            System.out.println("Error reading in resource from path: " + path + "\n" + e);
+        }
+    }
+
+    public synchronized Entry getEntry(String path) {
+        return entriesByPath.get(path);
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entriesByPath.values());
+    }
+
+    public synchronized List<Entry> getEntries(String resourceType) {
+        List<Entry> entries = entriesByType.get(resourceType);
+        return entries != null ? new ArrayList<>(entries) : Collections.emptyList();
+    }
+
+    /**
+     * Resolves the resource indexed for the given path. If the file has changed since it was indexed, the stale
+     * entry is dropped and the file indexed again.
+     * @return the resource, or null if the path is not indexed or no longer holds a resource
+     */
+    public IBaseResource getResource(String path) {
+        synchronized (this) {
+            Entry entry = entriesByPath.get(path);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isStale()) {
+                removeEntry(path);
+                if (indexFile(path) == null) {
+                    return null;
+                }
+            }
+        }
+        return IOUtils.readResource(path, fhirContext, true);
+    }
+
+    /**
+     * Re-indexes the given path with the resource that has just been written to it (e.g. after a refresh)
+     */
+    public synchronized void updateResource(String path, IBaseResource resource) {
+        if (entriesByPath.containsKey(path)) {
+            putEntry(new Entry(path, resource, getUrl(resource), IOUtils.getCanonicalResourceVersion(resource, fhirContext),
+                    new File(path).lastModified()));
+        }
+    }
+}
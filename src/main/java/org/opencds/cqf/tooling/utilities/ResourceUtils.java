@@ -7,11 +7,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.FilenameUtils;
 import org.cqframework.cql.cql2elm.CqlTranslator;
@@ -30,6 +33,8 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.ICompositeType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r4.model.CanonicalType;
+import org.opencds.cqf.tooling.processor.CqlTranslationSession;
+import org.opencds.cqf.tooling.processor.ValueSetIndex;
 import org.opencds.cqf.tooling.processor.ValueSetsProcessor;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 import org.slf4j.Logger;
@@ -77,6 +82,21 @@ public class ResourceUtils
       return name.replaceAll("_", "-") + (versioned ? "-" + version.replaceAll("_", ".") : "");
     }
 
+    /**
+     * Resources read through IOUtils are shared by every caller (and every bundling thread), copy one before
+     * changing it
+     */
+    public static IBaseResource copyResource(IBaseResource resource)
+    {
+      if (resource instanceof org.hl7.fhir.dstu3.model.Resource) {
+        return ((org.hl7.fhir.dstu3.model.Resource) resource).copy();
+      }
+      if (resource instanceof org.hl7.fhir.r4.model.Resource) {
+        return ((org.hl7.fhir.r4.model.Resource) resource).copy();
+      }
+      throw new IllegalArgumentException("Unsupported resource type: " + resource.getClass().getName());
+    }
+
     public static void setIgId(String baseId, IBaseResource resource, Boolean includeVersion)
     {
       String version = includeVersion ? resource.getMeta().getVersionId() : "";
@@ -282,26 +302,81 @@ public class ResourceUtils
         }
     }
 
+    /*
+    The value sets a library (and, with includeDependencies, its dependencies) uses, with the stamps of the cql files
+    they were resolved from, so the result can be reused until one of those files changes
+     */
+    private static class ValueSetDependencies {
+      private final Map<String, IBaseResource> valueSets;
+      private final Map<String, List<Long>> fileStamps;
+
+      private ValueSetDependencies(Map<String, IBaseResource> valueSets, Map<String, List<Long>> fileStamps) {
+        this.valueSets = valueSets;
+        this.fileStamps = fileStamps;
+      }
+
+      private static List<Long> getStamp(String path) {
+        File file = new File(path);
+        return Arrays.asList(file.lastModified(), file.length());
+      }
+
+      private boolean isCurrent() {
+        for (Entry<String, List<Long>> fileStamp : fileStamps.entrySet()) {
+          if (!fileStamp.getValue().equals(getStamp(fileStamp.getKey()))) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+
+    // Libraries shared by many measures (e.g. FHIRHelpers) are resolved once, not once per including library
+    private static final Map<String, ValueSetDependencies> cachedValueSetDependencies = new ConcurrentHashMap<>();
+
     public static Map<String, IBaseResource> getDepValueSetResources(String cqlContentPath, String igPath, FhirContext fhirContext, boolean includeDependencies, Boolean includeVersion) throws Exception {
+      return getDepValueSetResources(cqlContentPath, igPath, fhirContext, includeDependencies, includeVersion, null);
+    }
+
+    /**
+     * @param session libraries already translated in this run, used rather than translating the CQL again (may be null)
+     */
+    public static Map<String, IBaseResource> getDepValueSetResources(String cqlContentPath, String igPath, FhirContext fhirContext, boolean includeDependencies, Boolean includeVersion,
+        CqlTranslationSession session) throws Exception {
+      return new HashMap<String, IBaseResource>(resolveDepValueSets(cqlContentPath, fhirContext, includeDependencies, includeVersion, session).valueSets);
+    }
+
+    private static ValueSetDependencies resolveDepValueSets(String cqlContentPath, FhirContext fhirContext, boolean includeDependencies, Boolean includeVersion,
+        CqlTranslationSession session) throws Exception {
+      String key = String.join("|", cqlContentPath, fhirContext.getVersion().getVersion().name(), String.valueOf(includeDependencies),
+          String.valueOf(includeVersion));
+      ValueSetDependencies cached = cachedValueSetDependencies.get(key);
+      if (cached != null && cached.isCurrent()) {
+        return cached;
+      }
+
       Map<String, IBaseResource> valueSetResources = new HashMap<String, IBaseResource>();
-        List<String> valueSetDefIDs = getDepELMValueSetDefIDs(cqlContentPath);
+      Map<String, List<Long>> fileStamps = new HashMap<>();
+      fileStamps.put(cqlContentPath, ValueSetDependencies.getStamp(cqlContentPath));
       HashSet<String> dependencies = new HashSet<>();
-        
-      for (String valueSetUrl : valueSetDefIDs) {
-          ValueSetsProcessor.getCachedValueSets(fhirContext).entrySet().stream()
-          .filter(entry -> entry.getKey().equals(valueSetUrl))
-          .forEach(entry -> valueSetResources.put(entry.getKey(), entry.getValue()));
+
+      ValueSetIndex valueSetIndex = ValueSetsProcessor.getCachedValueSetIndex(fhirContext);
+      for (ValueSetDef def : getValueSetDefs(cqlContentPath, session)) {
+        IBaseResource valueSet = valueSetIndex.get(def.getId(), def.getVersion());
+        if (valueSet != null) {
+          valueSetResources.putIfAbsent(def.getId(), valueSet);
+        }
+        dependencies.add(def.getId());
       }
-      dependencies.addAll(valueSetDefIDs);
 
       if (includeDependencies) {
-         List<String> dependencyCqlPaths = IOUtils.getDependencyCqlPaths(cqlContentPath, includeVersion);
+         List<String> dependencyCqlPaths = IOUtils.getDependencyCqlPaths(cqlContentPath, includeVersion, session);
          for (String path : dependencyCqlPaths) {
-            Map<String, IBaseResource> dependencyValueSets = getDepValueSetResources(path, igPath, fhirContext, includeDependencies, includeVersion);
-            dependencies.addAll(dependencyValueSets.keySet());
-            for (Entry<String, IBaseResource> entry : dependencyValueSets.entrySet()) {
+            ValueSetDependencies dependencyValueSets = resolveDepValueSets(path, fhirContext, includeDependencies, includeVersion, session);
+            dependencies.addAll(dependencyValueSets.valueSets.keySet());
+            for (Entry<String, IBaseResource> entry : dependencyValueSets.valueSets.entrySet()) {
               valueSetResources.putIfAbsent(entry.getKey(), entry.getValue());
             }
+            fileStamps.putAll(dependencyValueSets.fileStamps);
          }
       }
 
@@ -314,12 +389,19 @@ public class ResourceUtils
         System.out.println(message);
         throw new Exception(message);
       }
-      return valueSetResources;
+
+      ValueSetDependencies resolved = new ValueSetDependencies(Collections.unmodifiableMap(valueSetResources), fileStamps);
+      cachedValueSetDependencies.put(key, resolved);
+      return resolved;
     }   
 
     public static ArrayList<String> getIncludedLibraryNames(String cqlContentPath, Boolean includeVersion) {
+      return getIncludedLibraryNames(cqlContentPath, includeVersion, null);
+    }
+
+    public static ArrayList<String> getIncludedLibraryNames(String cqlContentPath, Boolean includeVersion, CqlTranslationSession session) {
       ArrayList<String> includedLibraryNames = new ArrayList<String>();
-      ArrayList<IncludeDef> includedDefs = getIncludedDefs(cqlContentPath);
+      ArrayList<IncludeDef> includedDefs = getIncludedDefs(cqlContentPath, session);
       for (IncludeDef def : includedDefs) {
         //TODO: replace true with versioned variable
         IOUtils.putInListIfAbsent(getId(def.getPath(), def.getVersion(), includeVersion), includedLibraryNames);
@@ -337,10 +419,14 @@ public class ResourceUtils
     }
 
     public static ArrayList<IncludeDef> getIncludedDefs(String cqlContentPath) {
+      return getIncludedDefs(cqlContentPath, null);
+    }
+
+    public static ArrayList<IncludeDef> getIncludedDefs(String cqlContentPath, CqlTranslationSession session) {
       ArrayList<IncludeDef> includedDefs = new ArrayList<IncludeDef>();
       org.hl7.elm.r1.Library elm;
       try {
-        elm = getElmFromCql(cqlContentPath);
+        elm = getElmFromCql(cqlContentPath, session);
       } catch (Exception e) {
         System.out.println("error processing cql: ");
         System.out.println(e.getMessage());
@@ -356,10 +442,14 @@ public class ResourceUtils
     }
 
     public static ArrayList<ValueSetDef> getValueSetDefs(String cqlContentPath) {
+      return getValueSetDefs(cqlContentPath, null);
+    }
+
+    public static ArrayList<ValueSetDef> getValueSetDefs(String cqlContentPath, CqlTranslationSession session) {
       ArrayList<ValueSetDef> valueSetDefs = new ArrayList<ValueSetDef>();
       org.hl7.elm.r1.Library elm;
       try {
-        elm = getElmFromCql(cqlContentPath);
+        elm = getElmFromCql(cqlContentPath, session);
       } catch (Exception e) {
         System.out.println("error translating cql: ");
         return valueSetDefs;
@@ -391,13 +481,39 @@ public class ResourceUtils
       return options;
   }
 
-    private static Map<String, org.hl7.elm.r1.Library> cachedElm = new HashMap<String, org.hl7.elm.r1.Library>();
+    /**
+     * Estimated memory held by a translated ELM library per byte of CQL source
+     */
+    private static final int ELM_PARSED_SIZE_FACTOR = 16;
+
+    private static final FileCache<org.hl7.elm.r1.Library> cachedElm = new FileCache<>("ELM", IOUtils.TRANSLATOR_CACHE_MAXIMUM_WEIGHT, ELM_PARSED_SIZE_FACTOR);
+
+    public static FileCache<org.hl7.elm.r1.Library> getElmCache() {
+      return cachedElm;
+    }
+
     public static org.hl7.elm.r1.Library getElmFromCql(String cqlContentPath) {
-      org.hl7.elm.r1.Library elm = cachedElm.get(cqlContentPath);
+      return getElmFromCql(cqlContentPath, null);
+    }
+
+    /**
+     * @param session the run-scoped translation session, so libraries already translated by the CqlProcessor
+     *                (and the includes they resolved) are not translated again (may be null)
+     */
+    public static org.hl7.elm.r1.Library getElmFromCql(String cqlContentPath, CqlTranslationSession session) {
+      org.hl7.elm.r1.Library elm = cachedElm.getIfPresent(cqlContentPath);
       if (elm != null) {
         return elm;
       }
 
+      if (session != null) {
+        elm = session.getElm(cqlContentPath);
+        if (elm != null) {
+          cachedElm.put(cqlContentPath, elm);
+          return elm;
+        }
+      }
+
       String folder = IOUtils.getParentDirectoryPath(cqlContentPath);
 
       CqlTranslatorOptions options = getTranslatorOptions(folder);
@@ -413,22 +529,19 @@ public class ResourceUtils
       libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
       libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
 
-      // loadNamespaces(libraryManager);
-
-      // foreach *.cql file
-      // for (File file : new File(folder).listFiles(getCqlFilenameFilter())) {
-      //     translateFile(modelManager, libraryManager, file, options);
-      // }
-
-  
-      // ModelManager modelManager = new ModelManager();
-      // GenericLibrarySourceProvider sourceProvider = new GenericLibrarySourceProvider(folder);
-      // LibraryManager libraryManager = new LibraryManager(modelManager);
-      // libraryManager.getLibrarySourceLoader().registerProvider(sourceProvider);
+      // Reuse the libraries already translated in this run rather than re-translating includes
+      String scope = CqlTranslationSession.getScope(folder);
+      if (session != null) {
+        session.seed(libraryManager, scope);
+      }
 
       CqlTranslator translator = IOUtils.translate(cqlContentPath, modelManager, libraryManager, options);      
       elm = translator.toELM(); 
       cachedElm.put(cqlContentPath, elm);
+      if (session != null) {
+        session.putFile(cqlContentPath, translator.getTranslatedLibrary());
+        session.harvest(libraryManager, scope);
+      }
       return elm; 
     }  
 
@@ -0,0 +1,52 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pools for work the tooling runs concurrently.
+ *
+ * Pool threads are named after the pool and are daemon threads, so a pool that is abandoned (e.g. because
+ * the work failed, or a task did not stop after timing out) does not keep the JVM alive.
+ */
+public class ThreadPools {
+
+    /**
+     * The default number of threads of a pool: the number of available processors
+     */
+    public static final int DEFAULT_MAX_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private ThreadPools() {
+    }
+
+    /**
+     * @return a factory of daemon threads named name-1, name-2, ...
+     */
+    public static ThreadFactory newDaemonThreadFactory(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return a pool of a fixed number of daemon threads
+     */
+    public static ExecutorService newDaemonPool(String name, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        return Executors.newFixedThreadPool(threads, newDaemonThreadFactory(name));
+    }
+
+    /**
+     * @return a pool of daemon threads that grows as needed
+     */
+    public static ExecutorService newCachedDaemonPool(String name) {
+        return Executors.newCachedThreadPool(newDaemonThreadFactory(name));
+    }
+}
@@ -0,0 +1,55 @@
+package org.opencds.cqf.tooling.acceleratorkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+public class ArtifactWriterTests {
+
+    @Test
+    public void TestWritesResourcesConcurrently() throws IOException {
+        File outputDirectory = Files.createTempDirectory("acceleratorkit").toFile();
+        Processor processor = new Processor();
+        for (int i = 0; i < 20; i++) {
+            ValueSet valueSet = new ValueSet();
+            valueSet.setId("anc-a-de" + i);
+            valueSet.setName("anc-a-de" + i);
+            processor.writeResource(outputDirectory.getPath(), valueSet);
+        }
+        String expected = new String(Files.readAllBytes(new File(outputDirectory, "valueset-anc-a-de7.json").toPath()), StandardCharsets.UTF_8);
+
+        File concurrentDirectory = Files.createTempDirectory("acceleratorkit").toFile();
+        try (ArtifactWriter writer = new ArtifactWriter(4)) {
+            for (int i = 0; i < 20; i++) {
+                ValueSet valueSet = new ValueSet();
+                valueSet.setId("anc-a-de" + i);
+                valueSet.setName("anc-a-de" + i);
+                writer.submit(() -> processor.writeResource(concurrentDirectory.getPath(), valueSet));
+            }
+            writer.awaitAll();
+        }
+
+        assertEquals(concurrentDirectory.list().length, 20);
+        assertEquals(new String(Files.readAllBytes(new File(concurrentDirectory, "valueset-anc-a-de7.json").toPath()), StandardCharsets.UTF_8), expected);
+    }
+
+    @Test
+    public void TestRethrowsFirstFailure() {
+        try (ArtifactWriter writer = new ArtifactWriter(2)) {
+            writer.submit(() -> { throw new IllegalArgumentException("Error writing resource: first"); });
+            writer.submit(() -> { throw new IllegalStateException("second"); });
+            writer.awaitAll();
+            fail("Expected the first failure to be rethrown");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("first"));
+        }
+    }
+}
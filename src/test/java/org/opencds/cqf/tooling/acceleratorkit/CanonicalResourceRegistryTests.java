@@ -0,0 +1,75 @@
+package org.opencds.cqf.tooling.acceleratorkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+public class CanonicalResourceRegistryTests {
+
+    private static ValueSet valueSet(String id) {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId(id);
+        valueSet.setUrl("http://fhir.org/guides/who/anc-cds/ValueSet/" + id);
+        return valueSet;
+    }
+
+    @Test
+    public void TestLookupByIdAndUrl() {
+        ValueSet first = valueSet("anc-a-de1");
+        ValueSet second = valueSet("anc-a-de2");
+        CanonicalResourceRegistry<ValueSet> registry = new CanonicalResourceRegistry<>();
+        assertTrue(registry.add(first));
+        assertTrue(registry.add(second));
+        assertFalse(registry.add(first));
+
+        assertEquals(registry.size(), 2);
+        assertTrue(registry.contains(second));
+        assertSame(registry.getById("anc-a-de2"), second);
+        assertSame(registry.getByUrl("http://fhir.org/guides/who/anc-cds/ValueSet/anc-a-de1"), first);
+        assertNull(registry.getById("anc-a-de3"));
+
+        List<ValueSet> inOrder = new ArrayList<>();
+        registry.forEach(inOrder::add);
+        assertEquals(inOrder, Arrays.asList(first, second));
+    }
+
+    @Test
+    public void TestLastResourceWithIdWins() {
+        ValueSet first = valueSet("anc-a-de1");
+        ValueSet second = valueSet("anc-a-de1");
+        CanonicalResourceRegistry<ValueSet> registry = new CanonicalResourceRegistry<>();
+        registry.add(first);
+        registry.add(second);
+
+        assertEquals(registry.size(), 2);
+        assertSame(registry.getById("anc-a-de1"), second);
+    }
+
+    @Test
+    public void TestLookupByUrlAndVersion() {
+        ValueSet unversioned = valueSet("anc-a-de1");
+        ValueSet v1 = valueSet("anc-a-de1");
+        v1.setVersion("1.0.0");
+        ValueSet v2 = valueSet("anc-a-de1");
+        v2.setVersion("2.0.0");
+        CanonicalResourceRegistry<ValueSet> registry = new CanonicalResourceRegistry<>();
+        registry.add(unversioned);
+        registry.add(v1);
+        registry.add(v2);
+
+        String url = "http://fhir.org/guides/who/anc-cds/ValueSet/anc-a-de1";
+        assertSame(registry.getByUrlAndVersion(url, "1.0.0"), v1);
+        assertSame(registry.getByUrlAndVersion(url, null), unversioned);
+        assertNull(registry.getByUrlAndVersion(url, "3.0.0"));
+        assertSame(registry.getByUrl(url), v2);
+    }
+}
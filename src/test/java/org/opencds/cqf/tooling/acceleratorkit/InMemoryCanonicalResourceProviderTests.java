@@ -0,0 +1,97 @@
+package org.opencds.cqf.tooling.acceleratorkit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Coding;
+import org.testng.annotations.Test;
+
+public class InMemoryCanonicalResourceProviderTests {
+
+    private static final String URL = "http://example.org/fhir/CodeSystem/anc-custom";
+
+    private static CodeSystem codeSystem(String version) {
+        CodeSystem codeSystem = new CodeSystem();
+        codeSystem.setUrl(URL);
+        codeSystem.setVersion(version);
+        return codeSystem;
+    }
+
+    private static <T> List<T> toList(Iterable<T> iterable) {
+        List<T> list = new ArrayList<>();
+        iterable.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    public void TestVersionOrdering() {
+        CanonicalVersionComparator comparator = CanonicalVersionComparator.INSTANCE;
+        assertTrue(comparator.compare("1.10.0", "1.9.0") > 0);
+        assertTrue(comparator.compare("1.0.0-ballot", "1.0.0") < 0);
+        assertTrue(comparator.compare("1.0.0-alpha", "1.0.0-alpha.1") < 0);
+        assertTrue(comparator.compare("1.0.0-alpha.2", "1.0.0-beta") < 0);
+        assertTrue(comparator.compare(null, "0.1") < 0);
+        assertEquals(comparator.compare("1.0", "1.0.0"), 0);
+        assertEquals(comparator.compare("1.0.0+build.1", "1.0.0"), 0);
+        assertTrue(comparator.compare("20210220", "20190315") > 0);
+    }
+
+    @Test
+    public void TestResolvesLatestAndExactVersions() {
+        CodeSystem v1 = codeSystem("1.0.0");
+        CodeSystem v10 = codeSystem("1.10.0");
+        CodeSystem v2Ballot = codeSystem("2.0.0-ballot");
+        CodeSystem v9 = codeSystem("1.9.0");
+        InMemoryCanonicalResourceProvider<CodeSystem> provider =
+                new InMemoryCanonicalResourceProvider<>(Arrays.asList(v1, v10, v2Ballot, v9));
+
+        assertSame(provider.getByCanonicalUrlWithVersion(URL), v2Ballot);
+        assertSame(provider.getByCanonicalUrlAndVersion(URL, null), v2Ballot);
+        assertSame(provider.getByCanonicalUrlWithVersion(URL + "|1.9.0"), v9);
+        assertSame(provider.getByCanonicalUrlAndVersion(URL, "1.0.0"), v1);
+        // An unknown version resolves to the latest version
+        assertSame(provider.getByCanonicalUrlAndVersion(URL, "3.0.0"), v2Ballot);
+        assertSame(provider.getByCanonicalUrlWithVersion(URL + "|3.0.0"), v2Ballot);
+        assertNull(provider.getByCanonicalUrlWithVersion("http://example.org/fhir/CodeSystem/missing"));
+
+        assertEquals(toList(provider.getByCanonicalUrl(URL)), Arrays.asList(v2Ballot, v10, v9, v1));
+        assertEquals(toList(provider.getByCanonicalUrl(URL + "|1.10.0")), Arrays.asList(v10));
+        assertTrue(toList(provider.getByCanonicalUrl(URL + "|3.0.0")).isEmpty());
+        assertEquals(toList(provider.get()), Arrays.asList(v1, v10, v2Ballot, v9));
+    }
+
+    @Test
+    public void TestFirstDuplicateWins() {
+        CodeSystem first = codeSystem("1.0.0");
+        CodeSystem duplicate = codeSystem("1.0.0");
+        CodeSystem unversioned = codeSystem(null);
+        InMemoryCanonicalResourceProvider<CodeSystem> provider =
+                new InMemoryCanonicalResourceProvider<>(Arrays.asList(unversioned, first, duplicate));
+
+        assertSame(provider.getByCanonicalUrlAndVersion(URL, "1.0.0"), first);
+        assertSame(provider.getByCanonicalUrlWithVersion(URL), first);
+        assertEquals(toList(provider.get()), Arrays.asList(unversioned, first));
+    }
+
+    @Test
+    public void TestResolvesCodingWithoutVersion() {
+        CodeSystem v1 = codeSystem("1.0.0");
+        CodeSystem v2 = codeSystem("2.0.0");
+        InMemoryCanonicalResourceProvider<CodeSystem> provider =
+                new InMemoryCanonicalResourceProvider<>(Arrays.asList(v1, v2));
+
+        // Codings (and value set includes) usually reference the code system by url alone
+        Coding coding = new Coding().setSystem(URL).setCode("ANC.A.DE1");
+        assertSame(provider.getByCanonicalUrlAndVersion(coding.getSystem(), coding.getVersion()), v2);
+
+        coding.setVersion("1.0.0");
+        assertSame(provider.getByCanonicalUrlAndVersion(coding.getSystem(), coding.getVersion()), v1);
+    }
+}
@@ -0,0 +1,95 @@
+package org.opencds.cqf.tooling.measure.adapters;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.MeasureReport;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class CqlEvaluatorMeasureTestAdapterTest {
+
+    private Map<String, Object> getProportionResults(Object initialPopulation, Object denominator, Object denominatorExclusion,
+            Object numerator) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("initial-population", initialPopulation);
+        results.put("denominator", denominator);
+        results.put("denominator-exclusion", denominatorExclusion);
+        results.put("numerator", numerator);
+        return results;
+    }
+
+    @Test
+    public void TestPatientBasedNumerator() {
+        Map<String, Integer> counts = CqlEvaluatorMeasureTestAdapter.getCounts(getProportionResults(true, true, false, true));
+        assertEquals(counts.get("initial-population"), Integer.valueOf(1));
+        assertEquals(counts.get("denominator"), Integer.valueOf(1));
+        assertEquals(counts.get("denominator-exclusion"), Integer.valueOf(0));
+        assertEquals(counts.get("numerator"), Integer.valueOf(1));
+        assertEquals(CqlEvaluatorMeasureTestAdapter.getScore("proportion", counts).compareTo(BigDecimal.ONE), 0);
+    }
+
+    @Test
+    public void TestPatientBasedDenominatorExclusion() {
+        Map<String, Integer> counts = CqlEvaluatorMeasureTestAdapter.getCounts(getProportionResults(true, true, true, true));
+        assertEquals(counts.get("denominator-exclusion"), Integer.valueOf(1));
+        assertEquals(counts.get("numerator"), Integer.valueOf(0));
+        assertNull(CqlEvaluatorMeasureTestAdapter.getScore("proportion", counts));
+    }
+
+    @Test
+    public void TestPatientBasedNotInInitialPopulation() {
+        Map<String, Integer> counts = CqlEvaluatorMeasureTestAdapter.getCounts(getProportionResults(false, true, null, true));
+        assertEquals(counts.get("initial-population"), Integer.valueOf(0));
+        assertEquals(counts.get("denominator"), Integer.valueOf(0));
+        assertEquals(counts.get("numerator"), Integer.valueOf(0));
+    }
+
+    @Test
+    public void TestEpisodeBasedCounts() {
+        Map<String, Integer> counts = CqlEvaluatorMeasureTestAdapter.getCounts(
+            getProportionResults(Arrays.asList("a", "b", "c", "d"), Arrays.asList("a", "b", "c", "d"), Arrays.asList("d"), Arrays.asList("a")));
+        assertEquals(counts.get("initial-population"), Integer.valueOf(4));
+        assertEquals(counts.get("denominator-exclusion"), Integer.valueOf(1));
+        assertEquals(counts.get("numerator"), Integer.valueOf(1));
+        assertEquals(CqlEvaluatorMeasureTestAdapter.getScore("proportion", counts).compareTo(new BigDecimal("0.3333333333333333")), 0);
+        assertNull(CqlEvaluatorMeasureTestAdapter.getScore("cohort", counts));
+    }
+
+    @Test
+    public void TestDeclaresUnsupportedReportContent() {
+        Bundle testBundle = new Bundle();
+        testBundle.addEntry().setResource(new MeasureReport());
+        CqlEvaluatorMeasureTestAdapter adapter = new CqlEvaluatorMeasureTestAdapter(FhirContext.forR4Cached(), testBundle, new Bundle());
+        assertTrue(adapter.getUnsupportedReportContent().contains(MeasureTestAdapter.ReportContent.STRATIFIERS));
+        assertTrue(adapter.getUnsupportedReportContent().contains(MeasureTestAdapter.ReportContent.EVALUATED_RESOURCES));
+        assertTrue(adapter.getUnsupportedReportContent().contains(MeasureTestAdapter.ReportContent.SUPPLEMENTAL_DATA));
+    }
+
+    @Test
+    public void TestPeriodDoesNotDependOnTheMachineTimeZone() {
+        assertEquals(CqlEvaluatorMeasureTestAdapter.toDateTime("2019-01-01", false).getDateTime(),
+            OffsetDateTime.of(2019, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+        assertEquals(CqlEvaluatorMeasureTestAdapter.toDateTime("2019-12-31", true).getDateTime(),
+            OffsetDateTime.of(2019, 12, 31, 23, 59, 59, 999000000, ZoneOffset.UTC));
+        assertEquals(CqlEvaluatorMeasureTestAdapter.toDateTime("2019", true).getDateTime(),
+            OffsetDateTime.of(2019, 12, 31, 23, 59, 59, 999000000, ZoneOffset.UTC));
+        assertEquals(CqlEvaluatorMeasureTestAdapter.toDateTime("2019-01-01T00:00:00-05:00", false).getDateTime(),
+            OffsetDateTime.of(2019, 1, 1, 0, 0, 0, 0, ZoneOffset.ofHours(-5)));
+
+        MeasureReport report = new MeasureReport();
+        report.getPeriod().getStartElement().setValueAsString("2019-01-01T00:00:00-05:00");
+        assertEquals(new R4MeasureReportAdapter(report).getPeriodStartAsString(), "2019-01-01T00:00:00-05:00");
+        assertNull(new R4MeasureReportAdapter(report).getPeriodEndAsString());
+    }
+}
@@ -9,11 +9,13 @@ import org.hl7.fhir.r4.model.Quantity;
 import org.testng.annotations.Test;
 import org.opencds.cqf.tooling.measure.adapters.Dstu3MeasureReportAdapter;
 import org.opencds.cqf.tooling.measure.adapters.IMeasureReportAdapter;
+import org.opencds.cqf.tooling.measure.adapters.MeasureTestAdapter;
 import org.opencds.cqf.tooling.measure.adapters.R4MeasureReportAdapter;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 import static org.testng.Assert.*;
 
@@ -354,4 +356,151 @@ public class MeasureReportComparerTest {
 
         assertTrue(resultContainsAllExpectedParameters, "Mismatched measureScore test");
     }
-}
\ No newline at end of file
+
+    private org.hl7.fhir.r4.model.MeasureReport GetR4MeasureReportWithPopulations(String id, int numeratorCount, int stratumNumeratorCount) {
+        org.hl7.fhir.r4.model.MeasureReport report = GetR4BasicMeasureReportWithId(id);
+        org.hl7.fhir.r4.model.MeasureReport.MeasureReportGroupComponent group1 = report.getGroupFirstRep();
+        group1.addPopulation().setCount(1).getCode().addCoding().setCode("denominator");
+        group1.addPopulation().setCount(numeratorCount).getCode().addCoding().setCode("numerator");
+
+        org.hl7.fhir.r4.model.MeasureReport.MeasureReportGroupStratifierComponent stratifier = group1.addStratifier();
+        stratifier.setId("stratifier-age");
+        org.hl7.fhir.r4.model.MeasureReport.StratifierGroupComponent stratum = stratifier.addStratum();
+        stratum.getValue().setText("65+");
+        stratum.addPopulation().setCount(stratumNumeratorCount).getCode().addCoding().setCode("numerator");
+
+        report.addEvaluatedResource().setReference("Patient/" + id);
+
+        return report;
+    }
+
+    @Test
+    public void TestR4ComparePopulationsAndStrata() {
+        Setup();
+
+        String testCaseId = "R4ComparerTestMeasureReport";
+        this.actualMeasureReportAdapter = new R4MeasureReportAdapter(GetR4MeasureReportWithPopulations(testCaseId, 1, 1));
+        this.expectedMeasureReportAdapter = new R4MeasureReportAdapter(GetR4MeasureReportWithPopulations(testCaseId, 1, 1));
+
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(this.actualMeasureReportAdapter, this.expectedMeasureReportAdapter, diff);
+
+        List<ParametersParameter> resultParameters = results.getParameter();
+        assertTrue(resultParameters.contains(getTestParameter("Group[group-1].population[numerator]", true)));
+        assertTrue(resultParameters.contains(getTestParameter("Group[group-1].stratifier[stratifier-age].stratum[65+].population[numerator]", true)));
+        assertTrue(resultParameters.contains(getTestParameter("EvaluatedResources", true)));
+        assertTrue(resultParameters.contains(getTestParameter("Measure '" + testCaseId + "' Test Passed", true)));
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void TestR4CompareMismatchedPopulationCount() {
+        Setup();
+
+        String testCaseId = "R4ComparerTestMeasureReport";
+        // The score matches, but the numerator count does not
+        this.actualMeasureReportAdapter = new R4MeasureReportAdapter(GetR4MeasureReportWithPopulations(testCaseId, 0, 0));
+        this.expectedMeasureReportAdapter = new R4MeasureReportAdapter(GetR4MeasureReportWithPopulations(testCaseId, 1, 1));
+
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(this.actualMeasureReportAdapter, this.expectedMeasureReportAdapter, diff);
+
+        List<ParametersParameter> resultParameters = results.getParameter();
+        assertTrue(resultParameters.contains(getTestParameter("Group[group-1].score", true)));
+        assertTrue(resultParameters.contains(getTestParameter("Group[group-1].population[denominator]", true)));
+        assertTrue(resultParameters.contains(getTestParameter("Group[group-1].population[numerator]", false)));
+        assertTrue(resultParameters.contains(getTestParameter("Measure '" + testCaseId + "' Test Passed", false)));
+
+        assertEquals(diff.getDifferences().size(), 2);
+        assertEquals(diff.getDifferences().get(0).getPath(), "Group[group-1].population[numerator].count");
+        assertEquals(diff.getDifferences().get(0).getExpected(), "1");
+        assertEquals(diff.getDifferences().get(0).getActual(), "0");
+        assertEquals(diff.getDifferences().get(1).getPath(), "Group[group-1].stratifier[stratifier-age].stratum[65+].population[numerator].count");
+    }
+
+    @Test
+    public void TestR4CompareMismatchedEvaluatedResources() {
+        Setup();
+
+        String testCaseId = "R4ComparerTestMeasureReport";
+        org.hl7.fhir.r4.model.MeasureReport actualReport = GetR4MeasureReportWithPopulations(testCaseId, 1, 1);
+        actualReport.addEvaluatedResource().setReference("Encounter/unexpected");
+        this.actualMeasureReportAdapter = new R4MeasureReportAdapter(actualReport);
+        this.expectedMeasureReportAdapter = new R4MeasureReportAdapter(GetR4MeasureReportWithPopulations(testCaseId, 1, 1));
+
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(this.actualMeasureReportAdapter, this.expectedMeasureReportAdapter, diff);
+
+        assertTrue(results.getParameter().contains(getTestParameter("EvaluatedResources", false)));
+        assertEquals(diff.getDifferences().size(), 1);
+        assertEquals(diff.getDifferences().get(0).getActual(), "Encounter/unexpected");
+        assertNull(diff.getDifferences().get(0).getExpected());
+    }
+
+    @Test
+    public void TestR4SkipsUnsupportedStratifiers() {
+        Setup();
+
+        String testCaseId = "R4ComparerTestMeasureReport";
+        // The evaluation reports no strata, the expected report is stratified
+        org.hl7.fhir.r4.model.MeasureReport actualReport = GetR4MeasureReportWithPopulations(testCaseId, 1, 1);
+        actualReport.getGroupFirstRep().getStratifier().clear();
+        this.actualMeasureReportAdapter = new R4MeasureReportAdapter(actualReport);
+        this.expectedMeasureReportAdapter = new R4MeasureReportAdapter(GetR4MeasureReportWithPopulations(testCaseId, 1, 1));
+
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(this.actualMeasureReportAdapter, this.expectedMeasureReportAdapter, diff);
+        assertTrue(results.getParameter().contains(getTestParameter("Group[group-1].stratifier[stratifier-age]", false)));
+        assertTrue(results.getParameter().contains(getTestParameter("Measure '" + testCaseId + "' Test Passed", false)));
+
+        diff = new MeasureReportDiff();
+        results = comparer.compare(this.actualMeasureReportAdapter, this.expectedMeasureReportAdapter, diff,
+            EnumSet.of(MeasureTestAdapter.ReportContent.STRATIFIERS));
+        assertTrue(results.getParameter().contains(getTestParameter("Group[group-1].population[numerator]", true)));
+        assertTrue(results.getParameter().contains(getTestParameter("Measure '" + testCaseId + "' Test Passed", true)));
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void TestR4CompareUnnamedGroups() {
+        Setup();
+
+        String testCaseId = "R4ComparerTestMeasureReport";
+        org.hl7.fhir.r4.model.MeasureReport actualReport = GetR4BasicMeasureReportWithId(testCaseId);
+        org.hl7.fhir.r4.model.MeasureReport expectedReport = GetR4BasicMeasureReportWithId(testCaseId);
+        for (org.hl7.fhir.r4.model.MeasureReport report : new org.hl7.fhir.r4.model.MeasureReport[] { actualReport, expectedReport }) {
+            report.getGroupFirstRep().setId(null);
+            report.addGroup().setMeasureScore(new Quantity(report == actualReport ? 0.0 : 2.0));
+        }
+        this.actualMeasureReportAdapter = new R4MeasureReportAdapter(actualReport);
+        this.expectedMeasureReportAdapter = new R4MeasureReportAdapter(expectedReport);
+
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(this.actualMeasureReportAdapter, this.expectedMeasureReportAdapter, diff);
+
+        // The groups are matched by position, so the second group is not compared to the first
+        assertTrue(results.getParameter().contains(getTestParameter("Group[0].score", true)));
+        assertTrue(results.getParameter().contains(getTestParameter("Group[1].score", false)));
+        assertEquals(diff.getDifferences().size(), 1);
+        assertEquals(diff.getDifferences().get(0).getPath(), "Group[1].score");
+    }
+
+    @Test
+    public void TestR4IgnoresContainedEvaluatedResources() {
+        Setup();
+
+        String testCaseId = "R4ComparerTestMeasureReport";
+        org.hl7.fhir.r4.model.MeasureReport actualReport = GetR4MeasureReportWithPopulations(testCaseId, 1, 1);
+        actualReport.getEvaluatedResource().clear();
+        actualReport.addEvaluatedResource().setReference("http://localhost/fhir/Patient/" + testCaseId + "/_history/2");
+        actualReport.addEvaluatedResource().setReference("#sde-1");
+        this.actualMeasureReportAdapter = new R4MeasureReportAdapter(actualReport);
+        this.expectedMeasureReportAdapter = new R4MeasureReportAdapter(GetR4MeasureReportWithPopulations(testCaseId, 1, 1));
+
+        MeasureReportDiff diff = new MeasureReportDiff();
+        Parameters results = comparer.compare(this.actualMeasureReportAdapter, this.expectedMeasureReportAdapter, diff);
+
+        assertTrue(results.getParameter().contains(getTestParameter("EvaluatedResources", true)));
+        assertTrue(diff.isEmpty());
+    }
+}
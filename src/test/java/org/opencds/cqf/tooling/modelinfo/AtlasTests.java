@@ -0,0 +1,51 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class AtlasTests {
+
+    private static void write(File directory, String name, Resource resource) throws IOException {
+        String content = FhirContext.forR4Cached().newJsonParser().encodeResourceToString(resource);
+        Files.write(new File(directory, name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void TestLoadsFilesConcurrently() throws IOException {
+        File inputPath = Files.createTempDirectory("atlas").toFile();
+        File definitions = new File(inputPath, "definitions");
+        assertEquals(definitions.mkdirs(), true);
+
+        for (int i = 0; i < 10; i++) {
+            StructureDefinition sd = new StructureDefinition();
+            sd.setUrl("http://hl7.org/fhir/us/core/StructureDefinition/us-core-profile-" + i);
+            write(definitions, "StructureDefinition-us-core-profile-" + i + ".json", sd);
+        }
+
+        Bundle bundle = new Bundle();
+        bundle.addEntry().setResource(new ValueSet().setUrl("http://hl7.org/fhir/us/core/ValueSet/us-core-race"));
+        bundle.addEntry().setResource(new StructureDefinition().setUrl("http://hl7.org/fhir/us/core/StructureDefinition/us-core-race"));
+        write(definitions, "Bundle-definitions.json", bundle);
+
+        Atlas atlas = new Atlas(4);
+        atlas.loadPaths(inputPath.getPath(), "definitions");
+
+        assertEquals(atlas.getStructureDefinitions().size(), 11);
+        assertNotNull(atlas.getStructureDefinitions().get("us-core-profile-7"));
+        assertNotNull(atlas.getValueSets().get("us-core-race"));
+        assertEquals(atlas.getResources().size(), 12);
+    }
+}
@@ -0,0 +1,78 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class LazyStructureDefinitionMapTests {
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static NpmPackage createPackage() throws IOException {
+        File root = Files.createTempDirectory("npm").toFile();
+        File folder = new File(root, "package");
+        assertTrue(folder.mkdirs());
+        write(new File(folder, "package.json"), "{ \"name\": \"example.fhir.core\", \"version\": \"1.0.0\", \"fhirVersions\": [\"4.0.1\"] }");
+
+        StringBuilder index = new StringBuilder("{ \"index-version\": 1, \"files\": [");
+        for (int i = 0; i < 3; i++) {
+            String url = "http://example.org/fhir/StructureDefinition/example-profile-" + i;
+            String fileName = "StructureDefinition-example-profile-" + i + ".json";
+            write(new File(folder, fileName), FhirContext.forR4Cached().newJsonParser().encodeResourceToString(
+                    new StructureDefinition().setUrl(url).setName("ExampleProfile" + i)));
+            index.append(i > 0 ? "," : "").append(String.format(
+                    "{ \"filename\": \"%s\", \"resourceType\": \"StructureDefinition\", \"id\": \"example-profile-%d\", \"url\": \"%s\" }",
+                    fileName, i, url));
+        }
+        write(new File(folder, ".index.json"), index.append("] }").toString());
+
+        return NpmPackage.fromFolder(root.getPath());
+    }
+
+    @Test
+    public void TestParsesDefinitionsOnFirstUse() throws IOException {
+        NpmPackage npmPackage = createPackage();
+        Atlas atlas = new Atlas();
+        atlas.loadPackages(Collections.singletonList(npmPackage));
+
+        assertEquals(atlas.getStructureDefinitions().size(), 3);
+        assertTrue(atlas.getStructureDefinitions().containsKey("example-profile-1"));
+        StructureDefinition sd = atlas.getStructureDefinitions().get("example-profile-1");
+        assertNotNull(sd);
+        assertEquals(sd.getName(), "ExampleProfile1");
+        assertNull(atlas.getStructureDefinitions().get("example-profile-3"));
+
+        int count = 0;
+        for (StructureDefinition s : atlas.getStructureDefinitions().values()) {
+            assertNotNull(s);
+            count++;
+        }
+        assertEquals(count, 3);
+    }
+
+    @Test
+    public void TestRegisteredDefinitionsDoNotReplaceExisting() throws IOException {
+        NpmPackage npmPackage = createPackage();
+        LazyStructureDefinitionMap map = new LazyStructureDefinitionMap();
+        StructureDefinition existing = new StructureDefinition().setName("Existing");
+        map.put("example-profile-0", existing);
+
+        assertEquals(map.register("example-profile-0", npmPackage, "StructureDefinition-example-profile-0.json"), false);
+        assertEquals(map.get("example-profile-0").getName(), "Existing");
+    }
+}
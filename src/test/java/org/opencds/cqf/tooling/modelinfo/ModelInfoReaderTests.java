@@ -0,0 +1,35 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+
+import org.hl7.elm_modelinfo.r1.ClassInfo;
+import org.hl7.elm_modelinfo.r1.ModelInfo;
+import org.testng.annotations.Test;
+
+public class ModelInfoReaderTests {
+
+    @Test
+    public void TestReadsMarshalledModelInfo() throws JAXBException {
+        ModelInfo mi = new ModelInfo().withName("Example").withVersion("1.0.0").withUrl("http://example.org/fhir");
+        mi.getTypeInfo().add(new ClassInfo().withNamespace("Example").withName("Patient"));
+
+        StringWriter sw = new StringWriter();
+        ModelInfoReader.getContext().createMarshaller().marshal(
+                new JAXBElement<ModelInfo>(new QName("urn:hl7-org:elm-modelinfo:r1", "modelInfo"), ModelInfo.class, null, mi), sw);
+
+        ModelInfo read = ModelInfoReader.read(new ByteArrayInputStream(sw.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(read.getName(), "Example");
+        assertEquals(read.getVersion(), "1.0.0");
+        assertEquals(((ClassInfo)read.getTypeInfo().get(0)).getName(), "Patient");
+        assertSame(ModelInfoReader.getContext(), ModelInfoReader.getContext());
+    }
+}
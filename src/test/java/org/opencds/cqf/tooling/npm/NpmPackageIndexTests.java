@@ -0,0 +1,113 @@
+package org.opencds.cqf.tooling.npm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.elm_modelinfo.r1.ModelInfo;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r5.model.Attachment;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class NpmPackageIndexTests {
+
+    private static final String CANONICAL = "http://example.org/fhir/Library/Example";
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static NpmPackage createPackage() throws IOException {
+        File root = Files.createTempDirectory("npm").toFile();
+        File folder = new File(root, "package");
+        assertTrue(folder.mkdirs());
+        write(new File(folder, "package.json"), "{ \"name\": \"example.fhir.content\", \"version\": \"1.0.0\", \"fhirVersions\": [\"4.0.1\"], \"canonical\": \"http://example.org/fhir\" }");
+
+        StringBuilder index = new StringBuilder("{ \"index-version\": 1, \"files\": [");
+        String[] versions = { "1.0.0", "2.0.0" };
+        for (int i = 0; i < versions.length; i++) {
+            String fileName = "Library-Example-" + versions[i] + ".json";
+            Library library = new Library().setUrl(CANONICAL).setVersion(versions[i]).setName("Example");
+            library.addContent().setContentType("text/cql").setData(("library Example version '" + versions[i] + "'").getBytes(StandardCharsets.UTF_8));
+            write(new File(folder, fileName), FhirContext.forR4Cached().newJsonParser().encodeResourceToString(library));
+            index.append(i > 0 ? "," : "").append(String.format(
+                    "{ \"filename\": \"%s\", \"resourceType\": \"Library\", \"id\": \"Example\", \"url\": \"%s\", \"version\": \"%s\" }",
+                    fileName, CANONICAL, versions[i]));
+        }
+        String fileName = "Library-Example-ModelInfo.json";
+        Library modelInfo = new Library().setUrl(CANONICAL + "-ModelInfo").setVersion("1.0.0").setName("Example-ModelInfo");
+        modelInfo.addContent().setContentType("application/xml").setData(
+                "<modelInfo xmlns=\"urn:hl7-org:elm-modelinfo:r1\" name=\"Example\" version=\"1.0.0\" url=\"http://example.org/fhir\"/>"
+                .getBytes(StandardCharsets.UTF_8));
+        write(new File(folder, fileName), FhirContext.forR4Cached().newJsonParser().encodeResourceToString(modelInfo));
+        index.append(String.format(
+                ",{ \"filename\": \"%s\", \"resourceType\": \"Library\", \"id\": \"Example-ModelInfo\", \"url\": \"%s\", \"version\": \"1.0.0\" }",
+                fileName, CANONICAL + "-ModelInfo"));
+        write(new File(folder, ".index.json"), index.append("] }").toString());
+
+        return NpmPackage.fromFolder(root.getPath());
+    }
+
+    @Test
+    public void TestLibraryLookupAndCache() throws IOException {
+        NpmPackage p = createPackage();
+        NpmPackageIndex index = new NpmPackageIndex(Collections.singletonList(p), new LibraryLoader("4.0.1"));
+
+        org.hl7.fhir.r5.model.Library latest = index.getLibrary(p, CANONICAL, "2.0.0");
+        assertNotNull(latest);
+        assertEquals(latest.getVersion(), "2.0.0");
+        assertSame(index.getLibrary(p, CANONICAL, "2.0.0"), latest);
+
+        // Without a version, the first library with the url is returned
+        assertEquals(index.getLibrary(p, CANONICAL, null).getVersion(), "1.0.0");
+
+        assertNull(index.getLibrary(p, CANONICAL, "3.0.0"));
+        assertNull(index.getLibrary(p, "http://example.org/fhir/Library/Missing", null));
+        assertNotNull(index.loadByCanonicalVersion(p, CANONICAL, "1.0.0"));
+    }
+
+    @Test
+    public void TestLibrarySourceProvider() throws IOException {
+        NpmPackage p = createPackage();
+        NpmPackageIndex index = new NpmPackageIndex(Collections.singletonList(p), new LibraryLoader("4.0.1"));
+        NpmLibrarySourceProvider provider = new NpmLibrarySourceProvider(Collections.singletonList(p), index, null);
+
+        VersionedIdentifier identifier = new VersionedIdentifier()
+                .withSystem("http://example.org/fhir").withId("Example").withVersion("2.0.0");
+        assertNotNull(provider.getLibrarySource(identifier));
+
+        org.hl7.fhir.r5.model.Library library = index.getLibrary(p, CANONICAL, "2.0.0");
+        Attachment content = library.getContentFirstRep();
+        assertEquals(new String(content.getData(), StandardCharsets.UTF_8), "library Example version '2.0.0'");
+    }
+
+    @Test
+    public void TestModelInfoIsSharedByProviders() throws IOException {
+        NpmPackage p = createPackage();
+        NpmPackageIndex index = new NpmPackageIndex(Collections.singletonList(p), new LibraryLoader("4.0.1"));
+        NpmModelInfoProvider first = new NpmModelInfoProvider(Collections.singletonList(p), index, null);
+        NpmModelInfoProvider second = new NpmModelInfoProvider(Collections.singletonList(p), index, null);
+
+        VersionedIdentifier identifier = new VersionedIdentifier().withId("Example").withVersion("1.0.0");
+        ModelInfo modelInfo = first.load(identifier);
+        assertNotNull(modelInfo);
+        assertEquals(modelInfo.getName(), "Example");
+        assertEquals(identifier.getSystem(), "http://example.org/fhir");
+
+        // The model info is unmarshalled once for every provider over the index
+        assertSame(second.load(new VersionedIdentifier().withId("Example").withVersion("1.0.0")), modelInfo);
+        assertSame(index.getModelInfo(p, CANONICAL + "-ModelInfo", "1.0.0"), modelInfo);
+    }
+}
@@ -0,0 +1,126 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.opencds.cqf.tooling.utilities.FhirServerClient;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class BulkBundlePosterTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private HttpServer server;
+    private String fhirUri;
+    private File directory;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile String failingBundleId;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bulk-bundle-poster").toFile();
+        requestCount.set(0);
+        failingBundleId = null;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fhir", this::handle);
+        server.start();
+        fhirUri = "http://127.0.0.1:" + server.getAddress().getPort() + "/fhir";
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        server.stop(0);
+        IOUtils.deleteDirectory(directory.getAbsolutePath());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = new String(org.apache.commons.io.IOUtils.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8);
+        requestCount.incrementAndGet();
+        boolean fail = failingBundleId != null && body.contains(failingBundleId);
+        byte[] response = (fail ? "{\"resourceType\":\"OperationOutcome\",\"issue\":[{\"severity\":\"error\",\"code\":\"processing\"}]}"
+                : "{\"resourceType\":\"Bundle\",\"type\":\"transaction-response\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(fail ? 400 : 200, response.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(response);
+        }
+    }
+
+    private static Map.Entry<String, IBaseResource> createBundle(String id, int entryCount) {
+        Bundle bundle = new Bundle();
+        bundle.setId(id);
+        bundle.setType(Bundle.BundleType.TRANSACTION);
+        for (int i = 0; i < entryCount; i++) {
+            Patient patient = new Patient();
+            patient.setId(id + "-patient-" + i);
+            bundle.addEntry().setResource(patient).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/" + patient.getId());
+        }
+        return new AbstractMap.SimpleEntry<>(id + ".json", bundle);
+    }
+
+    @Test
+    public void TestSplitsOversizedBundles() throws IOException {
+        List<Map.Entry<String, IBaseResource>> bundles = new ArrayList<>();
+        bundles.add(createBundle("large", 5));
+        bundles.add(createBundle("small", 1));
+
+        try (FhirServerClient client = new FhirServerClient(2, 0, 1, false)) {
+            BulkBundlePoster.Report report = new BulkBundlePoster(client, fhirUri, Encoding.JSON, fhirContext, 2, 2, null).post(bundles);
+            assertEquals(report.getPostedBundles(), 2);
+            assertEquals(report.getPostedParts(), 4);
+            assertEquals(report.getPostedEntries(), 6);
+        }
+        assertEquals(requestCount.get(), 4);
+    }
+
+    @Test
+    public void TestResumesFromJournal() throws IOException {
+        String journalPath = new File(directory, "journal.txt").getAbsolutePath();
+        List<Map.Entry<String, IBaseResource>> bundles = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            bundles.add(createBundle("bundle-" + i, 2));
+        }
+
+        failingBundleId = "bundle-3";
+        try (FhirServerClient client = new FhirServerClient(4, 0, 1, false)) {
+            BulkBundlePoster.Report report = new BulkBundlePoster(client, fhirUri, Encoding.JSON, fhirContext, 4, 0, journalPath).post(bundles);
+            assertEquals(report.getPostedBundles(), 5);
+            assertEquals(report.getFailures().size(), 1);
+            assertTrue(report.getFailures().containsKey("bundle-3.json"));
+        }
+
+        failingBundleId = null;
+        requestCount.set(0);
+        try (FhirServerClient client = new FhirServerClient(4, 0, 1, false)) {
+            BulkBundlePoster.Report report = new BulkBundlePoster(client, fhirUri, Encoding.JSON, fhirContext, 4, 0, journalPath).post(bundles);
+            assertEquals(report.getSkippedParts(), 5);
+            assertEquals(report.getSkippedBundles(), 5);
+            assertEquals(report.getPostedParts(), 1);
+            assertEquals(report.getPostedBundles(), 1);
+            assertTrue(report.getFailures().isEmpty());
+        }
+        assertEquals(requestCount.get(), 1);
+    }
+}
@@ -0,0 +1,51 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.opencds.cqf.tooling.utilities.LogUtils;
+import org.testng.annotations.Test;
+
+public class BundlingPipelineTests {
+
+    @Test
+    public void TestResultsAreInSubmissionOrder() {
+        BundlingPipeline pipeline = new BundlingPipeline(4);
+        for (int i = 0; i < 20; i++) {
+            int delay = 20 - i;
+            pipeline.submit("Measure", "measure-" + i, "measure-" + i + ".json", result -> Thread.sleep(delay));
+        }
+
+        List<ArtifactBundleResult> results = pipeline.await();
+        assertEquals(results.size(), 20);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(results.get(i).getName(), "measure-" + i);
+            assertEquals(results.get(i).getStatus(), ArtifactBundleResult.Status.BUNDLED);
+        }
+    }
+
+    @Test
+    public void TestFailuresAreIsolated() {
+        BundlingPipeline pipeline = new BundlingPipeline(2);
+        pipeline.submit("Measure", "a", "a.json", result -> { throw new IllegalArgumentException("Could not resolve library url"); });
+        pipeline.submit("Measure", "b", "b.json", result -> result.notBundled("ValueSet bundling failed."));
+        pipeline.submit("Measure", "c", "c.json", result -> LogUtils.putException("c", "Missing test case"));
+        pipeline.submit("PlanDefinition", "d", "d.json", result -> { });
+
+        List<ArtifactBundleResult> results = pipeline.await();
+        assertEquals(results.get(0).getStatus(), ArtifactBundleResult.Status.FAILED);
+        assertEquals(results.get(1).getStatus(), ArtifactBundleResult.Status.NOT_BUNDLED);
+        assertEquals(results.get(2).getStatus(), ArtifactBundleResult.Status.BUNDLED);
+        assertEquals(results.get(2).getMessages().size(), 1);
+        assertEquals(results.get(3).getStatus(), ArtifactBundleResult.Status.BUNDLED);
+
+        String summary = BundlingPipeline.getSummary("Measure", results);
+        assertTrue(summary.contains("1 Measures successfully bundled:"));
+        assertTrue(summary.contains("1 Measures refreshed, but not bundled (due to issues):"));
+        assertTrue(summary.contains("1 Measures failed refresh:"));
+        assertTrue(summary.contains("Could not resolve library url"));
+        assertTrue(!summary.contains("d.json"));
+    }
+}
@@ -0,0 +1,28 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class CqlProcessorTests {
+
+    @Test
+    public void TestIncludesInCommentsAndLiteralsAreIgnored() {
+        String source = "library Measure version '1.0.0'\n"
+            + "/* include Hidden version '9.9.9'\n"
+            + "include AlsoHidden */\n"
+            + "// include Commented\n"
+            + "include FHIRHelpers version '4.0.1'\n"
+            + "include \"Common Logic\" version '2.0.0' called Common\n"
+            + "define Text: 'not code\n"
+            + "include FromString'\n";
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("FHIRHelpers", "4.0.1");
+        expected.put("Common Logic", "2.0.0");
+        assertEquals(CqlProcessor.getIncludedLibraries(source), expected);
+    }
+}
@@ -0,0 +1,87 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.r5.model.RelatedArtifact;
+import org.hl7.fhir.utilities.validation.ValidationMessage;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CqlTranslationCacheTests {
+
+    private File cacheDirectory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        cacheDirectory = Files.createTempDirectory("cql-translation-cache").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.deleteDirectory(cacheDirectory.getAbsolutePath());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void TestKeyDependsOnAllInputs() {
+        String key = CqlTranslationCache.computeKey(bytes("library Test"), Arrays.asList("a", "b"), "default");
+        assertEquals(key, CqlTranslationCache.computeKey(bytes("library Test"), Arrays.asList("b", "a"), "default"));
+        assertNotEquals(key, CqlTranslationCache.computeKey(bytes("library Test2"), Arrays.asList("a", "b"), "default"));
+        assertNotEquals(key, CqlTranslationCache.computeKey(bytes("library Test"), Arrays.asList("a", "c"), "default"));
+        assertNotEquals(key, CqlTranslationCache.computeKey(bytes("library Test"), Arrays.asList("a", "b"), "{}"));
+    }
+
+    @Test
+    public void TestRoundTrip() throws IOException {
+        CqlTranslationCache cache = new CqlTranslationCache(cacheDirectory.getAbsolutePath());
+        String key = CqlTranslationCache.computeKey(bytes("library Test"), Collections.emptyList(), "default");
+        assertNull(cache.get(key));
+
+        CqlProcessor.CqlSourceFileInformation info = new CqlProcessor.CqlSourceFileInformation();
+        info.setIdentifier(new VersionedIdentifier().withId("Test").withVersion("1.0.0").withSystem("http://example.org"));
+        info.setElm(bytes("<library/>"));
+        info.getErrors().add(new ValidationMessage(ValidationMessage.Source.Publisher, ValidationMessage.IssueType.INFORMATIONAL,
+                1, 2, "Test", "a warning", ValidationMessage.IssueSeverity.WARNING));
+        info.getRelatedArtifacts().add(new RelatedArtifact().setType(RelatedArtifact.RelatedArtifactType.DEPENDSON)
+                .setResource("http://example.org/Library/Common"));
+        cache.put(key, info);
+
+        CqlProcessor.CqlSourceFileInformation cached = cache.get(key);
+        assertNotNull(cached);
+        assertEquals(cached.getIdentifier().getId(), "Test");
+        assertEquals(cached.getIdentifier().getVersion(), "1.0.0");
+        assertEquals(new String(cached.getElm(), StandardCharsets.UTF_8), "<library/>");
+        assertNull(cached.getJsonElm());
+        assertEquals(cached.getErrors().size(), 1);
+        assertEquals(cached.getErrors().get(0).getLevel(), ValidationMessage.IssueSeverity.WARNING);
+        assertEquals(cached.getRelatedArtifacts().size(), 1);
+        assertEquals(cached.getRelatedArtifacts().get(0).getResource(), "http://example.org/Library/Common");
+    }
+
+    @Test
+    public void TestCorruptEntryIsAMiss() throws IOException {
+        CqlTranslationCache cache = new CqlTranslationCache(cacheDirectory.getAbsolutePath());
+        String key = CqlTranslationCache.computeKey(bytes("library Test"), Collections.emptyList(), "default");
+        File entry = new File(new File(cacheDirectory, key.substring(0, 2)), key + ".json");
+        entry.getParentFile().mkdirs();
+        Files.write(entry.toPath(), bytes("not json"));
+
+        assertNull(cache.get(key));
+    }
+}
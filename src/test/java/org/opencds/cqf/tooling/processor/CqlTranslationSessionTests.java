@@ -0,0 +1,95 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.cql2elm.model.TranslatedLibrary;
+import org.hl7.elm.r1.Library;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.testng.annotations.Test;
+
+public class CqlTranslationSessionTests {
+
+    private static TranslatedLibrary library(String id, String version) {
+        VersionedIdentifier identifier = new VersionedIdentifier().withId(id).withVersion(version);
+        TranslatedLibrary translatedLibrary = new TranslatedLibrary();
+        translatedLibrary.setIdentifier(identifier);
+        translatedLibrary.setLibrary(new Library().withIdentifier(identifier));
+        return translatedLibrary;
+    }
+
+    private static String path(String folder, String file) {
+        return new File(folder, file).getPath();
+    }
+
+    @Test
+    public void TestLibrariesAreSeededOnlyIntoTheirOwnFolder() {
+        CqlTranslationSession session = new CqlTranslationSession();
+        TranslatedLibrary common1 = library("Common", "1.0.0");
+        TranslatedLibrary common2 = library("Common", "2.0.0");
+        session.putFile(path("first", "Common.cql"), common1);
+        session.putFile(path("second", "Common.cql"), common2);
+
+        String first = CqlTranslationSession.getScope("first");
+        String second = CqlTranslationSession.getScope("second");
+        assertSame(session.getTranslatedLibrary(first, common1.getIdentifier()), common1);
+        assertFalse(session.hasTranslatedLibrary(first, common2.getIdentifier()));
+        assertSame(session.getTranslatedLibrary(second, common2.getIdentifier()), common2);
+        assertSame(session.getFile(path("second", "Common.cql")), common2);
+        assertEquals(session.size(), 2);
+
+        LibraryManager libraryManager = new LibraryManager(new ModelManager());
+        session.seed(libraryManager, second);
+        assertSame(libraryManager.getTranslatedLibraries().get(CqlTranslationSession.getLibraryPath(common2.getIdentifier())), common2);
+    }
+
+    @Test
+    public void TestAmbiguousVersionsAreNotSeeded() {
+        CqlTranslationSession session = new CqlTranslationSession();
+        LibraryManager harvested = new LibraryManager(new ModelManager());
+        harvested.getTranslatedLibraries().put("Common", library("Common", "1.0.0"));
+        String scope = CqlTranslationSession.getScope("folder");
+        session.harvest(harvested, scope);
+        session.putFile(path("folder", "Common.cql"), library("Common", "2.0.0"));
+        session.putFile(path("folder", "Helpers.cql"), library("Helpers", "1.0.0"));
+
+        assertTrue(session.hasTranslatedLibrary(scope, new VersionedIdentifier().withId("Common").withVersion("1.0.0")));
+        assertTrue(session.hasTranslatedLibrary(scope, new VersionedIdentifier().withId("Common").withVersion("2.0.0")));
+
+        LibraryManager libraryManager = new LibraryManager(new ModelManager());
+        session.seed(libraryManager, scope);
+        assertNull(libraryManager.getTranslatedLibraries().get("Common"));
+        assertEquals(libraryManager.getTranslatedLibraries().get("Helpers").getIdentifier().getVersion(), "1.0.0");
+    }
+
+    @Test
+    public void TestDeferredFilesAreTranslatedOnceWhenNeeded() {
+        CqlTranslationSession session = new CqlTranslationSession();
+        TranslatedLibrary common = library("Common", "1.0.0");
+        String file = path("folder", "Common.cql");
+        AtomicInteger translations = new AtomicInteger();
+        session.defer(file, common.getIdentifier(), () -> {
+            translations.incrementAndGet();
+            session.putFile(file, common);
+            return common;
+        });
+
+        String scope = CqlTranslationSession.getScope("folder");
+        assertFalse(session.hasTranslatedLibrary(scope, common.getIdentifier()));
+        assertEquals(translations.get(), 0);
+
+        session.resolve(scope, new VersionedIdentifier().withId("Common"));
+        assertTrue(session.hasTranslatedLibrary(scope, common.getIdentifier()));
+        assertSame(session.getFile(file), common);
+        assertSame(session.getElm(file), common.getLibrary());
+        assertEquals(translations.get(), 1);
+    }
+}
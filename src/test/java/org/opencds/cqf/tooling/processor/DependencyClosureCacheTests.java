@@ -0,0 +1,40 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class DependencyClosureCacheTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    @Test
+    public void TestSharedLibraryIsResolvedOnce() {
+        DependencyClosureCache cache = new DependencyClosureCache();
+        DependencyClosure first = cache.get("library-Common.json", "Common.cql", "ig", fhirContext, Encoding.JSON, false, false, false);
+        DependencyClosure second = cache.get("library-Common.json", "Common.cql", "ig", fhirContext, Encoding.JSON, false, false, false);
+
+        assertSame(first, second);
+        assertEquals(cache.size(), 1);
+        assertTrue(first.getValueSets().isEmpty());
+        assertTrue(first.addLibraries(new HashMap<>()));
+    }
+
+    @Test
+    public void TestOptionsAreKeyedSeparately() {
+        DependencyClosureCache cache = new DependencyClosureCache();
+        DependencyClosure unversioned = cache.get("library-Common.json", "Common.cql", "ig", fhirContext, Encoding.JSON, false, false, false);
+        DependencyClosure versioned = cache.get("library-Common.json", "Common.cql", "ig", fhirContext, Encoding.JSON, false, false, true);
+
+        assertNotSame(unversioned, versioned);
+        assertEquals(cache.size(), 2);
+    }
+}
@@ -0,0 +1,77 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.opencds.cqf.tooling.processor.IGTestProcessor.TestCaseResultSummary;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.Test;
+
+public class IGTestRunnerTests {
+
+    @Test
+    public void TestOutcomesAreIsolated() {
+        IGTestRunner runner = new IGTestRunner(4, 1);
+        runner.submit("Measure", "EXM104", "passing", () -> true);
+        runner.submit("Measure", "EXM104", "failing", () -> false);
+        runner.submit("Measure", "EXM104", "error", () -> { throw new IllegalArgumentException("Measure EXM104 is not in the content bundle"); });
+        runner.submit("Measure", "EXM105", "hanging", () -> { Thread.sleep(60000); return true; });
+
+        List<TestCaseResultSummary> results = runner.await();
+        assertTrue(results.get(0).getTestPassed());
+        assertFalse(results.get(1).getTestPassed());
+        assertFalse(results.get(2).getTestPassed());
+        assertEquals(results.get(2).getMessage(), "Measure EXM104 is not in the content bundle");
+        assertFalse(results.get(3).getTestPassed());
+        assertTrue(results.get(3).getTimedOut());
+        assertTrue(runner.getElapsedMillis() < 60000);
+    }
+
+    @Test
+    public void TestRunsConcurrently() {
+        IGTestRunner runner = new IGTestRunner(8, 0);
+        for (int i = 0; i < 8; i++) {
+            runner.submit("Measure", "EXM104", "test-" + i, () -> { Thread.sleep(500); return true; });
+        }
+
+        List<TestCaseResultSummary> results = runner.await();
+        assertEquals(results.size(), 8);
+        assertTrue(results.stream().allMatch(TestCaseResultSummary::getTestPassed));
+        assertTrue(runner.getElapsedMillis() < 8 * 500);
+    }
+
+    @Test
+    public void TestWritesResults() throws IOException {
+        IGTestRunner runner = new IGTestRunner(2, 0);
+        runner.submit("Measure", "EXM104", "passing", () -> true);
+        runner.submit("Measure", "EXM104", "failing", () -> false);
+        runner.submit("Measure", "EXM105", "error", () -> { throw new IllegalStateException("Unexpected <result>"); });
+        List<TestCaseResultSummary> results = runner.await();
+
+        File directory = Files.createTempDirectory("ig-test-runner").toFile();
+        try {
+            File junitFile = new File(directory, "test-results.xml");
+            IGTestRunner.writeJUnitXml(results, junitFile);
+            String junit = new String(Files.readAllBytes(junitFile.toPath()), StandardCharsets.UTF_8);
+            assertTrue(junit.contains("<testsuite name=\"Measure.EXM104\" tests=\"2\" failures=\"1\" errors=\"0\""));
+            assertTrue(junit.contains("<testsuite name=\"Measure.EXM105\" tests=\"1\" failures=\"0\" errors=\"1\""));
+            assertTrue(junit.contains("message=\"Unexpected &lt;result"));
+
+            File jsonFile = new File(directory, "test-results.json");
+            IGTestRunner.writeJson(results, runner.getElapsedMillis(), jsonFile);
+            String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+            assertTrue(json.contains("\"total\": 3"));
+            assertTrue(json.contains("\"passed\": 1"));
+            assertTrue(json.contains("\"testCaseID\": \"failing\""));
+        } finally {
+            IOUtils.deleteDirectory(directory.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RefreshManifestTests {
+
+    private File directory;
+    private String manifestPath;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("refresh-manifest").toFile();
+        manifestPath = new File(directory, "refresh-manifest.json").getAbsolutePath();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.deleteDirectory(directory.getAbsolutePath());
+    }
+
+    private String write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file.getAbsolutePath();
+    }
+
+    @Test
+    public void TestUnchangedInputsAreUpToDate() throws IOException {
+        List<String> paths = Arrays.asList(write("Test.cql", "library Test"), write("library-Test.json", "{}"));
+
+        RefreshManifest manifest = new RefreshManifest(manifestPath, "default");
+        assertFalse(manifest.isUpToDate("Library/Test", paths));
+        manifest.record("Library/Test", paths);
+        manifest.save();
+
+        manifest = new RefreshManifest(manifestPath, "default");
+        assertTrue(manifest.isUpToDate("Library/Test", paths));
+        assertFalse(manifest.isUpToDate("Library/Test", Collections.singletonList(paths.get(0))));
+    }
+
+    @Test
+    public void TestChangedInputIsNotUpToDate() throws IOException {
+        List<String> paths = Arrays.asList(write("Test.cql", "library Test"), write("tests/case-1/patient.json", "{}"));
+
+        RefreshManifest manifest = new RefreshManifest(manifestPath, "default");
+        manifest.record("Library/Test", Arrays.asList(paths.get(0), new File(paths.get(1)).getParent()));
+        manifest.save();
+
+        write("tests/case-1/encounter.json", "{}");
+        manifest = new RefreshManifest(manifestPath, "default");
+        assertFalse(manifest.isUpToDate("Library/Test", Arrays.asList(paths.get(0), new File(paths.get(1)).getParent())));
+    }
+
+    @Test
+    public void TestChangedContextDiscardsManifest() throws IOException {
+        List<String> paths = Collections.singletonList(write("Test.cql", "library Test"));
+
+        RefreshManifest manifest = new RefreshManifest(manifestPath, "encoding=json");
+        manifest.record("Library/Test", paths);
+        manifest.save();
+
+        assertFalse(new RefreshManifest(manifestPath, "encoding=xml").isUpToDate("Library/Test", paths));
+    }
+
+    @Test
+    public void TestInvalidatedArtifactIsNotUpToDate() throws IOException {
+        List<String> paths = Collections.singletonList(write("Test.cql", "library Test"));
+
+        RefreshManifest manifest = new RefreshManifest(manifestPath, "default");
+        manifest.record("Library/Test", paths);
+        manifest.save();
+
+        manifest = new RefreshManifest(manifestPath, "default");
+        manifest.invalidate("Library/Test");
+        manifest.save();
+
+        assertFalse(new RefreshManifest(manifestPath, "default").isUpToDate("Library/Test", paths));
+    }
+}
@@ -0,0 +1,51 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+public class ValueSetIndexTests {
+
+    private static final String URL = "http://cts.nlm.nih.gov/fhir/ValueSet/2.16.840.1.113883.3.464.1003.103.12.1001";
+
+    private static ValueSet valueSet(String version) {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setUrl(URL);
+        valueSet.setVersion(version);
+        return valueSet;
+    }
+
+    @Test
+    public void TestVersionAwareLookup() {
+        ValueSet first = valueSet("20190315");
+        ValueSet second = valueSet("20210220");
+        ValueSetIndex index = new ValueSetIndex();
+        index.add(first.getUrl(), first.getVersion(), first);
+        index.add(second.getUrl(), second.getVersion(), second);
+
+        assertEquals(index.size(), 1);
+        assertSame(index.get(URL), first);
+        assertSame(index.get(URL, "20210220"), second);
+        assertSame(index.get(URL + "|20210220"), second);
+        // An unknown version resolves to the url, as lookups did before versions were indexed
+        assertSame(index.get(URL, "20220101"), first);
+        assertNull(index.get("http://example.org/fhir/ValueSet/missing"));
+        assertSame(index.getValueSetsByUrl().get(URL), first);
+    }
+
+    @Test
+    public void TestFirstValueSetWins() {
+        ValueSet first = valueSet("20190315");
+        ValueSet duplicate = valueSet("20190315");
+        ValueSetIndex index = new ValueSetIndex();
+        index.add(first.getUrl(), first.getVersion(), first);
+        index.add(duplicate.getUrl(), duplicate.getVersion(), duplicate);
+        index.add(null, null, new ValueSet());
+
+        assertEquals(index.size(), 1);
+        assertSame(index.get(URL, "20190315"), first);
+    }
+}
@@ -0,0 +1,131 @@
+package org.opencds.cqf.tooling.terminology;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class StreamingSpreadsheetReaderTests {
+
+    private File spreadsheet;
+    private XSSFWorkbook workbook;
+
+    @BeforeClass
+    public void writeSpreadsheet() throws IOException {
+        workbook = new XSSFWorkbook();
+
+        Sheet meta = workbook.createSheet("Meta");
+        meta.createRow(1).createCell(1).setCellValue("Value Set Name");
+        meta.getRow(1).createCell(2).setCellValue("Diabetes");
+
+        Sheet codes = workbook.createSheet("Codes");
+        Row header = codes.createRow(0);
+        header.createCell(0).setCellValue("Code");
+        header.createCell(1).setCellValue("Description");
+
+        Row code = codes.createRow(2);
+        code.createCell(0).setCellValue(44054006);
+        code.createCell(1).setCellValue("Diabetes mellitus type 2 (disorder) ");
+        CellStyle blank = workbook.createCellStyle();
+        blank.setDataFormat(workbook.createDataFormat().getFormat("0.00"));
+        code.createCell(2).setCellStyle(blank);
+        code.createCell(3).setCellValue(true);
+        code.createCell(4).setCellValue(1.5);
+
+        Row date = codes.createRow(3);
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2021, Calendar.SEPTEMBER, 17);
+        Cell dateCell = date.createCell(0);
+        dateCell.setCellValue(calendar.getTime());
+        dateCell.setCellStyle(dateStyle);
+        Cell numberCell = date.createCell(1);
+        numberCell.setCellValue(0.125);
+        numberCell.setCellStyle(blank);
+
+        spreadsheet = File.createTempFile("streaming-spreadsheet", ".xlsx");
+        try (FileOutputStream out = new FileOutputStream(spreadsheet)) {
+            workbook.write(out);
+        }
+    }
+
+    @AfterClass
+    public void deleteSpreadsheet() throws IOException {
+        workbook.close();
+        spreadsheet.delete();
+    }
+
+    @Test
+    public void TestSheetLookup() {
+        try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(spreadsheet.getAbsolutePath())) {
+            assertEquals(reader.getNumberOfSheets(), 2);
+            assertEquals(reader.getSheetIndex("Codes"), 1);
+            assertEquals(reader.getSheetIndex("Missing"), -1);
+        }
+    }
+
+    @Test
+    public void TestValuesMatchDataFormatter() {
+        DataFormatter dataFormatter = new DataFormatter();
+        Sheet codes = workbook.getSheet("Codes");
+
+        try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(spreadsheet.getAbsolutePath())) {
+            List<SpreadsheetRow> rows = reader.readRows(1);
+            assertEquals(rows.size(), 3);
+            for (SpreadsheetRow row : rows) {
+                Row expected = codes.getRow(row.getRowNum());
+                assertEquals(row.getCells().size(), expected.getPhysicalNumberOfCells());
+                for (Cell cell : expected) {
+                    assertEquals(row.getCellValue(cell.getColumnIndex()), dataFormatter.formatCellValue(cell));
+                    assertEquals(row.getCellAsString(cell.getColumnIndex()), SpreadsheetHelper.getCellAsString(cell));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void TestRowsAreStreamedInOrder() {
+        try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(spreadsheet.getAbsolutePath());
+             StreamingSpreadsheetReader.SpreadsheetRowIterator rows = reader.rows("Codes")) {
+            assertEquals(rows.next().getRowNum(), 0);
+
+            SpreadsheetRow code = rows.next();
+            assertEquals(code.getRowNum(), 2);
+            assertEquals(code.getCellValue(0), "44054006");
+            assertEquals(code.getCellAsString(1), "Diabetes mellitus type 2 (disorder)");
+            assertEquals(code.getCellValue(2), "");
+            assertNull(code.getCellValue(5));
+
+            assertEquals(rows.next().getCellValue(0), "2021-09-17");
+            assertFalse(rows.hasNext());
+        }
+    }
+
+    @Test
+    public void TestSecondStringInMetaRow() {
+        try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(spreadsheet.getAbsolutePath())) {
+            List<SpreadsheetRow> rows = reader.readRows(0);
+            assertEquals(rows.size(), 1);
+            assertEquals(rows.get(0).getRowNum(), 1);
+            assertEquals(rows.get(0).getCells().firstKey(), Integer.valueOf(1));
+            assertEquals(rows.get(0).getCellAsString(2), "Diabetes");
+        }
+    }
+}
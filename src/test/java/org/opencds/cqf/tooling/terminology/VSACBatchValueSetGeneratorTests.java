@@ -0,0 +1,86 @@
+package org.opencds.cqf.tooling.terminology;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.testng.annotations.Test;
+
+public class VSACBatchValueSetGeneratorTests {
+
+    private static void writeVsacSpreadsheet(File file, String title, String oid) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet meta = workbook.createSheet("Meta");
+            Row name = meta.createRow(1);
+            name.createCell(0).setCellValue("Value Set Name");
+            name.createCell(1).setCellValue(title);
+            if (oid != null) {
+                Row oidRow = meta.createRow(3);
+                oidRow.createCell(0).setCellValue("OID");
+                oidRow.createCell(1).setCellValue(oid);
+            }
+
+            Sheet codes = workbook.createSheet("Codes");
+            Row code = codes.createRow(13);
+            code.createCell(0).setCellValue("44054006");
+            code.createCell(1).setCellValue("Diabetes mellitus type 2 (disorder)");
+            code.createCell(2).setCellValue("SNOMEDCT");
+            code.createCell(3).setCellValue("2021-09");
+            code.createCell(4).setCellValue("2.16.840.1.113883.6.96");
+
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+    }
+
+    @Test
+    public void TestFailuresDoNotStopTheBatch() throws IOException {
+        File spreadsheetDirectory = Files.createTempDirectory("vsac-batch").toFile();
+        File outputDirectory = Files.createTempDirectory("vsac-batch-output").toFile();
+        writeVsacSpreadsheet(new File(spreadsheetDirectory, "a.xlsx"), "Diabetes", "2.16.840.1.113883.3.464.1003.103.12.1001");
+        writeVsacSpreadsheet(new File(spreadsheetDirectory, "b.xlsx"), "Missing OID", null);
+        writeVsacSpreadsheet(new File(spreadsheetDirectory, "c.xlsx"), "Hypertension", "2.16.840.1.113883.3.464.1003.104.12.1011");
+
+        try {
+            new VSACBatchValueSetGenerator().execute(new String[] {
+                "-VsacXlsxToValueSetBatch",
+                "-ptsd=" + spreadsheetDirectory.getAbsolutePath(),
+                "-op=" + outputDirectory.getAbsolutePath(),
+                "-mt=3"
+            });
+            fail("The batch should fail when a spreadsheet cannot be converted");
+        } catch (RuntimeException e) {
+            assertEquals(e.getMessage(), "1 of 3 spreadsheets could not be converted");
+        }
+
+        List<String> outputs = Arrays.asList(outputDirectory.list());
+        assertEquals(outputs.size(), 2);
+        assertTrue(outputs.contains("valueset-2.16.840.1.113883.3.464.1003.103.12.1001.json"));
+        assertTrue(outputs.contains("valueset-2.16.840.1.113883.3.464.1003.104.12.1011.json"));
+    }
+
+    @Test
+    public void TestSummaryReportsEachSpreadsheet() {
+        VSACBatchValueSetGenerator.ConversionResult first = new VSACBatchValueSetGenerator.ConversionResult(new File("a.xlsx"));
+        VSACBatchValueSetGenerator.ConversionResult second = new VSACBatchValueSetGenerator.ConversionResult(new File("b.xlsx"));
+        assertTrue(first.isSuccessful());
+
+        String summary = VSACBatchValueSetGenerator.getSummary(Arrays.asList(first, second), 42);
+        assertTrue(summary.contains("Converted a.xlsx"));
+        assertTrue(summary.contains("Converted b.xlsx"));
+        assertFalse(summary.contains("FAILED"));
+        assertTrue(summary.endsWith("Converted 2 of 2 spreadsheets in 42 ms"));
+    }
+}
@@ -0,0 +1,95 @@
+package org.opencds.cqf.tooling.terminology;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+public class ValueSetDbWriterTests {
+
+    private static ValueSet valueSet(String url, String version, String... systemsAndCodes) {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setUrl(url);
+        valueSet.setVersion(version);
+        for (int i = 0; i < systemsAndCodes.length; i += 2) {
+            valueSet.getExpansion().addContains().setSystem(systemsAndCodes[i]).setCode(systemsAndCodes[i + 1]);
+        }
+        return valueSet;
+    }
+
+    private static JsonObject read(File file) throws IOException {
+        return JsonParser.parseString(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    @Test
+    public void TestWritesValueSetDb() throws IOException {
+        File outputDirectory = Files.createTempDirectory("valueset-db").toFile();
+        try (ValueSetDbWriter writer = new ValueSetDbWriter(outputDirectory, ValueSetDbWriter.ShardBy.NONE)) {
+            assertTrue(writer.write(valueSet("http://example.org/fhir/ValueSet/diabetes", "1.0.0",
+                "http://snomed.info/sct", "44054006", "http://hl7.org/fhir/sid/icd-10-cm", "E11.9")));
+            assertTrue(writer.write(valueSet("http://example.org/fhir/ValueSet/empty", "1.0.0")));
+            assertFalse(writer.write(valueSet("http://example.org/fhir/ValueSet/diabetes", "2.0.0")));
+            assertFalse(writer.write(valueSet("http://example.org/fhir/ValueSet/unversioned", null)));
+        }
+
+        JsonObject db = read(new File(outputDirectory, "valueset-db.json"));
+        assertEquals(db.size(), 2);
+        JsonArray codes = db.getAsJsonObject("http://example.org/fhir/ValueSet/diabetes").getAsJsonArray("1.0.0");
+        assertEquals(codes.size(), 2);
+        assertEquals(codes.get(0).getAsJsonObject().get("code").getAsString(), "44054006");
+        assertEquals(codes.get(0).getAsJsonObject().get("system").getAsString(), "http://snomed.info/sct");
+        assertFalse(codes.get(0).getAsJsonObject().has("version"));
+        assertEquals(db.getAsJsonObject("http://example.org/fhir/ValueSet/empty").getAsJsonArray("1.0.0").size(), 0);
+    }
+
+    @Test
+    public void TestEmptyValueSetDb() throws IOException {
+        File outputDirectory = Files.createTempDirectory("valueset-db").toFile();
+        new ValueSetDbWriter(outputDirectory, ValueSetDbWriter.ShardBy.NONE).close();
+        assertEquals(read(new File(outputDirectory, "valueset-db.json")).size(), 0);
+    }
+
+    @Test
+    public void TestShardsByCodeSystem() throws IOException {
+        File outputDirectory = Files.createTempDirectory("valueset-db").toFile();
+        try (ValueSetDbWriter writer = new ValueSetDbWriter(outputDirectory, ValueSetDbWriter.ShardBy.CODESYSTEM)) {
+            writer.write(valueSet("http://example.org/fhir/ValueSet/diabetes", "1.0.0",
+                "http://snomed.info/sct", "44054006", "http://hl7.org/fhir/sid/icd-10-cm", "E11.9", "http://snomed.info/sct", "73211009"));
+            writer.write(valueSet("http://example.org/fhir/ValueSet/hypertension", "1.0.0", "http://snomed.info/sct", "38341003"));
+            // Same url, but no codes in any shard the first version was written to
+            assertFalse(writer.write(valueSet("http://example.org/fhir/ValueSet/hypertension", "2.0.0", "http://loinc.org", "8480-6")));
+            assertEquals(writer.getFiles().size(), 2);
+        }
+
+        assertFalse(new File(outputDirectory, "valueset-db.json").exists());
+        JsonObject snomed = read(new File(outputDirectory, "valueset-db-snomed.info_sct.json"));
+        assertEquals(snomed.size(), 2);
+        assertEquals(snomed.getAsJsonObject("http://example.org/fhir/ValueSet/diabetes").getAsJsonArray("1.0.0").size(), 2);
+        JsonObject icd10 = read(new File(outputDirectory, "valueset-db-hl7.org_fhir_sid_icd-10-cm.json"));
+        assertEquals(icd10.size(), 1);
+    }
+
+    @Test
+    public void TestShardsByPrefix() throws IOException {
+        File outputDirectory = Files.createTempDirectory("valueset-db").toFile();
+        try (ValueSetDbWriter writer = new ValueSetDbWriter(outputDirectory, ValueSetDbWriter.ShardBy.PREFIX)) {
+            writer.write(valueSet("http://cts.nlm.nih.gov/fhir/ValueSet/2.16.840.1.113883.3.464.1003.103.12.1001", "1.0.0",
+                "http://snomed.info/sct", "44054006"));
+            writer.write(valueSet("http://example.org/fhir/ValueSet/hypertension", "1.0.0", "http://snomed.info/sct", "38341003"));
+        }
+
+        assertEquals(read(new File(outputDirectory, "valueset-db-cts.nlm.nih.gov_fhir.json")).size(), 1);
+        assertEquals(read(new File(outputDirectory, "valueset-db-example.org_fhir.json")).size(), 1);
+    }
+}
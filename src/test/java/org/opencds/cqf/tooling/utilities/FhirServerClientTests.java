@@ -0,0 +1,189 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class FhirServerClientTests {
+
+    private static final String ERROR_OUTCOME = "{\"resourceType\":\"OperationOutcome\",\"issue\":[{\"severity\":\"error\",\"code\":\"processing\",\"diagnostics\":\"Invalid reference\"}]}";
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final ConcurrentLinkedQueue<String> requestBodies = new ConcurrentLinkedQueue<>();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        requestCount.set(0);
+        requestBodies.clear();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/fhir+json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream input = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            input = new GZIPInputStream(input);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Bundle createBundle() {
+        Bundle bundle = new Bundle();
+        bundle.setId("test-bundle");
+        bundle.setType(Bundle.BundleType.TRANSACTION);
+        return bundle;
+    }
+
+    @Test
+    public void TestRetriesUnavailableServer() throws IOException {
+        server.createContext("/fhir", exchange -> {
+            readBody(exchange);
+            if (requestCount.incrementAndGet() < 3) {
+                respond(exchange, 503, "");
+            } else {
+                respond(exchange, 200, "{\"resourceType\":\"Bundle\",\"type\":\"transaction-response\"}");
+            }
+        });
+
+        try (FhirServerClient client = new FhirServerClient(2, 4, 1, false)) {
+            client.post(baseUrl + "/fhir", createBundle(), Encoding.JSON, fhirContext);
+        }
+        assertEquals(requestCount.get(), 3);
+    }
+
+    @Test
+    public void TestDoesNotRetryPostOnServerError() throws IOException {
+        server.createContext("/fhir", exchange -> {
+            readBody(exchange);
+            requestCount.incrementAndGet();
+            respond(exchange, 500, "");
+        });
+
+        try (FhirServerClient client = new FhirServerClient(2, 4, 1, false)) {
+            client.post(baseUrl + "/fhir", createBundle(), Encoding.JSON, fhirContext);
+            fail("Expected the post to fail");
+        } catch (FhirServerClient.FhirServerException e) {
+            assertEquals(e.getStatusCode(), 500);
+        }
+        assertEquals(requestCount.get(), 1);
+    }
+
+    @Test
+    public void TestRetriesGetOnServerError() throws IOException {
+        server.createContext("/fhir", exchange -> {
+            if (requestCount.incrementAndGet() < 3) {
+                respond(exchange, 500, "");
+            } else {
+                respond(exchange, 200, "{\"resourceType\":\"CapabilityStatement\"}");
+            }
+        });
+
+        try (FhirServerClient client = new FhirServerClient(2, 4, 1, false)) {
+            client.get(baseUrl + "/fhir/metadata");
+        }
+        assertEquals(requestCount.get(), 3);
+    }
+
+    @Test
+    public void TestGivesUpAfterMaxRetries() throws IOException {
+        server.createContext("/fhir", exchange -> {
+            requestCount.incrementAndGet();
+            respond(exchange, 429, "");
+        });
+
+        try (FhirServerClient client = new FhirServerClient(2, 2, 1, false)) {
+            client.get(baseUrl + "/fhir/metadata");
+            fail("Expected the request to fail");
+        } catch (FhirServerClient.FhirServerException e) {
+            assertEquals(e.getStatusCode(), 429);
+        }
+        assertEquals(requestCount.get(), 3);
+    }
+
+    @Test
+    public void TestDetectsOperationOutcomeErrors() throws IOException {
+        server.createContext("/fhir", exchange -> {
+            readBody(exchange);
+            respond(exchange, 400, ERROR_OUTCOME);
+        });
+
+        try (FhirServerClient client = new FhirServerClient(2, 2, 1, false)) {
+            client.post(baseUrl + "/fhir", createBundle(), Encoding.JSON, fhirContext);
+            fail("Expected the post to fail");
+        } catch (FhirServerClient.FhirServerException e) {
+            assertEquals(e.getStatusCode(), 400);
+            assertEquals(e.getIssues().size(), 1);
+            assertTrue(e.getMessage().contains("Invalid reference"));
+        }
+    }
+
+    @Test
+    public void TestIgnoresSuccessfulResponsesMentioningErrors() throws IOException {
+        server.createContext("/fhir", exchange ->
+            respond(exchange, 200, "{\"resourceType\":\"Library\",\"id\":\"error-handling\"}"));
+
+        try (FhirServerClient client = new FhirServerClient(2, 2, 1, false)) {
+            assertTrue(client.get(baseUrl + "/fhir/Library/error-handling", fhirContext).contains("error-handling"));
+        }
+    }
+
+    @Test
+    public void TestCompressesRequests() throws IOException {
+        server.createContext("/fhir", exchange -> {
+            requestBodies.add(exchange.getRequestHeaders().getFirst("Content-Encoding") + ":" + readBody(exchange));
+            respond(exchange, 200, "{\"resourceType\":\"Bundle\",\"type\":\"transaction-response\"}");
+        });
+
+        try (FhirServerClient client = new FhirServerClient(2, 0, 1, true)) {
+            client.post(baseUrl + "/fhir", createBundle(), Encoding.JSON, fhirContext);
+        }
+        String request = requestBodies.poll();
+        assertTrue(request.startsWith("gzip:"));
+        assertTrue(request.contains("test-bundle"));
+    }
+}
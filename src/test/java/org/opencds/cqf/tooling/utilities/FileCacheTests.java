@@ -0,0 +1,87 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FileCacheTests {
+
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("file-cache").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.deleteDirectory(directory.getAbsolutePath());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void TestHitsAndMisses() throws IOException {
+        FileCache<String> cache = new FileCache<>("Test", 1024, 1);
+        File file = write("a.txt", "a");
+
+        assertEquals(cache.get(file.getPath(), () -> read(file)), "a");
+        assertEquals(cache.get(file.getPath(), () -> "not loaded"), "a");
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitCount(), 1);
+    }
+
+    @Test
+    public void TestChangedFileIsReloaded() throws IOException {
+        FileCache<String> cache = new FileCache<>("Test", 1024, 1);
+        File file = write("a.txt", "a");
+        assertEquals(cache.get(file.getPath(), () -> read(file)), "a");
+
+        write("a.txt", "changed");
+        assertNull(cache.getIfPresent(file.getPath()));
+        assertEquals(cache.get(file.getPath(), () -> read(file)), "changed");
+        assertEquals(cache.getStaleReloadCount(), 1);
+        // The initial load, the changed file in getIfPresent and the reload
+        assertEquals(cache.getMissCount(), 3);
+    }
+
+    @Test
+    public void TestNullIsNotCached() throws IOException {
+        FileCache<String> cache = new FileCache<>("Test", 1024, 1);
+        String path = new File(directory, "missing.txt").getPath();
+
+        assertNull(cache.get(path, () -> null));
+        assertEquals(cache.get(path, () -> "loaded"), "loaded");
+        assertEquals(cache.getMissCount(), 2);
+    }
+
+    @Test
+    public void TestWeightIsBounded() throws IOException {
+        FileCache<String> cache = new FileCache<>("Test", 100, 10);
+        for (int i = 0; i < 10; i++) {
+            File file = write(i + ".txt", "0123456789");
+            cache.get(file.getPath(), () -> read(file));
+        }
+
+        cache.cleanUp();
+        assertTrue(cache.size() <= 1);
+        assertTrue(cache.getEvictionCount() >= 9);
+    }
+}
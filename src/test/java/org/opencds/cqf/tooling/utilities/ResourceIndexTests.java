@@ -0,0 +1,76 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.hl7.fhir.r4.model.Library;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class ResourceIndexTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4();
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("resource-index").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.deleteDirectory(directory.getAbsolutePath());
+    }
+
+    private File writeLibrary(String id, String url) throws IOException {
+        File file = new File(directory, "library-" + id + ".json");
+        Files.write(file.toPath(), ("{\"resourceType\":\"Library\",\"id\":\"" + id + "\",\"url\":\"" + url + "\"}")
+                .getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void TestStaleEntriesAreIndexedAgain() throws IOException {
+        File file = writeLibrary("Common", "http://example.org/Library/Common");
+        ResourceIndex index = new ResourceIndex(fhirContext);
+        index.indexDirectories(Collections.singletonList(directory.getAbsolutePath()));
+
+        ResourceIndex.Entry entry = index.getEntry(file.getAbsolutePath());
+        assertEquals(entry.getUrl(), "http://example.org/Library/Common");
+        assertFalse(entry.isStale());
+        assertEquals(((Library) index.getResource(file.getAbsolutePath())).getUrl(), "http://example.org/Library/Common");
+
+        long modificationCount = index.getModificationCount();
+        writeLibrary("Common", "http://example.org/Library/Renamed");
+        assertTrue(file.setLastModified(entry.getLastModified() + 2000));
+        assertTrue(entry.isStale());
+
+        assertEquals(((Library) index.getResource(file.getAbsolutePath())).getUrl(), "http://example.org/Library/Renamed");
+        assertEquals(index.getEntry(file.getAbsolutePath()).getUrl(), "http://example.org/Library/Renamed");
+        assertEquals(index.getEntries("Library").size(), 1);
+        assertTrue(index.getModificationCount() != modificationCount);
+    }
+
+    @Test
+    public void TestRemovedFilesAreDropped() throws IOException {
+        File file = writeLibrary("Common", "http://example.org/Library/Common");
+        ResourceIndex index = new ResourceIndex(fhirContext);
+        index.indexDirectories(Collections.singletonList(directory.getAbsolutePath()));
+
+        assertTrue(file.delete());
+        assertNull(index.getResource(file.getAbsolutePath()));
+        assertNull(index.getEntry(file.getAbsolutePath()));
+        assertTrue(index.getEntries("Library").isEmpty());
+    }
+}